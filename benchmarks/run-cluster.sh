@@ -0,0 +1,10 @@
+#!/bin/sh
+# Cluster mode check: an ingress in this process, workers as separate JVMs; options are passed to ClusterCheck.
+#   ./run-cluster.sh
+#   ./run-cluster.sh --workers 4 --chats 2000 --rounds 20 --handle-ms 5
+set -e
+cd "$(dirname "$0")"
+JAR=target/benchmarks.jar
+[ -f "$JAR" ] || { echo "Build first: mvn package (after mvn install in the project root)" >&2; exit 1; }
+# the worker processes get the same classpath
+exec java -cp "$JAR" org.bot.loadtest.ClusterCheck "$@"
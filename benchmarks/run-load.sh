@@ -0,0 +1,18 @@
+#!/bin/sh
+# End-to-end load test against an in-memory H2 database; options are passed to LoadGenerator.
+#   ./run-load.sh
+#   ./run-load.sh --chats 5000 --phases login,rent --api-latency-ms 50
+# DB_URL=jdbc:mysql://... DB_USER=... DB_PASSWORD=... ./run-load.sh   to use a scratch MySQL schema instead
+set -e
+cd "$(dirname "$0")"
+JAR=target/benchmarks.jar
+[ -f "$JAR" ] || { echo "Build first: mvn package (after mvn install in the project root)" >&2; exit 1; }
+export BOT_TOKEN=${BOT_TOKEN:-loadtest}
+export DB_URL=${DB_URL:-"jdbc:h2:mem:loadtest;MODE=MySQL;DB_CLOSE_DELAY=-1"}
+export DB_USER=${DB_USER:-sa}
+export DB_PASSWORD=${DB_PASSWORD:-}
+export SESSION_STORE=${SESSION_STORE:-memory}
+# nothing leaves the process, so Telegram's send limits would only measure the limiter
+export SEND_GLOBAL_RATE=${SEND_GLOBAL_RATE:-1000000}
+export SEND_CHAT_RATE=${SEND_CHAT_RATE:-1000000}
+exec java -cp "$JAR" org.bot.loadtest.LoadGenerator "$@"
@@ -0,0 +1,12 @@
+#!/bin/sh
+# Run the JMH suites with the allocation profiler; results go to results/<name>.json.
+#   ./run.sh                      all suites -> results/latest.json
+#   ./run.sh RoutingBenchmark     one suite  -> results/RoutingBenchmark.json
+#   OUT=baseline ./run.sh         all suites -> results/baseline.json
+set -e
+cd "$(dirname "$0")"
+JAR=target/benchmarks.jar
+[ -f "$JAR" ] || { echo "Build first: mvn package (after mvn install in the project root)" >&2; exit 1; }
+mkdir -p results
+NAME=${OUT:-${1:-latest}}
+exec java -jar "$JAR" ${1:+"$1"} -prof gc -rf json -rff "results/$NAME.json"
@@ -0,0 +1,89 @@
+package modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "Is car X free between A and B" over 100k rentals of 5k cars.
+ * index: AvailabilityIndex, loaded from the same rows Database.reloadAvailabilityIndex reads.
+ * sql: the overlap query Database runs inside the booking transaction (indexed on car_id, start_date).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AvailabilityBenchmark {
+
+    private static final int CARS = 5_000;
+    private static final int RENTALS = 100_000;
+    private static final String SQL = "SELECT 1 FROM Rentals WHERE car_id = ? AND start_date <= ? AND end_date >= ? AND id <> ? LIMIT 1";
+
+    private Connection conn;
+    private PreparedStatement overlap;
+    private final AvailabilityIndex index = new AvailabilityIndex();
+    private LocalDate today;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        conn = BenchDb.create("availability", CARS, RENTALS);
+        List<AvailabilityIndex.Booking> rows = new ArrayList<>(RENTALS);
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id, car_id, start_date, end_date FROM Rentals");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new AvailabilityIndex.Booking(rs.getInt(1), rs.getInt(2),
+                        rs.getObject(3, LocalDate.class), rs.getObject(4, LocalDate.class)));
+            }
+        }
+        index.replaceAll(rows, index.getModCount());
+        overlap = conn.prepareStatement(SQL);
+        today = LocalDate.now();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public boolean index() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate from = today.plusDays(random.nextInt(365));
+        return index.isFree(1 + random.nextInt(CARS), from, from.plusDays(random.nextInt(7)));
+    }
+
+    // PreparedStatement is not thread-safe; this state is per benchmark, which runs on one thread by default
+    @Benchmark
+    public boolean sql() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate from = today.plusDays(random.nextInt(365));
+        overlap.setInt(1, 1 + random.nextInt(CARS));
+        overlap.setObject(2, from.plusDays(random.nextInt(7)));
+        overlap.setObject(3, from);
+        overlap.setInt(4, -1);
+        try (ResultSet rs = overlap.executeQuery()) {
+            return !rs.next();
+        }
+    }
+}
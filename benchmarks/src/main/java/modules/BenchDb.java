@@ -0,0 +1,123 @@
+package modules;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * In-memory H2 database in MySQL mode with the bot's tables and the RentalDetails view (schema.sql), seeded
+ * with synthetic rows. A stand-in for MySQL: it has the same column shapes, so row mapping and JDBC-side costs
+ * are comparable, but no network round trips, so anything that saves round trips looks smaller here.
+ */
+public final class BenchDb {
+    static final int BRANCHES = 20;
+    private static final int CAR_TYPES = 5;
+
+    private BenchDb() {
+    }
+
+    static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    /** Create and seed database {@code name}; the returned connection keeps it alive until closed. */
+    static Connection create(String name, int cars, int rentals) throws SQLException {
+        Connection conn = DriverManager.getConnection(url(name), "sa", "");
+        createSchema(conn);
+        Random random = new Random(7);
+        conn.setAutoCommit(false);
+        seedBranches(conn, BRANCHES, random);
+        seedCars(conn, cars, BRANCHES, random);
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Users (login, email) VALUES (?, ?)")) {
+            for (int i = 1; i <= 1000; i++) {
+                ps.setString(1, "user" + i);
+                ps.setString(2, "user" + i + "@example.com");
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Rentals " +
+                "(user_id, car_id, start_date, end_date, start_branch_id, end_branch_id) VALUES (?, ?, ?, ?, ?, ?)")) {
+            LocalDate today = LocalDate.now();
+            for (int i = 1; i <= rentals; i++) {
+                LocalDate start = today.plusDays(random.nextInt(365));
+                ps.setInt(1, 1 + random.nextInt(1000));
+                ps.setInt(2, 1 + random.nextInt(Math.max(1, cars)));
+                ps.setObject(3, start);
+                ps.setObject(4, start.plusDays(random.nextInt(14)));
+                ps.setInt(5, 1 + random.nextInt(BRANCHES));
+                ps.setInt(6, 1 + random.nextInt(BRANCHES));
+                ps.addBatch();
+                if (i % 1000 == 0) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+        return conn;
+    }
+
+    /** Run schema.sql on an empty database. */
+    public static void createSchema(Connection conn) throws SQLException {
+        String script;
+        try (InputStream in = BenchDb.class.getResourceAsStream("/schema.sql")) {
+            if (in == null) throw new IllegalStateException("schema.sql is missing from the classpath");
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        StringBuilder sql = new StringBuilder();
+        try (Statement st = conn.createStatement()) {
+            for (String line : script.split("\\R")) {
+                String t = line.trim();
+                if (t.isEmpty() || t.startsWith("--")) continue;
+                sql.append(line).append('\n');
+                if (t.endsWith(";")) {
+                    st.execute(sql.substring(0, sql.lastIndexOf(";")));
+                    sql.setLength(0);
+                }
+            }
+        }
+    }
+
+    public static void seedBranches(Connection conn, int branches, Random random) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Branch (city, street, building_number) VALUES (?, ?, ?)")) {
+            for (int i = 1; i <= branches; i++) {
+                ps.setString(1, i % 2 == 0 ? "Moscow" : "Kazan");
+                ps.setString(2, "Street " + i);
+                ps.setInt(3, 1 + random.nextInt(200));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /** Cars spread over the branches; about 1 in 10 has no release year, like legacy rows. */
+    public static void seedCars(Connection conn, int cars, int branches, Random random) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO Cars (name, release_year, type_id, branch_id, status_id) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= cars; i++) {
+                ps.setString(1, "Car model " + (i % 97));
+                if (i % 10 == 0) ps.setNull(2, Types.INTEGER);
+                else ps.setInt(2, 2005 + random.nextInt(20));
+                ps.setInt(3, 1 + random.nextInt(CAR_TYPES));
+                ps.setInt(4, 1 + random.nextInt(branches));
+                // mostly available, some rented, a few in maintenance
+                int p = random.nextInt(10);
+                ps.setInt(5, p < 7 ? 1 : p < 9 ? 2 : 3);
+                ps.addBatch();
+                if (i % 1000 == 0) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status change for 10k cars. batched: what Database.bulkUpdateCarStatus does (one transaction,
+ * executeBatch every 500 rows). rowByRow: the single-car updateCarStatus called in a loop, one
+ * auto-committed statement per car.
+ *
+ * H2 has no network round trip and commits in memory, so the gap here is a lower bound of the gap on MySQL.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class BulkUpdateBenchmark {
+
+    private static final int CARS = 10_000;
+    private static final int BATCH_SIZE = 500;
+    private static final String SQL = "UPDATE Cars SET status_id = ? WHERE id = ?";
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+    private int status;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        keepAlive = BenchDb.create("bulk", CARS, 0);
+        pool = new ConnectionPool(BenchDb.url("bulk"), "sa", "", 2, 5_000, 60_000, 0, 64);
+    }
+
+    // alternate the target status so every run really changes every row
+    @Setup(Level.Iteration)
+    public void nextStatus() {
+        status = status == 1 ? 3 : 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        pool.close();
+        keepAlive.close();
+    }
+
+    @Benchmark
+    public int batched() throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(SQL)) {
+                int changed = 0;
+                for (int id = 1; id <= CARS; id++) {
+                    ps.setInt(1, status);
+                    ps.setInt(2, id);
+                    ps.addBatch();
+                    if (id % BATCH_SIZE == 0 || id == CARS) {
+                        for (int c : ps.executeBatch()) changed += Math.max(c, 0);
+                    }
+                }
+                conn.commit();
+                return changed;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Benchmark
+    public int rowByRow() throws SQLException {
+        int changed = 0;
+        for (int id = 1; id <= CARS; id++) {
+            try (Connection conn = pool.borrow();
+                 PreparedStatement ps = conn.prepareStatement(SQL)) {
+                ps.setInt(1, status);
+                ps.setInt(2, id);
+                changed += ps.executeUpdate();
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,64 @@
+package modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the instrumentation itself: one LatencyHistogram recording (done per update, handler,
+ * query and send), alone and with four threads recording into the same histogram, and a full
+ * Prometheus scrape of a registry about the size the bot builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MetricsBenchmark {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @State(Scope.Benchmark)
+    public static class Registry {
+        public Registry() {
+            for (int i = 0; i < 60; i++) {
+                LatencyHistogram h = Metrics.timer("bench_seconds", "route", "route" + i);
+                for (int j = 0; j < 1000; j++) h.recordNanos(j * 50_000L);
+                Metrics.counter("bench_total", "method", "method" + i).increment();
+            }
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        histogram.recordNanos(ThreadLocalRandom.current().nextLong(20_000_000));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public void recordContended() {
+        histogram.recordNanos(ThreadLocalRandom.current().nextLong(20_000_000));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int scrape(Registry registry) throws IOException {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        Metrics.writePrometheus(sb);
+        return sb.length();
+    }
+}
@@ -0,0 +1,59 @@
+package modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logins per second per core: one PBKDF2-HMAC-SHA256 derivation with PasswordHasher's parameters
+ * (256-bit key, 16-byte salt) at a few PASSWORD_HASH_ITERATIONS values; 310000 is the default.
+ *
+ * PasswordHasher itself reads Config when its class initialises, which needs the bot's environment,
+ * so the derivation is repeated here; the hashing pool adds only a queue hand-off on top.
+ * Single-threaded, so ops/s is the per-core rate; multiply by PASSWORD_HASH_THREADS for the pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class PasswordHashBenchmark {
+
+    @Param({"100000", "310000", "600000"})
+    public int iterations;
+
+    private final byte[] salt = new byte[16];
+    private SecretKeyFactory factory;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        for (int i = 0; i < salt.length; i++) salt[i] = (byte) (i * 31);
+    }
+
+    @Benchmark
+    public byte[] verify() throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec("correct horse battery staple".toCharArray(), salt, iterations, 256);
+        try {
+            return factory.generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
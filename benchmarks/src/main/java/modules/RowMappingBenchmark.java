@@ -0,0 +1,108 @@
+package modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResultSet to row mapping of the Database listings, run against the embedded BenchDb.
+ *
+ * carsAsRecords / rentalsAsRecords: RowMappers, as Database uses them.
+ * carsAsMaps: the HashMap<String,Object> per row that the records replaced, for comparison.
+ * Each invocation runs the query and maps {@code rows} rows; compare gc.alloc.rate.norm between them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RowMappingBenchmark {
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    // same columns as Database.listCarsPage
+    private static final String CARS_SQL = "SELECT c.id, c.name, c.release_year, t.type_name, c.branch_id, " +
+            "CONCAT(b.city, ', ', b.street, ', ', b.building_number), c.status_id, cs.status_name " +
+            "FROM Cars c " +
+            "LEFT JOIN Branch b ON b.id = c.branch_id " +
+            "LEFT JOIN CarStatus cs ON cs.id = c.status_id " +
+            "LEFT JOIN CarType t ON t.id = c.type_id " +
+            "ORDER BY c.id LIMIT ?";
+    private static final String RENTALS_SQL = "SELECT RentalID, `Car Name`, Login, `Start Date`, `End Date`, `Start Branch`, `End Branch` " +
+            "FROM RentalDetails ORDER BY RentalID LIMIT ?";
+
+    private Connection conn;
+    private PreparedStatement cars;
+    private PreparedStatement rentals;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        conn = BenchDb.create("rowmapping" + rows, rows, rows);
+        cars = conn.prepareStatement(CARS_SQL);
+        cars.setInt(1, rows);
+        rentals = conn.prepareStatement(RENTALS_SQL);
+        rentals.setInt(1, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public List<Car> carsAsRecords() throws SQLException {
+        try (ResultSet rs = cars.executeQuery()) {
+            return RowMappers.readCars(rs);
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> carsAsMaps() throws SQLException {
+        List<Map<String, Object>> out = new ArrayList<>();
+        try (ResultSet rs = cars.executeQuery()) {
+            while (rs.next()) {
+                Map<String, Object> m = new HashMap<>();
+                m.put("id", rs.getInt(1));
+                m.put("name", rs.getString(2));
+                Object ry = rs.getObject(3);
+                m.put("release_year", ry == null ? null : rs.getInt(3));
+                m.put("type_name", rs.getString(4));
+                m.put("branch_id", rs.getInt(5));
+                m.put("branch_address", rs.getString(6));
+                m.put("status_id", rs.getInt(7));
+                m.put("status_name", rs.getString(8));
+                out.add(m);
+            }
+        }
+        return out;
+    }
+
+    @Benchmark
+    public List<RentalDetail> rentalsAsRecords() throws SQLException {
+        try (ResultSet rs = rentals.executeQuery()) {
+            return RowMappers.readRentalDetails(rs);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One short query the way every Database method runs it: borrow from the ConnectionPool, prepare,
+ * execute, close both. statementCacheSize=0 prepares every time; 64 is the DB_STATEMENT_CACHE_SIZE default.
+ *
+ * Against H2 this measures the client-side part only (pool, proxies, statement parse/plan); with MySQL
+ * and useServerPrepStmts a cache miss also costs a prepare round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class StatementCacheBenchmark {
+
+    @Param({"0", "64"})
+    public int statementCacheSize;
+
+    private static final int CARS = 10_000;
+    private static final String SQL = "SELECT status_id FROM Cars WHERE id = ?";
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        String name = "statements" + statementCacheSize;
+        keepAlive = BenchDb.create(name, CARS, 0);
+        pool = new ConnectionPool(BenchDb.url(name), "sa", "", 8, 5_000, 60_000, 0, statementCacheSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        System.out.println();
+        System.out.println("pool: " + pool.stats());
+        pool.close();
+        keepAlive.close();
+    }
+
+    @Benchmark
+    public int pointQuery() throws SQLException {
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(SQL)) {
+            ps.setInt(1, 1 + ThreadLocalRandom.current().nextInt(CARS));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moving one of a million pending reminders to another time, as a rental reschedule does.
+ * wheel: TimerWheel.schedule on an existing key (what RentalReminders does).
+ * executor: cancel + schedule on a ScheduledThreadPoolExecutor with remove-on-cancel, the heap-based alternative.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TimerWheelBenchmark {
+
+    private static final int TIMERS = 1_000_000;
+    private static final long HORIZON_MS = TimeUnit.DAYS.toMillis(2);
+    private static final Runnable NOOP = () -> { };
+
+    private long now;
+    private TimerWheel wheel;
+    private ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?>[] futures;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        now = System.currentTimeMillis();
+        wheel = new TimerWheel(1000, TIMERS, now);
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        futures = new ScheduledFuture<?>[TIMERS];
+        for (int i = 0; i < TIMERS; i++) {
+            long delay = 1000 + random.nextLong(HORIZON_MS);
+            wheel.schedule(i, now + delay);
+            futures[i] = executor.schedule(NOOP, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean wheel() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return wheel.schedule(random.nextInt(TIMERS), now + 1000 + random.nextLong(HORIZON_MS));
+    }
+
+    @Benchmark
+    public ScheduledFuture<?> executor() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(TIMERS);
+        futures[i].cancel(false);
+        return futures[i] = executor.schedule(NOOP, 1000 + random.nextLong(HORIZON_MS), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,307 @@
+package org.bot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+import org.telegram.telegrambots.meta.TelegramUrl;
+import org.telegram.telegrambots.meta.api.methods.updates.GetUpdates;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Update ingestion throughput, from Telegram's side of the wire to UpdateDispatcher: webhook vs. long polling.
+ *
+ * webhook: a local HTTP/1.1 client POSTs updates to WebhookServer the way Telegram does, one request at a time
+ * on each of {@code connections} keep-alive connections (Telegram's max_connections defaults to 40). The client
+ * is a few lines over plain sockets: java.net.http costs several times what the server does per request
+ * and would measure itself.
+ * longPolling: TelegramBotsLongPollingApplication, as Main registers the bot, polls a local stand-in
+ * for the Bot API that hands out the same updates through getUpdates, up to 100 per response.
+ *
+ * Both feed a real UpdateDispatcher whose handler only counts, so the score is ingestion alone.
+ * One operation is one update reaching the handler. Network latency to Telegram is not modelled;
+ * it costs long polling a round trip per batch and the webhook nothing it would not pay anyway.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final int BATCH = 1000;
+    private static final int CHATS = 1000;
+    private static final String SECRET = "bench-secret";
+    private static final String TOKEN = "123:bench";
+
+    // JSON of one text update, as Telegram sends it
+    static String updateJson(int updateId) {
+        long chatId = 1 + updateId % CHATS;
+        return "{\"update_id\":" + updateId + ",\"message\":{\"message_id\":" + updateId
+                + ",\"date\":1700000000,\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"},"
+                + "\"from\":{\"id\":" + chatId + ",\"is_bot\":false,\"first_name\":\"Bench\"},\"text\":\"/start\"}}";
+    }
+
+    /** A dispatcher that counts what reaches the handler. */
+    public abstract static class Sink {
+        final AtomicLong delivered = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        ExecutorService workers;
+        UpdateDispatcher dispatcher;
+
+        void startDispatcher() {
+            workers = Executors.newFixedThreadPool(4, r -> {
+                Thread t = new Thread(r, "bench-worker");
+                t.setDaemon(true);
+                return t;
+            });
+            dispatcher = new UpdateDispatcher(u -> delivered.incrementAndGet(), workers, 10_000);
+        }
+
+        void awaitDelivered(long target) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (delivered.get() < target) {
+                if (failures.get() > 0) throw new IllegalStateException(failures.get() + " updates were refused");
+                if (System.nanoTime() > deadline) throw new IllegalStateException("updates stopped arriving");
+                LockSupport.parkNanos(20_000);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Webhook extends Sink {
+        @Param({"1", "40"})
+        public int connections;
+
+        // complete requests, head and body, as they go on the wire
+        private final byte[][] requests = new byte[BATCH][];
+        private WebhookServer server;
+        private Socket[] sockets;
+        private ExecutorService senders;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            startDispatcher();
+            server = WebhookServer.start("127.0.0.1", 0, "/webhook", SECRET, 1000, dispatcher::dispatch);
+            for (int i = 0; i < BATCH; i++) {
+                byte[] body = updateJson(i + 1).getBytes(StandardCharsets.UTF_8);
+                String head = "POST /webhook HTTP/1.1\r\nHost: 127.0.0.1:" + server.getPort()
+                        + "\r\nContent-Type: application/json\r\nX-Telegram-Bot-Api-Secret-Token: " + SECRET
+                        + "\r\nContent-Length: " + body.length + "\r\n\r\n";
+                byte[] h = head.getBytes(StandardCharsets.ISO_8859_1);
+                requests[i] = new byte[h.length + body.length];
+                System.arraycopy(h, 0, requests[i], 0, h.length);
+                System.arraycopy(body, 0, requests[i], h.length, body.length);
+            }
+            sockets = new Socket[connections];
+            for (int k = 0; k < connections; k++) {
+                sockets[k] = new Socket("127.0.0.1", server.getPort());
+                sockets[k].setTcpNoDelay(true);
+            }
+            senders = Executors.newFixedThreadPool(connections, r -> {
+                Thread t = new Thread(r, "bench-sender");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        // the batch split over the connections, each sending its share one request after another
+        void send() throws InterruptedException {
+            List<Future<?>> sent = new ArrayList<>(connections);
+            for (int k = 0; k < connections; k++) {
+                Socket socket = sockets[k];
+                int from = k * BATCH / connections;
+                int to = (k + 1) * BATCH / connections;
+                sent.add(senders.submit(() -> post(socket, from, to)));
+            }
+            for (Future<?> f : sent) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+
+        private Void post(Socket socket, int from, int to) throws IOException {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            for (int i = from; i < to; i++) {
+                out.write(requests[i]);
+                if (readStatus(in) != 200) failures.incrementAndGet();
+            }
+            return null;
+        }
+
+        // status of a response without a body, which is all WebhookServer sends
+        private static int readStatus(InputStream in) throws IOException {
+            StringBuilder head = new StringBuilder(64);
+            while (head.length() < 4 || head.lastIndexOf("\r\n\r\n") != head.length() - 4) {
+                int b = in.read();
+                if (b < 0) throw new IOException("connection closed by the webhook");
+                head.append((char) b);
+            }
+            return Integer.parseInt(head.substring(9, 12));
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            senders.shutdownNow();
+            for (Socket s : sockets) s.close();
+            server.close();
+            dispatcher.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Polling extends Sink {
+        private static final ObjectMapper JSON = new ObjectMapper();
+        // updates not yet confirmed by a later offset; ids are consecutive from firstId
+        private final ArrayDeque<String> pending = new ArrayDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition arrived = lock.newCondition();
+        private int firstId = 1;
+        private int nextId = 1;
+        private HttpServer api;
+        private ExecutorService apiExecutor;
+        private TelegramBotsLongPollingApplication application;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            startDispatcher();
+            api = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            api.createContext("/", this::getUpdates);
+            apiExecutor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "bench-bot-api");
+                t.setDaemon(true);
+                return t;
+            });
+            api.setExecutor(apiExecutor);
+            api.start();
+            int port = api.getAddress().getPort();
+            application = new TelegramBotsLongPollingApplication();
+            application.registerBot(TOKEN,
+                    () -> TelegramUrl.builder().schema("http").host("127.0.0.1").port(port).build(),
+                    lastId -> GetUpdates.builder().offset(lastId + 1).limit(100).timeout(1).build(),
+                    updates -> {
+                        for (Update u : updates) dispatcher.dispatch(u);
+                    });
+        }
+
+        void publish() {
+            lock.lock();
+            try {
+                for (int i = 0; i < BATCH; i++) pending.add(updateJson(nextId++));
+                arrived.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // getUpdates as Telegram answers it: everything from offset on, waiting up to timeout if there is nothing.
+        // Any other method (deleteWebhook, sent once when the session starts) just succeeds.
+        private void getUpdates(HttpExchange exchange) throws IOException {
+            try (exchange; InputStream in = exchange.getRequestBody()) {
+                if (!exchange.getRequestURI().getPath().toLowerCase(Locale.ROOT).endsWith("/getupdates")) {
+                    respond(exchange, "{\"ok\":true,\"result\":true}");
+                    return;
+                }
+                JsonNode request = JSON.readTree(in);
+                int offset = request.path("offset").asInt(0);
+                int limit = request.path("limit").asInt(100);
+                long waitNanos = TimeUnit.SECONDS.toNanos(request.path("timeout").asInt(0));
+                StringBuilder sb = new StringBuilder(256 * Math.min(limit, BATCH)).append("{\"ok\":true,\"result\":[");
+                lock.lock();
+                try {
+                    while (firstId < offset && !pending.isEmpty()) {
+                        pending.removeFirst();
+                        firstId++;
+                    }
+                    while (pending.isEmpty() && waitNanos > 0) waitNanos = arrived.awaitNanos(waitNanos);
+                    Iterator<String> it = pending.iterator();
+                    for (int i = 0; i < limit && it.hasNext(); i++) {
+                        if (i > 0) sb.append(',');
+                        sb.append(it.next());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+                respond(exchange, sb.append("]}").toString());
+            }
+        }
+
+        private static void respond(HttpExchange exchange, String json) throws IOException {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws Exception {
+            application.close();
+            api.stop(0);
+            apiExecutor.shutdownNow();
+            dispatcher.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long webhook(Webhook w) throws InterruptedException {
+        long target = w.delivered.get() + BATCH;
+        w.send();
+        w.awaitDelivered(target);
+        return target;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long longPolling(Polling p) {
+        long target = p.delivered.get() + BATCH;
+        p.publish();
+        p.awaitDelivered(target);
+        return target;
+    }
+}
@@ -0,0 +1,60 @@
+package org.bot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyboard markup built for every menu and list message (MessageInteraction.replyKeyboard/inlineKeyboard).
+ * buttons=6 is the main menu, 12 a page of cars or rentals with Prev/Next.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class KeyboardBenchmark {
+
+    @Param({"6", "12"})
+    public int buttons;
+
+    private List<String> labels;
+    private Map<String, String> callbacks;
+
+    @Setup
+    public void setup() {
+        labels = new ArrayList<>();
+        callbacks = new LinkedHashMap<>();
+        for (int i = 0; i < buttons; i++) {
+            labels.add("Button " + i);
+            callbacks.put("#" + (1000 + i) + " Toyota Camry 2021, Moscow, Tverskaya 7", "rent_car_" + (1000 + i));
+        }
+    }
+
+    @Benchmark
+    public ReplyKeyboardMarkup replyKeyboard() {
+        return MessageInteraction.replyKeyboard(labels);
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup inlineKeyboard() {
+        return MessageInteraction.inlineKeyboard(callbacks);
+    }
+}
@@ -0,0 +1,280 @@
+package org.bot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing of one Update as Bot.consume does it, on synthetic updates and with no-op handlers.
+ *
+ * router: the CommandRouter tables with the same routes as Bot.buildRouter.
+ * ifChain: the routing Bot.consume did before CommandRouter (regex split, label chain, every flow's
+ * hasActive() in turn, then a switch), kept here as the reference point.
+ *
+ * The handlers' hasActive() checks are stood in for by hash-set lookups, which is what they cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RoutingBenchmark {
+
+    // mixed: roughly what a busy bot sees; the others isolate one path
+    @Param({"mixed", "commands", "labels", "flowText", "callbacks"})
+    public String traffic;
+
+    private static final int UPDATES = 1024;
+    private static final int CHATS = 4096;
+
+    private final Set<Long> activeRents = new HashSet<>();
+    private final Set<Long> admin = new HashSet<>();
+    private final Set<Long> rent = new HashSet<>();
+    private final Set<Long> start = new HashSet<>();
+
+    private List<Long> inFlow;
+    private CommandRouter router;
+    private Update[] updates;
+    private int next;
+    private long handled;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        // a quarter of the chats are in the middle of some flow
+        for (long chatId = 0; chatId < CHATS; chatId += 4) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    activeRents.add(chatId);
+                    break;
+                case 1:
+                    admin.add(chatId);
+                    break;
+                case 2:
+                    rent.add(chatId);
+                    break;
+                default:
+                    start.add(chatId);
+                    break;
+            }
+        }
+        router = buildRouter();
+        inFlow = new ArrayList<>(activeRents);
+        inFlow.addAll(admin);
+        inFlow.addAll(rent);
+        inFlow.addAll(start);
+
+        updates = new Update[UPDATES];
+        for (int i = 0; i < UPDATES; i++) {
+            updates[i] = syntheticUpdate(random, i);
+        }
+    }
+
+    @Benchmark
+    public long router() {
+        Update update = nextUpdate();
+        if (update.hasCallbackQuery()) {
+            long chatId = update.getCallbackQuery().getMessage().getChatId();
+            router.routeCallback(chatId, update.getCallbackQuery().getData(), update.getCallbackQuery().getId());
+        } else if (update.hasMessage() && update.getMessage().hasText()) {
+            router.routeText(update.getMessage().getChatId(), update.getMessage().getText());
+        }
+        return handled;
+    }
+
+    @Benchmark
+    public long ifChain() {
+        Update update = nextUpdate();
+        if (update.hasCallbackQuery()) {
+            long chatId = update.getCallbackQuery().getMessage().getChatId();
+            String data = update.getCallbackQuery().getData();
+            if (data != null && (data.startsWith("admin_") || "admin_menu".equals(data))) {
+                handled(chatId);
+            } else if (data != null && data.startsWith("rent_")) {
+                handled(chatId);
+            } else if (data != null && data.startsWith("ar_")) {
+                handled(chatId);
+            } else {
+                handled(chatId);
+            }
+            return handled;
+        }
+        if (update.hasMessage() && update.getMessage().hasText()) {
+            long chatId = update.getMessage().getChatId();
+            String message = update.getMessage().getText();
+            String[] splitMessage = message.split("\\s+");
+
+            if (!splitMessage[0].startsWith("/")) {
+                String label = splitMessage[0].trim();
+                if (label.equalsIgnoreCase("Admin")
+                        || label.equalsIgnoreCase("Rent")
+                        || label.equalsIgnoreCase("Rent car")
+                        || label.equalsIgnoreCase("Menu")
+                        || label.equalsIgnoreCase("Active")
+                        || label.equalsIgnoreCase("Active rents")
+                        || label.equalsIgnoreCase("Profile")
+                        || label.equalsIgnoreCase("Help")) {
+                    handled(chatId);
+                    return handled;
+                }
+            }
+            if (!splitMessage[0].startsWith("/") && activeRents.contains(chatId)) {
+                handled(chatId);
+                return handled;
+            }
+            if (!splitMessage[0].startsWith("/") && admin.contains(chatId)) {
+                handled(chatId);
+                return handled;
+            }
+            if (!splitMessage[0].startsWith("/") && rent.contains(chatId)) {
+                handled(chatId);
+                return handled;
+            }
+            if (!splitMessage[0].startsWith("/") && start.contains(chatId)) {
+                handled(chatId);
+                return handled;
+            }
+            switch (splitMessage[0]) {
+                case "/start":
+                case "/help":
+                case "/menu":
+                case "/admin":
+                case "Admin":
+                case "/rent":
+                case "/rents":
+                case "/cars":
+                case "/allrents":
+                    handled(chatId);
+                    break;
+                default:
+                    handled(chatId);
+                    break;
+            }
+        }
+        return handled;
+    }
+
+    private Update nextUpdate() {
+        Update u = updates[next];
+        next = (next + 1) & (UPDATES - 1);
+        return u;
+    }
+
+    private void handled(long chatId) {
+        handled += chatId;
+    }
+
+    // same shape as Bot.buildRouter; every route just counts
+    private CommandRouter buildRouter() {
+        CommandRouter r = new CommandRouter();
+        CommandRouter.FlowInput input = (chatId, text) -> handled(chatId);
+        CommandRouter.TextRoute route = (chatId, text, args) -> handled(chatId);
+        CommandRouter.CallbackRoute callback = (chatId, data, id) -> handled(chatId);
+
+        r.flow("activeRents", activeRents::contains, input);
+        r.flow("admin", admin::contains, input);
+        r.flow("rent", rent::contains, input);
+        r.flow("start", start::contains, input);
+
+        r.label("Admin", route)
+         .label("Rent", route)
+         .label("Active", route)
+         .label("Menu", route)
+         .label("Profile", route)
+         .label("Help", route);
+
+        r.command("/start", route)
+         .command("/help", route)
+         .command("/menu", route)
+         .command("/admin", route)
+         .command("/rent", route)
+         .command("/rents", route)
+         .command("/cars", route)
+         .command("/allrents", route)
+         .command("/bulk", route)
+         .command("/export", route)
+         .command("/import", route)
+         .command("/stats", route)
+         .unknown(route);
+
+        r.callbackPrefix("admin_page_", callback)
+         .callbackPrefix("admin_bulk_", callback)
+         .callbackPrefix("admin_", callback)
+         .callbackPrefix("rent_", callback)
+         .callbackPrefix("ar_", callback)
+         .defaultCallback(callback);
+        return r;
+    }
+
+    private static final String[] COMMANDS = {"/start", "/help", "/menu", "/rent", "/rents", "/cars branch=2 status=1", "/allrents alice", "/nope"};
+    private static final String[] LABELS = {"Rent car", "Active rents", "Menu", "Profile", "Help", "Admin"};
+    private static final String[] FLOW_TEXT = {"alice", "secret password", "15.06.2026", "3", "alice@example.com", "+79991234567"};
+    private static final String[] CALLBACKS = {"admin_page_cars_2", "admin_bulk_ok", "admin_menu", "rent_car_17", "rent_branch_3", "ar_cancel_42", "login", "signup"};
+
+    private Update syntheticUpdate(Random random, int i) {
+        String kind = traffic;
+        if ("mixed".equals(kind)) {
+            int p = random.nextInt(100);
+            kind = p < 15 ? "commands" : p < 30 ? "labels" : p < 70 ? "flowText" : "callbacks";
+        }
+        switch (kind) {
+            case "commands":
+                return textUpdate(i, random.nextInt(CHATS), COMMANDS[random.nextInt(COMMANDS.length)]);
+            case "labels":
+                return textUpdate(i, random.nextInt(CHATS), LABELS[random.nextInt(LABELS.length)]);
+            case "flowText": {
+                // a chat with an active flow; the last registered flow is the worst case for the if-chain
+                return textUpdate(i, inFlow.get(random.nextInt(inFlow.size())), FLOW_TEXT[random.nextInt(FLOW_TEXT.length)]);
+            }
+            default:
+                return callbackUpdate(i, random.nextInt(CHATS), CALLBACKS[random.nextInt(CALLBACKS.length)]);
+        }
+    }
+
+    private static Message message(int id, long chatId) {
+        Message m = new Message();
+        m.setMessageId(id);
+        m.setChat(new Chat(chatId, "private"));
+        return m;
+    }
+
+    private static Update textUpdate(int id, long chatId, String text) {
+        Message m = message(id, chatId);
+        m.setText(text);
+        Update u = new Update();
+        u.setUpdateId(id);
+        u.setMessage(m);
+        return u;
+    }
+
+    private static Update callbackUpdate(int id, long chatId, String data) {
+        CallbackQuery q = new CallbackQuery();
+        q.setId(Integer.toString(id));
+        q.setData(data);
+        q.setMessage(message(id, chatId));
+        Update u = new Update();
+        u.setUpdateId(id);
+        u.setCallbackQuery(q);
+        return u;
+    }
+}
@@ -0,0 +1,70 @@
+package org.bot.commandhandlers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Sign-up input checks of StartHandler. It validates with String.matches(SessionService.*_REGEX), which
+ * compiles the pattern on every call; the precompiled variants show what that costs.
+ * Each invocation checks one valid and one invalid value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ValidationBenchmark {
+
+    private static final Pattern EMAIL = Pattern.compile(SessionService.EMAIL_REGEX);
+    private static final Pattern PHONE = Pattern.compile(SessionService.PHONE_REGEX);
+    private static final Pattern DRIVER_LICENSE = Pattern.compile(SessionService.DRIVER_LICENSE_REGEX);
+
+    public String email = "ivan.petrov+rent@example.com";
+    public String badEmail = "ivan.petrov@@example";
+    public String phone = "+79991234567";
+    public String badPhone = "8 (999) 123-45-6x";
+    public String driverLicense = "77 11 123456";
+    public String badDriverLicense = "77AA12345";
+
+    @Benchmark
+    public boolean emailMatches() {
+        return email.matches(SessionService.EMAIL_REGEX) & badEmail.matches(SessionService.EMAIL_REGEX);
+    }
+
+    @Benchmark
+    public boolean emailPrecompiled() {
+        return EMAIL.matcher(email).matches() & EMAIL.matcher(badEmail).matches();
+    }
+
+    @Benchmark
+    public boolean phoneMatches() {
+        return phone.matches(SessionService.PHONE_REGEX) & badPhone.matches(SessionService.PHONE_REGEX);
+    }
+
+    @Benchmark
+    public boolean phonePrecompiled() {
+        return PHONE.matcher(phone).matches() & PHONE.matcher(badPhone).matches();
+    }
+
+    @Benchmark
+    public boolean driverLicenseMatches() {
+        return driverLicense.matches(SessionService.DRIVER_LICENSE_REGEX)
+                & badDriverLicense.matches(SessionService.DRIVER_LICENSE_REGEX);
+    }
+
+    @Benchmark
+    public boolean driverLicensePrecompiled() {
+        return DRIVER_LICENSE.matcher(driverLicense).matches() & DRIVER_LICENSE.matcher(badDriverLicense).matches();
+    }
+}
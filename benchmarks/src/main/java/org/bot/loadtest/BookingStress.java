@@ -0,0 +1,96 @@
+package org.bot.loadtest;
+
+import modules.BookingResult;
+import modules.Database;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Racing bookings: {@code threads} users book the same few cars for the same dates at the same moment
+ * through Database.bookCar, round after round. Exactly one booking per car and round may win, and
+ * afterwards no two rentals of those cars may overlap; both are checked and reported.
+ */
+final class BookingStress {
+    private static final int HOT_CARS = 5;
+    // far enough out not to collide with seeded rentals or the rent scenario
+    private static final int FIRST_DAY = 400;
+
+    private BookingStress() {
+    }
+
+    /** Returns true if no double booking was found. */
+    static boolean run(PrintStream out, SeedData seed, int threads, int rounds) throws Exception {
+        Map<BookingResult, LongAdder> results = new EnumMap<>(BookingResult.class);
+        for (BookingResult r : BookingResult.values()) results.put(r, new LongAdder());
+        AtomicLong errors = new AtomicLong();
+        int cars = Math.min(HOT_CARS, seed.cars());
+        long started = System.nanoTime();
+
+        for (int round = 0; round < rounds; round++) {
+            LocalDate from = LocalDate.now().plusDays(FIRST_DAY + 10L * round);
+            java.sql.Date start = java.sql.Date.valueOf(from);
+            java.sql.Date end = java.sql.Date.valueOf(from.plusDays(3));
+            for (int c = 1; c <= cars; c++) {
+                int carId = hotCar(seed, c);
+                try (ExecutorService ex = Executors.newVirtualThreadPerTaskExecutor()) {
+                    for (int t = 0; t < threads; t++) {
+                        int userId = 1 + t % seed.users();
+                        ex.submit(() -> {
+                            try {
+                                results.get(Database.bookCar(carId, userId, 1, 1, start, end)).increment();
+                            } catch (SQLException e) {
+                                errors.incrementAndGet();
+                            }
+                        });
+                    }
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        long booked = results.get(BookingResult.BOOKED).sum();
+        long expected = (long) cars * rounds;
+        long overlaps = countOverlaps(seed, cars);
+        boolean ok = booked <= expected && overlaps == 0;
+        out.printf("%nbooking stress: %d threads x %d cars x %d rounds in %.1f s%n", threads, cars, rounds, seconds);
+        for (Map.Entry<BookingResult, LongAdder> e : results.entrySet()) {
+            out.printf("  %-16s %d%n", e.getKey(), e.getValue().sum());
+        }
+        out.printf("  %-16s %d%n", "SQL errors", errors.get());
+        out.printf("  booked %d of %d possible, overlapping rentals: %d -> %s%n", booked, expected, overlaps,
+                ok ? "OK" : "DOUBLE BOOKING");
+        return ok;
+    }
+
+    // hot cars are spread over the fleet; one in maintenance just yields CAR_UNAVAILABLE every round
+    private static int hotCar(SeedData seed, int n) {
+        return 1 + (int) ((long) (n - 1) * seed.cars() / Math.min(HOT_CARS, seed.cars()));
+    }
+
+    private static long countOverlaps(SeedData seed, int cars) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM Rentals a JOIN Rentals b ON a.car_id = b.car_id AND a.id < b.id " +
+                "AND a.start_date <= b.end_date AND b.start_date <= a.end_date WHERE a.car_id = ?";
+        long n = 0;
+        try (Connection conn = Database.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int c = 1; c <= cars; c++) {
+                ps.setInt(1, hotCar(seed, c));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) n += rs.getLong(1);
+                }
+            }
+        }
+        return n;
+    }
+}
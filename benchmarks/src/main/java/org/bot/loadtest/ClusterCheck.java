@@ -0,0 +1,340 @@
+package org.bot.loadtest;
+
+import modules.Config;
+import modules.Metrics;
+import org.bot.Bot;
+import org.bot.ClusterIngress;
+import org.bot.ClusterWorker;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cluster mode on one machine: this process runs a ClusterIngress and every worker is a separate JVM
+ * running ClusterWorker around a Bot whose handler only reports what it was given. Updates for many chats
+ * go through the ingress while workers join, leave (SIGTERM) and crash (SIGKILL), and the reports are
+ * checked: nothing lost, nothing handled twice unless a worker crashed, each chat's updates handled in order
+ * and by one worker at a time, chats staying on their worker when another joins, and the newcomer taking new chats.
+ *
+ * Ingress and workers are the production classes; the handlers are not, so this covers sharding and
+ * handover, not conversations (LoadGenerator does those).
+ *
+ *   --workers 3  --chats 600  --rounds 10  --handle-ms 1
+ */
+public final class ClusterCheck {
+    private static final PrintStream OUT = System.out;
+    private static final String SECRET = "cluster-check-secret";
+    private static final long AWAIT_MS = 60_000;
+
+    // one handled update as a worker reported it
+    private record Handled(String worker, long chatId, int updateId, long atMicros) {
+    }
+
+    private final Map<String, String> options;
+    private final int chats;
+    private final int rounds;
+    private final Path dir;
+    private final Map<String, Process> workers = new LinkedHashMap<>();
+    private final ConcurrentLinkedQueue<Handled> handled = new ConcurrentLinkedQueue<>();
+    private ClusterIngress ingress;
+    private int nextUpdateId = 1;
+    private boolean ok = true;
+
+    private ClusterCheck(Map<String, String> options) throws IOException {
+        this.options = options;
+        this.chats = intOption("chats", 600);
+        this.rounds = intOption("rounds", 10);
+        this.dir = Files.createTempDirectory("cluster-check");
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 4 && args[0].equals("worker")) {
+            runWorker(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        ClusterCheck check = new ClusterCheck(options);
+        boolean ok;
+        try {
+            ok = check.run();
+        } finally {
+            for (Process p : check.workers.values()) p.destroyForcibly();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        ingress = ClusterIngress.start("127.0.0.1", 0, SECRET, TimeUnit.MINUTES.toMillis(30));
+        int n = intOption("workers", 3);
+        for (int i = 1; i <= n; i++) spawn("w" + i);
+        awaitWorkers(n);
+        OUT.printf("%d workers, %d chats, %d rounds; worker logs and sessions in %s%n", n, chats, rounds, dir);
+
+        // spread: every chat routed somewhere, and only there
+        int from = nextUpdateId;
+        route(0, chats, null, 0);
+        Map<Long, String> owners = owners(check("spread", from, false));
+
+        // join: known chats stay put, the newcomer takes part of the new ones
+        String joined = "w" + (n + 1);
+        spawn(joined);
+        awaitWorkers(n + 1);
+        from = nextUpdateId;
+        route(0, 2 * chats, null, 0);
+        List<Handled> join = check("join", from, false);
+        int moved = 0;
+        int newcomer = 0;
+        for (Map.Entry<Long, String> e : owners(join).entrySet()) {
+            String before = owners.get(e.getKey());
+            if (before != null && !before.equals(e.getValue())) moved++;
+            if (before == null && e.getValue().equals(joined)) newcomer++;
+        }
+        report("known chats that moved", moved, moved == 0);
+        report("new chats taken by " + joined, newcomer, newcomer > 0);
+
+        // leave: w1 gets SIGTERM a third of the way in, finishes its updates and hands its chats over
+        from = nextUpdateId;
+        route(0, 2 * chats, "w1", chats * rounds * 2 / 3);
+        awaitExit("w1");
+        List<Handled> leave = check("leave", from, false);
+        int handedOver = movedFrom(leave, "w1");
+        report("chats of w1 handed over", handedOver, handedOver > 0);
+
+        // crash: w2 is killed; what it had not acknowledged is handled by others, some of it twice
+        from = nextUpdateId;
+        route(0, 2 * chats, "w2!", chats * rounds * 2 / 3);
+        awaitExit("w2");
+        List<Handled> crash = check("crash", from, true);
+        int takenOver = movedFrom(crash, "w2");
+        report("chats of w2 taken over", takenOver, takenOver > 0);
+
+        OUT.println(ok ? "\nOK" : "\nFAILED");
+        ingress.close();
+        return ok;
+    }
+
+    // ---- driving ----
+
+    // Every chat in [first, last) gets one update per round. If victim is set, it is stopped after `at` updates:
+    // "w1" with SIGTERM, "w1!" with SIGKILL.
+    private void route(int first, int last, String victim, int at) {
+        int routed = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int c = first; c < last; c++) {
+                if (victim != null && routed++ == at) stop(victim);
+                ingress.route(textUpdate(1 + c, nextUpdateId++));
+            }
+        }
+    }
+
+    private void stop(String victim) {
+        boolean kill = victim.endsWith("!");
+        String id = kill ? victim.substring(0, victim.length() - 1) : victim;
+        OUT.printf("  %s %s%n", kill ? "killing" : "stopping", id);
+        // through the handle: Process.destroy would also close our end of its output, losing the last reports
+        ProcessHandle handle = workers.get(id).toHandle();
+        int connected = connectedWorkers();
+        if (kill) handle.destroyForcibly();
+        else handle.destroy();
+        // route the rest only once the ingress knows, or it all goes out before the signal lands
+        awaitWorkers(connected - 1);
+    }
+
+    private void spawn(String id) throws IOException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ClusterCheck.class.getName(), "worker", id, Integer.toString(ingress.getPort()),
+                Integer.toString(intOption("handle-ms", 1)));
+        Map<String, String> env = pb.environment();
+        env.put("BOT_TOKEN", "cluster-check");
+        env.putIfAbsent("DB_URL", "jdbc:h2:mem:cluster;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        env.putIfAbsent("DB_USER", "sa");
+        // a moved chat's session is read from here by its new worker
+        env.put("SESSION_STORE", "file");
+        env.put("SESSION_STORE_DIR", dir.resolve("sessions").toString());
+        pb.redirectError(dir.resolve(id + ".log").toFile());
+        Process p = pb.start();
+        workers.put(id, p);
+        Thread reader = new Thread(() -> readReports(id, p), "reports-" + id);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readReports(String id, Process p) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split(" ");
+                if (f.length == 4 && f[0].equals("H")) {
+                    handled.add(new Handled(id, Long.parseLong(f[1]), Integer.parseInt(f[2]), Long.parseLong(f[3])));
+                }
+            }
+        } catch (IOException e) {
+            // process gone
+        }
+    }
+
+    private void awaitWorkers(int n) {
+        long deadline = System.currentTimeMillis() + AWAIT_MS;
+        while (connectedWorkers() != n) {
+            if (System.currentTimeMillis() > deadline) throw new IllegalStateException(n + " workers did not connect, see " + dir);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    private static int connectedWorkers() {
+        return Metrics.gauges("bot_cluster_workers").getOrDefault("connected", 0L).intValue();
+    }
+
+    private void awaitExit(String id) throws InterruptedException {
+        Process p = workers.get(id);
+        if (!p.waitFor(AWAIT_MS, TimeUnit.MILLISECONDS)) throw new IllegalStateException(id + " did not exit");
+        OUT.printf("  %s exited with status %d%n", id, p.exitValue());
+    }
+
+    // ---- checking ----
+
+    // waits until every update from `from` on was handled, then checks and prints the phase; returns its reports
+    private List<Handled> check(String phase, int from, boolean crashed) {
+        int to = nextUpdateId;
+        long deadline = System.currentTimeMillis() + AWAIT_MS;
+        List<Handled> reports;
+        Set<Integer> seen;
+        while (true) {
+            reports = new ArrayList<>();
+            seen = new HashSet<>();
+            for (Handled h : handled) {
+                if (h.updateId() >= from && h.updateId() < to) {
+                    reports.add(h);
+                    seen.add(h.updateId());
+                }
+            }
+            if (seen.size() == to - from || System.currentTimeMillis() > deadline) break;
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        reports.sort(Comparator.comparingLong(Handled::atMicros));
+
+        // per chat: handled in routing order, a repeat of an earlier update excepted, and by one worker
+        // until that worker is gone
+        Map<Long, Integer> last = new HashMap<>();
+        Map<Long, String> lastWorker = new HashMap<>();
+        Set<Integer> first = new HashSet<>();
+        Map<String, Integer> updates = new TreeMap<>();
+        Map<String, Set<Long>> chatsOf = new TreeMap<>();
+        int duplicates = 0;
+        int outOfOrder = 0;
+        int switched = 0;
+        for (Handled h : reports) {
+            updates.merge(h.worker(), 1, Integer::sum);
+            chatsOf.computeIfAbsent(h.worker(), k -> new HashSet<>()).add(h.chatId());
+            if (!first.add(h.updateId())) {
+                duplicates++;
+                continue;
+            }
+            Integer prev = last.put(h.chatId(), h.updateId());
+            if (prev != null && prev > h.updateId()) outOfOrder++;
+            String prevWorker = lastWorker.put(h.chatId(), h.worker());
+            if (prevWorker != null && !prevWorker.equals(h.worker()) && workers.get(prevWorker).isAlive()) switched++;
+        }
+        OUT.printf("%nphase %s: %d updates routed, %d handled%n", phase, to - from, reports.size());
+        for (Map.Entry<String, Integer> e : updates.entrySet()) {
+            OUT.printf("  %-4s %7d updates %6d chats%n", e.getKey(), e.getValue(), chatsOf.get(e.getKey()).size());
+        }
+        report("missing", (to - from) - seen.size(), seen.size() == to - from);
+        report("handled twice", duplicates, crashed || duplicates == 0);
+        report("out of order", outOfOrder, outOfOrder == 0);
+        report("chats moved between live workers", switched, switched == 0);
+        return reports;
+    }
+
+    // the worker that handled each chat's latest update
+    private static Map<Long, String> owners(List<Handled> reports) {
+        Map<Long, String> owners = new HashMap<>();
+        for (Handled h : reports) owners.put(h.chatId(), h.worker());
+        return owners;
+    }
+
+    // chats the worker handled first in the phase and someone else last
+    private static int movedFrom(List<Handled> reports, String worker) {
+        Map<Long, String> firstOwner = new HashMap<>();
+        for (Handled h : reports) firstOwner.putIfAbsent(h.chatId(), h.worker());
+        int n = 0;
+        for (Map.Entry<Long, String> e : owners(reports).entrySet()) {
+            if (worker.equals(firstOwner.get(e.getKey())) && !worker.equals(e.getValue())) n++;
+        }
+        return n;
+    }
+
+    private void report(String what, long value, boolean pass) {
+        OUT.printf("  %-40s %7d  %s%n", what, value, pass ? "ok" : "FAIL");
+        ok &= pass;
+    }
+
+    // ---- worker process ----
+
+    private static void runWorker(String id, int port, int handleMs) throws Exception {
+        Config.init();
+        PrintStream reports = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+        Bot bot = new Bot(FakeTelegramClient.create(0).asClient()) {
+            // report instead of handling; the line is written before the ingress can learn it was handled
+            @Override
+            public void consume(Update update) {
+                long at = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+                if (handleMs > 0) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(handleMs));
+                String line = "H " + update.getMessage().getChatId() + " " + update.getUpdateId() + " " + at;
+                synchronized (reports) {
+                    reports.println(line);
+                    reports.flush();
+                }
+            }
+        };
+        ClusterWorker worker = new ClusterWorker(bot, "127.0.0.1", port, SECRET, id);
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::close, "cluster-leave"));
+        System.exit(worker.run() ? 0 : 1);
+    }
+
+    // ---- synthetic updates ----
+
+    private static Update textUpdate(long chatId, int updateId) {
+        Message m = new Message();
+        m.setMessageId(updateId);
+        m.setChat(new Chat(chatId, "private"));
+        m.setDate((int) (System.currentTimeMillis() / 1000));
+        m.setText("/start");
+        Update u = new Update();
+        u.setUpdateId(updateId);
+        u.setMessage(m);
+        return u;
+    }
+
+    private int intOption(String name, int def) {
+        String v = options.get(name);
+        return v == null ? def : Integer.parseInt(v.trim());
+    }
+}
@@ -0,0 +1,178 @@
+package org.bot.loadtest;
+
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * TelegramClient that never leaves the process: sendMessage is answered with a made-up Message and
+ * remembered per chat, so a simulated user can press the buttons the bot actually offered.
+ * Callback answers succeed; anything else the bot does not call in a conversation is unsupported.
+ *
+ * An optional fixed latency per call stands in for the Bot API round trip.
+ * Waiting uses ReentrantLock rather than monitors so thousands of virtual-thread users do not pin carriers.
+ */
+final class FakeTelegramClient implements InvocationHandler {
+    // replies kept per chat; a step only ever looks at the replies to the step before it
+    private static final int RECENT = 16;
+
+    record Button(String label, String data) {
+    }
+
+    private record Reply(long seq, List<Button> buttons) {
+    }
+
+    private static final class Inbox {
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition arrived = lock.newCondition();
+        final ArrayDeque<Reply> recent = new ArrayDeque<>();
+        long seq;
+    }
+
+    private final long latencyMs;
+    private final ConcurrentHashMap<Long, Inbox> inboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger messageIds = new AtomicInteger();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong callbackAnswers = new AtomicLong();
+
+    private FakeTelegramClient(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    static FakeTelegramClient create(long latencyMs) {
+        return new FakeTelegramClient(latencyMs);
+    }
+
+    TelegramClient asClient() {
+        return (TelegramClient) Proxy.newProxyInstance(TelegramClient.class.getClassLoader(),
+                new Class<?>[]{TelegramClient.class}, this);
+    }
+
+    long getMessageCount() {
+        return messages.get();
+    }
+
+    long getCallbackAnswerCount() {
+        return callbackAnswers.get();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "execute":
+                return execute(args[0]);
+            case "executeAsync":
+                return CompletableFuture.completedFuture(execute(args[0]));
+            case "toString":
+                return "FakeTelegramClient";
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            default:
+                throw new UnsupportedOperationException("FakeTelegramClient does not implement " + method.getName());
+        }
+    }
+
+    private Object execute(Object request) throws InterruptedException {
+        if (latencyMs > 0) Thread.sleep(latencyMs);
+        if (request instanceof SendMessage send) {
+            long chatId = Long.parseLong(send.getChatId());
+            record(chatId, buttons(send));
+            messages.incrementAndGet();
+            Message m = new Message();
+            m.setMessageId(messageIds.incrementAndGet());
+            m.setChat(new Chat(chatId, "private"));
+            m.setText(send.getText());
+            m.setDate((int) (System.currentTimeMillis() / 1000));
+            return m;
+        }
+        if (request instanceof AnswerCallbackQuery) {
+            callbackAnswers.incrementAndGet();
+            return Boolean.TRUE;
+        }
+        throw new UnsupportedOperationException("FakeTelegramClient does not implement " + request.getClass().getSimpleName());
+    }
+
+    private static List<Button> buttons(SendMessage send) {
+        if (!(send.getReplyMarkup() instanceof InlineKeyboardMarkup markup)) return Collections.emptyList();
+        List<Button> out = new ArrayList<>();
+        for (InlineKeyboardRow row : markup.getKeyboard()) {
+            for (InlineKeyboardButton b : row) {
+                if (b.getCallbackData() != null) out.add(new Button(b.getText(), b.getCallbackData()));
+            }
+        }
+        return out;
+    }
+
+    private void record(long chatId, List<Button> buttons) {
+        Inbox inbox = inboxes.computeIfAbsent(chatId, k -> new Inbox());
+        inbox.lock.lock();
+        try {
+            inbox.recent.addLast(new Reply(++inbox.seq, buttons));
+            if (inbox.recent.size() > RECENT) inbox.recent.removeFirst();
+            inbox.arrived.signalAll();
+        } finally {
+            inbox.lock.unlock();
+        }
+    }
+
+    /** Sequence number of the newest message sent to the chat so far (0 if none). */
+    long mark(long chatId) {
+        Inbox inbox = inboxes.computeIfAbsent(chatId, k -> new Inbox());
+        inbox.lock.lock();
+        try {
+            return inbox.seq;
+        } finally {
+            inbox.lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for a message newer than {@code after} with an inline button matching {@code match} and
+     * return one of the matching buttons of the newest such message, chosen at random; null on timeout.
+     */
+    Button awaitButton(long chatId, long after, Predicate<Button> match, Random random, long timeoutMs)
+            throws InterruptedException {
+        Inbox inbox = inboxes.computeIfAbsent(chatId, k -> new Inbox());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        inbox.lock.lock();
+        try {
+            while (true) {
+                for (var it = inbox.recent.descendingIterator(); it.hasNext(); ) {
+                    Reply r = it.next();
+                    if (r.seq() <= after) break;
+                    List<Button> matching = r.buttons().stream().filter(match).toList();
+                    if (!matching.isEmpty()) return matching.get(random.nextInt(matching.size()));
+                }
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return null;
+                inbox.arrived.awaitNanos(left);
+            }
+        } finally {
+            inbox.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package org.bot.loadtest;
+
+import modules.Config;
+import modules.ConnectionPool;
+import modules.Database;
+import modules.LatencyHistogram;
+import modules.Metrics;
+import modules.PasswordHasher;
+import org.bot.Bot;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end load test: the real Bot (router, handlers, Database, pipeline) driven through Bot.consume by
+ * thousands of simulated chats, with a FakeTelegramClient instead of Telegram and a seeded database
+ * (normally in-memory H2, see run-load.sh; DB_URL may point at an empty scratch MySQL schema instead).
+ *
+ * Each phase runs one Scenario from every chat at once, one virtual thread per chat, and reports
+ * conversations/s, p50/p99 per step (time spent in Bot.consume, i.e. routing, handler and database work;
+ * replies are sent asynchronously and their delivery is reported separately) and database calls and
+ * statements per conversation. Phases run one after another so the per-conversation counts are exact.
+ * The optional "booking" phase races bookings for the same cars and checks that none is double-booked.
+ *
+ *   --chats 1000  --conversations 1  --phases signup,login,rent,modify,admin,booking
+ *   --branches 20 --cars 2000 --users 5000 --admins 50
+ *   --api-latency-ms 0  --step-timeout-ms 5000  --think-ms 0  --booking-threads 50 --booking-rounds 20
+ */
+public final class LoadGenerator {
+    private static final PrintStream OUT = System.out;
+    // phase p uses chat ids p * CHAT_ID_STRIDE + n, so no phase inherits another's conversation state
+    private static final long CHAT_ID_STRIDE = 1_000_000_000L;
+
+    private final Map<String, String> options;
+    private final SeedData seed;
+    private final int chats;
+    private final int conversations;
+    private final long stepTimeoutMs;
+    private final long thinkMs;
+    private FakeTelegramClient telegram;
+    private Bot bot;
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.seed = new SeedData(intOption("branches", 20), intOption("cars", 2000),
+                intOption("users", 5000), intOption("admins", 50));
+        this.chats = intOption("chats", 1000);
+        this.conversations = intOption("conversations", 1);
+        this.stepTimeoutMs = intOption("step-timeout-ms", 5000);
+        this.thinkMs = intOption("think-ms", 0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (!a.startsWith("--")) throw new IllegalArgumentException("Unexpected argument " + a);
+            int eq = a.indexOf('=');
+            if (eq > 0) options.put(a.substring(2, eq), a.substring(eq + 1));
+            else if (i + 1 < args.length) options.put(a.substring(2), args[++i]);
+            else throw new IllegalArgumentException("Missing value for " + a);
+        }
+        boolean ok = new LoadGenerator(options).run();
+        // pool, pipeline and hashing threads are daemons, but the JDBC driver's may not be
+        System.exit(ok ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        Config.init();
+        if (Config.getDatabaseUrl() == null) {
+            throw new IllegalStateException("Set DB_URL to the database the load test may fill (see run-load.sh)");
+        }
+        OUT.printf("seeding %s: %d branches, %d cars, %d users (%d admins)%n", Config.getDatabaseUrl(),
+                seed.branches(), seed.cars(), seed.users(), seed.admins());
+        long t0 = System.nanoTime();
+        // the connection stays open for the whole run: an in-memory database lives as long as one does
+        Connection keepAlive = DriverManager.getConnection(Config.getDatabaseUrl(), Config.getDatabaseUser(), Config.getDatabasePassword());
+        seed.load(keepAlive, PasswordHasher.hash(SeedData.PASSWORD));
+        OUT.printf("seeded in %.1f s%n", (System.nanoTime() - t0) / 1e9);
+
+        telegram = FakeTelegramClient.create(intOption("api-latency-ms", 0));
+        bot = new Bot(telegram.asClient());
+
+        boolean ok = true;
+        String[] phases = options.getOrDefault("phases", "signup,login,rent,modify,admin,booking").split(",");
+        for (int p = 0; p < phases.length; p++) {
+            String phase = phases[p].trim();
+            if (phase.equals("booking")) {
+                ok &= BookingStress.run(OUT, seed, intOption("booking-threads", 50), intOption("booking-rounds", 20));
+            } else {
+                ok &= runPhase(Scenario.of(phase), (p + 1) * CHAT_ID_STRIDE);
+            }
+        }
+        printTotals();
+        keepAlive.close();
+        return ok;
+    }
+
+    // ---- one phase ----
+
+    private static final class StepStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder failed = new LongAdder();
+    }
+
+    private boolean runPhase(Scenario scenario, long firstChatId) throws InterruptedException {
+        Map<String, StepStats> steps = new ConcurrentHashMap<>();
+        List<String> stepOrder = new ArrayList<>();
+        for (Scenario.Step s : scenario.steps(0, new Random(0), seed)) {
+            if (!stepOrder.contains(s.name())) stepOrder.add(s.name());
+        }
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long dbCalls0 = dbCalls();
+        long statements0 = statements();
+
+        long started = System.nanoTime();
+        try (ExecutorService chatsExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int n = 0; n < chats; n++) {
+                long chatId = firstChatId + n;
+                Random random = new Random(chatId);
+                chatsExecutor.submit(() -> {
+                    for (int c = 0; c < conversations; c++) {
+                        if (converse(chatId, scenario.steps(chatId, random, seed), random, steps)) completed.incrementAndGet();
+                        else failed.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        int total = completed.get() + failed.get();
+        long stepCount = 0;
+        for (StepStats s : steps.values()) stepCount += s.latency.snapshot().count;
+        OUT.printf("%nphase %s: %d conversations from %d chats in %.1f s, %.1f conversations/s, %.1f steps/s, %d failed%n",
+                scenario.label(), total, chats, seconds, total / seconds, stepCount / seconds, failed.get());
+        OUT.printf("  per conversation: %.1f database calls, %.1f SQL statements%n",
+                (dbCalls() - dbCalls0) / (double) Math.max(1, total), (statements() - statements0) / (double) Math.max(1, total));
+        OUT.printf("  %-14s %8s %8s %9s %9s %9s%n", "step", "count", "failed", "p50 ms", "p99 ms", "max ms");
+        for (String name : stepOrder) {
+            StepStats s = steps.get(name);
+            if (s == null) continue;
+            LatencyHistogram.Snapshot snap = s.latency.snapshot();
+            OUT.printf("  %-14s %8d %8d %9.2f %9.2f %9.2f%n", name, snap.count, s.failed.sum(),
+                    snap.quantileMillis(0.5), snap.quantileMillis(0.99), snap.maxMicros / 1000.0);
+        }
+        return true;
+    }
+
+    // one conversation; false if a step failed (then the rest of it is skipped)
+    private boolean converse(long chatId, List<Scenario.Step> script, Random random, Map<String, StepStats> steps)
+            throws InterruptedException {
+        // replies to the previous step are those newer than this
+        long previous = telegram.mark(chatId);
+        for (Scenario.Step step : script) {
+            StepStats stats = steps.computeIfAbsent(step.name(), k -> new StepStats());
+            Update update;
+            if (step.text() != null) {
+                update = textUpdate(chatId, step.text());
+            } else {
+                FakeTelegramClient.Button b = telegram.awaitButton(chatId, previous, step.button(), random, stepTimeoutMs);
+                if (b == null) {
+                    stats.failed.increment();
+                    return false;
+                }
+                update = callbackUpdate(chatId, b.data());
+            }
+            previous = telegram.mark(chatId);
+            long start = System.nanoTime();
+            try {
+                // the single-update route, as a dispatcher lane runs it; each simulated chat is sequential already
+                bot.consume(update);
+            } catch (RuntimeException e) {
+                stats.failed.increment();
+                return false;
+            } finally {
+                stats.latency.recordSince(start);
+            }
+            if (thinkMs > 0) Thread.sleep(thinkMs);
+        }
+        return true;
+    }
+
+    // ---- totals ----
+
+    private void printTotals() {
+        ConnectionPool.Stats pool = Database.getPoolStats();
+        OUT.printf("%ntelegram: %d messages, %d callback answers%n", telegram.getMessageCount(), telegram.getCallbackAnswerCount());
+        Metrics.timers("bot_telegram_delivery_seconds").forEach((priority, s) -> {
+            if (s.count > 0) OUT.printf("  delivery %s: p50 %.2f ms, p99 %.2f ms%n", priority, s.quantileMillis(0.5), s.quantileMillis(0.99));
+        });
+        OUT.println("db pool: " + pool);
+        OUT.println("db calls by method (count, p50, p99, total time):");
+        Metrics.timers("bot_db_query_seconds").forEach((method, s) -> {
+            if (s.count > 0) OUT.printf("  %-36s %8d %8.2f ms %8.2f ms %8.1f s%n", method, s.count,
+                    s.quantileMillis(0.5), s.quantileMillis(0.99), s.sumMicros / 1e6);
+        });
+        Map<String, Long> errors = Metrics.counters("bot_db_errors_total");
+        if (!errors.isEmpty()) OUT.println("db errors: " + errors);
+    }
+
+    private static long dbCalls() {
+        long n = 0;
+        for (LatencyHistogram.Snapshot s : Metrics.timers("bot_db_query_seconds").values()) n += s.count;
+        return n;
+    }
+
+    // prepareStatement calls through the pool, cached or not
+    private static long statements() {
+        ConnectionPool.Stats s = Database.getPoolStats();
+        return s.statementHits + s.statementMisses;
+    }
+
+    // ---- synthetic updates ----
+
+    private static final AtomicInteger UPDATE_IDS = new AtomicInteger();
+
+    private static Message message(long chatId) {
+        Message m = new Message();
+        m.setMessageId(UPDATE_IDS.incrementAndGet());
+        m.setChat(new Chat(chatId, "private"));
+        m.setDate((int) (System.currentTimeMillis() / 1000));
+        return m;
+    }
+
+    private static Update textUpdate(long chatId, String text) {
+        Message m = message(chatId);
+        m.setText(text);
+        Update u = new Update();
+        u.setUpdateId(UPDATE_IDS.incrementAndGet());
+        u.setMessage(m);
+        return u;
+    }
+
+    private static Update callbackUpdate(long chatId, String data) {
+        CallbackQuery q = new CallbackQuery();
+        q.setId(Integer.toString(UPDATE_IDS.incrementAndGet()));
+        q.setData(data);
+        q.setMessage(message(chatId));
+        Update u = new Update();
+        u.setUpdateId(UPDATE_IDS.incrementAndGet());
+        u.setCallbackQuery(q);
+        return u;
+    }
+
+    private int intOption(String name, int def) {
+        String v = options.get(name);
+        return v == null ? def : Integer.parseInt(v.trim());
+    }
+}
@@ -0,0 +1,127 @@
+package org.bot.loadtest;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Scripted conversations of one simulated user, as the texts and button presses a real user would send.
+ *
+ * Button steps press one of the inline buttons the bot sent in reply to the previous step, chosen by
+ * callback data or label, so the scripts follow whatever the handlers actually offer. rent and modify
+ * follow the flow described in /help (branch, car, pickup date, return branch, return date; pick a rental,
+ * then change its dates); if the bot does not offer the expected button the step is counted as failed
+ * and the report shows where the script and the handlers diverged.
+ *
+ * rent, modify and admin sign in first (seeded users), so their numbers include a login.
+ */
+enum Scenario {
+    SIGNUP {
+        @Override
+        List<Step> steps(long chatId, Random random, SeedData seed) {
+            long n = UNIQUE.incrementAndGet();
+            String login = "lt" + n;
+            List<Step> steps = new ArrayList<>();
+            steps.add(Step.text("start", "/start"));
+            steps.add(Step.text("login", login));
+            steps.add(Step.text("password", "secret-" + n));
+            steps.add(Step.text("email", login + "@load.test"));
+            steps.add(Step.text("phone", "+7" + String.format(Locale.ROOT, "%010d", 9_000_000_000L + n)));
+            steps.add(Step.text("license", "L" + String.format(Locale.ROOT, "%09d", n)));
+            return steps;
+        }
+    },
+    LOGIN {
+        @Override
+        List<Step> steps(long chatId, Random random, SeedData seed) {
+            return login(seed.userLogin(1 + random.nextInt(seed.users())));
+        }
+    },
+    RENT {
+        @Override
+        List<Step> steps(long chatId, Random random, SeedData seed) {
+            List<Step> steps = login(seed.userLogin(1 + random.nextInt(seed.users())));
+            LocalDate start = LocalDate.now().plusDays(1 + random.nextInt(180));
+            steps.add(Step.text("rent", "/rent"));
+            steps.add(Step.press("branch", byData("^rent_")));
+            steps.add(Step.press("car", byData("^rent_")));
+            steps.add(Step.text("pickupDate", DATE.format(start)));
+            steps.add(Step.press("returnBranch", byData("^rent_")));
+            steps.add(Step.text("returnDate", DATE.format(start.plusDays(1 + random.nextInt(7)))));
+            return steps;
+        }
+    },
+    MODIFY {
+        @Override
+        List<Step> steps(long chatId, Random random, SeedData seed) {
+            // seeded users all have one upcoming rental
+            List<Step> steps = login(seed.userLogin(1 + random.nextInt(seed.users())));
+            LocalDate start = LocalDate.now().plusDays(200 + random.nextInt(100));
+            steps.add(Step.text("rents", "/rents"));
+            steps.add(Step.press("rental", byData("^ar_")));
+            steps.add(Step.press("change", byLabel("(?i)date|change|edit|modify")));
+            steps.add(Step.text("newPickupDate", DATE.format(start)));
+            return steps;
+        }
+    },
+    ADMIN {
+        @Override
+        List<Step> steps(long chatId, Random random, SeedData seed) {
+            List<Step> steps = login(seed.userLogin(1 + random.nextInt(seed.admins())));
+            steps.add(Step.text("cars", "/cars"));
+            for (int i = 0; i < 3; i++) steps.add(Step.press("carsNext", byData("^admin_page_cars_n_")));
+            steps.add(Step.text("allrents", "/allrents"));
+            for (int i = 0; i < 3; i++) steps.add(Step.press("rentsNext", byData("^admin_page_rents_n_")));
+            return steps;
+        }
+    };
+
+    static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    // sign-ups need logins, phones and licenses nobody has used yet
+    private static final AtomicLong UNIQUE = new AtomicLong();
+
+    abstract List<Step> steps(long chatId, Random random, SeedData seed);
+
+    final String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    static Scenario of(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private static List<Step> login(String login) {
+        List<Step> steps = new ArrayList<>();
+        steps.add(Step.text("start", "/start"));
+        steps.add(Step.text("login", login));
+        steps.add(Step.text("password", SeedData.PASSWORD));
+        return steps;
+    }
+
+    private static Predicate<FakeTelegramClient.Button> byData(String regex) {
+        Pattern p = Pattern.compile(regex);
+        return b -> p.matcher(b.data()).find();
+    }
+
+    private static Predicate<FakeTelegramClient.Button> byLabel(String regex) {
+        Pattern p = Pattern.compile(regex);
+        return b -> b.label() != null && p.matcher(b.label()).find();
+    }
+
+    /** A text message (text != null) or a press of a button the bot offered in its last replies. */
+    record Step(String name, String text, Predicate<FakeTelegramClient.Button> button) {
+        static Step text(String name, String text) {
+            return new Step(name, text, null);
+        }
+
+        static Step press(String name, Predicate<FakeTelegramClient.Button> button) {
+            return new Step(name, null, button);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.bot.loadtest;
+
+import modules.BenchDb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Size of the seeded data set and the rows that go with it: branches and cars as in the benchmarks,
+ * users user1..userN sharing one password (the first {@code admins} of them admins), and one upcoming
+ * rental per user. Rentals of the same car never overlap, like in a consistent production database.
+ */
+record SeedData(int branches, int cars, int users, int admins) {
+    static final String PASSWORD = "load-test-password";
+
+    String userLogin(int n) {
+        return "user" + n;
+    }
+
+    /** Create the schema and insert the rows; {@code passwordHash} is stored for every user. */
+    void load(Connection conn, String passwordHash) throws SQLException {
+        BenchDb.createSchema(conn);
+        Random random = new Random(11);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            BenchDb.seedBranches(conn, branches, random);
+            BenchDb.seedCars(conn, cars, branches, random);
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Users " +
+                    "(login, email, phone_number, license_id, password, isAdmin) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 1; i <= users; i++) {
+                    ps.setString(1, userLogin(i));
+                    ps.setString(2, userLogin(i) + "@seed.test");
+                    ps.setString(3, "+7" + (8_000_000_000L + i));
+                    ps.setString(4, String.format("S%09d", i));
+                    ps.setString(5, passwordHash);
+                    ps.setBoolean(6, i <= admins);
+                    ps.addBatch();
+                    if (i % 1000 == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Rentals " +
+                    "(user_id, car_id, start_date, end_date, start_branch_id, end_branch_id) VALUES (?, ?, ?, ?, ?, ?)")) {
+                LocalDate today = LocalDate.now();
+                for (int i = 1; i <= users; i++) {
+                    // k-th rental of a car starts 20 days after the (k-1)-th and lasts a week
+                    int car = 1 + (i - 1) % cars;
+                    LocalDate start = today.plusDays(30 + 20L * ((i - 1) / cars));
+                    int branch = 1 + random.nextInt(branches);
+                    ps.setInt(1, i);
+                    ps.setInt(2, car);
+                    ps.setObject(3, start);
+                    ps.setObject(4, start.plusDays(7));
+                    ps.setInt(5, branch);
+                    ps.setInt(6, branch);
+                    ps.addBatch();
+                    if (i % 1000 == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+}
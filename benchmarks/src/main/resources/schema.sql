@@ -0,0 +1,65 @@
+-- The bot's tables as the code uses them, in SQL that both MySQL and H2 (MODE=MySQL) accept.
+-- Used by the benchmarks and the load generator; statements are separated by ';' at the end of a line.
+
+CREATE TABLE Branch (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    city VARCHAR(64) NOT NULL,
+    street VARCHAR(128) NOT NULL,
+    building_number INT NOT NULL
+);
+
+CREATE TABLE CarStatus (
+    id INT PRIMARY KEY,
+    status_name VARCHAR(32) NOT NULL
+);
+
+CREATE TABLE CarType (
+    id INT PRIMARY KEY,
+    type_name VARCHAR(32) NOT NULL
+);
+
+CREATE TABLE Cars (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(128) NOT NULL,
+    release_year INT,
+    type_id INT NOT NULL,
+    branch_id INT NOT NULL,
+    status_id INT NOT NULL
+);
+CREATE INDEX cars_branch ON Cars (branch_id, status_id);
+
+CREATE TABLE Users (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    login VARCHAR(64) NOT NULL UNIQUE,
+    email VARCHAR(128) UNIQUE,
+    phone_number VARCHAR(32) UNIQUE,
+    license_id VARCHAR(32) UNIQUE,
+    password VARCHAR(255),
+    isAdmin BOOLEAN NOT NULL DEFAULT FALSE
+);
+
+CREATE TABLE Rentals (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    user_id INT NOT NULL,
+    car_id INT NOT NULL,
+    start_date DATE NOT NULL,
+    end_date DATE NOT NULL,
+    start_branch_id INT NOT NULL,
+    end_branch_id INT NOT NULL
+);
+CREATE INDEX rentals_car ON Rentals (car_id, start_date);
+CREATE INDEX rentals_user ON Rentals (user_id);
+
+CREATE VIEW RentalDetails AS
+SELECT r.id AS RentalID, c.name AS `Car Name`, u.login AS Login,
+       r.start_date AS `Start Date`, r.end_date AS `End Date`,
+       CONCAT(b1.city, ', ', b1.street, ', ', b1.building_number) AS `Start Branch`,
+       CONCAT(b2.city, ', ', b2.street, ', ', b2.building_number) AS `End Branch`
+FROM Rentals r
+JOIN Cars c ON c.id = r.car_id
+JOIN Users u ON u.id = r.user_id
+JOIN Branch b1 ON b1.id = r.start_branch_id
+JOIN Branch b2 ON b2.id = r.end_branch_id;
+
+INSERT INTO CarStatus VALUES (1, 'available'), (2, 'rented'), (3, 'maintenance');
+INSERT INTO CarType VALUES (1, 'sedan'), (2, 'hatchback'), (3, 'suv'), (4, 'minivan'), (5, 'coupe');
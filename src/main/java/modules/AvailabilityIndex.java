@@ -0,0 +1,123 @@
+package modules;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory calendar of current and future bookings, one interval index per car.
+ * Answers "is car X free between A and B" without a query. Dates are inclusive on both ends, as in Rentals.
+ *
+ * Bookings of a car are kept in a TreeMap ordered by start date. Any booking that overlaps [from, to]
+ * must start in [from - longest booking of that car, to], so a check only walks that slice of the map.
+ * The database stays the source of truth: a booking is re-checked in SQL inside its transaction.
+ */
+public final class AvailabilityIndex {
+
+    public record Booking(int rentalId, int carId, LocalDate start, LocalDate end) {
+        boolean overlaps(LocalDate from, LocalDate to) {
+            return !start.isAfter(to) && !end.isBefore(from);
+        }
+    }
+
+    private static final class CarCalendar {
+        // legacy rows may share a start date, hence a list per key
+        final TreeMap<LocalDate, List<Booking>> byStart = new TreeMap<>();
+        long longestDays;
+
+        void add(Booking b) {
+            byStart.computeIfAbsent(b.start(), k -> new ArrayList<>(1)).add(b);
+            longestDays = Math.max(longestDays, ChronoUnit.DAYS.between(b.start(), b.end()));
+        }
+
+        void remove(Booking b) {
+            List<Booking> l = byStart.get(b.start());
+            if (l == null) return;
+            l.removeIf(x -> x.rentalId() == b.rentalId());
+            if (l.isEmpty()) byStart.remove(b.start());
+        }
+
+        boolean isFree(LocalDate from, LocalDate to, int ignoreRentalId) {
+            LocalDate lowest = from.minusDays(longestDays);
+            if (lowest.isAfter(to)) return true;
+            for (List<Booking> l : byStart.subMap(lowest, true, to, true).values()) {
+                for (Booking b : l) {
+                    if (b.rentalId() != ignoreRentalId && b.overlaps(from, to)) return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private Map<Integer, CarCalendar> cars = new HashMap<>();
+    private Map<Integer, Booking> byRental = new HashMap<>();
+    // bumped by every put/remove so a reload built from an older query does not overwrite newer changes
+    private long modCount;
+
+    public synchronized boolean isFree(int carId, LocalDate from, LocalDate to) {
+        return isFree(carId, from, to, -1);
+    }
+
+    /** Same as {@link #isFree(int, LocalDate, LocalDate)} but ignoring one rental, e.g. the one being rescheduled. */
+    public synchronized boolean isFree(int carId, LocalDate from, LocalDate to, int ignoreRentalId) {
+        CarCalendar c = cars.get(carId);
+        return c == null || c.isFree(from, to, ignoreRentalId);
+    }
+
+    /** Add a booking, or move it if the rental is already indexed. */
+    public synchronized void put(int rentalId, int carId, LocalDate start, LocalDate end) {
+        modCount++;
+        removeInternal(rentalId);
+        Booking b = new Booking(rentalId, carId, start, end);
+        byRental.put(rentalId, b);
+        cars.computeIfAbsent(carId, k -> new CarCalendar()).add(b);
+    }
+
+    public synchronized void remove(int rentalId) {
+        modCount++;
+        removeInternal(rentalId);
+    }
+
+    public synchronized Booking get(int rentalId) {
+        return byRental.get(rentalId);
+    }
+
+    public synchronized long getModCount() {
+        return modCount;
+    }
+
+    public synchronized int size() {
+        return byRental.size();
+    }
+
+    /**
+     * Replace the whole index with freshly loaded rows.
+     * Returns false (and keeps the current contents) if the index changed after {@code expectedModCount} was read.
+     */
+    public synchronized boolean replaceAll(Collection<Booking> rows, long expectedModCount) {
+        if (modCount != expectedModCount) return false;
+        Map<Integer, CarCalendar> newCars = new HashMap<>();
+        Map<Integer, Booking> newByRental = new HashMap<>(rows.size() * 2);
+        for (Booking b : rows) {
+            newByRental.put(b.rentalId(), b);
+            newCars.computeIfAbsent(b.carId(), k -> new CarCalendar()).add(b);
+        }
+        cars = newCars;
+        byRental = newByRental;
+        return true;
+    }
+
+    private void removeInternal(int rentalId) {
+        Booking old = byRental.remove(rentalId);
+        if (old == null) return;
+        CarCalendar c = cars.get(old.carId());
+        if (c == null) return;
+        c.remove(old);
+        if (c.byStart.isEmpty()) cars.remove(old.carId());
+    }
+}
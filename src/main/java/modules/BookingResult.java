@@ -0,0 +1,20 @@
+package modules;
+
+/** Outcome of {@link Database#bookCar}; handlers show {@link #getUserMessage()} for anything but BOOKED. */
+public enum BookingResult {
+    BOOKED("Car booked successfully."),
+    // another booking for overlapping dates committed first
+    CAR_TAKEN("Sorry, this car was just booked by someone else for these dates. Please choose another car or dates."),
+    // car deleted or taken out of service since it was listed
+    CAR_UNAVAILABLE("Sorry, this car is no longer available. Please choose another car.");
+
+    private final String userMessage;
+
+    BookingResult(String userMessage) {
+        this.userMessage = userMessage;
+    }
+
+    public String getUserMessage() {
+        return userMessage;
+    }
+}
@@ -0,0 +1,10 @@
+package modules;
+
+/** Row of Branch. */
+public record Branch(int id, String city, String street, int buildingNumber) {
+
+    // same format as the CONCAT(...) addresses produced by the SQL views
+    public String address() {
+        return city + ", " + street + ", " + buildingNumber;
+    }
+}
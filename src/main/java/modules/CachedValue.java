@@ -0,0 +1,86 @@
+package modules;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache for a single value loaded from the database (e.g. the branch list).
+ * Entries expire after the TTL and can be dropped earlier with {@link #invalidate()}.
+ * Only one caller reloads an expired value; concurrent callers wait for that load instead of piling onto MySQL.
+ */
+public final class CachedValue<T> {
+    private final String name;
+    private final long ttlNanos;
+    private final Database.SQLSupplier<T> loader;
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile Entry<T> entry;
+    // bumped by invalidate() so a load that started before the invalidation is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private static final class Entry<T> {
+        final T value;
+        final long expiresAt;
+
+        Entry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public CachedValue(String name, long ttl, TimeUnit unit, Database.SQLSupplier<T> loader) {
+        this.name = name;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.loader = loader;
+    }
+
+    public T get() throws SQLException {
+        Entry<T> e = entry;
+        if (e != null && System.nanoTime() - e.expiresAt < 0) {
+            hits.incrementAndGet();
+            return e.value;
+        }
+        loadLock.lock();
+        try {
+            e = entry;
+            if (e != null && System.nanoTime() - e.expiresAt < 0) {
+                hits.incrementAndGet();
+                return e.value;
+            }
+            misses.incrementAndGet();
+            long gen = generation.get();
+            T value = loader.get();
+            if (gen == generation.get()) {
+                entry = new Entry<>(value, System.nanoTime() + ttlNanos);
+            }
+            return value;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        entry = null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": hits=" + hits.get() + ", misses=" + misses.get();
+    }
+}
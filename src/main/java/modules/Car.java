@@ -0,0 +1,9 @@
+package modules;
+
+/**
+ * Row of Cars joined with its type, status and branch.
+ * releaseYear may be null; statusName and branchAddress are null when the query does not join them.
+ */
+public record Car(int id, String name, Integer releaseYear, String typeName,
+                  int branchId, String branchAddress, int statusId, String statusName) {
+}
@@ -0,0 +1,6 @@
+package modules;
+
+/** Optional filters for admin car listings; null means "any". */
+public record CarFilter(Integer branchId, Integer statusId) {
+    public static final CarFilter ALL = new CarFilter(null, null);
+}
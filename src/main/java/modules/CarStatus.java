@@ -0,0 +1,5 @@
+package modules;
+
+/** Row of CarStatus (1 = available, 2 = booked, 4 = out of service). */
+public record CarStatus(int id, String name) {
+}
@@ -2,36 +2,565 @@ package modules;
 
 import io.github.cdimascio.dotenv.Dotenv;
 
-public class Config {
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Application configuration, read once into an immutable snapshot.
+ *
+ * Values come from the process environment first and from the .env file second.
+ * Getters are plain field reads of the current snapshot. {@link #watchForChanges()} can reload
+ * the non-critical keys (admin password, bot name) when .env changes; everything else needs a restart.
+ */
+public final class Config {
+    private static final Logger LOGGER = Logger.getLogger(Config.class.getName());
+    private static final String ENV_FILE = ".env";
+    private static final String[] REQUIRED = {"BOT_TOKEN", "DB_HOST", "DB_PORT", "DB_NAME", "DB_USER"};
+    // not needed when DB_URL gives the full JDBC URL
+    private static final List<String> URL_PARTS = List.of("DB_HOST", "DB_PORT", "DB_NAME");
+    // global send tokens bulk traffic leaves untouched for interactive replies (see SendRateLimiter)
+    public static final int SEND_BULK_RESERVE = 10;
+    // what Telegram accepts as secret_token
+    private static final Pattern WEBHOOK_SECRET = Pattern.compile("[A-Za-z0-9_-]{1,256}");
+
+    private static volatile Config current;
+
+    // fixed for the lifetime of the process
+    private final Fixed fixed;
+
+    // reloadable
+    private final String botName;
+    private final String adminPassword;
+
+    private Config(Source src) {
+        fixed = new Fixed(src);
+        botName = src.get("BOT_NAME");
+        adminPassword = src.get("ADMIN_PASSWORD");
+
+        if (!src.errors.isEmpty()) {
+            throw new IllegalStateException("Invalid configuration: " + String.join("; ", src.errors));
+        }
+    }
+
+    // reload: keep the fixed part of the old snapshot, take reloadable keys from the new source
+    private Config(Fixed fixed, Source src) {
+        this.fixed = fixed;
+        botName = src.get("BOT_NAME");
+        adminPassword = src.get("ADMIN_PASSWORD");
+    }
+
+    private static String defaultWorkerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * Load and validate the configuration. Called at startup so a missing or malformed key
+     * fails fast with a clear message instead of surfacing later as a null somewhere.
+     */
+    public static synchronized void init() {
+        if (current == null) current = new Config(new Source());
+    }
+
+    private static Config snapshot() {
+        Config c = current;
+        if (c == null) {
+            init();
+            c = current;
+        }
+        return c;
+    }
+
+    private static Fixed fixed() {
+        return snapshot().fixed;
+    }
+
+    /** Reload non-critical keys from the environment and .env. */
+    public static synchronized void reload() {
+        Config old = snapshot();
+        current = new Config(old.fixed, new Source());
+        LOGGER.info("Configuration reloaded from " + ENV_FILE);
+    }
+
+    /** Start a daemon thread that reloads the non-critical keys whenever .env in the working directory changes. */
+    public static void watchForChanges() {
+        Path dir = Paths.get("").toAbsolutePath();
+        WatchService watcher;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOGGER.warning("Cannot watch " + ENV_FILE + " for changes: " + e.getMessage());
+            return;
+        }
+        Thread t = new Thread(() -> {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watcher.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (ENV_FILE.equals(String.valueOf(event.context()))) changed = true;
+                }
+                key.reset();
+                if (changed) {
+                    try {
+                        reload();
+                    } catch (RuntimeException e) {
+                        LOGGER.warning("Keeping previous configuration, reload failed: " + e.getMessage());
+                    }
+                }
+            }
+        }, "config-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // CONFIG_WATCH=true: reload non-critical keys when .env changes
+    public static boolean isWatchEnabled() {
+        return fixed().watchEnabled;
+    }
+
     public static String getBotName() {
-        return Dotenv.load().get("BOT_NAME");
+        return snapshot().botName;
     }
 
     public static String getBotToken() {
-        return Dotenv.load().get("BOT_TOKEN");
+        return fixed().botToken;
+    }
+
+    public static boolean isVirtualThreadMode() {
+        return fixed().virtualThreads;
+    }
+
+    public static int getBotWorkerThreads() {
+        return fixed().botWorkerThreads;
+    }
+
+    public static int getBotMaxBacklog() {
+        return fixed().botMaxBacklog;
+    }
+
+    // full JDBC URL overriding DB_HOST/DB_PORT/DB_NAME (e.g. another driver for load tests); null if not set
+    public static String getDatabaseUrl() {
+        return fixed().databaseUrl;
     }
 
     public static String getDatabaseHost() {
-        return Dotenv.load().get("DB_HOST");
+        return fixed().databaseHost;
     }
 
     public static String getDatabasePort() {
-        return Dotenv.load().get("DB_PORT");
+        return fixed().databasePort;
     }
 
     public static String getDatabaseName() {
-        return Dotenv.load().get("DB_NAME");
+        return fixed().databaseName;
     }
 
     public static String getDatabaseUser() {
-        return Dotenv.load().get("DB_USER");
+        return fixed().databaseUser;
     }
 
     public static String getDatabasePassword() {
-        return Dotenv.load().get("DB_PASSWORD");
+        return fixed().databasePassword;
+    }
+
+    public static int getDatabasePoolSize() {
+        return fixed().databasePoolSize;
+    }
+
+    public static long getDatabasePoolTimeoutMs() {
+        return fixed().databasePoolTimeoutMs;
+    }
+
+    public static long getDatabasePoolLeakThresholdMs() {
+        return fixed().databasePoolLeakThresholdMs;
+    }
+
+    // prepared statements kept per pooled connection; 0 turns statement caching off
+    public static int getDatabaseStatementCacheSize() {
+        return fixed().databaseStatementCacheSize;
+    }
+
+    // where /start conversations are persisted: memory (not persisted), file or mysql
+    public static String getSessionStore() {
+        return fixed().sessionStore;
+    }
+
+    public static String getSessionStoreDir() {
+        return fixed().sessionStoreDir;
+    }
+
+    public static int getSessionIdleMinutes() {
+        return fixed().sessionIdleMinutes;
+    }
+
+    public static int getSessionMaxInMemory() {
+        return fixed().sessionMaxInMemory;
+    }
+
+    // PBKDF2 cost; raising it upgrades existing hashes on their next login
+    public static int getPasswordHashIterations() {
+        return fixed().passwordHashIterations;
+    }
+
+    public static int getPasswordHashThreads() {
+        return fixed().passwordHashThreads;
+    }
+
+    // Prometheus scrape endpoint (/metrics); 0 disables it. Loopback only unless METRICS_BIND_ADDRESS says otherwise.
+    public static int getMetricsPort() {
+        return fixed().metricsPort;
+    }
+
+    public static String getMetricsBindAddress() {
+        return fixed().metricsBindAddress;
+    }
+
+    // outbound messages per second, overall and per chat; the defaults are Telegram's limits
+    public static int getSendGlobalRate() {
+        return fixed().sendGlobalRate;
+    }
+
+    public static int getSendChatRate() {
+        return fixed().sendChatRate;
+    }
+
+    // BOT_UPDATE_MODE=webhook: Telegram posts updates to WebhookServer instead of the bot polling getUpdates
+    public static boolean isWebhookMode() {
+        return fixed().webhookMode;
+    }
+
+    // public address registered with Telegram; TLS ends at a proxy that forwards to WEBHOOK_BIND_ADDRESS:WEBHOOK_PORT
+    public static String getWebhookUrl() {
+        return fixed().webhookUrl;
+    }
+
+    // Telegram sends it back in X-Telegram-Bot-Api-Secret-Token; requests without it are refused
+    public static String getWebhookSecret() {
+        return fixed().webhookSecret;
+    }
+
+    public static String getWebhookBindAddress() {
+        return fixed().webhookBindAddress;
+    }
+
+    public static int getWebhookPort() {
+        return fixed().webhookPort;
+    }
+
+    public static String getWebhookPath() {
+        return fixed().webhookPath;
+    }
+
+    // received updates waiting for the dispatcher; when full, Telegram is told to retry later
+    public static int getWebhookQueueSize() {
+        return fixed().webhookQueueSize;
+    }
+
+    // parallel connections Telegram may open to the webhook
+    public static int getWebhookMaxConnections() {
+        return fixed().webhookMaxConnections;
+    }
+
+    // Bot API base URL (e.g. a local Bot API server or a test stand-in); null means api.telegram.org
+    public static String getTelegramApiUrl() {
+        return fixed().telegramApiUrl;
+    }
+
+    // standalone (default), ingress (receives updates, shards them by chat) or worker (handles its share)
+    public static String getClusterRole() {
+        return fixed().clusterRole;
+    }
+
+    // where the ingress listens for workers; loopback only unless CLUSTER_BIND_ADDRESS says otherwise
+    public static String getClusterBindAddress() {
+        return fixed().clusterBindAddress;
+    }
+
+    public static int getClusterPort() {
+        return fixed().clusterPort;
+    }
+
+    // ingress address a worker connects to (CLUSTER_INGRESS=host:port)
+    public static String getClusterIngressHost() {
+        return fixed().clusterIngressHost;
+    }
+
+    public static int getClusterIngressPort() {
+        return fixed().clusterIngressPort;
+    }
+
+    // shared by the ingress and its workers; a worker presenting another one is turned away
+    public static String getClusterSecret() {
+        return fixed().clusterSecret;
+    }
+
+    // should stay the same across restarts of a worker, so its chats hash back to it
+    public static String getClusterWorkerId() {
+        return fixed().clusterWorkerId;
+    }
+
+    // pickup/return reminders and overdue alerts (see RentalReminders)
+    public static boolean isRemindersEnabled() {
+        return fixed().remindersEnabled;
+    }
+
+    // local hour of the day reminders go out, in REMINDER_ZONE
+    public static int getReminderHour() {
+        return fixed().reminderHour;
+    }
+
+    public static ZoneId getReminderZone() {
+        return fixed().reminderZone;
+    }
+
+    // how far ahead rentals are loaded into the reminder wheel
+    public static int getReminderHorizonHours() {
+        return fixed().reminderHorizonHours;
+    }
+
+    // reminders held in memory at most; further ones are picked up by a later load
+    public static int getReminderMaxEvents() {
+        return fixed().reminderMaxEvents;
+    }
+
+    // rentals read per query and reminders sent per batch
+    public static int getReminderBatchSize() {
+        return fixed().reminderBatchSize;
     }
 
     public static String getAdminPassword() {
-        return Dotenv.load().get("ADMIN_PASSWORD");
+        return snapshot().adminPassword;
+    }
+
+    // read once at startup, shared as a whole by every reloaded snapshot
+    private static final class Fixed {
+        private final String botToken;
+        private final String databaseUrl;
+        private final String databaseHost;
+        private final String databasePort;
+        private final String databaseName;
+        private final String databaseUser;
+        private final String databasePassword;
+        private final int databasePoolSize;
+        private final long databasePoolTimeoutMs;
+        private final long databasePoolLeakThresholdMs;
+        private final int databaseStatementCacheSize;
+        private final boolean virtualThreads;
+        private final int botWorkerThreads;
+        private final int botMaxBacklog;
+        private final boolean watchEnabled;
+        private final String sessionStore;
+        private final String sessionStoreDir;
+        private final int sessionIdleMinutes;
+        private final int sessionMaxInMemory;
+        private final int passwordHashIterations;
+        private final int passwordHashThreads;
+        private final int metricsPort;
+        private final String metricsBindAddress;
+        private final int sendGlobalRate;
+        private final int sendChatRate;
+        private final boolean webhookMode;
+        private final String webhookUrl;
+        private final String webhookSecret;
+        private final String webhookBindAddress;
+        private final int webhookPort;
+        private final String webhookPath;
+        private final int webhookQueueSize;
+        private final int webhookMaxConnections;
+        private final String telegramApiUrl;
+        private final String clusterRole;
+        private final String clusterBindAddress;
+        private final int clusterPort;
+        private final String clusterIngressHost;
+        private final int clusterIngressPort;
+        private final String clusterSecret;
+        private final String clusterWorkerId;
+        private final boolean remindersEnabled;
+        private final int reminderHour;
+        private final ZoneId reminderZone;
+        private final int reminderHorizonHours;
+        private final int reminderMaxEvents;
+        private final int reminderBatchSize;
+
+        private Fixed(Source src) {
+            List<String> missing = new ArrayList<>();
+            String url = src.get("DB_URL", null);
+            for (String key : REQUIRED) {
+                if (url != null && URL_PARTS.contains(key)) continue;
+                String v = src.get(key);
+                if (v == null || v.trim().isEmpty()) missing.add(key);
+            }
+            if (!missing.isEmpty()) {
+                throw new IllegalStateException("Missing required configuration: " + String.join(", ", missing));
+            }
+
+            botToken = src.get("BOT_TOKEN");
+            databaseUrl = url;
+            databaseHost = src.get("DB_HOST");
+            databasePort = String.valueOf(src.getInt("DB_PORT", 3306));
+            databaseName = src.get("DB_NAME");
+            databaseUser = src.get("DB_USER");
+            databasePassword = src.get("DB_PASSWORD", "");
+            databasePoolSize = src.getInt("DB_POOL_SIZE", 10);
+            databasePoolTimeoutMs = src.getInt("DB_POOL_TIMEOUT_MS", 5000);
+            databasePoolLeakThresholdMs = src.getInt("DB_POOL_LEAK_THRESHOLD_MS", 60000);
+            databaseStatementCacheSize = Math.max(0, src.getInt("DB_STATEMENT_CACHE_SIZE", 64));
+            virtualThreads = "virtual".equalsIgnoreCase(src.get("BOT_EXECUTION_MODE", "platform"));
+            botWorkerThreads = src.getInt("BOT_WORKER_THREADS", Runtime.getRuntime().availableProcessors() * 4);
+            // with virtual threads an update waiting on JDBC/HTTP costs almost nothing, so allow a deeper backlog
+            botMaxBacklog = src.getInt("BOT_MAX_BACKLOG", virtualThreads ? 10000 : 1000);
+            watchEnabled = Boolean.parseBoolean(src.get("CONFIG_WATCH", "false"));
+            // sign-up sessions hold email, phone and license: persisting them (file: plaintext on disk) is opt-in
+            sessionStore = src.get("SESSION_STORE", "memory").toLowerCase();
+            if (!List.of("memory", "file", "mysql").contains(sessionStore)) {
+                src.errors.add("SESSION_STORE must be memory, file or mysql, got '" + sessionStore + "'");
+            }
+            sessionStoreDir = src.get("SESSION_STORE_DIR", "sessions");
+            sessionIdleMinutes = src.getInt("SESSION_IDLE_MINUTES", 30);
+            sessionMaxInMemory = src.getInt("SESSION_MAX_IN_MEMORY", 10000);
+            passwordHashIterations = src.getInt("PASSWORD_HASH_ITERATIONS", 310000);
+            if (passwordHashIterations < 10000) {
+                src.errors.add("PASSWORD_HASH_ITERATIONS must be at least 10000, got " + passwordHashIterations);
+            }
+            passwordHashThreads = Math.max(1, src.getInt("PASSWORD_HASH_THREADS", Runtime.getRuntime().availableProcessors()));
+            metricsPort = src.getInt("METRICS_PORT", 9464);
+            metricsBindAddress = src.get("METRICS_BIND_ADDRESS", "127.0.0.1");
+            sendGlobalRate = src.getInt("SEND_GLOBAL_RATE", 30);
+            sendChatRate = src.getInt("SEND_CHAT_RATE", 1);
+            if (sendGlobalRate <= 0 || sendChatRate <= 0) {
+                src.errors.add("SEND_GLOBAL_RATE and SEND_CHAT_RATE must be positive, got " + sendGlobalRate + " and " + sendChatRate);
+            } else if (sendGlobalRate <= SEND_BULK_RESERVE) {
+                // a bulk send needs 1 + SEND_BULK_RESERVE tokens; a smaller bucket never holds them
+                src.errors.add("SEND_GLOBAL_RATE must be above " + SEND_BULK_RESERVE + ", got " + sendGlobalRate);
+            }
+            String updateMode = src.get("BOT_UPDATE_MODE", "polling").toLowerCase();
+            if (!List.of("polling", "webhook").contains(updateMode)) {
+                src.errors.add("BOT_UPDATE_MODE must be polling or webhook, got '" + updateMode + "'");
+            }
+            webhookMode = "webhook".equals(updateMode);
+            webhookUrl = src.get("WEBHOOK_URL", null);
+            webhookSecret = src.get("WEBHOOK_SECRET", null);
+            webhookBindAddress = src.get("WEBHOOK_BIND_ADDRESS", "0.0.0.0");
+            webhookPort = src.getInt("WEBHOOK_PORT", 8080);
+            webhookPath = src.get("WEBHOOK_PATH", "/webhook");
+            webhookQueueSize = Math.max(1, src.getInt("WEBHOOK_QUEUE_SIZE", 1000));
+            webhookMaxConnections = src.getInt("WEBHOOK_MAX_CONNECTIONS", 40);
+            if (webhookMode) {
+                if (webhookUrl == null || !webhookUrl.startsWith("https://")) {
+                    src.errors.add("WEBHOOK_URL must be the public https:// address Telegram posts to, got '" + webhookUrl + "'");
+                }
+                if (webhookSecret == null || !WEBHOOK_SECRET.matcher(webhookSecret).matches()) {
+                    src.errors.add("WEBHOOK_SECRET must be 1-256 characters of A-Z, a-z, 0-9, _ and -");
+                }
+                if (!webhookPath.startsWith("/")) {
+                    src.errors.add("WEBHOOK_PATH must start with /, got '" + webhookPath + "'");
+                }
+                if (webhookMaxConnections < 1 || webhookMaxConnections > 100) {
+                    src.errors.add("WEBHOOK_MAX_CONNECTIONS must be between 1 and 100, got " + webhookMaxConnections);
+                }
+            }
+            telegramApiUrl = src.get("TELEGRAM_API_URL", null);
+            if (telegramApiUrl != null && !telegramApiUrl.matches("https?://[^/:]+(:\\d+)?/?")) {
+                src.errors.add("TELEGRAM_API_URL must look like http(s)://host[:port], got '" + telegramApiUrl + "'");
+            }
+            clusterRole = src.get("CLUSTER_ROLE", "standalone").toLowerCase();
+            if (!List.of("standalone", "ingress", "worker").contains(clusterRole)) {
+                src.errors.add("CLUSTER_ROLE must be standalone, ingress or worker, got '" + clusterRole + "'");
+            }
+            if ("worker".equals(clusterRole) && "memory".equals(sessionStore)) {
+                src.errors.add("SESSION_STORE must be file (on a shared directory) or mysql when CLUSTER_ROLE is worker");
+            }
+            clusterBindAddress = src.get("CLUSTER_BIND_ADDRESS", "127.0.0.1");
+            clusterPort = src.getInt("CLUSTER_PORT", 7400);
+            String ingress = src.get("CLUSTER_INGRESS", "127.0.0.1:" + clusterPort);
+            int colon = ingress.lastIndexOf(':');
+            int ingressPort = -1;
+            try {
+                if (colon > 0) ingressPort = Integer.parseInt(ingress.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                ingressPort = -1;
+            }
+            if (ingressPort <= 0) src.errors.add("CLUSTER_INGRESS must be host:port, got '" + ingress + "'");
+            clusterIngressHost = colon > 0 ? ingress.substring(0, colon) : ingress;
+            clusterIngressPort = ingressPort;
+            clusterSecret = src.get("CLUSTER_SECRET", null);
+            if (!"standalone".equals(clusterRole) && (clusterSecret == null || clusterSecret.length() < 16)) {
+                src.errors.add("CLUSTER_SECRET of at least 16 characters is required when CLUSTER_ROLE is " + clusterRole);
+            }
+            clusterWorkerId = src.get("CLUSTER_WORKER_ID", defaultWorkerId());
+            // in a cluster every worker sees the same Rentals, so only the one with REMINDERS_ENABLED=true sends them
+            remindersEnabled = Boolean.parseBoolean(src.get("REMINDERS_ENABLED", String.valueOf("standalone".equals(clusterRole))));
+            reminderHour = src.getInt("REMINDER_HOUR", 10);
+            if (reminderHour < 0 || reminderHour > 23) {
+                src.errors.add("REMINDER_HOUR must be between 0 and 23, got " + reminderHour);
+            }
+            ZoneId zone = ZoneId.systemDefault();
+            String zoneName = src.get("REMINDER_ZONE", null);
+            if (zoneName != null) {
+                try {
+                    zone = ZoneId.of(zoneName);
+                } catch (DateTimeException e) {
+                    src.errors.add("REMINDER_ZONE must be a time zone id such as Europe/Moscow, got '" + zoneName + "'");
+                }
+            }
+            reminderZone = zone;
+            reminderHorizonHours = src.getInt("REMINDER_HORIZON_HOURS", 48);
+            if (reminderHorizonHours < 2) {
+                src.errors.add("REMINDER_HORIZON_HOURS must be at least 2, got " + reminderHorizonHours);
+            }
+            reminderMaxEvents = Math.max(1, src.getInt("REMINDER_MAX_EVENTS", 1_000_000));
+            reminderBatchSize = Math.max(1, src.getInt("REMINDER_BATCH_SIZE", 500));
+        }
+    }
+
+    // raw key lookup: process environment first, then .env (missing file is fine, e.g. in containers)
+    private static final class Source {
+        private final Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        private final List<String> errors = new ArrayList<>();
+
+        String get(String key) {
+            String v = System.getenv(key);
+            return v != null ? v : dotenv.get(key);
+        }
+
+        String get(String key, String def) {
+            String v = get(key);
+            return v == null || v.trim().isEmpty() ? def : v.trim();
+        }
+
+        int getInt(String key, int def) {
+            String v = get(key);
+            if (v == null || v.trim().isEmpty()) return def;
+            try {
+                return Integer.parseInt(v.trim());
+            } catch (NumberFormatException e) {
+                errors.add(key + " must be an integer, got '" + v + "'");
+                return def;
+            }
+        }
     }
 }
@@ -0,0 +1,458 @@
+package modules;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small bounded JDBC connection pool used by {@link Database}.
+ *
+ * Borrowed connections are proxies: close() hands the physical connection back to the pool
+ * (rolling back and restoring autocommit if the caller left a transaction open) instead of closing it.
+ * Idle connections are validated by a background housekeeper, not on every borrow,
+ * and connections held longer than the leak threshold are reported with the borrow site.
+ *
+ * Each physical connection also keeps its prepared statements (LRU, statementCacheSize per connection):
+ * prepareStatement(sql) on a borrowed connection returns the statement prepared for that SQL the last time,
+ * and close() on it only resets it for the next borrower. Together with useServerPrepStmts in the JDBC URL
+ * a query is parsed and prepared on the server once per connection instead of once per call.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long leakThresholdMs;
+    private final int statementCacheSize;
+
+    // permits bound the number of physical connections (idle + borrowed)
+    private final Semaphore permits;
+    // LIFO: most recently returned connection is reused first, older ones age out via validation
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password,
+                          int maxSize, long borrowTimeoutMs, long validationIntervalMs, long leakThresholdMs,
+                          int statementCacheSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::validateIdle, validationIntervalMs, validationIntervalMs, TimeUnit.MILLISECONDS);
+        if (leakThresholdMs > 0) {
+            long period = Math.max(1000L, leakThresholdMs / 2);
+            housekeeper.scheduleWithFixedDelay(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Borrow a connection; the caller must close() it (try-with-resources) to return it to the pool.
+     * Throws SQLTransientConnectionException if none becomes available within the borrow timeout,
+     * so the retry helpers in Database treat pool exhaustion as a transient error.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a DB connection", e);
+        }
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLTransientConnectionException("Timed out after " + borrowTimeoutMs + "ms waiting for a DB connection (pool size " + maxSize + ")");
+        }
+
+        try {
+            PooledConnection pc = idle.pollFirst();
+            if (pc == null) {
+                pc = new PooledConnection(DriverManager.getConnection(url, user, password));
+                createdCount.incrementAndGet();
+            }
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrowSite = leakThresholdMs > 0 ? new Exception("Connection borrowed here") : null;
+            pc.leakReported = false;
+            borrowed.add(pc);
+            borrowCount.incrementAndGet();
+            return pc.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // called by the proxy handle on close()
+    private void giveBack(PooledConnection pc) {
+        borrowed.remove(pc);
+        boolean reusable = !closed;
+        try {
+            if (reusable && !pc.physical.getAutoCommit()) {
+                // caller left a transaction open: never leak it into the next borrower
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+            if (reusable && pc.physical.isClosed()) reusable = false;
+            if (reusable) pc.dropUnclosedStatements();
+        } catch (SQLException e) {
+            LOGGER.warning("Discarding DB connection after reset failure: " + e.getMessage());
+            reusable = false;
+        }
+        if (reusable) {
+            idle.offerFirst(pc);
+        } else {
+            destroy(pc);
+        }
+        permits.release();
+    }
+
+    private void destroy(PooledConnection pc) {
+        destroyedCount.incrementAndGet();
+        try {
+            pc.physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    // background check of idle connections, replaces the old isValid() round trip on every borrow
+    private void validateIdle() {
+        int toCheck = idle.size();
+        List<PooledConnection> checked = new ArrayList<>(toCheck);
+        for (int i = 0; i < toCheck && !closed; i++) {
+            // hold a permit while a connection is out of the deque so borrowers cannot exceed maxSize
+            if (!permits.tryAcquire()) break;
+            PooledConnection pc = idle.pollLast();
+            if (pc == null) {
+                permits.release();
+                break;
+            }
+            boolean valid;
+            try {
+                valid = pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                valid = false;
+            }
+            if (valid) {
+                checked.add(pc);
+            } else {
+                LOGGER.info("Evicting broken idle DB connection");
+                destroy(pc);
+                permits.release();
+            }
+        }
+        // re-queue at the cold end so recently used connections keep being preferred
+        for (PooledConnection pc : checked) {
+            idle.offerLast(pc);
+            permits.release();
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pc : borrowed) {
+            if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMs) {
+                pc.leakReported = true;
+                leakCount.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Possible DB connection leak: held for " + (now - pc.borrowedAt) + "ms", pc.borrowSite);
+            }
+        }
+    }
+
+    public Stats stats() {
+        int idleNow = idle.size();
+        int active = borrowed.size();
+        return new Stats(maxSize, active, idleNow, permits.getQueueLength(),
+                borrowCount.get(), timeoutCount.get(), createdCount.get(), destroyedCount.get(), leakCount.get(),
+                statementHits.get(), statementMisses.get());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
+        }
+    }
+
+    private final class PooledConnection {
+        final Connection physical;
+        volatile long borrowedAt;
+        volatile Exception borrowSite;
+        volatile boolean leakReported;
+        // only touched by the current borrower, so no locking; access-ordered for LRU eviction
+        final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize) return false;
+                CachedStatement cs = eldest.getValue();
+                cs.evicted = true;
+                if (!cs.inUse) cs.closeQuietly();
+                return true;
+            }
+        };
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+
+        // statements the borrower never closed are still "in use"; forget them so the SQL can be cached again
+        void dropUnclosedStatements() {
+            statements.values().removeIf(cs -> {
+                if (!cs.inUse) return false;
+                cs.evicted = true;
+                return true;
+            });
+        }
+
+        // prepareStatement(sql) / prepareStatement(sql, autoGeneratedKeys) through the cache
+        PreparedStatement prepare(Connection handle, String sql, int autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+            CachedStatement cs = statements.get(key);
+            if (cs != null && !cs.inUse) {
+                statementHits.incrementAndGet();
+            } else {
+                statementMisses.incrementAndGet();
+                PreparedStatement ps = physical.prepareStatement(sql, autoGeneratedKeys);
+                // the same SQL open twice at once: the second one is a plain, uncached statement
+                if (cs != null) return ps;
+                cs = new CachedStatement(ps);
+                statements.put(key, cs);
+            }
+            cs.inUse = true;
+            return cs.newHandle(handle);
+        }
+    }
+
+    private static final class CachedStatement {
+        final PreparedStatement physical;
+        boolean inUse;
+        boolean evicted;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        PreparedStatement newHandle(Connection connectionHandle) {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new StatementHandle(this, connectionHandle));
+        }
+
+        // back to the cache: forget parameters and per-use settings, keep the server-side statement
+        void release() {
+            inUse = false;
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+            try {
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.setFetchSize(0);
+                physical.setMaxRows(0);
+                physical.setQueryTimeout(0);
+            } catch (SQLException e) {
+                evicted = true;
+                closeQuietly();
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                physical.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    // one handle per prepareStatement() call, like Handle for connections
+    private static final class StatementHandle implements InvocationHandler {
+        private final CachedStatement cs;
+        private final Connection connectionHandle;
+        private boolean released;
+
+        StatementHandle(CachedStatement cs, Connection connectionHandle) {
+            this.cs = cs;
+            this.connectionHandle = connectionHandle;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        cs.release();
+                    }
+                    return null;
+                case "isClosed":
+                    return released || cs.physical.isClosed();
+                case "getConnection":
+                    return connectionHandle;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + cs.physical + "]";
+                default:
+                    if (released) throw new SQLException("Statement is closed");
+                    try {
+                        return method.invoke(cs.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    // one handle per borrow, so a stale reference cannot touch the connection after close()
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean released;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        giveBack(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.physical + "]";
+                case "prepareStatement":
+                    if (released) throw new SQLException("Connection has already been returned to the pool");
+                    if (statementCacheSize > 0 && args.length == 1) {
+                        return pc.prepare((Connection) proxy, (String) args[0], Statement.NO_GENERATED_KEYS);
+                    }
+                    if (statementCacheSize > 0 && args.length == 2 && method.getParameterTypes()[1] == int.class) {
+                        return pc.prepare((Connection) proxy, (String) args[0], (Integer) args[1]);
+                    }
+                    try {
+                        return method.invoke(pc.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                default:
+                    if (released) throw new SQLException("Connection has already been returned to the pool");
+                    try {
+                        return method.invoke(pc.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    /** Point-in-time pool statistics. */
+    public static final class Stats {
+        public final int maxSize;
+        public final int active;
+        public final int idle;
+        public final int waiting;
+        public final long borrows;
+        public final long timeouts;
+        public final long created;
+        public final long destroyed;
+        public final long leaks;
+        public final long statementHits;
+        public final long statementMisses;
+
+        Stats(int maxSize, int active, int idle, int waiting, long borrows, long timeouts, long created, long destroyed, long leaks,
+              long statementHits, long statementMisses) {
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.waiting = waiting;
+            this.borrows = borrows;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.leaks = leaks;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+        }
+
+        public double statementHitRate() {
+            long total = statementHits + statementMisses;
+            return total == 0 ? 0 : (double) statementHits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "active=" + active + "/" + maxSize + ", idle=" + idle + ", waiting=" + waiting
+                    + ", borrows=" + borrows + ", timeouts=" + timeouts
+                    + ", created=" + created + ", destroyed=" + destroyed + ", leaks=" + leaks
+                    + ", statementHits=" + statementHits + ", statementMisses=" + statementMisses
+                    + String.format(" (%.1f%%)", statementHitRate() * 100);
+        }
+    }
+}
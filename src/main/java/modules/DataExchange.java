@@ -0,0 +1,415 @@
+package modules;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bulk import/export of fleet data as CSV (header row, comma or semicolon separated) or JSON (array of flat objects).
+ *
+ * Import reads the file as a stream and upserts it with batched INSERT ... ON DUPLICATE KEY UPDATE in one
+ * transaction: a row with an id replaces that row, a row without one is inserted. Any bad row rolls the
+ * whole file back and is reported by line number.
+ *
+ * Export streams a forward-only result set (MySQL row streaming) straight into the output, so memory use
+ * does not depend on the number of rows.
+ */
+public final class DataExchange {
+    private static final int BATCH_SIZE = 500;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public enum Format {
+        CSV("csv"), JSON("json");
+
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        // by name ("csv") or file name ("cars.json"); null if neither
+        public static Format of(String nameOrFile) {
+            if (nameOrFile == null) return null;
+            String s = nameOrFile.toLowerCase(Locale.ROOT);
+            for (Format f : values()) {
+                if (s.equals(f.extension) || s.endsWith("." + f.extension)) return f;
+            }
+            return null;
+        }
+    }
+
+    private enum Type { INT, TEXT }
+
+    private record Column(String name, Type type, boolean required) {
+    }
+
+    public enum Dataset {
+        CARS("cars",
+                "SELECT id, name, release_year, type_id, branch_id, status_id FROM Cars ORDER BY id",
+                "INSERT INTO Cars (id, name, release_year, type_id, branch_id, status_id) VALUES (?, ?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE name = VALUES(name), release_year = VALUES(release_year), " +
+                        "type_id = VALUES(type_id), branch_id = VALUES(branch_id), status_id = VALUES(status_id)",
+                new Column("id", Type.INT, false), new Column("name", Type.TEXT, true),
+                new Column("release_year", Type.INT, false), new Column("type_id", Type.INT, true),
+                new Column("branch_id", Type.INT, true), new Column("status_id", Type.INT, true)),
+        BRANCHES("branches",
+                "SELECT id, city, street, building_number FROM Branch ORDER BY id",
+                "INSERT INTO Branch (id, city, street, building_number) VALUES (?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE city = VALUES(city), street = VALUES(street), " +
+                        "building_number = VALUES(building_number)",
+                new Column("id", Type.INT, false), new Column("city", Type.TEXT, true),
+                new Column("street", Type.TEXT, true), new Column("building_number", Type.INT, true)),
+        // export only: rentals are created through booking, which checks overlaps
+        RENTALS("rentals",
+                "SELECT RentalID, `Car Name`, Login, `Start Date`, `End Date`, `Start Branch`, `End Branch` " +
+                        "FROM RentalDetails ORDER BY RentalID",
+                null,
+                new Column("rental_id", Type.INT, true), new Column("car_name", Type.TEXT, true),
+                new Column("login", Type.TEXT, true), new Column("start_date", Type.TEXT, true),
+                new Column("end_date", Type.TEXT, true), new Column("start_branch", Type.TEXT, true),
+                new Column("end_branch", Type.TEXT, true));
+
+        public final String name;
+        private final String selectSql;
+        private final String upsertSql;
+        private final Column[] columns;
+
+        Dataset(String name, String selectSql, String upsertSql, Column... columns) {
+            this.name = name;
+            this.selectSql = selectSql;
+            this.upsertSql = upsertSql;
+            this.columns = columns;
+        }
+
+        public boolean isImportable() {
+            return upsertSql != null;
+        }
+
+        public static Dataset of(String name) {
+            for (Dataset d : values()) {
+                if (d.name.equalsIgnoreCase(name)) return d;
+            }
+            return null;
+        }
+    }
+
+    /** Bad input in an import file; the message starts with the line number. */
+    public static final class ImportException extends Exception {
+        public ImportException(long line, String message) {
+            super("line " + line + ": " + message);
+        }
+    }
+
+    private interface RowReader {
+        // values in dataset column order, null at end of input
+        Object[] next() throws IOException, ImportException;
+
+        long line();
+    }
+
+    private DataExchange() {
+    }
+
+    /** Upsert every row of {@code in} into the dataset's table; returns the number of rows read. */
+    public static int importData(Dataset dataset, Format format, InputStream in)
+            throws IOException, SQLException, ImportException {
+        if (!dataset.isImportable()) throw new IllegalArgumentException(dataset.name + " cannot be imported");
+        RowReader reader = format == Format.JSON ? jsonReader(dataset, in) : csvReader(dataset, in);
+        int rows = 0;
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(dataset.upsertSql)) {
+                Object[] row;
+                int pending = 0;
+                while ((row = reader.next()) != null) {
+                    for (int i = 0; i < row.length; i++) {
+                        int sqlType = dataset.columns[i].type == Type.INT ? Types.INTEGER : Types.VARCHAR;
+                        if (row[i] == null) ps.setNull(i + 1, sqlType);
+                        else ps.setObject(i + 1, row[i], sqlType);
+                    }
+                    ps.addBatch();
+                    rows++;
+                    if (++pending == BATCH_SIZE) {
+                        executeBatch(ps, reader.line());
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) executeBatch(ps, reader.line());
+                conn.commit();
+            } catch (IOException | SQLException | ImportException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        Database.invalidateReferenceData();
+        return rows;
+    }
+
+    private static void executeBatch(PreparedStatement ps, long line) throws SQLException {
+        try {
+            ps.executeBatch();
+        } catch (SQLException e) {
+            // the driver does not say which row failed; the batch ends at the current line
+            throw new SQLException("Batch ending at line " + line + " failed: " + e.getMessage(), e.getSQLState(), e);
+        }
+    }
+
+    /** Write the whole dataset to {@code out}; returns the number of rows written. Does not close {@code out}. */
+    public static long exportData(Dataset dataset, Format format, OutputStream out) throws IOException, SQLException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long rows = 0;
+        try (Connection conn = Database.getConnection();
+             PreparedStatement ps = conn.prepareStatement(dataset.selectSql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(Integer.MIN_VALUE); // MySQL: stream rows instead of buffering the result
+            try (ResultSet rs = ps.executeQuery()) {
+                Column[] cols = dataset.columns;
+                if (format == Format.JSON) {
+                    JsonGenerator g = JSON.createGenerator(w);
+                    g.writeStartArray();
+                    while (rs.next()) {
+                        g.writeStartObject();
+                        for (int i = 0; i < cols.length; i++) {
+                            g.writeFieldName(cols[i].name);
+                            if (cols[i].type == Type.INT) {
+                                int v = rs.getInt(i + 1);
+                                if (rs.wasNull()) g.writeNull();
+                                else g.writeNumber(v);
+                            } else {
+                                g.writeString(rs.getString(i + 1));
+                            }
+                        }
+                        g.writeEndObject();
+                        // one object per line keeps the file readable and diffable
+                        g.writeRaw('\n');
+                        rows++;
+                    }
+                    g.writeEndArray();
+                    g.flush();
+                } else {
+                    for (int i = 0; i < cols.length; i++) {
+                        if (i > 0) w.write(',');
+                        w.write(cols[i].name);
+                    }
+                    w.write('\n');
+                    while (rs.next()) {
+                        for (int i = 0; i < cols.length; i++) {
+                            if (i > 0) w.write(',');
+                            String v = rs.getString(i + 1);
+                            if (v != null) writeCsvValue(w, v);
+                        }
+                        w.write('\n');
+                        rows++;
+                    }
+                }
+            }
+        }
+        w.flush();
+        return rows;
+    }
+
+    private static void writeCsvValue(Writer w, String v) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < v.length() && !quote; i++) {
+            char c = v.charAt(i);
+            quote = c == ',' || c == ';' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            w.write(v);
+            return;
+        }
+        w.write('"');
+        w.write(v.replace("\"", "\"\""));
+        w.write('"');
+    }
+
+    // ===== CSV =====
+
+    private static RowReader csvReader(Dataset dataset, InputStream in) throws IOException, ImportException {
+        BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        CsvParser p = new CsvParser(r);
+        List<String> header = p.readRecord();
+        if (header == null) throw new ImportException(1, "empty file");
+        if (!header.isEmpty() && header.get(0).startsWith("\uFEFF")) header.set(0, header.get(0).substring(1));
+        int[] positions = mapColumns(dataset, header, 1);
+        return new RowReader() {
+            @Override
+            public Object[] next() throws IOException, ImportException {
+                List<String> rec;
+                do {
+                    rec = p.readRecord();
+                    if (rec == null) return null;
+                } while (rec.size() == 1 && rec.get(0).isEmpty()); // blank line
+                Object[] row = new Object[dataset.columns.length];
+                for (int i = 0; i < row.length; i++) {
+                    String v = positions[i] < 0 || positions[i] >= rec.size() ? "" : rec.get(positions[i]).trim();
+                    row[i] = convert(dataset.columns[i], v.isEmpty() ? null : v, p.recordLine);
+                }
+                return row;
+            }
+
+            @Override
+            public long line() {
+                return p.recordLine;
+            }
+        };
+    }
+
+    // position of each dataset column in the header (-1 = absent)
+    private static int[] mapColumns(Dataset dataset, List<String> header, long line) throws ImportException {
+        Map<String, Integer> byName = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i).trim().toLowerCase(Locale.ROOT);
+            if (byName.put(name, i) != null) throw new ImportException(line, "duplicate column " + name);
+        }
+        int[] positions = new int[dataset.columns.length];
+        for (int i = 0; i < positions.length; i++) {
+            Integer pos = byName.remove(dataset.columns[i].name);
+            if (pos == null && dataset.columns[i].required) {
+                throw new ImportException(line, "missing column " + dataset.columns[i].name);
+            }
+            positions[i] = pos == null ? -1 : pos;
+        }
+        if (!byName.isEmpty()) throw new ImportException(line, "unknown column(s) " + byName.keySet());
+        return positions;
+    }
+
+    private static Object convert(Column c, String v, long line) throws ImportException {
+        if (v == null) {
+            if (c.required) throw new ImportException(line, c.name + " is required");
+            return null;
+        }
+        if (c.type == Type.TEXT) return v;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            throw new ImportException(line, c.name + " must be a whole number, got \"" + v + "\"");
+        }
+    }
+
+    // RFC 4180 records: quoted fields may contain the separator, quotes ("") and line breaks.
+    static final class CsvParser {
+        private final BufferedReader in;
+        private final char separator;
+        private long line = 1;      // line the reader is on
+        long recordLine;            // line the last record started on
+
+        CsvParser(BufferedReader in) throws IOException {
+            this.in = in;
+            // ';' if the header has no ',' (spreadsheets in many locales save CSV that way)
+            in.mark(64 * 1024);
+            String header = in.readLine();
+            in.reset();
+            separator = header != null && header.indexOf(',') < 0 && header.indexOf(';') >= 0 ? ';' : ',';
+        }
+
+        List<String> readRecord() throws IOException {
+            int c = in.read();
+            if (c < 0) return null;
+            recordLine = line;
+            List<String> out = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (c >= 0) {
+                char ch = (char) c;
+                if (quoted) {
+                    if (ch == '"') {
+                        in.mark(1);
+                        if (in.read() == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            in.reset();
+                        }
+                    } else {
+                        if (ch == '\n') line++;
+                        field.append(ch);
+                    }
+                } else if (ch == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (ch == separator) {
+                    out.add(field.toString());
+                    field.setLength(0);
+                } else if (ch == '\n' || ch == '\r') {
+                    if (ch == '\r') {
+                        in.mark(1);
+                        if (in.read() != '\n') in.reset();
+                    }
+                    line++;
+                    break;
+                } else {
+                    field.append(ch);
+                }
+                c = in.read();
+            }
+            out.add(field.toString());
+            return out;
+        }
+    }
+
+    // ===== JSON =====
+
+    private static RowReader jsonReader(Dataset dataset, InputStream in) throws IOException, ImportException {
+        JsonParser p = JSON.createParser(in);
+        if (p.nextToken() != JsonToken.START_ARRAY) {
+            throw new ImportException(p.currentLocation().getLineNr(), "expected a JSON array of objects");
+        }
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < dataset.columns.length; i++) index.put(dataset.columns[i].name, i);
+        return new RowReader() {
+            long line = 1;
+
+            @Override
+            public Object[] next() throws IOException, ImportException {
+                JsonToken t = p.nextToken();
+                if (t == JsonToken.END_ARRAY || t == null) return null;
+                line = p.currentLocation().getLineNr();
+                if (t != JsonToken.START_OBJECT) throw new ImportException(line, "expected an object");
+                String[] raw = new String[dataset.columns.length];
+                while ((t = p.nextToken()) == JsonToken.FIELD_NAME) {
+                    String name = p.currentName().toLowerCase(Locale.ROOT);
+                    Integer i = index.get(name);
+                    if (i == null) throw new ImportException(p.currentLocation().getLineNr(), "unknown field " + name);
+                    t = p.nextToken();
+                    if (t == JsonToken.VALUE_NULL) raw[i] = null;
+                    else if (t.isScalarValue()) raw[i] = p.getText().trim();
+                    else throw new ImportException(p.currentLocation().getLineNr(), name + " must be a plain value");
+                }
+                Object[] row = new Object[raw.length];
+                for (int i = 0; i < row.length; i++) {
+                    String v = raw[i];
+                    row[i] = convert(dataset.columns[i], v == null || v.isEmpty() ? null : v, line);
+                }
+                return row;
+            }
+
+            @Override
+            public long line() {
+                return line;
+            }
+        };
+    }
+}
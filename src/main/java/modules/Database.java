@@ -2,6 +2,13 @@ package modules;
 
 import java.sql.*;
 import java.util.logging.Logger;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.*; // added for List/Map etc.
 
 public class Database {
@@ -10,46 +17,151 @@ public class Database {
     private static final String DB_HOST = Config.getDatabaseHost();
     private static final String DB_PORT = Config.getDatabasePort();
     private static final String DB_NAME = Config.getDatabaseName();
-    private static final String DB_URL = "jdbc:mysql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME;
+    private static final int STATEMENT_CACHE_SIZE = Config.getDatabaseStatementCacheSize();
+    // rewriteBatchedStatements: a JDBC batch goes to the server in a few packets instead of one per row.
+    // Server-side prepared statements only pay off when they are reused, i.e. with the pool's statement cache.
+    // DB_URL, if set, is used as is (the load generator points it at an embedded database).
+    private static final String DB_URL = Config.getDatabaseUrl() != null ? Config.getDatabaseUrl()
+            : "jdbc:mysql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME
+            + "?rewriteBatchedStatements=true"
+            + (STATEMENT_CACHE_SIZE > 0 ? "&useServerPrepStmts=true" : "");
 
     private static final String DB_USER = Config.getDatabaseUser();
     private static final String DB_PASSWORD = Config.getDatabasePassword();
 
-    private static Connection connection;
+    private static final long POOL_VALIDATION_INTERVAL_MS = 30000;
 
+    private static final ConnectionPool POOL = new ConnectionPool(
+            DB_URL, DB_USER, DB_PASSWORD,
+            Config.getDatabasePoolSize(), Config.getDatabasePoolTimeoutMs(),
+            POOL_VALIDATION_INTERVAL_MS, Config.getDatabasePoolLeakThresholdMs(), STATEMENT_CACHE_SIZE);
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(POOL::close, "db-pool-shutdown"));
+    }
+
+    /**
+     * Borrow a pooled connection. Always use it in try-with-resources:
+     * close() returns the connection to the pool instead of closing it.
+     */
     public static Connection getConnection() throws SQLException {
-        if (connection == null || !connection.isValid(2)) {
-            try {
-                connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            } catch (SQLException e) {
-                throw e; // Re-throw the exception for further handling
-            }
+        return POOL.borrow();
+    }
+
+    public static ConnectionPool.Stats getPoolStats() {
+        return POOL.stats();
+    }
+
+    // Reference data (branches, statuses) changes rarely: serve it from memory.
+    // Availability-dependent lists are invalidated explicitly by the methods that change car status/branch;
+    // the TTL only bounds staleness for edits made outside this process.
+    private static final CachedValue<BranchIndex> ALL_BRANCHES =
+            new CachedValue<>("branches", 10, TimeUnit.MINUTES, () -> new BranchIndex(loadAllBranches()));
+    private static final CachedValue<List<Branch>> BRANCHES_WITH_AVAILABLE_CARS =
+            new CachedValue<>("branchesWithAvailableCars", 60, TimeUnit.SECONDS, Database::loadBranchesWithAvailableCars);
+    private static final CachedValue<List<CarStatus>> CAR_STATUSES =
+            new CachedValue<>("carStatuses", 10, TimeUnit.MINUTES, Database::loadCarStatuses);
+
+    private static final class BranchIndex {
+        final List<Branch> all;
+        final Map<Integer, Branch> byId = new HashMap<>();
+
+        BranchIndex(List<Branch> all) {
+            this.all = all;
+            for (Branch b : all) byId.put(b.id(), b);
         }
-        return connection;
     }
 
+    // New: list all branches (used for return branch selection)
+    public static List<Branch> getAllBranches() throws SQLException {
+        return ALL_BRANCHES.get().all;
+    }
+
+    // New: list branches that have at least one rentable car (status_id 1 or 2)
+    public static List<Branch> getBranchesWithAvailableCars() throws SQLException {
+        return BRANCHES_WITH_AVAILABLE_CARS.get();
+    }
+
+    // New: list all car statuses
+    public static List<CarStatus> listCarStatuses() throws SQLException {
+        return CAR_STATUSES.get();
+    }
+
+    // call after anything that changes which cars are available where
+    public static void invalidateAvailability() {
+        BRANCHES_WITH_AVAILABLE_CARS.invalidate();
+    }
+
+    // drop all cached reference data, e.g. after editing branches or statuses directly in the DB
+    public static void invalidateReferenceData() {
+        ALL_BRANCHES.invalidate();
+        BRANCHES_WITH_AVAILABLE_CARS.invalidate();
+        CAR_STATUSES.invalidate();
+    }
+
+    public static List<CachedValue<?>> getReferenceCaches() {
+        return List.of(ALL_BRANCHES, BRANCHES_WITH_AVAILABLE_CARS, CAR_STATUSES);
+    }
+
+    // Date-based availability. A car with status 1 (available) or 2 (booked) can be rented for any dates
+    // that do not overlap one of its rentals; other statuses (e.g. 4, service) take the car out entirely.
+    // The in-memory index answers range queries; Rentals is re-checked in SQL when booking.
+    // Recommended index: Rentals(car_id, start_date, end_date).
+    private static final AvailabilityIndex AVAILABILITY = new AvailabilityIndex();
+    private static final long AVAILABILITY_RELOAD_NANOS = TimeUnit.MINUTES.toNanos(5);
+    // a reload starts this early, so the index is normally replaced before it expires
+    private static final long AVAILABILITY_REFRESH_NANOS = TimeUnit.MINUTES.toNanos(4);
+    private static final long AVAILABILITY_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // attempts per reload when bookings keep changing the index while Rentals is read
+    private static final int AVAILABILITY_RELOAD_ATTEMPTS = 3;
+    // reloads run here, never on a handler thread; meanwhile handlers use the old index or SQL
+    private static final ExecutorService AVAILABILITY_LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "availability-reload");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicBoolean AVAILABILITY_RELOADING = new AtomicBoolean();
+    private static volatile long availabilityAttemptAt; // System.nanoTime() of the last reload started, 0 = never
+    private static volatile long availabilityLoadedAt; // System.nanoTime() of the last reload, 0 = never
+    private static volatile LocalDate availabilityHorizon; // index holds every rental ending on or after this date
+    private static final AtomicLong BOOKINGS = new AtomicLong();
+    private static final AtomicLong BOOKING_CONFLICTS = new AtomicLong();
+
+    // told the id of every rental booked, rescheduled or deleted here (after commit); see setRentalListener
+    private static volatile java.util.function.IntConsumer rentalListener;
+
     // small functional interface to allow retries
     // Сделано public static, чтобы другие пакеты могли передавать лямбды в withUserRetries(...)
     public static interface SQLSupplier<T> {
         T get() throws SQLException;
     }
 
-    // retry helper: retries transient/recoverable SQL exceptions
-    private static <T> T runWithRetries(SQLSupplier<T> action) throws SQLException {
+    // retry helper: retries transient/recoverable SQL exceptions.
+    // name = calling method; the whole call (with retries) is timed in bot_db_query_seconds{method=name}
+    private static <T> T runWithRetries(String name, SQLSupplier<T> action) throws SQLException {
         final int MAX_ATTEMPTS = 3;
         long backoff = 150; // ms
-        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
-            try {
-                return action.get();
-            } catch (SQLTransientException | SQLRecoverableException e) {
-                LOGGER.warning("Transient DB error on attempt " + attempt + ": " + e.getMessage());
-                if (attempt == MAX_ATTEMPTS) throw e;
-                try { Thread.sleep(backoff); } catch (InterruptedException ignored) {}
-                backoff *= 2;
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                try {
+                    return action.get();
+                } catch (SQLTransientException | SQLRecoverableException e) {
+                    LOGGER.warning("Transient DB error in " + name + " on attempt " + attempt + ": " + e.getMessage());
+                    if (attempt == MAX_ATTEMPTS) throw e;
+                    Metrics.counter("bot_db_retries_total", "method", name).increment();
+                    try { Thread.sleep(backoff); } catch (InterruptedException ignored) {}
+                    backoff *= 2;
+                }
             }
+            // should not reach here
+            throw new SQLException("Failed after retries");
+        } catch (SQLException | RuntimeException e) {
+            Metrics.counter("bot_db_errors_total", "method", name).increment();
+            throw e;
+        } finally {
+            Metrics.timer("bot_db_query_seconds", "method", name).recordSince(start);
         }
-        // should not reach here
-        throw new SQLException("Failed after retries");
     }
 
     /**
@@ -66,6 +178,7 @@ public class Database {
             } catch (SQLException e) {
                 LOGGER.warning("DB error (attempt " + attempt + "): " + e.getClass().getSimpleName() + " - " + e.getMessage());
                 if (attempt < MAX_ATTEMPTS) {
+                    Metrics.counter("bot_db_retries_total", "method", "withUserRetries").increment();
                     try { mi.sendMessage(chatId, "Work in progress... ⏳"); } catch (Exception ignored) {}
                     try { Thread.sleep(backoff); } catch (InterruptedException ignored) {}
                     backoff *= 2;
@@ -79,11 +192,12 @@ public class Database {
         return null;
     }
 
+    // sign-in: always asks the DB, the uniqueness filters miss users created by other processes until rebuilt
     public static boolean isUser(String login) throws SQLException {
-        return runWithRetries(() -> {
-            Connection connection = getConnection();
+        return runWithRetries("isUser", () -> {
             String sql = "select 1 from Users where login = ? limit 1";
-            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            try (Connection connection = getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
                 preparedStatement.setString(1, login);
                 try (ResultSet resultSet = preparedStatement.executeQuery()) {
                     return resultSet.next();
@@ -92,44 +206,162 @@ public class Database {
         });
     }
 
+    // Check a login's password. The hash is computed on PasswordHasher's pool without holding a connection.
+    // Plaintext rows and hashes below the configured cost are rehashed after a successful check.
     public static boolean verifyPassword(String login, String password) throws SQLException {
-        return runWithRetries(() -> {
-            Connection connection = getConnection();
+        String stored = runWithRetries("verifyPassword", () -> {
             String sql = "SELECT password FROM Users WHERE login = ?";
-            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            try (Connection connection = getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
                 preparedStatement.setString(1, login);
                 try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                    if (resultSet.next()) {
-                        String dbPass = resultSet.getString("password");
-                        return dbPass != null && dbPass.equals(password);
-                    }
-                    return false;
+                    return resultSet.next() ? resultSet.getString("password") : null;
                 }
             }
         });
+        if (!PasswordHasher.verify(password, stored)) return false;
+        if (PasswordHasher.needsRehash(stored)) {
+            try {
+                upgradePasswordHash(login, stored, PasswordHasher.hash(password));
+            } catch (SQLException e) {
+                // login still succeeds; the upgrade is retried on the next login
+                LOGGER.warning("Could not upgrade password hash for " + login + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    // replace the stored value only if nobody changed it since we read it
+    private static void upgradePasswordHash(String login, String oldValue, String newHash) throws SQLException {
+        runWithRetries("upgradePasswordHash", () -> {
+            String sql = "UPDATE Users SET password = ? WHERE login = ? AND password = ?";
+            try (Connection connection = getConnection();
+                 PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, newHash);
+                ps.setString(2, login);
+                ps.setString(3, oldValue);
+                return ps.executeUpdate();
+            }
+        });
     }
 
+    // the password is stored as a salted PBKDF2 hash (see PasswordHasher)
     public static void createUserWithPassword(String login, String password, String email, String phone, String driverLicense) throws SQLException {
-        runWithRetries(() -> {
-            Connection connection = getConnection();
+        String passwordHash = PasswordHasher.hash(password);
+        runWithRetries("createUserWithPassword", () -> {
             String sql = "INSERT INTO Users (login, phone_number, license_id, email, password) VALUES (?, ?, ?, ?, ?)";
-            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            try (Connection connection = getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
                 preparedStatement.setString(1, login);
                 preparedStatement.setString(2, phone);
                 preparedStatement.setString(3, driverLicense);
                 preparedStatement.setString(4, email);
-                preparedStatement.setString(5, password);
+                preparedStatement.setString(5, passwordHash);
                 preparedStatement.executeUpdate();
             }
             return null;
         });
+        UniquenessService.record(login, email, phone, driverLicense);
+    }
+
+    /**
+     * Sign-up: create the user unless login, email, phone or license is already taken.
+     * Returns the taken fields (empty = user created). The candidate rows are found with one query over the
+     * unique columns; the unique constraints decide if another sign-up for the same values wins the race.
+     */
+    public static EnumSet<UniquenessService.Field> registerUser(String login, String password, String email, String phone, String driverLicense) throws SQLException {
+        EnumSet<UniquenessService.Field> taken = findTakenUserFields(login, email, phone, driverLicense);
+        if (!taken.isEmpty()) return taken;
+        try {
+            createUserWithPassword(login, password, email, phone, driverLicense);
+            return taken;
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // lost a race with another sign-up, possibly in another process the filters have not seen: ask the DB
+            taken = findTakenUserFields(login, email, phone, driverLicense, false);
+            if (taken.isEmpty()) throw e;
+            return taken;
+        }
+    }
+
+    // which of the values already belong to a user; fields the Bloom filters rule out are not queried at all
+    public static EnumSet<UniquenessService.Field> findTakenUserFields(String login, String email, String phone, String driverLicense) throws SQLException {
+        return findTakenUserFields(login, email, phone, driverLicense, true);
+    }
+
+    private static EnumSet<UniquenessService.Field> findTakenUserFields(String login, String email, String phone, String driverLicense,
+                                                                        boolean useFilters) throws SQLException {
+        String[] values = {login, email, phone, driverLicense};
+        String[] columns = {"login", "email", "phone_number", "license_id"};
+        UniquenessService.Field[] fields = UniquenessService.Field.values();
+        List<Integer> check = new ArrayList<>(4);
+        for (int i = 0; i < fields.length; i++) {
+            if (values[i] == null) continue;
+            if (!useFilters || UniquenessService.mightExist(fields[i], values[i])) check.add(i);
+        }
+        EnumSet<UniquenessService.Field> taken = EnumSet.noneOf(UniquenessService.Field.class);
+        if (check.isEmpty()) return taken;
+
+        StringBuilder sql = new StringBuilder("SELECT login, email, phone_number, license_id FROM Users WHERE ");
+        for (int k = 0; k < check.size(); k++) {
+            if (k > 0) sql.append(" OR ");
+            sql.append(columns[check.get(k)]).append(" = ?");
+        }
+        sql.append(" LIMIT 4");
+        return runWithRetries("findTakenUserFields", () -> {
+            try (Connection connection = getConnection();
+                 PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+                for (int k = 0; k < check.size(); k++) ps.setString(k + 1, values[check.get(k)]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        for (int i : check) {
+                            String v = rs.getString(i + 1);
+                            if (v != null && v.equalsIgnoreCase(values[i].trim())) taken.add(fields[i]);
+                        }
+                    }
+                }
+            }
+            return taken;
+        });
+    }
+
+    static int countUsers() throws SQLException {
+        return runWithRetries("countUsers", () -> {
+            try (Connection connection = getConnection();
+                 PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM Users");
+                 ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    interface UserKeyConsumer {
+        void accept(String login, String email, String phone, String license);
+    }
+
+    // stream the unique columns of every user (for UniquenessService)
+    static void forEachUserKey(UserKeyConsumer consumer) throws SQLException {
+        runWithRetries("forEachUserKey", () -> {
+            try (Connection connection = getConnection();
+                 PreparedStatement ps = connection.prepareStatement(
+                         "SELECT login, email, phone_number, license_id FROM Users",
+                         ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(Integer.MIN_VALUE); // MySQL: stream rows instead of buffering the table
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4));
+                    }
+                }
+            }
+            return null;
+        });
     }
 
     public static boolean isEmailUsed(String email) throws SQLException {
-        return runWithRetries(() -> {
-            Connection connection = getConnection();
+        if (!UniquenessService.mightExist(UniquenessService.Field.EMAIL, email)) return false;
+        return runWithRetries("isEmailUsed", () -> {
             String sql = "SELECT 1 FROM Users WHERE email = ? LIMIT 1";
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (Connection connection = getConnection();
+                 PreparedStatement ps = connection.prepareStatement(sql)) {
                 ps.setString(1, email);
                 try (ResultSet rs = ps.executeQuery()) {
                     return rs.next();
@@ -139,10 +371,11 @@ public class Database {
     }
 
     public static boolean isPhoneUsed(String phone) throws SQLException {
-        return runWithRetries(() -> {
-            Connection connection = getConnection();
+        if (!UniquenessService.mightExist(UniquenessService.Field.PHONE, phone)) return false;
+        return runWithRetries("isPhoneUsed", () -> {
             String sql = "SELECT 1 FROM Users WHERE phone_number = ? LIMIT 1";
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (Connection connection = getConnection();
+                 PreparedStatement ps = connection.prepareStatement(sql)) {
                 ps.setString(1, phone);
                 try (ResultSet rs = ps.executeQuery()) {
                     return rs.next();
@@ -152,10 +385,11 @@ public class Database {
     }
 
     public static boolean isLicenseUsed(String driverLicense) throws SQLException {
-        return runWithRetries(() -> {
-            Connection connection = getConnection();
+        if (!UniquenessService.mightExist(UniquenessService.Field.LICENSE, driverLicense)) return false;
+        return runWithRetries("isLicenseUsed", () -> {
             String sql = "SELECT 1 FROM Users WHERE license_id = ? LIMIT 1";
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (Connection connection = getConnection();
+                 PreparedStatement ps = connection.prepareStatement(sql)) {
                 ps.setString(1, driverLicense);
                 try (ResultSet rs = ps.executeQuery()) {
                     return rs.next();
@@ -165,10 +399,10 @@ public class Database {
     }
 
     public static boolean isAdmin(String login) throws SQLException {
-        return runWithRetries(() -> {
-            Connection connection = getConnection();
+        return runWithRetries("isAdmin", () -> {
             String sql = "SELECT isAdmin FROM Users WHERE login = ? LIMIT 1";
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (Connection connection = getConnection();
+                 PreparedStatement ps = connection.prepareStatement(sql)) {
                 ps.setString(1, login);
                 try (ResultSet rs = ps.executeQuery()) {
                     if (!rs.next()) return false;
@@ -182,97 +416,215 @@ public class Database {
 
     // New: set isAdmin flag for a login (returns true if a row was updated)
     public static boolean setAdminStatus(String login, boolean isAdmin) throws SQLException {
-        return runWithRetries(() -> {
-            Connection connection = getConnection();
+        return runWithRetries("setAdminStatus", () -> {
             String sql = "UPDATE Users SET isAdmin = ? WHERE login = ?";
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (Connection connection = getConnection();
+                 PreparedStatement ps = connection.prepareStatement(sql)) {
                 ps.setInt(1, isAdmin ? 1 : 0);
                 ps.setString(2, login);
                 int updated = ps.executeUpdate();
+                if (updated > 0) PrincipalCache.updateAdmin(login, isAdmin);
                 return updated > 0;
             }
         });
     }
 
-    // New: list branches that have at least one available car (status_id = 1)
-    public static List<Map<String,Object>> getBranchesWithAvailableCars() throws SQLException {
-        return runWithRetries(() -> {
+    // branches that have at least one rentable car (status_id 1 or 2, dates are checked later); cached, see getBranchesWithAvailableCars
+    private static List<Branch> loadBranchesWithAvailableCars() throws SQLException {
+        return runWithRetries("loadBranchesWithAvailableCars", () -> {
             String sql = "SELECT b.id, b.city, b.street, b.building_number " +
                     "FROM Branch b " +
                     "INNER JOIN Cars c ON c.branch_id = b.id " +
-                    "WHERE c.status_id = 1 " +
+                    "WHERE c.status_id IN (1, 2) " +
                     "GROUP BY b.id, b.city, b.street, b.building_number " +
                     "ORDER BY b.id";
-            List<Map<String,Object>> out = new ArrayList<>();
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql);
                  ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("id", rs.getInt("id"));
-                    m.put("city", rs.getString("city"));
-                    m.put("street", rs.getString("street"));
-                    m.put("building_number", rs.getInt("building_number"));
-                    out.add(m);
-                }
+                return List.copyOf(readBranches(rs));
             }
-            return out;
         });
     }
 
-    // New: list all branches (used for return branch selection)
-    public static List<Map<String,Object>> getAllBranches() throws SQLException {
-        return runWithRetries(() -> {
+    private static List<Branch> loadAllBranches() throws SQLException {
+        return runWithRetries("loadAllBranches", () -> {
             String sql = "SELECT id, city, street, building_number FROM Branch ORDER BY id";
-            List<Map<String,Object>> out = new ArrayList<>();
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql);
                  ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("id", rs.getInt("id"));
-                    m.put("city", rs.getString("city"));
-                    m.put("street", rs.getString("street"));
-                    m.put("building_number", rs.getInt("building_number"));
-                    out.add(m);
+                return List.copyOf(readBranches(rs));
+            }
+        });
+    }
+
+    // columns: id, city, street, building_number
+    private static List<Branch> readBranches(ResultSet rs) throws SQLException {
+        List<Branch> out = new ArrayList<>();
+        while (rs.next()) {
+            out.add(new Branch(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4)));
+        }
+        return out;
+    }
+
+    // New: cars available in a branch today (see getCarsAvailableInBranch(int, LocalDate, LocalDate))
+    public static List<Car> getCarsAvailableInBranch(int branchId) throws SQLException {
+        LocalDate today = LocalDate.now();
+        return getCarsAvailableInBranch(branchId, today, today);
+    }
+
+    // cars in a branch that are rentable and have no rental overlapping [from, to] (inclusive)
+    public static List<Car> getCarsAvailableInBranch(int branchId, LocalDate from, LocalDate to) throws SQLException {
+        if (!isAvailabilityIndexUsable(from)) {
+            return getCarsAvailableInBranchSql(branchId, from, to);
+        }
+        List<Car> candidates = runWithRetries("getCarsAvailableInBranch", () -> {
+            String sql = "SELECT c.id, c.name, c.release_year, t.type_name, c.branch_id, c.status_id " +
+                    "FROM Cars c " +
+                    "INNER JOIN CarType t ON t.id = c.type_id " +
+                    "WHERE c.branch_id = ? AND c.status_id IN (1, 2) " +
+                    "ORDER BY c.id";
+            try (Connection conn = getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, branchId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return RowMappers.readAvailableCars(rs);
                 }
             }
-            return out;
         });
+        List<Car> out = new ArrayList<>(candidates.size());
+        for (Car c : candidates) {
+            if (AVAILABILITY.isFree(c.id(), from, to)) out.add(c);
+        }
+        return out;
     }
 
-    // New: cars available in a branch (status_id = 1), returning maps (no DTO)
-    public static List<Map<String,Object>> getCarsAvailableInBranch(int branchId) throws SQLException {
-        return runWithRetries(() -> {
-            String sql = "SELECT c.id, c.name, c.release_year, t.type_name, c.branch_id " +
+    // same answer straight from MySQL; used until the index is loaded and for dates before its horizon
+    private static List<Car> getCarsAvailableInBranchSql(int branchId, LocalDate from, LocalDate to) throws SQLException {
+        return runWithRetries("getCarsAvailableInBranchSql", () -> {
+            String sql = "SELECT c.id, c.name, c.release_year, t.type_name, c.branch_id, c.status_id " +
                     "FROM Cars c " +
                     "INNER JOIN CarType t ON t.id = c.type_id " +
-                    "WHERE c.branch_id = ? AND c.status_id = 1 " +
+                    "WHERE c.branch_id = ? AND c.status_id IN (1, 2) " +
+                    "AND NOT EXISTS (SELECT 1 FROM Rentals r " +
+                    "WHERE r.car_id = c.id AND r.start_date <= ? AND r.end_date >= ?) " +
                     "ORDER BY c.id";
-            List<Map<String,Object>> out = new ArrayList<>();
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.setInt(1, branchId);
+                ps.setObject(2, to);
+                ps.setObject(3, from);
                 try (ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        Map<String,Object> m = new HashMap<>();
-                        m.put("id", rs.getInt("id"));
-                        m.put("name", rs.getString("name"));
-                        Object ry = rs.getObject("release_year");
-                        m.put("release_year", ry == null ? null : rs.getInt("release_year"));
-                        m.put("type_name", rs.getString("type_name"));
-                        m.put("branch_id", rs.getInt("branch_id"));
-                        out.add(m);
-                    }
+                    return RowMappers.readAvailableCars(rs);
                 }
             }
-            return out;
         });
     }
 
-    // New: get single car by id (returns map or null)
-    public static Map<String,Object> getCarById(int carId) throws SQLException {
-        return runWithRetries(() -> {
+    // New: can this car be booked for [from, to]? Quick check for handlers; createRental re-checks under a lock.
+    public static boolean isCarFree(int carId, LocalDate from, LocalDate to) throws SQLException {
+        if (isAvailabilityIndexUsable(from)) {
+            return AVAILABILITY.isFree(carId, from, to);
+        }
+        return runWithRetries("isCarFree", () -> {
+            try (Connection conn = getConnection()) {
+                return !hasOverlappingRental(conn, carId, from, to, -1);
+            }
+        });
+    }
+
+    // true if another rental of the car overlaps [from, to]; call inside the booking transaction after lockCar
+    private static boolean hasOverlappingRental(Connection conn, int carId, LocalDate from, LocalDate to, int ignoreRentalId) throws SQLException {
+        String sql = "SELECT 1 FROM Rentals WHERE car_id = ? AND start_date <= ? AND end_date >= ? AND id <> ? LIMIT 1";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, carId);
+            ps.setObject(2, to);
+            ps.setObject(3, from);
+            ps.setInt(4, ignoreRentalId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // lock the car row so bookings of the same car are serialized; returns its status_id or null if missing
+    private static Integer lockCar(Connection conn, int carId) throws SQLException {
+        String sql = "SELECT status_id FROM Cars WHERE id = ? FOR UPDATE";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, carId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                int status = rs.getInt(1);
+                return rs.wasNull() ? null : status;
+            }
+        }
+    }
+
+    // The index is used while fresh (loaded less than 5 minutes ago) and for ranges it fully covers; otherwise
+    // callers query Rentals. Reloads from Rentals run in the background so edits made outside this process
+    // are picked up; a failed or lost reload is retried no sooner than AVAILABILITY_RETRY_NANOS later.
+    private static boolean isAvailabilityIndexUsable(LocalDate from) {
+        long now = System.nanoTime();
+        long loadedAt = availabilityLoadedAt;
+        long attemptAt = availabilityAttemptAt;
+        if ((loadedAt == 0 || now - loadedAt > AVAILABILITY_REFRESH_NANOS)
+                && (attemptAt == 0 || now - attemptAt > AVAILABILITY_RETRY_NANOS)) {
+            scheduleAvailabilityReload();
+        }
+        LocalDate horizon = availabilityHorizon;
+        return loadedAt != 0 && now - loadedAt <= AVAILABILITY_RELOAD_NANOS && horizon != null && !from.isBefore(horizon);
+    }
+
+    private static void scheduleAvailabilityReload() {
+        if (!AVAILABILITY_RELOADING.compareAndSet(false, true)) return;
+        availabilityAttemptAt = System.nanoTime();
+        try {
+            AVAILABILITY_LOADER.execute(() -> {
+                try {
+                    reloadAvailabilityIndex();
+                } catch (SQLException | RuntimeException e) {
+                    LOGGER.warning("Availability index reload failed, using SQL until it succeeds: " + e.getMessage());
+                } finally {
+                    AVAILABILITY_RELOADING.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            AVAILABILITY_RELOADING.set(false);
+        }
+    }
+
+    private static void reloadAvailabilityIndex() throws SQLException {
+        for (int attempt = 1; attempt <= AVAILABILITY_RELOAD_ATTEMPTS; attempt++) {
+            long modCount = AVAILABILITY.getModCount();
+            LocalDate today = LocalDate.now();
+            List<AvailabilityIndex.Booking> rows = runWithRetries("reloadAvailabilityIndex", () -> {
+                String sql = "SELECT id, car_id, start_date, end_date FROM Rentals WHERE end_date >= ?";
+                List<AvailabilityIndex.Booking> out = new ArrayList<>();
+                try (Connection conn = getConnection();
+                     PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setObject(1, today);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            out.add(new AvailabilityIndex.Booking(rs.getInt(1), rs.getInt(2),
+                                    rs.getObject(3, LocalDate.class), rs.getObject(4, LocalDate.class)));
+                        }
+                    }
+                }
+                return out;
+            });
+            // a booking committed while we were reading would be lost by the swap; read again
+            if (AVAILABILITY.replaceAll(rows, modCount)) {
+                availabilityHorizon = today;
+                availabilityLoadedAt = System.nanoTime();
+                LOGGER.fine("Availability index loaded: " + rows.size() + " rentals");
+                return;
+            }
+        }
+        LOGGER.info("Availability index reload kept losing to concurrent bookings; retrying later");
+    }
+
+    // New: get single car by id (returns null if not found)
+    public static Car getCarById(int carId) throws SQLException {
+        return runWithRetries("getCarById", () -> {
             String sql = "SELECT c.id, c.name, c.release_year, t.type_name, c.branch_id, c.status_id, cs.status_name " +
                     "FROM Cars c " +
                     "INNER JOIN CarType t ON t.id = c.type_id " +
@@ -283,121 +635,145 @@ public class Database {
                 ps.setInt(1, carId);
                 try (ResultSet rs = ps.executeQuery()) {
                     if (!rs.next()) return null;
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("id", rs.getInt("id"));
-                    m.put("name", rs.getString("name"));
-                    Object ry = rs.getObject("release_year");
-                    m.put("release_year", ry == null ? null : rs.getInt("release_year"));
-                    m.put("type_name", rs.getString("type_name"));
-                    m.put("branch_id", rs.getInt("branch_id"));
-                    m.put("status_id", rs.getInt("status_id"));
-                    m.put("status_name", rs.getString("status_name")); // <-- добавлено чтение названия статуса
-                    return m;
+                    return new Car(rs.getInt(1), rs.getString(2), RowMappers.getNullableInt(rs, 3), rs.getString(4),
+                            rs.getInt(5), null, rs.getInt(6), rs.getString(7));
                 }
             }
         });
     }
 
-    // New: get branch by id (returns map or null)
-    public static Map<String,Object> getBranchById(int branchId) throws SQLException {
-        return runWithRetries(() -> {
-            String sql = "SELECT id, city, street, building_number FROM Branch WHERE id = ? LIMIT 1";
+    // New: get branch by id (returns null if not found); served from the cached branch list
+    public static Branch getBranchById(int branchId) throws SQLException {
+        return ALL_BRANCHES.get().byId.get(branchId);
+    }
+
+    // New: map login -> user id (used when inserting rental)
+    public static Integer getUserIdByLogin(String login) throws SQLException {
+        return runWithRetries("getUserIdByLogin", () -> {
+            String sql = "SELECT id FROM Users WHERE login = ? LIMIT 1";
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, branchId);
+                ps.setString(1, login);
                 try (ResultSet rs = ps.executeQuery()) {
                     if (!rs.next()) return null;
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("id", rs.getInt("id"));
-                    m.put("city", rs.getString("city"));
-                    m.put("street", rs.getString("street"));
-                    m.put("building_number", rs.getInt("building_number"));
-                    return m;
+                    return rs.getInt(1);
                 }
             }
         });
     }
 
-    // New: map login -> user id (used when inserting rental)
-    public static Integer getUserIdByLogin(String login) throws SQLException {
-        return runWithRetries(() -> {
-            String sql = "SELECT id FROM Users WHERE login = ? LIMIT 1";
+    // New: user row by login (returns null if not found)
+    public static User getUserByLogin(String login) throws SQLException {
+        return runWithRetries("getUserByLogin", () -> {
+            String sql = "SELECT id, login, email, phone_number, license_id, isAdmin FROM Users WHERE login = ? LIMIT 1";
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.setString(1, login);
                 try (ResultSet rs = ps.executeQuery()) {
                     if (!rs.next()) return null;
-                    return rs.getInt("id");
+                    return new User(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getInt(6) != 0);
                 }
             }
         });
     }
 
-    // New: create rental (dates provided as java.sql.Date) and set car status to 2 in same transaction
+    // New: book a car; true only when the booking went through (see bookCar for the reason otherwise)
     public static boolean createRental(int carId, int userId, int startBranchId, int endBranchId, java.sql.Date startDate, java.sql.Date endDate) throws SQLException {
-        return runWithRetries(() -> {
-            Connection conn = getConnection();
-            boolean oldAutoCommit = conn.getAutoCommit();
-            try {
-                conn.setAutoCommit(false);
+        return bookCar(carId, userId, startBranchId, endBranchId, startDate, endDate) == BookingResult.BOOKED;
+    }
+
+    /**
+     * Book a car for [startDate, endDate] and mark it booked (status 2), in one transaction.
+     * The car row is locked first, so of two users racing for the same car and overlapping dates exactly one
+     * gets BOOKED and the other CAR_TAKEN; bookings of different cars do not wait for each other.
+     * A deadlock or lock wait timeout rolls back and is retried by runWithRetries.
+     */
+    public static BookingResult bookCar(int carId, int userId, int startBranchId, int endBranchId, java.sql.Date startDate, java.sql.Date endDate) throws SQLException {
+        LocalDate from = startDate.toLocalDate();
+        LocalDate to = endDate.toLocalDate();
+        BookingResult result = runWithRetries("bookCar", () -> {
+            try (Connection conn = getConnection()) {
+                boolean oldAutoCommit = conn.getAutoCommit();
+                try {
+                    conn.setAutoCommit(false);
 
-                String insertSql = "INSERT INTO Rentals (car_id, user_id, start_branch_id, end_branch_id, start_date, end_date) VALUES (?, ?, ?, ?, ?, ?)";
-                try (PreparedStatement psInsert = conn.prepareStatement(insertSql)) {
-                    psInsert.setInt(1, carId);
-                    psInsert.setInt(2, userId);
-                    psInsert.setInt(3, startBranchId);
-                    psInsert.setInt(4, endBranchId);
-                    psInsert.setDate(5, startDate);
-                    psInsert.setDate(6, endDate);
-                    int inserted = psInsert.executeUpdate();
-                    if (inserted <= 0) {
+                    Integer status = lockCar(conn, carId);
+                    if (status == null || (status != 1 && status != 2)) {
                         conn.rollback();
-                        return false;
+                        return BookingResult.CAR_UNAVAILABLE;
                     }
-                }
-
-                String updateCarSql = "UPDATE Cars SET status_id = ? WHERE id = ?";
-                try (PreparedStatement psUpdate = conn.prepareStatement(updateCarSql)) {
-                    psUpdate.setInt(1, 2); // booked
-                    psUpdate.setInt(2, carId);
-                    int updated = psUpdate.executeUpdate();
-                    if (updated <= 0) {
+                    if (hasOverlappingRental(conn, carId, from, to, -1)) {
                         conn.rollback();
-                        return false;
+                        return BookingResult.CAR_TAKEN;
                     }
-                }
 
-                conn.commit();
-                return true;
-            } catch (SQLException e) {
-                try { conn.rollback(); } catch (Exception ignored) {}
-                throw e;
-            } finally {
-                try { conn.setAutoCommit(oldAutoCommit); } catch (Exception ignored) {}
+                    int rentalId;
+                    String insertSql = "INSERT INTO Rentals (car_id, user_id, start_branch_id, end_branch_id, start_date, end_date) VALUES (?, ?, ?, ?, ?, ?)";
+                    try (PreparedStatement psInsert = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+                        psInsert.setInt(1, carId);
+                        psInsert.setInt(2, userId);
+                        psInsert.setInt(3, startBranchId);
+                        psInsert.setInt(4, endBranchId);
+                        psInsert.setDate(5, startDate);
+                        psInsert.setDate(6, endDate);
+                        psInsert.executeUpdate();
+                        try (ResultSet keys = psInsert.getGeneratedKeys()) {
+                            if (!keys.next()) throw new SQLException("No id generated for new rental");
+                            rentalId = keys.getInt(1);
+                        }
+                    }
+
+                    // conditional: never overwrite a status set by an admin (e.g. out of service) in the meantime
+                    String updateCarSql = "UPDATE Cars SET status_id = 2 WHERE id = ? AND status_id IN (1, 2)";
+                    try (PreparedStatement psUpdate = conn.prepareStatement(updateCarSql)) {
+                        psUpdate.setInt(1, carId);
+                        if (psUpdate.executeUpdate() <= 0) {
+                            conn.rollback();
+                            return BookingResult.CAR_UNAVAILABLE;
+                        }
+                    }
+
+                    conn.commit();
+                    AVAILABILITY.put(rentalId, carId, from, to);
+                    invalidateAvailability();
+                    rentalChanged(rentalId);
+                    return BookingResult.BOOKED;
+                } catch (SQLException e) {
+                    try { conn.rollback(); } catch (Exception ignored) {}
+                    throw e;
+                } finally {
+                    try { conn.setAutoCommit(oldAutoCommit); } catch (Exception ignored) {}
+                }
             }
         });
+        if (result == BookingResult.BOOKED) BOOKINGS.incrementAndGet();
+        else BOOKING_CONFLICTS.incrementAndGet();
+        return result;
+    }
+
+    // bookings that went through / were refused because the car was taken or unavailable
+    public static long getBookingCount() {
+        return BOOKINGS.get();
+    }
+
+    public static long getBookingConflictCount() {
+        return BOOKING_CONFLICTS.get();
     }
 
     // New: list active rentals for a given login using the RentalDetails view
-    public static List<Map<String,Object>> getActiveRentalsByLogin(String login) throws SQLException {
-        return runWithRetries(() -> {
-            String sql = "SELECT RentalID, `Car Name` AS car_name, `Start Date` AS start_date, `End Date` AS end_date, " +
-                         "`Start Branch` AS start_branch_addr, `End Branch` AS end_branch_addr " +
+    public static List<RentalDetail> getActiveRentalsByLogin(String login) throws SQLException {
+        return runWithRetries("getActiveRentalsByLogin", () -> {
+            String sql = "SELECT RentalID, `Car Name`, `Start Date`, `End Date`, `Start Branch`, `End Branch` " +
                          "FROM RentalDetails WHERE Login = ? ORDER BY RentalID";
-            List<Map<String,Object>> out = new ArrayList<>();
+            List<RentalDetail> out = new ArrayList<>();
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.setString(1, login);
                 try (ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
-                        Map<String,Object> m = new HashMap<>();
-                        m.put("rental_id", rs.getInt("RentalID"));
-                        m.put("car_name", rs.getString("car_name"));
-                        m.put("start_date", rs.getDate("start_date")); // java.sql.Date
-                        m.put("end_date", rs.getDate("end_date"));
-                        m.put("start_branch_addr", rs.getString("start_branch_addr"));
-                        m.put("end_branch_addr", rs.getString("end_branch_addr"));
-                        out.add(m);
+                        out.add(new RentalDetail(rs.getInt(1), rs.getString(2), login,
+                                rs.getObject(3, LocalDate.class), rs.getObject(4, LocalDate.class),
+                                rs.getString(5), rs.getString(6)));
                     }
                 }
             }
@@ -405,12 +781,12 @@ public class Database {
         });
     }
 
-    // New: get single rental by id (returns map or null)
-    public static Map<String,Object> getRentalById(int rentalId) throws SQLException {
-        return runWithRetries(() -> {
-            String sql = "SELECT r.id as rental_id, r.car_id, c.name as car_name, r.start_date, r.end_date, " +
-                         "b1.id as start_branch_id, CONCAT(b1.city, ', ', b1.street, ', ', b1.building_number) as start_branch_addr, " +
-                         "b2.id as end_branch_id, CONCAT(b2.city, ', ', b2.street, ', ', b2.building_number) as end_branch_addr " +
+    // New: get single rental by id (returns null if not found)
+    public static Rental getRentalById(int rentalId) throws SQLException {
+        return runWithRetries("getRentalById", () -> {
+            String sql = "SELECT r.id, r.car_id, c.name, r.start_date, r.end_date, " +
+                         "b1.id, CONCAT(b1.city, ', ', b1.street, ', ', b1.building_number), " +
+                         "b2.id, CONCAT(b2.city, ', ', b2.street, ', ', b2.building_number) " +
                          "FROM Rentals r " +
                          "INNER JOIN Cars c ON r.car_id = c.id " +
                          "INNER JOIN Branch b1 ON r.start_branch_id = b1.id " +
@@ -421,153 +797,233 @@ public class Database {
                 ps.setInt(1, rentalId);
                 try (ResultSet rs = ps.executeQuery()) {
                     if (!rs.next()) return null;
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("rental_id", rs.getInt("rental_id"));
-                    m.put("car_id", rs.getInt("car_id"));
-                    m.put("car_name", rs.getString("car_name"));
-                    m.put("start_date", rs.getDate("start_date"));
-                    m.put("end_date", rs.getDate("end_date"));
-                    m.put("start_branch_id", rs.getInt("start_branch_id"));
-                    m.put("start_branch_addr", rs.getString("start_branch_addr"));
-                    m.put("end_branch_id", rs.getInt("end_branch_id"));
-                    m.put("end_branch_addr", rs.getString("end_branch_addr"));
-                    return m;
+                    return new Rental(rs.getInt(1), rs.getInt(2), rs.getString(3),
+                            rs.getObject(4, LocalDate.class), rs.getObject(5, LocalDate.class),
+                            rs.getInt(6), rs.getString(7), rs.getInt(8), rs.getString(9));
                 }
             }
         });
     }
 
-    // New: delete rental by id and restore car status to 1 in same transaction
+    // New: delete rental by id; the car goes back to status 1 when it has no other rentals left
     public static boolean deleteRentalById(int rentalId) throws SQLException {
-        return runWithRetries(() -> {
-            Connection conn = getConnection();
-            boolean oldAuto = conn.getAutoCommit();
-            try {
-                conn.setAutoCommit(false);
-                // get car id
-                Integer carId = null;
-                String select = "SELECT car_id FROM Rentals WHERE id = ? LIMIT 1";
-                try (PreparedStatement ps = conn.prepareStatement(select)) {
-                    ps.setInt(1, rentalId);
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (rs.next()) carId = rs.getInt("car_id");
-                    }
-                }
-                if (carId == null) { conn.rollback(); return false; }
-
-                // lock car row and read current status
-                Integer currentStatus = null;
-                String selStatus = "SELECT status_id FROM Cars WHERE id = ? FOR UPDATE";
-                try (PreparedStatement ps = conn.prepareStatement(selStatus)) {
-                    ps.setInt(1, carId);
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (rs.next()) {
-                            currentStatus = rs.getInt("status_id");
-                            if (rs.wasNull()) currentStatus = null;
+        return runWithRetries("deleteRentalById", () -> {
+            try (Connection conn = getConnection()) {
+                boolean oldAuto = conn.getAutoCommit();
+                try {
+                    conn.setAutoCommit(false);
+                    // get car id
+                    Integer carId = null;
+                    String select = "SELECT car_id FROM Rentals WHERE id = ? LIMIT 1";
+                    try (PreparedStatement ps = conn.prepareStatement(select)) {
+                        ps.setInt(1, rentalId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (rs.next()) carId = rs.getInt("car_id");
                         }
                     }
-                }
+                    if (carId == null) { conn.rollback(); return false; }
 
-                // delete rental
-                String del = "DELETE FROM Rentals WHERE id = ?";
-                try (PreparedStatement ps = conn.prepareStatement(del)) {
-                    ps.setInt(1, rentalId);
-                    int d = ps.executeUpdate();
-                    if (d <= 0) { conn.rollback(); return false; }
-                }
+                    // lock car row and read current status
+                    Integer currentStatus = lockCar(conn, carId);
 
-                // restore car status = 1 only if current status is NOT 4
-                if (currentStatus == null || currentStatus != 4) {
-                    String upd = "UPDATE Cars SET status_id = ? WHERE id = ?";
-                    try (PreparedStatement ps = conn.prepareStatement(upd)) {
-                        ps.setInt(1, 1);
-                        ps.setInt(2, carId);
-                        int u = ps.executeUpdate();
-                        if (u <= 0) { conn.rollback(); return false; }
+                    // delete rental
+                    String del = "DELETE FROM Rentals WHERE id = ?";
+                    try (PreparedStatement ps = conn.prepareStatement(del)) {
+                        ps.setInt(1, rentalId);
+                        int d = ps.executeUpdate();
+                        if (d <= 0) { conn.rollback(); return false; }
                     }
-                }
 
-                conn.commit();
-                return true;
-            } catch (SQLException e) {
-                try { conn.rollback(); } catch (Exception ignored) {}
-                throw e;
-            } finally {
-                try { conn.setAutoCommit(oldAuto); } catch (Exception ignored) {}
+                    // restore car status = 1 only if current status is NOT 4 and no other rental remains
+                    boolean otherRentals;
+                    String others = "SELECT 1 FROM Rentals WHERE car_id = ? LIMIT 1";
+                    try (PreparedStatement ps = conn.prepareStatement(others)) {
+                        ps.setInt(1, carId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            otherRentals = rs.next();
+                        }
+                    }
+                    if ((currentStatus == null || currentStatus != 4) && !otherRentals) {
+                        String upd = "UPDATE Cars SET status_id = ? WHERE id = ?";
+                        try (PreparedStatement ps = conn.prepareStatement(upd)) {
+                            ps.setInt(1, 1);
+                            ps.setInt(2, carId);
+                            int u = ps.executeUpdate();
+                            if (u <= 0) { conn.rollback(); return false; }
+                        }
+                    }
+
+                    conn.commit();
+                    AVAILABILITY.remove(rentalId);
+                    invalidateAvailability();
+                    rentalChanged(rentalId);
+                    return true;
+                } catch (SQLException e) {
+                    try { conn.rollback(); } catch (Exception ignored) {}
+                    throw e;
+                } finally {
+                    try { conn.setAutoCommit(oldAuto); } catch (Exception ignored) {}
+                }
             }
         });
     }
 
-    // New: update rental start date
+    // New: update rental start date; refused (false) if the new range overlaps another rental of the car
     public static boolean updateRentalStartDate(int rentalId, java.sql.Date newStartDate) throws SQLException {
-        return runWithRetries(() -> {
-            String sql = "UPDATE Rentals SET start_date = ? WHERE id = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setDate(1, newStartDate);
-                ps.setInt(2, rentalId);
-                int u = ps.executeUpdate();
-                return u > 0;
-            }
-        });
+        return rescheduleRental(rentalId, newStartDate, null, null);
     }
 
-    // New: update rental end branch and end date
+    // New: update rental end branch and end date; refused (false) if the new range overlaps another rental of the car
     public static boolean updateRentalReturnBranchAndDate(int rentalId, int newEndBranchId, java.sql.Date newEndDate) throws SQLException {
-        return runWithRetries(() -> {
-            String sql = "UPDATE Rentals SET end_branch_id = ?, end_date = ? WHERE id = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, newEndBranchId);
-                ps.setDate(2, newEndDate);
-                ps.setInt(3, rentalId);
-                int u = ps.executeUpdate();
-                return u > 0;
+        return rescheduleRental(rentalId, null, newEndBranchId, newEndDate);
+    }
+
+    // change a rental's dates (null = keep) under the car lock, re-checking overlaps with the car's other rentals
+    private static boolean rescheduleRental(int rentalId, java.sql.Date newStartDate, Integer newEndBranchId, java.sql.Date newEndDate) throws SQLException {
+        return runWithRetries("rescheduleRental", () -> {
+            try (Connection conn = getConnection()) {
+                boolean oldAuto = conn.getAutoCommit();
+                try {
+                    conn.setAutoCommit(false);
+                    int carId;
+                    LocalDate from;
+                    LocalDate to;
+                    String select = "SELECT car_id, start_date, end_date FROM Rentals WHERE id = ? LIMIT 1";
+                    try (PreparedStatement ps = conn.prepareStatement(select)) {
+                        ps.setInt(1, rentalId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (!rs.next()) { conn.rollback(); return false; }
+                            carId = rs.getInt(1);
+                            from = newStartDate != null ? newStartDate.toLocalDate() : rs.getObject(2, LocalDate.class);
+                            to = newEndDate != null ? newEndDate.toLocalDate() : rs.getObject(3, LocalDate.class);
+                        }
+                    }
+
+                    lockCar(conn, carId);
+                    if (hasOverlappingRental(conn, carId, from, to, rentalId)) {
+                        conn.rollback();
+                        return false;
+                    }
+
+                    String sql = newEndBranchId != null
+                            ? "UPDATE Rentals SET start_date = ?, end_date = ?, end_branch_id = ? WHERE id = ?"
+                            : "UPDATE Rentals SET start_date = ?, end_date = ? WHERE id = ?";
+                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                        int i = 1;
+                        ps.setObject(i++, from);
+                        ps.setObject(i++, to);
+                        if (newEndBranchId != null) ps.setInt(i++, newEndBranchId);
+                        ps.setInt(i, rentalId);
+                        if (ps.executeUpdate() <= 0) { conn.rollback(); return false; }
+                    }
+
+                    conn.commit();
+                    AVAILABILITY.put(rentalId, carId, from, to);
+                    rentalChanged(rentalId);
+                    return true;
+                } catch (SQLException e) {
+                    try { conn.rollback(); } catch (Exception ignored) {}
+                    throw e;
+                } finally {
+                    try { conn.setAutoCommit(oldAuto); } catch (Exception ignored) {}
+                }
             }
         });
     }
 
-    // New: list ALL cars (no pagination) - used for in-memory pagination in AdminHandler
-    public static List<Map<String,Object>> listAllCars() throws SQLException {
-        return runWithRetries(() -> {
-            String sql = "SELECT c.id, c.name, c.release_year, c.branch_id, b.city, b.street, b.building_number, c.status_id, cs.status_name, t.type_name " +
+    // New: list ALL cars (no pagination). Admin browsing should use listCarsPage instead.
+    public static List<Car> listAllCars() throws SQLException {
+        return runWithRetries("listAllCars", () -> {
+            String sql = "SELECT c.id, c.name, c.release_year, t.type_name, c.branch_id, " +
+                    "CONCAT(b.city, ', ', b.street, ', ', b.building_number), c.status_id, cs.status_name " +
                     "FROM Cars c " +
                     "LEFT JOIN Branch b ON b.id = c.branch_id " +
                     "LEFT JOIN CarStatus cs ON cs.id = c.status_id " +
                     "LEFT JOIN CarType t ON t.id = c.type_id " +
                     "ORDER BY c.id";
-            List<Map<String,Object>> out = new ArrayList<>();
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql);
                  ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("id", rs.getInt("id"));
-                    m.put("name", rs.getString("name"));
-                    Object ry = rs.getObject("release_year");
-                    m.put("release_year", ry == null ? null : rs.getInt("release_year"));
-                    m.put("branch_id", rs.getInt("branch_id"));
-                    m.put("branch_city", rs.getString("city"));
-                    m.put("branch_street", rs.getString("street"));
-                    m.put("branch_building", rs.getObject("building_number"));
-                    m.put("status_id", rs.getInt("status_id"));
-                    m.put("status_name", rs.getString("status_name"));
-                    m.put("type_name", rs.getString("type_name"));
-                    out.add(m);
+                return RowMappers.readCars(rs);
+            }
+        });
+    }
+
+    // New: one page of cars ordered by id (keyset pagination), optionally filtered by branch/status.
+    // forward = next page after cursor; otherwise the page before cursor. cursor 0 = first page.
+    public static Page<Car> listCarsPage(CarFilter filter, int cursor, boolean forward, int limit) throws SQLException {
+        CarFilter f = filter == null ? CarFilter.ALL : filter;
+        boolean fwd = forward || cursor <= 0;
+        return runWithRetries("listCarsPage", () -> {
+            StringBuilder sql = new StringBuilder(
+                    "SELECT c.id, c.name, c.release_year, t.type_name, c.branch_id, " +
+                    "CONCAT(b.city, ', ', b.street, ', ', b.building_number), c.status_id, cs.status_name " +
+                    "FROM Cars c " +
+                    "LEFT JOIN Branch b ON b.id = c.branch_id " +
+                    "LEFT JOIN CarStatus cs ON cs.id = c.status_id " +
+                    "LEFT JOIN CarType t ON t.id = c.type_id ");
+            sql.append(fwd ? "WHERE c.id > ?" : "WHERE c.id < ?");
+            if (f.branchId() != null) sql.append(" AND c.branch_id = ?");
+            if (f.statusId() != null) sql.append(" AND c.status_id = ?");
+            sql.append(fwd ? " ORDER BY c.id ASC LIMIT ?" : " ORDER BY c.id DESC LIMIT ?");
+            try (Connection conn = getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                int i = 1;
+                ps.setInt(i++, fwd ? Math.max(cursor, 0) : cursor);
+                if (f.branchId() != null) ps.setInt(i++, f.branchId());
+                if (f.statusId() != null) ps.setInt(i++, f.statusId());
+                ps.setInt(i, limit + 1); // one extra row tells whether another page exists
+                try (ResultSet rs = ps.executeQuery()) {
+                    return toPage(RowMappers.readCars(rs), cursor, fwd, limit, Car::id);
                 }
             }
-            return out;
         });
     }
 
+    // New: one page of rentals from the RentalDetails view ordered by RentalID, optionally for one login
+    public static Page<RentalDetail> listRentalsPage(String login, int cursor, boolean forward, int limit) throws SQLException {
+        boolean fwd = forward || cursor <= 0;
+        return runWithRetries("listRentalsPage", () -> {
+            StringBuilder sql = new StringBuilder(
+                    "SELECT RentalID, `Car Name`, Login, `Start Date`, `End Date`, `Start Branch`, `End Branch` " +
+                    "FROM RentalDetails ");
+            sql.append(fwd ? "WHERE RentalID > ?" : "WHERE RentalID < ?");
+            if (login != null) sql.append(" AND Login = ?");
+            sql.append(fwd ? " ORDER BY RentalID ASC LIMIT ?" : " ORDER BY RentalID DESC LIMIT ?");
+            try (Connection conn = getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                int i = 1;
+                ps.setInt(i++, fwd ? Math.max(cursor, 0) : cursor);
+                if (login != null) ps.setString(i++, login);
+                ps.setInt(i, limit + 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return toPage(RowMappers.readRentalDetails(rs), cursor, fwd, limit, RentalDetail::rentalId);
+                }
+            }
+        });
+    }
+
+    // rows were fetched with LIMIT limit+1 in scan direction; trim the probe row and restore ascending order
+    private static <T> Page<T> toPage(List<T> rows, int cursor, boolean forward, int limit, java.util.function.ToIntFunction<T> idOf) {
+        boolean more = rows.size() > limit;
+        List<T> items = more ? new ArrayList<>(rows.subList(0, limit)) : rows;
+        if (!forward) Collections.reverse(items);
+        int first = items.isEmpty() ? 0 : idOf.applyAsInt(items.get(0));
+        int last = items.isEmpty() ? 0 : idOf.applyAsInt(items.get(items.size() - 1));
+        boolean hasPrevious = forward ? cursor > 0 : more;
+        boolean hasNext = forward ? more : true;
+        return new Page<>(Collections.unmodifiableList(items), first, last, hasPrevious, hasNext);
+    }
+
     // New: delete car by id
     public static boolean deleteCarById(int carId) throws SQLException {
-        return runWithRetries(() -> {
+        return runWithRetries("deleteCarById", () -> {
             String sql = "DELETE FROM Cars WHERE id = ?";
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.setInt(1, carId);
                 int u = ps.executeUpdate();
+                if (u > 0) invalidateAvailability();
                 return u > 0;
             }
         });
@@ -575,73 +1031,334 @@ public class Database {
 
     // New: move car to another branch (update branch_id)
     public static boolean moveCarToBranch(int carId, int branchId) throws SQLException {
-        return runWithRetries(() -> {
+        return runWithRetries("moveCarToBranch", () -> {
             String sql = "UPDATE Cars SET branch_id = ? WHERE id = ?";
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.setInt(1, branchId);
                 ps.setInt(2, carId);
                 int u = ps.executeUpdate();
+                if (u > 0) invalidateAvailability();
                 return u > 0;
             }
         });
     }
 
-    // New: list all car statuses
-    public static List<Map<String,Object>> listCarStatuses() throws SQLException {
-        return runWithRetries(() -> {
+    private static List<CarStatus> loadCarStatuses() throws SQLException {
+        return runWithRetries("loadCarStatuses", () -> {
             String sql = "SELECT id, status_name FROM CarStatus ORDER BY id";
-            List<Map<String,Object>> out = new ArrayList<>();
+            List<CarStatus> out = new ArrayList<>();
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql);
                  ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("id", rs.getInt("id"));
-                    m.put("status_name", rs.getString("status_name"));
-                    out.add(m);
+                    out.add(new CarStatus(rs.getInt(1), rs.getString(2)));
                 }
             }
-            return out;
+            return List.copyOf(out);
         });
     }
 
     // New: update car status
     public static boolean updateCarStatus(int carId, int statusId) throws SQLException {
-        return runWithRetries(() -> {
+        return runWithRetries("updateCarStatus", () -> {
             String sql = "UPDATE Cars SET status_id = ? WHERE id = ?";
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.setInt(1, statusId);
                 ps.setInt(2, carId);
                 int u = ps.executeUpdate();
+                if (u > 0) invalidateAvailability();
                 return u > 0;
             }
         });
     }
 
-    // New: list ALL rentals from RentalDetails view (no pagination) - used for in-memory pagination in AdminHandler
-    public static List<Map<String,Object>> listAllRentals() throws SQLException {
-        return runWithRetries(() -> {
-            String sql = "SELECT RentalID, `Car Name` AS car_name, Login AS login, `Start Date` AS start_date, `End Date` AS end_date, `Start Branch` AS start_branch_addr, `End Branch` AS end_branch_addr " +
+    // ===== Bulk car operations (admin) =====
+    // Each bulk call runs as one transaction: ids are sent in JDBC batches of BULK_BATCH_SIZE,
+    // committed once at the end, and rolled back as a whole on any error.
+
+    private static final int BULK_BATCH_SIZE = 500;
+
+    /** Called after each executed batch; done counts ids sent so far, not rows changed. */
+    public interface BulkProgress {
+        void onProgress(int done, int total);
+    }
+
+    private interface BatchBinder {
+        void bind(PreparedStatement ps, int carId) throws SQLException;
+    }
+
+    // New: ids of cars matching the filter, optionally limited to an id range (inclusive); at most maxIds + 1
+    // rows are read so callers can tell the selection is too large
+    public static List<Integer> selectCarIds(CarFilter filter, Integer fromId, Integer toId, int maxIds) throws SQLException {
+        CarFilter f = filter == null ? CarFilter.ALL : filter;
+        return runWithRetries("selectCarIds", () -> {
+            StringBuilder sql = new StringBuilder("SELECT id FROM Cars WHERE 1 = 1");
+            if (fromId != null) sql.append(" AND id >= ?");
+            if (toId != null) sql.append(" AND id <= ?");
+            if (f.branchId() != null) sql.append(" AND branch_id = ?");
+            if (f.statusId() != null) sql.append(" AND status_id = ?");
+            sql.append(" ORDER BY id LIMIT ?");
+            try (Connection conn = getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                int i = 1;
+                if (fromId != null) ps.setInt(i++, fromId);
+                if (toId != null) ps.setInt(i++, toId);
+                if (f.branchId() != null) ps.setInt(i++, f.branchId());
+                if (f.statusId() != null) ps.setInt(i++, f.statusId());
+                ps.setInt(i, maxIds + 1);
+                List<Integer> out = new ArrayList<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) out.add(rs.getInt(1));
+                }
+                return out;
+            }
+        });
+    }
+
+    // New: set status_id for many cars at once; returns the number of cars changed
+    public static int bulkUpdateCarStatus(List<Integer> carIds, int statusId, BulkProgress progress) throws SQLException {
+        int changed = runCarBatch("bulkUpdateCarStatus", "UPDATE Cars SET status_id = ? WHERE id = ?", carIds, (ps, id) -> {
+            ps.setInt(1, statusId);
+            ps.setInt(2, id);
+        }, progress);
+        if (changed > 0) invalidateAvailability();
+        return changed;
+    }
+
+    // New: move many cars to one branch; returns the number of cars moved
+    public static int bulkMoveCars(List<Integer> carIds, int branchId, BulkProgress progress) throws SQLException {
+        int changed = runCarBatch("bulkMoveCars", "UPDATE Cars SET branch_id = ? WHERE id = ?", carIds, (ps, id) -> {
+            ps.setInt(1, branchId);
+            ps.setInt(2, id);
+        }, progress);
+        if (changed > 0) invalidateAvailability();
+        return changed;
+    }
+
+    // New: delete many cars; cars that have rentals are kept (skipped) instead of failing the whole batch
+    public static int bulkDeleteCars(List<Integer> carIds, BulkProgress progress) throws SQLException {
+        int deleted = runCarBatch("bulkDeleteCars",
+                "DELETE FROM Cars WHERE id = ? AND NOT EXISTS (SELECT 1 FROM Rentals r WHERE r.car_id = ?)",
+                carIds, (ps, id) -> {
+                    ps.setInt(1, id);
+                    ps.setInt(2, id);
+                }, progress);
+        if (deleted > 0) invalidateAvailability();
+        return deleted;
+    }
+
+    private static int runCarBatch(String name, String sql, List<Integer> carIds, BatchBinder binder, BulkProgress progress) throws SQLException {
+        // ascending id order: two bulk jobs over overlapping cars lock rows in the same order and cannot deadlock
+        List<Integer> ids = new ArrayList<>(carIds);
+        ids.sort(null);
+        return runWithRetries(name, () -> {
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    int changed = 0;
+                    int pending = 0;
+                    for (int i = 0; i < ids.size(); i++) {
+                        binder.bind(ps, ids.get(i));
+                        ps.addBatch();
+                        if (++pending == BULK_BATCH_SIZE || i == ids.size() - 1) {
+                            changed += countUpdated(ps.executeBatch());
+                            pending = 0;
+                            if (progress != null) progress.onProgress(i + 1, ids.size());
+                        }
+                    }
+                    conn.commit();
+                    return changed;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        });
+    }
+
+    private static int countUpdated(int[] counts) {
+        int n = 0;
+        for (int c : counts) {
+            // SUCCESS_NO_INFO: the driver ran the statement but did not report a count
+            if (c > 0) n += c;
+            else if (c == Statement.SUCCESS_NO_INFO) n++;
+        }
+        return n;
+    }
+
+    // New: list ALL rentals from RentalDetails view (no pagination). Admin browsing should use listRentalsPage instead,
+    // full exports DataExchange (streams rows instead of building this list).
+    public static List<RentalDetail> listAllRentals() throws SQLException {
+        return runWithRetries("listAllRentals", () -> {
+            String sql = "SELECT RentalID, `Car Name`, Login, `Start Date`, `End Date`, `Start Branch`, `End Branch` " +
                          "FROM RentalDetails ORDER BY RentalID";
-            List<Map<String,Object>> out = new ArrayList<>();
             try (Connection conn = getConnection();
                  PreparedStatement ps = conn.prepareStatement(sql);
                  ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("rental_id", rs.getInt("RentalID"));
-                    m.put("car_name", rs.getString("car_name"));
-                    m.put("login", rs.getString("login"));
-                    m.put("start_date", rs.getDate("start_date"));
-                    m.put("end_date", rs.getDate("end_date"));
-                    m.put("start_branch_addr", rs.getString("start_branch_addr"));
-                    m.put("end_branch_addr", rs.getString("end_branch_addr"));
-                    out.add(m);
+                return RowMappers.readRentalDetails(rs);
+            }
+        });
+    }
+
+    /**
+     * Listener for rentals booked, rescheduled or deleted through this class, called after the commit
+     * with the rental id only; it reads the rental back if it needs more. Changes made by other processes
+     * on the same database are not seen here.
+     */
+    public static void setRentalListener(java.util.function.IntConsumer listener) {
+        rentalListener = listener;
+    }
+
+    private static void rentalChanged(int rentalId) {
+        java.util.function.IntConsumer l = rentalListener;
+        if (l == null) return;
+        try {
+            l.accept(rentalId);
+        } catch (RuntimeException e) {
+            LOGGER.warning("Rental listener failed for rental " + rentalId + ": " + e.getMessage());
+        }
+    }
+
+    // Telegram chat of each user, kept for messages the bot starts itself (reminders).
+    // Checked once and created if missing; if that is not allowed, reminders are off until a restart.
+    private static final String USER_CHATS_DDL = "CREATE TABLE UserChats (" +
+            "user_id INT NOT NULL PRIMARY KEY, " +
+            "chat_id BIGINT NOT NULL)";
+    private static volatile boolean userChatsReady;
+    private static volatile boolean userChatsMissing;
+
+    /**
+     * True once UserChats exists, creating it on the first call if needed. False, with one error logged,
+     * if it is missing and cannot be created (e.g. the DB user lacks CREATE); throws only when the
+     * database cannot be reached, so the caller can try again later.
+     */
+    public static boolean ensureUserChats() throws SQLException {
+        if (userChatsReady) return true;
+        if (userChatsMissing) return false;
+        try (Connection conn = getConnection()) {
+            try (Statement st = conn.createStatement()) {
+                st.executeQuery("SELECT user_id, chat_id FROM UserChats WHERE 1 = 0").close();
+            } catch (SQLTransientException | SQLRecoverableException e) {
+                throw e;
+            } catch (SQLException absent) {
+                try (Statement st = conn.createStatement()) {
+                    st.execute(USER_CHATS_DDL);
+                    LOGGER.info("Created table UserChats");
+                } catch (SQLTransientException | SQLRecoverableException e) {
+                    throw e;
+                } catch (SQLException e) {
+                    userChatsMissing = true;
+                    LOGGER.severe("Table UserChats is missing and cannot be created (" + e.getMessage() + "); rental reminders "
+                            + "are off and sign-ins do not record chats. Create it with \"" + USER_CHATS_DDL + "\" and restart.");
+                    return false;
+                }
+            }
+        }
+        userChatsReady = true;
+        return true;
+    }
+
+    // remember the chat a user signed in from; the latest sign-in wins. Skipped without UserChats.
+    public static void rememberUserChat(int userId, long chatId) throws SQLException {
+        if (!ensureUserChats()) return;
+        runWithRetries("rememberUserChat", () -> {
+            String sql = "INSERT INTO UserChats (user_id, chat_id) VALUES (?, ?) " +
+                         "ON DUPLICATE KEY UPDATE chat_id = VALUES(chat_id)";
+            try (Connection conn = getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, userId);
+                ps.setLong(2, chatId);
+                return ps.executeUpdate();
+            }
+        });
+    }
+
+    // chats of admins that have signed in at least once; needs UserChats (see ensureUserChats)
+    public static List<Long> listAdminChatIds() throws SQLException {
+        return runWithRetries("listAdminChatIds", () -> {
+            String sql = "SELECT uc.chat_id FROM Users u JOIN UserChats uc ON uc.user_id = u.id WHERE u.isAdmin = 1";
+            try (Connection conn = getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql);
+                 ResultSet rs = ps.executeQuery()) {
+                List<Long> out = new ArrayList<>();
+                while (rs.next()) out.add(rs.getLong(1));
+                return out;
+            }
+        });
+    }
+
+    /**
+     * Up to limit rentals with id > afterId that start or end within [from, to], ordered by id.
+     * Callers page with the last id returned, so a scan over a million rentals holds one page at a time.
+     */
+    public static List<RentalDates> listRentalDatesPage(int afterId, LocalDate from, LocalDate to, int limit) throws SQLException {
+        return runWithRetries("listRentalDatesPage", () -> {
+            String sql = "SELECT id, start_date, end_date FROM Rentals " +
+                         "WHERE id > ? AND (start_date BETWEEN ? AND ? OR end_date BETWEEN ? AND ?) " +
+                         "ORDER BY id LIMIT ?";
+            try (Connection conn = getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, afterId);
+                ps.setObject(2, from);
+                ps.setObject(3, to);
+                ps.setObject(4, from);
+                ps.setObject(5, to);
+                ps.setInt(6, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<RentalDates> out = new ArrayList<>();
+                    while (rs.next()) {
+                        out.add(new RentalDates(rs.getInt(1), rs.getObject(2, LocalDate.class), rs.getObject(3, LocalDate.class)));
+                    }
+                    return out;
                 }
             }
-            return out;
         });
     }
+
+    // dates of the given rentals; ids that no longer exist are simply missing from the result
+    public static List<RentalDates> getRentalDates(Collection<Integer> rentalIds) throws SQLException {
+        if (rentalIds.isEmpty()) return new ArrayList<>();
+        return runWithRetries("getRentalDates", () -> {
+            String sql = "SELECT id, start_date, end_date FROM Rentals WHERE id IN (" + placeholders(rentalIds.size()) + ")";
+            try (Connection conn = getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                int i = 1;
+                for (int id : rentalIds) ps.setInt(i++, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<RentalDates> out = new ArrayList<>();
+                    while (rs.next()) {
+                        out.add(new RentalDates(rs.getInt(1), rs.getObject(2, LocalDate.class), rs.getObject(3, LocalDate.class)));
+                    }
+                    return out;
+                }
+            }
+        });
+    }
+
+    // RentalDetails rows of the given rentals with the renter's chat, for composing reminders; needs UserChats
+    public static List<RentalRecipient> getRentalRecipients(Collection<Integer> rentalIds) throws SQLException {
+        if (rentalIds.isEmpty()) return new ArrayList<>();
+        return runWithRetries("getRentalRecipients", () -> {
+            String sql = "SELECT d.RentalID, d.`Car Name`, d.Login, d.`Start Date`, d.`End Date`, d.`Start Branch`, d.`End Branch`, uc.chat_id " +
+                         "FROM RentalDetails d JOIN Users u ON u.login = d.Login LEFT JOIN UserChats uc ON uc.user_id = u.id " +
+                         "WHERE d.RentalID IN (" + placeholders(rentalIds.size()) + ")";
+            try (Connection conn = getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                int i = 1;
+                for (int id : rentalIds) ps.setInt(i++, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return RowMappers.readRentalRecipients(rs);
+                }
+            }
+        });
+    }
+
+    // "?, ?, ?" for an IN list of n values
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
 }
@@ -0,0 +1,90 @@
+package modules;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * One small file per chat in a local directory ({chatId}.ses).
+ * Writes go to a temp file first and are moved into place, so a crash never leaves a half-written session.
+ */
+public final class FileSessionBackend implements SessionBackend {
+    private static final String SUFFIX = ".ses";
+
+    private final Path dir;
+
+    public FileSessionBackend(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+    }
+
+    @Override
+    public byte[] load(long chatId) throws IOException {
+        try {
+            return Files.readAllBytes(file(chatId));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void store(long chatId, byte[] data) throws IOException {
+        Path target = file(chatId);
+        Path tmp = dir.resolve(chatId + SUFFIX + ".tmp");
+        Files.write(tmp, data);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void delete(long chatId) throws IOException {
+        Files.deleteIfExists(file(chatId));
+    }
+
+    @Override
+    public Collection<Long> keys() throws IOException {
+        List<Long> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                Long id = chatIdOf(p);
+                if (id != null) out.add(id);
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public Collection<Long> purgeIdle(long cutoffMillis) throws IOException {
+        List<Long> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                Long id = chatIdOf(p);
+                if (id == null) continue;
+                try {
+                    if (Files.getLastModifiedTime(p).toMillis() < cutoffMillis && Files.deleteIfExists(p)) out.add(id);
+                } catch (NoSuchFileException ignored) {
+                    // removed concurrently
+                }
+            }
+        }
+        return out;
+    }
+
+    private Path file(long chatId) {
+        return dir.resolve(chatId + SUFFIX);
+    }
+
+    private static Long chatIdOf(Path p) {
+        String name = p.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package modules;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ *
+ * Values are kept in microseconds: exact below 16 us, above that 8 buckets per power of two, so a reported
+ * quantile is at most 12.5% above the true value. 312 buckets cover 1 us .. ~25 days; larger values land
+ * in the last bucket. Recording is one array increment and one atomic add (plus a rare max update),
+ * cheap enough for every update, query and send.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 41;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        long us = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucket(us));
+        sumMicros.addAndGet(us);
+        if (us > maxMicros.get()) maxMicros.accumulateAndGet(us, Math::max);
+    }
+
+    /** Time since {@code startNanos} (a System.nanoTime() value). */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    static int bucket(long us) {
+        if (us < 2 * SUB) return (int) us;
+        int e = 63 - Long.numberOfLeadingZeros(us);
+        if (e >= MAX_EXPONENT) return BUCKETS - 1;
+        return (e - SUB_BITS) * SUB + (int) (us >>> (e - SUB_BITS));
+    }
+
+    // largest value that falls into bucket i
+    static long upperBound(int i) {
+        if (i < 2 * SUB) return i;
+        int e = i / SUB + SUB_BITS - 1;
+        long m = i % SUB + SUB;
+        return ((m + 1) << (e - SUB_BITS)) - 1;
+    }
+
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            total += c[i];
+        }
+        return new Snapshot(c, total, sumMicros.get(), maxMicros.get());
+    }
+
+    /** Point-in-time copy; counts of concurrent recordings may be off by a few, never torn within a bucket. */
+    public static final class Snapshot {
+        private final long[] counts;
+        public final long count;
+        public final long sumMicros;
+        public final long maxMicros;
+
+        Snapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        /** Value at quantile q (0..1) in microseconds; 0 if nothing was recorded. */
+        public long quantileMicros(double q) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(upperBound(i), maxMicros);
+            }
+            return maxMicros;
+        }
+
+        public double meanMicros() {
+            return count == 0 ? 0 : (double) sumMicros / count;
+        }
+
+        public double quantileMillis(double q) {
+            return quantileMicros(q) / (double) TimeUnit.MILLISECONDS.toMicros(1);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package modules;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide metrics: latency histograms, counters and gauges, each in a family with one label
+ * (e.g. family bot_db_query_seconds, label method=isUser).
+ *
+ * Hot paths should look a series up once and keep it (CommandRouter does); lookups by name are two
+ * hash-map gets. Everything is cumulative since start. Exposed in Prometheus text format by
+ * {@link #writePrometheus} (see org.bot.MetricsServer) and summarised by the admin /stats command.
+ *
+ * Families used by the bot:
+ *   bot_update_seconds{stage}          end-to-end (poll to handled) and queue wait per update
+ *   bot_handler_seconds{route}         one per router route (command, label, flow, callback prefix)
+ *   bot_db_query_seconds{method}       each Database method, including retries
+ *   bot_db_retries_total{method}       retried attempts
+ *   bot_db_errors_total{method}        calls that failed after retries
+ *   bot_telegram_send_seconds{method}  Telegram API calls
+ *   bot_telegram_delivery_seconds{priority}  queued to sent, including throttling
+ *   bot_queue_depth{queue}             gauges
+ */
+public final class Metrics {
+
+    private enum Kind { TIMER, COUNTER, GAUGE }
+
+    private static final class Family {
+        final String name;
+        final String labelKey;
+        final Kind kind;
+        final ConcurrentHashMap<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String name, String labelKey, Kind kind) {
+            this.name = name;
+            this.labelKey = labelKey;
+            this.kind = kind;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Family> FAMILIES = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram timer(String family, String labelKey, String label) {
+        return (LatencyHistogram) family(family, labelKey, Kind.TIMER).series
+                .computeIfAbsent(label, k -> new LatencyHistogram());
+    }
+
+    public static LongAdder counter(String family, String labelKey, String label) {
+        return (LongAdder) family(family, labelKey, Kind.COUNTER).series
+                .computeIfAbsent(label, k -> new LongAdder());
+    }
+
+    /** Register a value read at scrape time; re-registering a label replaces it. */
+    public static void gauge(String family, String labelKey, String label, LongSupplier value) {
+        family(family, labelKey, Kind.GAUGE).series.put(label, value);
+    }
+
+    private static Family family(String name, String labelKey, Kind kind) {
+        Family f = FAMILIES.get(name);
+        if (f == null) f = FAMILIES.computeIfAbsent(name, n -> new Family(n, labelKey, kind));
+        if (f.kind != kind) throw new IllegalArgumentException(name + " is a " + f.kind + ", not a " + kind);
+        return f;
+    }
+
+    /** Timers of one family by label, sorted by label; empty if the family does not exist. */
+    public static Map<String, LatencyHistogram.Snapshot> timers(String family) {
+        Map<String, LatencyHistogram.Snapshot> out = new TreeMap<>();
+        Family f = FAMILIES.get(family);
+        if (f == null || f.kind != Kind.TIMER) return out;
+        f.series.forEach((label, h) -> out.put(label, ((LatencyHistogram) h).snapshot()));
+        return out;
+    }
+
+    public static Map<String, Long> counters(String family) {
+        Map<String, Long> out = new TreeMap<>();
+        Family f = FAMILIES.get(family);
+        if (f == null || f.kind != Kind.COUNTER) return out;
+        f.series.forEach((label, c) -> out.put(label, ((LongAdder) c).sum()));
+        return out;
+    }
+
+    public static Map<String, Long> gauges(String family) {
+        Map<String, Long> out = new TreeMap<>();
+        Family f = FAMILIES.get(family);
+        if (f == null || f.kind != Kind.GAUGE) return out;
+        f.series.forEach((label, g) -> out.put(label, readGauge((LongSupplier) g)));
+        return out;
+    }
+
+    private static long readGauge(LongSupplier g) {
+        try {
+            return g.getAsLong();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /** All metrics in Prometheus text exposition format (timers as summaries, in seconds). */
+    public static void writePrometheus(Appendable out) throws IOException {
+        List<Family> families = new ArrayList<>(FAMILIES.values());
+        families.sort((a, b) -> a.name.compareTo(b.name));
+        for (Family f : families) {
+            String type = f.kind == Kind.TIMER ? "summary" : f.kind == Kind.COUNTER ? "counter" : "gauge";
+            out.append("# TYPE ").append(f.name).append(' ').append(type).append('\n');
+            Map<String, Object> series = new TreeMap<>(f.series);
+            for (Map.Entry<String, Object> e : series.entrySet()) {
+                String label = f.labelKey + "=\"" + escape(e.getKey()) + "\"";
+                if (f.kind == Kind.TIMER) {
+                    LatencyHistogram.Snapshot s = ((LatencyHistogram) e.getValue()).snapshot();
+                    for (double q : QUANTILES) {
+                        sample(out, f.name, label + ",quantile=\"" + q + "\"", s.quantileMicros(q) / 1e6);
+                    }
+                    sample(out, f.name + "_sum", label, s.sumMicros / 1e6);
+                    sample(out, f.name + "_count", label, s.count);
+                } else if (f.kind == Kind.COUNTER) {
+                    sample(out, f.name, label, ((LongAdder) e.getValue()).sum());
+                } else {
+                    sample(out, f.name, label, readGauge((LongSupplier) e.getValue()));
+                }
+            }
+        }
+    }
+
+    private static void sample(Appendable out, String name, String labels, double value) throws IOException {
+        out.append(name).append('{').append(labels).append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) out.append(Long.toString((long) value));
+        else out.append(Double.toString(value));
+        out.append('\n');
+    }
+
+    private static String escape(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,114 @@
+package modules;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sessions in the ChatSessions table of the bot database, shared by every bot instance using it
+ * (so a rolling deploy can hand a conversation over to the new instance).
+ */
+public final class MySqlSessionBackend implements SessionBackend {
+
+    public MySqlSessionBackend() throws IOException {
+        String ddl = "CREATE TABLE IF NOT EXISTS ChatSessions (" +
+                "chat_id BIGINT NOT NULL PRIMARY KEY, " +
+                "data VARBINARY(1024) NOT NULL, " +
+                "updated_at BIGINT NOT NULL, " +
+                "INDEX idx_chat_sessions_updated (updated_at))";
+        try (Connection conn = Database.getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+        } catch (SQLException e) {
+            throw new IOException("Cannot create ChatSessions table", e);
+        }
+    }
+
+    @Override
+    public byte[] load(long chatId) throws IOException {
+        String sql = "SELECT data FROM ChatSessions WHERE chat_id = ?";
+        try (Connection conn = Database.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, chatId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getBytes(1) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void store(long chatId, byte[] data) throws IOException {
+        String sql = "INSERT INTO ChatSessions (chat_id, data, updated_at) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE data = VALUES(data), updated_at = VALUES(updated_at)";
+        try (Connection conn = Database.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, chatId);
+            ps.setBytes(2, data);
+            ps.setLong(3, System.currentTimeMillis());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void delete(long chatId) throws IOException {
+        try (Connection conn = Database.getConnection();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM ChatSessions WHERE chat_id = ?")) {
+            ps.setLong(1, chatId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public Collection<Long> keys() throws IOException {
+        return selectIds("SELECT chat_id FROM ChatSessions", -1);
+    }
+
+    @Override
+    public Collection<Long> purgeIdle(long cutoffMillis) throws IOException {
+        List<Long> candidates = new ArrayList<>(selectIds("SELECT chat_id FROM ChatSessions WHERE updated_at < ?", cutoffMillis));
+        if (candidates.isEmpty()) return candidates;
+        // re-check the age per row: a session written after the SELECT must survive
+        List<Long> purged = new ArrayList<>();
+        try (Connection conn = Database.getConnection();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM ChatSessions WHERE chat_id = ? AND updated_at < ?")) {
+            for (long id : candidates) {
+                ps.setLong(1, id);
+                ps.setLong(2, cutoffMillis);
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) purged.add(candidates.get(i));
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        return purged;
+    }
+
+    private static Collection<Long> selectIds(String sql, long cutoffMillis) throws IOException {
+        List<Long> out = new ArrayList<>();
+        try (Connection conn = Database.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (cutoffMillis >= 0) ps.setLong(1, cutoffMillis);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rs.getLong(1));
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,10 @@
+package modules;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing ordered by id.
+ * firstId/lastId are the cursors for the previous/next page (0 when the page is empty).
+ */
+public record Page<T>(List<T> items, int firstId, int lastId, boolean hasPrevious, boolean hasNext) {
+}
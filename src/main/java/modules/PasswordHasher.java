@@ -0,0 +1,157 @@
+package modules;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.SQLTransientException;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes, stored as {@code pbkdf2$<iterations>$<salt>$<hash>} (Base64).
+ *
+ * The cost is set per deploy with PASSWORD_HASH_ITERATIONS; hashes made with fewer iterations are
+ * upgraded on the next successful login ({@link #needsRehash}). Rows that still hold a plaintext
+ * password are recognised and upgraded the same way.
+ *
+ * Hashing runs on a small dedicated pool (PASSWORD_HASH_THREADS, default = cores) with a bounded queue,
+ * so a burst of logins uses at most that many cores and the update workers stay free for other chats.
+ * When the queue is full the call fails with SQLTransientException, which callers already treat as
+ * "try again in a moment".
+ */
+public final class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int QUEUE_CAPACITY = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int ITERATIONS = Config.getPasswordHashIterations();
+
+    private static final ThreadPoolExecutor POOL;
+    private static final AtomicLong HASHES = new AtomicLong();
+    private static final AtomicLong REJECTED = new AtomicLong();
+
+    static {
+        int threads = Config.getPasswordHashThreads();
+        AtomicInteger seq = new AtomicInteger();
+        POOL = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+            Thread t = new Thread(r, "password-hasher-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private PasswordHasher() {
+    }
+
+    /** New salted hash of {@code password} with the configured cost. */
+    public static String hash(String password) throws SQLTransientException {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] dk = onPool(() -> pbkdf2(password, salt, ITERATIONS));
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + ITERATIONS + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(dk);
+    }
+
+    /** Check {@code password} against a stored value (a hash, or a legacy plaintext password). */
+    public static boolean verify(String password, String stored) throws SQLTransientException {
+        if (stored == null || password == null) return false;
+        if (!isHash(stored)) {
+            // legacy plaintext row; constant-time compare, caller rehashes on success
+            return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        int iterations;
+        byte[] salt;
+        byte[] expected;
+        try {
+            iterations = Integer.parseInt(parts[1]);
+            salt = Base64.getDecoder().decode(parts[2]);
+            expected = Base64.getDecoder().decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        byte[] actual = onPool(() -> pbkdf2(password, salt, iterations));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /** True for plaintext rows and for hashes weaker than the configured cost. */
+    public static boolean needsRehash(String stored) {
+        if (stored == null || !isHash(stored)) return true;
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public static boolean isHash(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    public static int getIterations() {
+        return ITERATIONS;
+    }
+
+    public static long getHashCount() {
+        return HASHES.get();
+    }
+
+    public static long getRejectedCount() {
+        return REJECTED.get();
+    }
+
+    public static int getQueuedCount() {
+        return POOL.getQueue().size();
+    }
+
+    private interface HashTask {
+        byte[] run() throws GeneralSecurityException;
+    }
+
+    // run on the hasher pool and wait; the caller's thread is a per-chat worker, so only that chat waits
+    private static byte[] onPool(HashTask task) throws SQLTransientException {
+        Future<byte[]> f;
+        try {
+            f = POOL.submit(task::run);
+        } catch (RejectedExecutionException e) {
+            REJECTED.incrementAndGet();
+            throw new SQLTransientException("Too many logins in progress, try again", e);
+        }
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SQLTransientException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            byte[] dk = SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+            HASHES.incrementAndGet();
+            return dk;
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package modules;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Who is signed in on which chat: chatId -> User (id, login, admin flag).
+ * Filled when a chat authenticates so menu, rent and admin actions do not look the user up again.
+ * Bounded; the least recently used chat is dropped first and simply reloaded on its next action.
+ */
+public final class PrincipalCache {
+    static final int MAX_ENTRIES = 10000;
+
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    // access-ordered, so even get() reorders the map: every access goes through LOCK
+    private static final LinkedHashMap<Long, User> BY_CHAT = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, User> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private PrincipalCache() {
+    }
+
+    public static User get(long chatId) {
+        User u;
+        LOCK.lock();
+        try {
+            u = BY_CHAT.get(chatId);
+        } finally {
+            LOCK.unlock();
+        }
+        (u != null ? HITS : MISSES).incrementAndGet();
+        return u;
+    }
+
+    public static void put(long chatId, User user) {
+        LOCK.lock();
+        try {
+            BY_CHAT.put(chatId, user);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    public static void remove(long chatId) {
+        LOCK.lock();
+        try {
+            BY_CHAT.remove(chatId);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    // admin flag changed in the DB: update every chat signed in with that login
+    public static void updateAdmin(String login, boolean admin) {
+        LOCK.lock();
+        try {
+            BY_CHAT.replaceAll((chatId, u) -> u.login().equals(login)
+                    ? new User(u.id(), u.login(), u.email(), u.phoneNumber(), u.licenseId(), admin)
+                    : u);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    public static int size() {
+        LOCK.lock();
+        try {
+            return BY_CHAT.size();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    public static long getMisses() {
+        return MISSES.get();
+    }
+}
@@ -0,0 +1,8 @@
+package modules;
+
+import java.time.LocalDate;
+
+/** Row of Rentals with car name and formatted branch addresses. */
+public record Rental(int id, int carId, String carName, LocalDate startDate, LocalDate endDate,
+                     int startBranchId, String startBranchAddress, int endBranchId, String endBranchAddress) {
+}
@@ -0,0 +1,7 @@
+package modules;
+
+import java.time.LocalDate;
+
+/** Dates of a rental, all the reminder scheduler needs to place its notifications. */
+public record RentalDates(int rentalId, LocalDate startDate, LocalDate endDate) {
+}
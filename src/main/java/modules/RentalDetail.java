@@ -0,0 +1,8 @@
+package modules;
+
+import java.time.LocalDate;
+
+/** Row of the RentalDetails view. */
+public record RentalDetail(int rentalId, String carName, String login, LocalDate startDate, LocalDate endDate,
+                           String startBranchAddress, String endBranchAddress) {
+}
@@ -0,0 +1,5 @@
+package modules;
+
+/** A rental with the chat its renter last signed in from (0 if the renter never signed in since UserChats exists). */
+public record RentalRecipient(RentalDetail rental, long chatId) {
+}
@@ -0,0 +1,65 @@
+package modules;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ResultSet -> record mapping shared by the Database queries. Kept apart from Database so it can be
+ * exercised (e.g. benchmarked against an embedded DB) without initialising the connection pool.
+ */
+final class RowMappers {
+
+    private RowMappers() {
+    }
+
+    // columns: id, name, release_year, type_name, branch_id, branch address, status_id, status_name
+    static List<Car> readCars(ResultSet rs) throws SQLException {
+        List<Car> out = new ArrayList<>();
+        while (rs.next()) {
+            out.add(new Car(rs.getInt(1), rs.getString(2), getNullableInt(rs, 3), rs.getString(4),
+                    rs.getInt(5), rs.getString(6), rs.getInt(7), rs.getString(8)));
+        }
+        return out;
+    }
+
+    // columns: id, name, release_year, type_name, branch_id, status_id
+    static List<Car> readAvailableCars(ResultSet rs) throws SQLException {
+        List<Car> out = new ArrayList<>();
+        while (rs.next()) {
+            out.add(new Car(rs.getInt(1), rs.getString(2), getNullableInt(rs, 3), rs.getString(4),
+                    rs.getInt(5), null, rs.getInt(6), null));
+        }
+        return out;
+    }
+
+    // columns: RentalID, Car Name, Login, Start Date, End Date, Start Branch, End Branch
+    static List<RentalDetail> readRentalDetails(ResultSet rs) throws SQLException {
+        List<RentalDetail> out = new ArrayList<>();
+        while (rs.next()) {
+            out.add(new RentalDetail(rs.getInt(1), rs.getString(2), rs.getString(3),
+                    rs.getObject(4, LocalDate.class), rs.getObject(5, LocalDate.class),
+                    rs.getString(6), rs.getString(7)));
+        }
+        return out;
+    }
+
+    // columns: as readRentalDetails, then the renter's chat_id (NULL when unknown)
+    static List<RentalRecipient> readRentalRecipients(ResultSet rs) throws SQLException {
+        List<RentalRecipient> out = new ArrayList<>();
+        while (rs.next()) {
+            RentalDetail r = new RentalDetail(rs.getInt(1), rs.getString(2), rs.getString(3),
+                    rs.getObject(4, LocalDate.class), rs.getObject(5, LocalDate.class),
+                    rs.getString(6), rs.getString(7));
+            out.add(new RentalRecipient(r, rs.getLong(8)));
+        }
+        return out;
+    }
+
+    static Integer getNullableInt(ResultSet rs, int column) throws SQLException {
+        int v = rs.getInt(column);
+        return rs.wasNull() ? null : v;
+    }
+}
@@ -0,0 +1,24 @@
+package modules;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Persistent storage for encoded conversation sessions, keyed by chatId.
+ * Values are opaque bytes; the store that owns the sessions does the encoding.
+ */
+public interface SessionBackend {
+
+    /** Encoded session of the chat, or null if none is stored. */
+    byte[] load(long chatId) throws IOException;
+
+    void store(long chatId, byte[] data) throws IOException;
+
+    void delete(long chatId) throws IOException;
+
+    /** All chats that have a stored session (used at startup; values are loaded lazily). */
+    Collection<Long> keys() throws IOException;
+
+    /** Delete sessions not written since {@code cutoffMillis} (epoch ms) and return their chat ids. */
+    Collection<Long> purgeIdle(long cutoffMillis) throws IOException;
+}
@@ -0,0 +1,262 @@
+package modules;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Hierarchical timer wheel of keyed deadlines: schedule, reschedule and cancel are O(1), and advancing
+ * the clock touches only the slots that come due. Not thread-safe; one thread owns it.
+ *
+ * Four levels of 64 slots. Level L holds timers due in [64^L, 64^(L+1)) ticks from now, in the slot of
+ * (deadline >> 6L) & 63; when the clock reaches a slot of an upper level its timers move down a level
+ * (at most three times over a timer's life). Four levels cover 64^4 ticks, about 194 days at one tick
+ * per second; anything further out is parked in the last slot and re-placed when it comes round.
+ *
+ * Timers live in parallel primitive arrays linked by index, and an open-addressing table maps the
+ * caller's key to its timer, so a million timers take some 36 MB and no per-timer objects.
+ * The arrays grow on demand up to maxTimers; schedule() refuses beyond that.
+ */
+public final class TimerWheel {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final long MAX_DELAY_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long tickMillis;
+    private final int maxTimers;
+    // slot list heads, LEVELS * SLOTS
+    private final int[] heads = new int[LEVELS * SLOTS];
+
+    // per timer
+    private long[] keys;
+    private long[] deadlines;
+    private int[] next;
+    private int[] prev;
+    private int[] slots;
+
+    // key -> timer + 1 (0 = empty), linear probing
+    private int[] table;
+    private int freeList = NONE;
+    private int used;
+    private int size;
+    // last tick processed by advance()
+    private long now;
+
+    public TimerWheel(long tickMillis, int maxTimers, long nowMillis) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis must be positive");
+        this.tickMillis = tickMillis;
+        this.maxTimers = Math.max(1, maxTimers);
+        this.now = nowMillis / tickMillis;
+        Arrays.fill(heads, NONE);
+        allocate(Math.min(INITIAL_CAPACITY, this.maxTimers));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long key) {
+        return find(key) != NONE;
+    }
+
+    // deadline of the timer in millis (rounded down to the tick), or -1
+    public long deadlineOf(long key) {
+        int t = find(key);
+        return t == NONE ? -1 : deadlines[t] * tickMillis;
+    }
+
+    /**
+     * Set the timer of key to deadlineMillis, replacing an earlier deadline of the same key.
+     * A deadline in the past fires on the next advance(). Returns false when the wheel is full.
+     */
+    public boolean schedule(long key, long deadlineMillis) {
+        long deadline = Math.max(deadlineMillis / tickMillis, now + 1);
+        int t = find(key);
+        if (t != NONE) {
+            unlink(t);
+        } else {
+            if (size == maxTimers) return false;
+            t = newTimer(key);
+        }
+        deadlines[t] = deadline;
+        place(t);
+        return true;
+    }
+
+    // remove the timer of key; false if there was none
+    public boolean cancel(long key) {
+        int t = find(key);
+        if (t == NONE) return false;
+        unlink(t);
+        release(t);
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(heads, NONE);
+        Arrays.fill(table, 0);
+        freeList = NONE;
+        used = 0;
+        size = 0;
+    }
+
+    /**
+     * Move the clock to nowMillis and hand every timer that came due to expired, oldest tick first.
+     * The timer is removed before the callback, which may schedule the same key again.
+     */
+    public int advance(long nowMillis, LongConsumer expired) {
+        long target = nowMillis / tickMillis;
+        int fired = 0;
+        while (now < target) {
+            long tick = ++now;
+            // upper levels first, so a timer cascading down lands in a slot that is still ahead
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & MASK));
+                }
+            }
+            int slot = (int) (tick & MASK);
+            int t = heads[slot];
+            heads[slot] = NONE;
+            while (t != NONE) {
+                int n = next[t];
+                long key = keys[t];
+                release(t);
+                fired++;
+                expired.accept(key);
+                t = n;
+            }
+            // nothing left to fire: jump over the empty stretch instead of walking it tick by tick
+            if (size == 0) now = Math.max(now, target);
+        }
+        return fired;
+    }
+
+    private void cascade(int slot) {
+        int t = heads[slot];
+        heads[slot] = NONE;
+        while (t != NONE) {
+            int n = next[t];
+            place(t);
+            t = n;
+        }
+    }
+
+    private void place(int t) {
+        long deadline = deadlines[t];
+        long delay = deadline - now;
+        if (delay > MAX_DELAY_TICKS) {
+            // too far for the wheel: park in the last slot, it is re-placed when that slot cascades
+            deadline = now + MAX_DELAY_TICKS;
+            delay = MAX_DELAY_TICKS;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= (1L << (SLOT_BITS * (level + 1)))) level++;
+        int slot = level * SLOTS + (int) ((deadline >>> (SLOT_BITS * level)) & MASK);
+        int head = heads[slot];
+        next[t] = head;
+        prev[t] = NONE;
+        if (head != NONE) prev[head] = t;
+        heads[slot] = t;
+        slots[t] = slot;
+    }
+
+    private void unlink(int t) {
+        if (prev[t] != NONE) next[prev[t]] = next[t];
+        else heads[slots[t]] = next[t];
+        if (next[t] != NONE) prev[next[t]] = prev[t];
+    }
+
+    private int newTimer(long key) {
+        int t;
+        if (freeList != NONE) {
+            t = freeList;
+            freeList = next[t];
+        } else {
+            if (used == keys.length) grow();
+            t = used++;
+        }
+        keys[t] = key;
+        size++;
+        insertIndex(t);
+        return t;
+    }
+
+    // the timer is already out of its slot list
+    private void release(int t) {
+        removeIndex(keys[t]);
+        next[t] = freeList;
+        freeList = t;
+        size--;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        deadlines = new long[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        slots = new int[capacity];
+        table = new int[tableSizeFor(capacity)];
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min((long) keys.length * 2, maxTimers);
+        keys = Arrays.copyOf(keys, capacity);
+        deadlines = Arrays.copyOf(deadlines, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        int[] old = table;
+        table = new int[tableSizeFor(capacity)];
+        for (int e : old) {
+            if (e != 0) insertIndex(e - 1);
+        }
+    }
+
+    // load factor at most 1/2
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(Math.max(2, capacity) - 1) << 2;
+    }
+
+    private int bucket(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (table.length - 1);
+    }
+
+    private int find(long key) {
+        int mask = table.length - 1;
+        for (int i = bucket(key); ; i = (i + 1) & mask) {
+            int e = table[i];
+            if (e == 0) return NONE;
+            if (keys[e - 1] == key) return e - 1;
+        }
+    }
+
+    private void insertIndex(int t) {
+        int mask = table.length - 1;
+        int i = bucket(keys[t]);
+        while (table[i] != 0) i = (i + 1) & mask;
+        table[i] = t + 1;
+    }
+
+    // backward-shift deletion keeps probe runs unbroken without tombstones
+    private void removeIndex(long key) {
+        int mask = table.length - 1;
+        int i = bucket(key);
+        while (keys[table[i] - 1] != key) i = (i + 1) & mask;
+        int hole = i;
+        for (int j = (hole + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = bucket(keys[table[j] - 1]);
+            // move j back unless its home lies cyclically in (hole, j]
+            boolean stays = hole <= j ? (home > hole && home <= j) : (home > hole || home <= j);
+            if (!stays) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = 0;
+    }
+}
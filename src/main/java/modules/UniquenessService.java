@@ -0,0 +1,164 @@
+package modules;
+
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * In-memory Bloom filters over the unique Users columns (login, email, phone, license).
+ *
+ * A negative answer is definite, so the usual sign-up case ("not taken yet") needs no query; a positive
+ * answer may be a false positive and is confirmed in MySQL. Filters are built from Users on first use,
+ * updated on every insert made by this process and rebuilt every few minutes (or when they fill up)
+ * to pick up rows written elsewhere. Builds run on a background thread; until the first one finishes
+ * every check goes to the DB, later ones answer from the previous filters meanwhile.
+ * The unique constraints in the DB stay the final authority.
+ * Because rows written by other processes are missed until the next rebuild, a negative answer is only
+ * good for the "is this still free?" pre-check of sign-up, never for "does this user exist?".
+ */
+public final class UniquenessService {
+    private static final Logger LOGGER = Logger.getLogger(UniquenessService.class.getName());
+
+    public enum Field { LOGIN, EMAIL, PHONE, LICENSE }
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 10000;
+    private static final long REBUILD_NANOS = TimeUnit.MINUTES.toNanos(5);
+    // after a failed build, callers go to the DB for this long before the next attempt
+    private static final long RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final class Filters {
+        final BloomFilter[] byField = new BloomFilter[Field.values().length];
+        final long builtAt = System.nanoTime();
+        final int capacity;
+        final AtomicInteger added = new AtomicInteger();
+
+        Filters(int capacity) {
+            this.capacity = capacity;
+            for (int i = 0; i < byField.length; i++) byField[i] = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+        }
+
+        void add(String login, String email, String phone, String license) {
+            put(Field.LOGIN, login);
+            put(Field.EMAIL, email);
+            put(Field.PHONE, phone);
+            put(Field.LICENSE, license);
+            added.incrementAndGet();
+        }
+
+        private void put(Field f, String v) {
+            if (v != null) byField[f.ordinal()].add(normalize(v));
+        }
+    }
+
+    private static volatile Filters filters;
+    // filters being filled from the table; inserts made meanwhile go into both
+    private static volatile Filters building;
+    // makes "add to filters and building" atomic with the swap from one to the other
+    private static final ReentrantLock SWAP_LOCK = new ReentrantLock();
+    // builds scan all of Users: never on a handler thread
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "uniqueness-filters");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicBoolean BUILD_RUNNING = new AtomicBoolean();
+    private static volatile long failedAt; // System.nanoTime() of the last failed build, 0 = none
+
+    private UniquenessService() {
+    }
+
+    /**
+     * False if no user has this value (no query needed); true if one might.
+     * Until the filters are first built (or if they cannot be) answers true, so callers check in the DB.
+     */
+    public static boolean mightExist(Field field, String value) {
+        if (value == null) return false;
+        Filters f = current();
+        return f == null || f.byField[field.ordinal()].mightContain(normalize(value));
+    }
+
+    /** Record a user inserted by this process. */
+    public static void record(String login, String email, String phone, String license) {
+        SWAP_LOCK.lock();
+        try {
+            Filters f = filters;
+            if (f != null) f.add(login, email, phone, license);
+            Filters b = building;
+            if (b != null) b.add(login, email, phone, license);
+        } finally {
+            SWAP_LOCK.unlock();
+        }
+    }
+
+    // the DB compares case-insensitively (default collation), so the filters do too
+    private static String normalize(String v) {
+        return v.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // the filters to answer from, possibly stale or null; a due rebuild is started in the background
+    private static Filters current() {
+        Filters f = filters;
+        if (!isFresh(f) && !backingOff()) scheduleBuild();
+        return f;
+    }
+
+    private static void scheduleBuild() {
+        if (!BUILD_RUNNING.compareAndSet(false, true)) return;
+        try {
+            BUILDER.execute(() -> {
+                try {
+                    build();
+                    failedAt = 0;
+                } catch (SQLException | RuntimeException e) {
+                    // nanoTime may be 0; any non-zero stamp will do
+                    failedAt = System.nanoTime() | 1;
+                    // the old filters stay; they are still correct for rows they have seen
+                    LOGGER.warning("Cannot build uniqueness filters, checking in the DB: " + e.getMessage());
+                } finally {
+                    BUILD_RUNNING.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            BUILD_RUNNING.set(false);
+        }
+    }
+
+    private static boolean isFresh(Filters f) {
+        return f != null && System.nanoTime() - f.builtAt < REBUILD_NANOS && f.added.get() < f.capacity;
+    }
+
+    // a build failed recently: do not scan the table again on every sign-up
+    private static boolean backingOff() {
+        long t = failedAt;
+        return t != 0 && System.nanoTime() - t < RETRY_NANOS;
+    }
+
+    private static void build() throws SQLException {
+        int users = Database.countUsers();
+        // room to grow: rebuilt when full
+        Filters f = new Filters(Math.max(MIN_CAPACITY, users * 2));
+        building = f;
+        boolean done = false;
+        try {
+            Database.forEachUserKey(f::add);
+            done = true;
+        } finally {
+            SWAP_LOCK.lock();
+            try {
+                if (done) filters = f;
+                building = null;
+            } finally {
+                SWAP_LOCK.unlock();
+            }
+        }
+        LOGGER.info("Uniqueness filters built for " + f.added.get() + " users");
+    }
+}
@@ -0,0 +1,5 @@
+package modules;
+
+/** Row of Users without the password column. */
+public record User(int id, String login, String email, String phoneNumber, String licenseId, boolean admin) {
+}
@@ -2,168 +2,221 @@ package org.bot;
 
 import org.bot.commandhandlers.StartHandler;
 import org.bot.commandhandlers.MenuHandler;
+import org.bot.commandhandlers.AdminBulk;
+import org.bot.commandhandlers.AdminDataTransfer;
 import org.bot.commandhandlers.AdminHandler;
+import org.bot.commandhandlers.AdminPaging;
+import org.bot.commandhandlers.AdminStats;
+import org.bot.commandhandlers.ConversationStore;
 import org.bot.commandhandlers.RentHandler;
 import org.bot.commandhandlers.SessionService;
 import org.bot.commandhandlers.ActiveRentsHandler;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
-import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
+import modules.Config;
+import modules.Database;
+import modules.LatencyHistogram;
+import modules.Metrics;
+import modules.PasswordHasher;
+import org.telegram.telegrambots.longpolling.interfaces.LongPollingUpdateConsumer;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
-public class Bot implements LongPollingSingleThreadUpdateConsumer {
+public class Bot implements LongPollingUpdateConsumer {
     private static final Logger LOGGER = Logger.getLogger(Bot.class.getName());
     private final TelegramClient telegramClient;
     private static MessageInteraction msgInteraction;
+    private final UpdateDispatcher dispatcher;
+    private final CommandRouter router;
+    private static final LatencyHistogram DOCUMENT_TIMER = Metrics.timer("bot_handler_seconds", "route", "document");
 
     public Bot(String botToken) {
-        telegramClient = new OkHttpTelegramClient(botToken);
+        this(new OkHttpTelegramClient(botToken));
+    }
+
+    // any TelegramClient, e.g. the load generator's fake one
+    public Bot(TelegramClient telegramClient) {
+        this.telegramClient = telegramClient;
         msgInteraction = new MessageInteraction(telegramClient);
+        router = buildRouter();
+        boolean virtual = Config.isVirtualThreadMode();
+        int maxBacklog = Config.getBotMaxBacklog();
+        dispatcher = new UpdateDispatcher(this::consume, virtual ? newVirtualWorkers() : newWorkerPool(), maxBacklog);
+        LOGGER.info("Update dispatcher started in " + (virtual ? "virtual" : "platform") + " thread mode, backlog " + maxBacklog);
+        registerGauges(dispatcher);
+    }
+
+    private static ExecutorService newWorkerPool() {
+        int threads = Config.getBotWorkerThreads();
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bot-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
+    // BOT_EXECUTION_MODE=virtual: every chat lane runs on its own virtual thread.
+    // Concurrent DB work is still capped by the connection pool, waiting for it just parks the virtual thread.
+    private static ExecutorService newVirtualWorkers() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bot-vworker-", 0).factory());
+    }
+
+    // Long polling hands over a batch; chats are processed in parallel, each chat in order.
+    // Blocks when the dispatcher backlog is full so the poller slows down instead of piling up updates.
     @Override
+    public void consume(List<Update> updates) {
+        for (Update update : updates) {
+            dispatcher.dispatch(update);
+        }
+    }
+
+    public UpdateDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    // pickup/return reminders and overdue alerts, sent through this bot's pipeline
+    public void startReminders() {
+        RentalReminders.start(msgInteraction);
+    }
+
+    // cluster worker: this process is one of `of` sending with the bot token
+    void setSendShare(int of) {
+        msgInteraction.setSendShare(of);
+    }
+
+    // Routes a single update. Runs on a dispatcher worker; never concurrently for the same chat.
     public void consume(Update update) {
         // Handle callback queries (inline buttons)
         if (update.hasCallbackQuery()) {
             long chatId = update.getCallbackQuery().getMessage().getChatId();
-            String data = update.getCallbackQuery().getData();
-            String callbackId = update.getCallbackQuery().getId();
-
-            // admin-specific callbacks
-            if (data != null && (data.startsWith("admin_") || "admin_menu".equals(data))) {
-                AdminHandler.handleCallbackQuery(msgInteraction, chatId, data, callbackId);
-                return;
-            }
-
-            // rent-specific callbacks
-            if (data != null && data.startsWith("rent_")) {
-                RentHandler.handleCallbackQuery(msgInteraction, chatId, data, callbackId);
-                return;
-            }
-
-            // active-rents callbacks
-            if (data != null && data.startsWith("ar_")) {
-                ActiveRentsHandler.handleCallbackQuery(msgInteraction, chatId, data, callbackId);
-                return;
-            }
-
-            // default to StartHandler for other callbacks
-            StartHandler.handleCallbackQuery(msgInteraction, chatId, data, callbackId);
+            router.routeCallback(chatId, update.getCallbackQuery().getData(), update.getCallbackQuery().getId());
+            return;
+        }
+
+        // files: only admin imports use them
+        if (update.hasMessage() && update.getMessage().hasDocument()) {
+            long start = System.nanoTime();
+            AdminDataTransfer.handleDocument(msgInteraction, update.getMessage().getChatId(),
+                    update.getMessage().getCaption(), update.getMessage().getDocument());
+            DOCUMENT_TIMER.recordSince(start);
             return;
         }
 
         if (update.hasMessage() && update.getMessage().hasText()) {
-            long chatId = update.getMessage().getChatId();
-            String message = update.getMessage().getText();
-            String splitRegex = "\\s+";
-            String[] splitMessage = message.split(splitRegex);
-
-            // Early: route menu button texts (reply-keyboard labels) directly to MenuHandler.
-            // This ensures pressing "Active rents", "Admin", "Rent car" etc. works even if another flow was active.
-            if (!splitMessage[0].startsWith("/")) {
-                String label = splitMessage[0].trim();
-                // include common menu labels; MenuHandler will validate auth and clear flows as needed
-                if (label.equalsIgnoreCase("Admin")
-                        || label.equalsIgnoreCase("Rent")
-                        || label.equalsIgnoreCase("Rent car")
-                        || label.equalsIgnoreCase("Menu")
-                        || label.equalsIgnoreCase("Active")
-                        || label.equalsIgnoreCase("Active rents")
-                        || label.equalsIgnoreCase("Profile")
-                        || label.equalsIgnoreCase("Help")) {
-                    MenuHandler.handleMenuSelection(msgInteraction, chatId, message);
-                    return;
-                }
-            }
-
-            // ActiveRentsHandler precedence
-            if (!splitMessage[0].startsWith("/") && ActiveRentsHandler.hasActive(chatId)) {
-                ActiveRentsHandler.handleIncomingMessage(msgInteraction, chatId, message);
-                return;
-            }
-
-            // If AdminHandler is currently expecting input, it has precedence
-            if (!splitMessage[0].startsWith("/") && AdminHandler.hasActive(chatId)) {
-                AdminHandler.handleIncomingMessage(msgInteraction, chatId, message);
-                return;
-            }
-
-            // If RentHandler is currently expecting input, it has precedence over StartHandler
-            if (!splitMessage[0].startsWith("/") && RentHandler.hasActive(chatId)) {
-                RentHandler.handleIncomingMessage(msgInteraction, chatId, message);
-                return;
-            }
-
-            // If there is an active start-conversation for this chat, forward raw text to it
-            if (!splitMessage[0].startsWith("/") && StartHandler.hasActive(chatId)) {
-                StartHandler.handleIncomingMessage(msgInteraction, chatId, message);
-                return;
-            }
-
-            switch (splitMessage[0]) {
-                case "/start":
-                    StartHandler.startCommand(msgInteraction, chatId);
-                    break;
-
-                case "/help":
-                    // подробная справка по всем командам проекта (обновлённый текст)
-                    msgInteraction.sendMessage(chatId,
-                        "Справка — команды и краткое описание:\n\n" +
-                        "/start — начать: вход или регистрация через подсказки бота.\n" +
-                        "/help — показать эту справку.\n" +
-                        "/menu — открыть главное меню (только для зарегистрированных пользователей).\n" +
-                        "/admin — открыть панель администратора (только для зарегистрированных). Если вы не админ, бот попросит пароль; при успешной проверке флаг isAdmin сохраняется в базе.\n" +
-                        "/rent — начать бронирование авто (или кнопка \"Rent car\" в меню). Последовательность: выбор филиала → выбор авто → ввод даты приёма (DD.MM.YYYY) → выбор филиала возврата → ввод даты возврата (DD.MM.YYYY).\n" +
-                        "/rents или кнопка \"Active rents\" — показать ваши активные брони (только для зарегистрированных). Можно выбрать бронь кнопкой или по id, затем отменить или изменить даты/филиалы.\n\n" +
-                        "Примечания:\n" +
-                        "- В большинстве мест можно выбрать через Inline-кнопки или ввести id/дату с клавиатуры (ввод валидируется).\n" +
-                        "- Формат дат: DD.MM.YYYY. Дата приёма ≥ сегодня; дата возврата ≥ дата приёма.\n"
-                    );
-                    break;
-
-                case "/menu":
-                    if (!MenuHandler.isAuthenticated(chatId)) {
-                        msgInteraction.sendMessage(chatId, "Only registered/logged-in users can use /menu. Please /start to login or register.");
-                    } else {
-                        // stop other active flows for this chat
-                        if (StartHandler.hasActive(chatId)) {
-                            StartHandler.cancelFlow(chatId);
-                        }
-                        // ensure rent and admin flows are ended so reopening them starts fresh
-                        SessionService.endRentSession(chatId);
-                        SessionService.endAdminSession(chatId);
-
-                        msgInteraction.sendMessage(chatId, "Menu activated. Other commands are suspended while you use the menu.");
-                        MenuHandler.showMenu(msgInteraction, chatId, true);
-                    }
-                    break;
-
-                case "/admin":
-                case "Admin":
-                    // route Admin button or /admin command to MenuHandler which will verify auth and forward to AdminHandler
-                    MenuHandler.handleMenuSelection(msgInteraction, chatId, splitMessage[0]);
-                    break;
-
-                case "/rent":
-                case "Rent":
-                case "Rent car":
-                    // route rent command
-                    MenuHandler.handleMenuSelection(msgInteraction, chatId, splitMessage[0]);
-                    break;
-
-                case "/rents":
-                case "Active":
-                case "Active rents":
-                    MenuHandler.handleMenuSelection(msgInteraction, chatId, splitMessage[0]);
-                    break;
-
-                default:
-                    msgInteraction.sendMessage(chatId, "Unknown command. Type /help to see available commands.");
-                    break;
-            }
+            router.routeText(update.getMessage().getChatId(), update.getMessage().getText());
+        }
+    }
+
+    // queue depths and pool usage, read when /metrics or /stats asks
+    private static void registerGauges(UpdateDispatcher dispatcher) {
+        Metrics.gauge("bot_queue_depth", "queue", "updates", dispatcher::getBacklog);
+        Metrics.gauge("bot_queue_depth", "queue", "update_chats", dispatcher::getActiveChats);
+        Metrics.gauge("bot_queue_depth", "queue", "send_interactive", () -> msgInteraction.getSendStats().pendingInteractive);
+        Metrics.gauge("bot_queue_depth", "queue", "send_bulk", () -> msgInteraction.getSendStats().pendingBulk);
+        Metrics.gauge("bot_queue_depth", "queue", "db_pool_waiting", () -> Database.getPoolStats().waiting);
+        Metrics.gauge("bot_queue_depth", "queue", "password_hashing", PasswordHasher::getQueuedCount);
+        Metrics.gauge("bot_db_pool_connections", "state", "active", () -> Database.getPoolStats().active);
+        Metrics.gauge("bot_db_pool_connections", "state", "idle", () -> Database.getPoolStats().idle);
+        Metrics.gauge("bot_db_statement_cache", "result", "hit", () -> Database.getPoolStats().statementHits);
+        Metrics.gauge("bot_db_statement_cache", "result", "miss", () -> Database.getPoolStats().statementMisses);
+        Metrics.gauge("bot_sessions", "store", "in_memory", ConversationStore::getInMemoryCount);
+    }
+
+    // All routes in one place; see CommandRouter for the resolution order.
+    private static CommandRouter buildRouter() {
+        CommandRouter r = new CommandRouter();
+
+        // conversation flows, highest precedence first
+        r.flow("activeRents", ActiveRentsHandler::hasActive,
+                (chatId, text) -> ActiveRentsHandler.handleIncomingMessage(msgInteraction, chatId, text));
+        r.flow("admin", AdminHandler::hasActive,
+                (chatId, text) -> AdminHandler.handleIncomingMessage(msgInteraction, chatId, text));
+        r.flow("rent", RentHandler::hasActive,
+                (chatId, text) -> RentHandler.handleIncomingMessage(msgInteraction, chatId, text));
+        r.flow("start", StartHandler::hasActive,
+                (chatId, text) -> StartHandler.handleIncomingMessage(msgInteraction, chatId, text));
+
+        // Menu button texts (reply-keyboard labels) go straight to MenuHandler, even if another flow was active.
+        // MenuHandler will validate auth and clear flows as needed.
+        CommandRouter.TextRoute menu = (chatId, text, args) -> MenuHandler.handleMenuSelection(msgInteraction, chatId, text);
+        r.label("Admin", menu)
+         .label("Rent", menu)    // also "Rent car"
+         .label("Active", menu)  // also "Active rents"
+         .label("Menu", menu)
+         .label("Profile", menu)
+         .label("Help", menu);
+
+        r.command("/start", (chatId, text, args) -> StartHandler.startCommand(msgInteraction, chatId))
+         .command("/help", (chatId, text, args) -> msgInteraction.sendMessage(chatId, HELP_TEXT))
+         .command("/menu", Bot::menuCommand)
+         // route /admin to MenuHandler which will verify auth and forward to AdminHandler
+         .command("/admin", (chatId, text, args) -> MenuHandler.handleMenuSelection(msgInteraction, chatId, "/admin"))
+         .command("/rent", (chatId, text, args) -> MenuHandler.handleMenuSelection(msgInteraction, chatId, "/rent"))
+         .command("/rents", (chatId, text, args) -> MenuHandler.handleMenuSelection(msgInteraction, chatId, "/rents"))
+         // admin: browse cars page by page, optional "branch=<id> status=<id>"
+         .command("/cars", (chatId, text, args) -> AdminPaging.showCars(msgInteraction, chatId, AdminPaging.parseCarFilter(args)))
+         // admin: browse all rentals page by page, optionally for one login
+         .command("/allrents", (chatId, text, args) -> AdminPaging.showRentals(msgInteraction, chatId, args.isEmpty() ? null : args))
+         // admin: status change / move / delete for many cars in one transaction
+         .command("/bulk", (chatId, text, args) -> AdminBulk.handleCommand(msgInteraction, chatId, args))
+         // admin: fleet data as a CSV/JSON file; imports arrive as documents (see consume)
+         .command("/export", (chatId, text, args) -> AdminDataTransfer.handleExport(msgInteraction, chatId, args))
+         .command("/import", (chatId, text, args) -> AdminDataTransfer.handleImportCommand(msgInteraction, chatId))
+         // admin: latency percentiles, queue depths, pool usage
+         .command("/stats", (chatId, text, args) -> AdminStats.show(msgInteraction, chatId))
+         .unknown((chatId, text, args) -> msgInteraction.sendMessage(chatId, "Unknown command. Type /help to see available commands."));
+
+        // callbacks: longest matching prefix wins, so admin_page_ and admin_bulk_ are checked before admin_
+        r.callbackPrefix(AdminPaging.CALLBACK_PREFIX, (chatId, data, id) -> AdminPaging.handleCallbackQuery(msgInteraction, chatId, data, id))
+         .callbackPrefix(AdminBulk.CALLBACK_PREFIX, (chatId, data, id) -> AdminBulk.handleCallbackQuery(msgInteraction, chatId, data, id))
+         .callbackPrefix("admin_", (chatId, data, id) -> AdminHandler.handleCallbackQuery(msgInteraction, chatId, data, id))
+         .callbackPrefix("rent_", (chatId, data, id) -> RentHandler.handleCallbackQuery(msgInteraction, chatId, data, id))
+         .callbackPrefix("ar_", (chatId, data, id) -> ActiveRentsHandler.handleCallbackQuery(msgInteraction, chatId, data, id))
+         // default to StartHandler for other callbacks
+         .defaultCallback((chatId, data, id) -> StartHandler.handleCallbackQuery(msgInteraction, chatId, data, id));
+        return r;
+    }
+
+    private static void menuCommand(long chatId, String text, String args) {
+        if (!MenuHandler.isAuthenticated(chatId)) {
+            msgInteraction.sendMessage(chatId, "Only registered/logged-in users can use /menu. Please /start to login or register.");
+            return;
         }
+        // stop other active flows for this chat
+        if (StartHandler.hasActive(chatId)) {
+            StartHandler.cancelFlow(chatId);
+        }
+        // ensure rent and admin flows are ended so reopening them starts fresh
+        SessionService.endRentSession(chatId);
+        SessionService.endAdminSession(chatId);
+
+        msgInteraction.sendMessage(chatId, "Menu activated. Other commands are suspended while you use the menu.");
+        MenuHandler.showMenu(msgInteraction, chatId, true);
     }
+
+    // подробная справка по всем командам проекта (обновлённый текст)
+    private static final String HELP_TEXT =
+            "Справка — команды и краткое описание:\n\n" +
+            "/start — начать: вход или регистрация через подсказки бота.\n" +
+            "/help — показать эту справку.\n" +
+            "/menu — открыть главное меню (только для зарегистрированных пользователей).\n" +
+            "/admin — открыть панель администратора (только для зарегистрированных). Если вы не админ, бот попросит пароль; при успешной проверке флаг isAdmin сохраняется в базе.\n" +
+            "/rent — начать бронирование авто (или кнопка \"Rent car\" в меню). Последовательность: выбор филиала → выбор авто → ввод даты приёма (DD.MM.YYYY) → выбор филиала возврата → ввод даты возврата (DD.MM.YYYY).\n" +
+            "/rents или кнопка \"Active rents\" — показать ваши активные брони (только для зарегистрированных). Можно выбрать бронь кнопкой или по id, затем отменить или изменить даты/филиалы.\n" +
+            "/cars [branch=<id>] [status=<id>] — (админ) список авто постранично, кнопки Prev/Next.\n" +
+            "/allrents [login] — (админ) список всех бронирований постранично.\n" +
+            "/bulk status|move|delete ... — (админ) массовые операции над авто: ids=1,2,3, range=10-200, branch=<id> status=<id> или all; выполняются одной транзакцией после подтверждения.\n" +
+            "/export cars|branches|rentals [csv|json] — (админ) выгрузка данных файлом.\n" +
+            "/stats — (админ) задержки обработчиков и запросов (p50/p99), очереди, пул соединений.\n" +
+            "/import — (админ) загрузка авто/филиалов из CSV/JSON: отправьте файл с подписью \"/import cars\" или \"/import branches\".\n\n" +
+            "Примечания:\n" +
+            "- В большинстве мест можно выбрать через Inline-кнопки или ввести id/дату с клавиатуры (ввод валидируется).\n" +
+            "- Формат дат: DD.MM.YYYY. Дата приёма ≥ сегодня; дата возврата ≥ дата приёма.\n";
 }
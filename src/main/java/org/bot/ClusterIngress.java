@@ -0,0 +1,508 @@
+package org.bot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import modules.Metrics;
+import org.telegram.telegrambots.longpolling.interfaces.LongPollingUpdateConsumer;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Cluster ingress: takes every update (long polling or webhook) and forwards it to the worker process
+ * that owns its chat, over {@link ClusterProtocol}. It runs no handlers itself.
+ *
+ * A chat stays with the worker that handled its last update while it is active (SESSION_IDLE_MINUTES),
+ * because handlers keep conversation and sign-in state in process memory. A chat without a current
+ * worker goes to its owner on a {@link HashRing} of the connected workers. A worker that joins therefore
+ * takes new chats at once and the others' as they go idle; no conversation moves halfway.
+ *
+ * A worker that leaves:
+ *  - gracefully (LEAVING): gets nothing new; updates for its chats wait until it reports DRAINED
+ *    (everything handled, sessions written), then the chats move to their ring owners.
+ *  - by losing its connection: its chats move at once, and the updates it had not acknowledged go
+ *    to the new owners. One it had handled but not yet acknowledged is then handled twice.
+ * The first update of a moved chat carries ADOPT, and the new worker reads the chat's session from the
+ * shared session store (SESSION_STORE=file on a shared directory, or mysql). Sign-in is per process,
+ * so a moved chat that was signed in is asked to sign in again.
+ *
+ * Updates go out in the order route() is called, and each chat's in that order, to a single worker at a time.
+ * Routing waits while no worker is connected, or while the chat's worker is WINDOW updates behind,
+ * which holds back the poller (or fills the webhook queue) the way a full UpdateDispatcher does.
+ */
+public final class ClusterIngress implements LongPollingUpdateConsumer, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ClusterIngress.class.getName());
+    // unacknowledged updates per worker before routing to it waits
+    private static final int WINDOW = 10_000;
+    private static final int HELLO_TIMEOUT_MS = 5000;
+    private static final long SWEEP_INTERVAL_MS = 60_000;
+
+    private static final LongAdder ROUTED = Metrics.counter("bot_cluster_updates_total", "result", "routed");
+    private static final LongAdder MOVED = Metrics.counter("bot_cluster_updates_total", "result", "moved");
+    private static final LongAdder RESENT = Metrics.counter("bot_cluster_updates_total", "result", "resent");
+    private static final LongAdder REFUSED_WORKERS = Metrics.counter("bot_cluster_connections_total", "result", "refused");
+
+    private enum State { CONNECTED, DRAINING, GONE }
+
+    // an update on its way; seq is set once it is sent to a worker
+    private record Pending(long chatId, byte[] json, long seq) {
+    }
+
+    private static final class Assignment {
+        final Worker worker;
+        long lastSeen;
+
+        Assignment(Worker worker) {
+            this.worker = worker;
+        }
+    }
+
+    private final class Worker {
+        final String id;
+        final Socket socket;
+        final DataOutputStream out;
+        final Condition hasWork = lock.newCondition();
+        // frames for the sender thread
+        final ArrayDeque<byte[]> outbox = new ArrayDeque<>();
+        // sent and not acknowledged, oldest first
+        final ArrayDeque<Pending> unacked = new ArrayDeque<>();
+        // updates for its chats that arrived while it was draining
+        final List<Pending> parked = new ArrayList<>();
+        State state = State.CONNECTED;
+        long lastSeq;
+
+        Worker(String id, Socket socket, DataOutputStream out) {
+            this.id = id;
+            this.socket = socket;
+            this.out = out;
+        }
+    }
+
+    private final ServerSocket server;
+    private final byte[] secret;
+    private final long idleMs;
+    private final ReentrantLock lock = new ReentrantLock();
+    // signalled on every acknowledgement and membership change; route() waits on it
+    private final Condition progress = lock.newCondition();
+    private final HashRing<Worker> ring = new HashRing<>();
+    // connected and draining workers; only connected ones are on the ring. A restarted worker may
+    // connect under its id while its old process is still draining, so ids are not unique here.
+    private final List<Worker> workers = new ArrayList<>();
+    // access-ordered, so the least recently active chats are first
+    private final LinkedHashMap<Long, Assignment> assignments = new LinkedHashMap<>(1024, 0.75f, true);
+    // rerouted while no worker was connected; sent to the first one that joins
+    private final List<Pending> orphans = new ArrayList<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cluster-sweep");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean open = true;
+
+    private ClusterIngress(ServerSocket server, String secret, long idleMs) {
+        this.server = server;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.idleMs = idleMs;
+    }
+
+    /** Listen for workers on bindAddress:port (0 picks a free port). */
+    public static ClusterIngress start(String bindAddress, int port, String secret, long idleMs) throws IOException {
+        ServerSocket server = new ServerSocket();
+        try {
+            server.bind(new InetSocketAddress(bindAddress, port), 64);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        ClusterIngress ingress = new ClusterIngress(server, secret, idleMs);
+        Thread accept = new Thread(ingress::acceptLoop, "cluster-accept");
+        accept.setDaemon(true);
+        accept.start();
+        ingress.sweeper.scheduleWithFixedDelay(ingress::sweep, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Metrics.gauge("bot_cluster_workers", "state", "connected", () -> ingress.countWorkers(State.CONNECTED));
+        Metrics.gauge("bot_cluster_workers", "state", "draining", () -> ingress.countWorkers(State.DRAINING));
+        Metrics.gauge("bot_queue_depth", "queue", "cluster_unacked", ingress::countUnacked);
+        Metrics.gauge("bot_queue_depth", "queue", "cluster_chats", ingress::countAssignments);
+        LOGGER.info("Cluster ingress waiting for workers on " + bindAddress + ":" + ingress.getPort());
+        return ingress;
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    // long polling hands over a batch
+    @Override
+    public void consume(List<Update> updates) {
+        for (Update update : updates) {
+            route(update);
+        }
+    }
+
+    /** Forward an update to its chat's worker, waiting while there is none or it is too far behind. */
+    public void route(Update update) {
+        long chatId = UpdateDispatcher.chatIdOf(update);
+        byte[] json;
+        try {
+            json = ClusterProtocol.MAPPER.writeValueAsBytes(update);
+        } catch (JsonProcessingException e) {
+            LOGGER.warning("Cannot encode update " + update.getUpdateId() + " for a worker: " + e.getMessage());
+            return;
+        }
+        lock.lock();
+        try {
+            while (!trySend(chatId, json, false)) {
+                progress.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warning("Interrupted while waiting for a cluster worker; update " + update.getUpdateId() + " dropped");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock. Returns false if the update has to wait: no worker, or the worker's window is full.
+    // Rerouted updates never wait, they are older than anything route() holds: the window may overshoot
+    // and with no worker they are kept for the next one to join.
+    private boolean trySend(long chatId, byte[] json, boolean rerouted) {
+        Assignment a = assignments.get(chatId);
+        if (a != null && a.worker.state == State.DRAINING) {
+            a.worker.parked.add(new Pending(chatId, json, 0));
+            return true;
+        }
+        Worker w = a != null && a.worker.state == State.CONNECTED ? a.worker : ring.owner(chatId);
+        if (w == null) {
+            if (!rerouted) return false;
+            orphans.add(new Pending(chatId, json, 0));
+            return true;
+        }
+        if (!rerouted && w.unacked.size() >= WINDOW) return false;
+        boolean adopt = a != null && a.worker != w;
+        if (a == null || adopt) {
+            a = new Assignment(w);
+            assignments.put(chatId, a);
+        }
+        a.lastSeen = System.currentTimeMillis();
+        long seq = ++w.lastSeq;
+        w.unacked.add(new Pending(chatId, json, seq));
+        w.outbox.add(ClusterProtocol.update(seq, chatId, adopt ? ClusterProtocol.FLAG_ADOPT : 0, json));
+        w.hasWork.signal();
+        (adopt ? MOVED : ROUTED).increment();
+        return true;
+    }
+
+    // ---- workers joining ----
+
+    private void acceptLoop() {
+        while (open) {
+            try {
+                Socket socket = server.accept();
+                Thread t = new Thread(() -> greet(socket), "cluster-hello");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (open) LOGGER.warning("Cluster accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void greet(Socket socket) {
+        String id = null;
+        try {
+            socket.setSoTimeout(HELLO_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            ClusterProtocol.Frame hello = ClusterProtocol.read(in);
+            if (hello.type() != ClusterProtocol.HELLO) throw new IOException("expected HELLO, got frame type " + hello.type());
+            DataInputStream d = hello.data();
+            byte[] presented = ClusterProtocol.readText(d).getBytes(StandardCharsets.UTF_8);
+            id = ClusterProtocol.readText(d);
+            if (!MessageDigest.isEqual(presented, secret)) {
+                refuse(socket, out, "wrong cluster secret", id);
+                return;
+            }
+            socket.setSoTimeout(0);
+            socket.setKeepAlive(true);
+            Worker previous = null;
+            lock.lock();
+            try {
+                for (Worker o : workers) {
+                    if (o.id.equals(id) && o.state == State.CONNECTED) previous = o;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // the same worker back before its old connection was noticed to be dead
+            if (previous != null) remove(previous, "reconnected");
+            Worker w = new Worker(id, socket, out);
+            int count;
+            lock.lock();
+            try {
+                workers.add(w);
+                ring.add(id, w);
+                count = workers.size();
+                announce();
+                List<Pending> waiting = new ArrayList<>(orphans);
+                orphans.clear();
+                for (Pending p : waiting) trySend(p.chatId(), p.json(), true);
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            startThread("cluster-send-" + id, () -> sendLoop(w));
+            startThread("cluster-recv-" + id, () -> receiveLoop(w, in));
+            LOGGER.info("Cluster worker " + id + " joined from " + socket.getRemoteSocketAddress() + "; " + count + " workers");
+        } catch (IOException e) {
+            LOGGER.warning("Cluster worker " + (id != null ? id + " " : "") + "failed to join: " + e.getMessage());
+            closeQuietly(socket);
+        }
+    }
+
+    private void refuse(Socket socket, DataOutputStream out, String reason, String id) {
+        REFUSED_WORKERS.increment();
+        LOGGER.warning("Refused cluster worker " + id + " from " + socket.getRemoteSocketAddress() + ": " + reason);
+        try {
+            out.write(ClusterProtocol.withText(ClusterProtocol.REFUSED, reason));
+            out.flush();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        closeQuietly(socket);
+    }
+
+    private static void startThread(String name, Runnable body) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // caller holds the lock: tell the workers how many share the bot token's send rate now.
+    // Draining ones keep their share and are sent nothing after RELEASED.
+    private void announce() {
+        byte[] frame = ClusterProtocol.withCount(ClusterProtocol.WORKERS, workers.size());
+        for (Worker w : workers) {
+            if (w.state != State.CONNECTED) continue;
+            w.outbox.add(frame);
+            w.hasWork.signal();
+        }
+    }
+
+    // ---- per worker: one thread writes, one reads ----
+
+    private void sendLoop(Worker w) {
+        List<byte[]> batch = new ArrayList<>();
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    while (w.outbox.isEmpty() && w.state != State.GONE) {
+                        w.hasWork.await();
+                    }
+                    if (w.state == State.GONE) return;
+                    batch.addAll(w.outbox);
+                    w.outbox.clear();
+                } finally {
+                    lock.unlock();
+                }
+                for (byte[] frame : batch) {
+                    w.out.write(frame);
+                }
+                w.out.flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            remove(w, "connection failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void receiveLoop(Worker w, DataInputStream in) {
+        try {
+            while (true) {
+                ClusterProtocol.Frame f = ClusterProtocol.read(in);
+                switch (f.type()) {
+                    case ClusterProtocol.ACK:
+                        acknowledge(w, f.data().readLong());
+                        break;
+                    case ClusterProtocol.LEAVING:
+                        leaving(w);
+                        break;
+                    case ClusterProtocol.DRAINED:
+                        acknowledge(w, f.data().readLong());
+                        remove(w, "drained");
+                        return;
+                    default:
+                        throw new IOException("unexpected frame type " + f.type());
+                }
+            }
+        } catch (IOException e) {
+            remove(w, "connection lost: " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+        }
+    }
+
+    private void acknowledge(Worker w, long seq) {
+        lock.lock();
+        try {
+            while (!w.unacked.isEmpty() && w.unacked.peekFirst().seq() <= seq) {
+                w.unacked.pollFirst();
+            }
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // graceful leave, step 1: off the ring, and nothing after RELEASED
+    private void leaving(Worker w) {
+        lock.lock();
+        try {
+            if (w.state != State.CONNECTED) return;
+            w.state = State.DRAINING;
+            ring.remove(w.id);
+            w.outbox.add(ClusterProtocol.empty(ClusterProtocol.RELEASED));
+            w.hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+        LOGGER.info("Cluster worker " + w.id + " is leaving; holding its chats' updates until it has drained");
+    }
+
+    // The worker is gone (drained, or its connection broke): move its chats, starting with what it had not
+    // acknowledged and then what waited for it, so every chat keeps its order.
+    private void remove(Worker w, String why) {
+        int resent;
+        int parked;
+        int count;
+        lock.lock();
+        try {
+            if (w.state == State.GONE) return;
+            // a draining worker is off the ring already, and its id may belong to a new connection there
+            if (w.state == State.CONNECTED) ring.remove(w.id);
+            w.state = State.GONE;
+            workers.remove(w);
+            resent = w.unacked.size();
+            parked = w.parked.size();
+            for (Pending p : w.unacked) trySend(p.chatId(), p.json(), true);
+            for (Pending p : w.parked) trySend(p.chatId(), p.json(), true);
+            w.unacked.clear();
+            w.parked.clear();
+            w.outbox.clear();
+            RESENT.add(resent);
+            count = workers.size();
+            announce();
+            w.hasWork.signal();
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(w.socket);
+        String msg = "Cluster worker " + w.id + " removed (" + why + "); " + count + " workers";
+        if (resent > 0 || parked > 0) msg += ", rerouted " + resent + " unacknowledged and " + parked + " held updates";
+        if (resent > 0) LOGGER.warning(msg);
+        else LOGGER.info(msg);
+    }
+
+    // forget assignments of chats idle for longer than sessions live; they go by the ring again
+    private void sweep() {
+        long cutoff = System.currentTimeMillis() - idleMs;
+        lock.lock();
+        try {
+            Iterator<Assignment> it = assignments.values().iterator();
+            while (it.hasNext()) {
+                Assignment a = it.next();
+                if (a.lastSeen >= cutoff) break;
+                // a draining worker's chats move when it has drained, not before
+                if (a.worker.state != State.DRAINING) it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long countWorkers(State state) {
+        lock.lock();
+        try {
+            long n = 0;
+            for (Worker w : workers) {
+                if (w.state == state) n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long countUnacked() {
+        lock.lock();
+        try {
+            long n = orphans.size();
+            for (Worker w : workers) {
+                n += w.unacked.size() + w.parked.size();
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long countAssignments() {
+        lock.lock();
+        try {
+            return assignments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        sweeper.shutdownNow();
+        try {
+            server.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        List<Worker> all;
+        lock.lock();
+        try {
+            all = new ArrayList<>(workers);
+        } finally {
+            lock.unlock();
+        }
+        for (Worker w : all) {
+            closeQuietly(w.socket);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.bot;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format between the cluster ingress and its workers: one TCP connection per worker carrying
+ * length-prefixed frames, {@code int length, byte type, payload}, the length counting type and payload.
+ *
+ *   HELLO     worker -> ingress   text secret, text worker id
+ *   WORKERS   ingress -> worker   int number of workers sending with the bot token (again on every change)
+ *   UPDATE    ingress -> worker   long seq, long chat id, byte flags, update JSON
+ *   ACK       worker -> ingress   long seq: every update up to seq has been handled
+ *   LEAVING   worker -> ingress   shutting down, send nothing new
+ *   RELEASED  ingress -> worker   nothing follows this frame
+ *   DRAINED   worker -> ingress   long seq: all handled and sessions written; the chats may move
+ *   REFUSED   ingress -> worker   text reason; the connection is closed after it
+ *
+ * Sequence numbers count per connection from 1.
+ */
+final class ClusterProtocol {
+    static final byte HELLO = 1;
+    static final byte WORKERS = 2;
+    static final byte UPDATE = 3;
+    static final byte ACK = 4;
+    static final byte LEAVING = 5;
+    static final byte RELEASED = 6;
+    static final byte DRAINED = 7;
+    static final byte REFUSED = 8;
+
+    // UPDATE flag: the chat was handled by another worker before, reload its session from the shared store
+    static final byte FLAG_ADOPT = 1;
+
+    // updates are at most a few KB; anything near this is a broken or foreign peer
+    static final int MAX_FRAME = 1 << 20;
+
+    static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    record Frame(byte type, byte[] payload) {
+        DataInputStream data() {
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        }
+    }
+
+    private ClusterProtocol() {
+    }
+
+    static Frame read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME) throw new IOException("Bad cluster frame length " + length);
+        byte type = in.readByte();
+        byte[] payload = new byte[length - 1];
+        in.readFully(payload);
+        return new Frame(type, payload);
+    }
+
+    // complete frames, built by the sender and written as they are
+
+    static byte[] hello(String secret, String workerId) {
+        byte[] s = secret.getBytes(StandardCharsets.UTF_8);
+        byte[] id = workerId.getBytes(StandardCharsets.UTF_8);
+        return frame(HELLO, 4 + s.length + id.length).putShort((short) s.length).put(s)
+                .putShort((short) id.length).put(id).array();
+    }
+
+    static byte[] update(long seq, long chatId, byte flags, byte[] json) {
+        return frame(UPDATE, 17 + json.length).putLong(seq).putLong(chatId).put(flags).put(json).array();
+    }
+
+    static byte[] withSeq(byte type, long seq) {
+        return frame(type, 8).putLong(seq).array();
+    }
+
+    static byte[] withCount(byte type, int n) {
+        return frame(type, 4).putInt(n).array();
+    }
+
+    static byte[] empty(byte type) {
+        return frame(type, 0).array();
+    }
+
+    static byte[] withText(byte type, String text) {
+        byte[] t = text.getBytes(StandardCharsets.UTF_8);
+        return frame(type, 2 + t.length).putShort((short) t.length).put(t).array();
+    }
+
+    private static ByteBuffer frame(byte type, int payloadLength) {
+        return ByteBuffer.allocate(5 + payloadLength).putInt(1 + payloadLength).put(type);
+    }
+
+    // text as written above: unsigned short length, then UTF-8
+    static String readText(DataInputStream in) throws IOException {
+        byte[] t = new byte[in.readUnsignedShort()];
+        in.readFully(t);
+        return new String(t, StandardCharsets.UTF_8);
+    }
+}
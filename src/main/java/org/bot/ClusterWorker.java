@@ -0,0 +1,227 @@
+package org.bot;
+
+import org.bot.commandhandlers.ConversationStore;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Cluster worker: takes the updates of its chats from the ingress and runs them through the local Bot's
+ * dispatcher, acknowledging each once its handler has returned (see {@link ClusterIngress}).
+ *
+ * If the ingress goes away the worker reconnects with backoff. Its chats may have moved meanwhile,
+ * so the in-memory sessions are dropped on reconnect and read back from the shared store when needed.
+ * close() leaves gracefully: LEAVING, handle everything received up to RELEASED, write the sessions, DRAINED.
+ */
+public final class ClusterWorker implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ClusterWorker.class.getName());
+    private static final long ACK_INTERVAL_MS = 10;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long MIN_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 10_000;
+    private static final long DRAIN_TIMEOUT_MS = 30_000;
+
+    private final Bot bot;
+    private final String host;
+    private final int port;
+    private final String secret;
+    private final String id;
+    private final ScheduledExecutorService acker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cluster-ack");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean closing;
+    private volatile Connection current;
+
+    public ClusterWorker(Bot bot, String host, int port, String secret, String id) {
+        this.bot = bot;
+        this.host = host;
+        this.port = port;
+        this.secret = secret;
+        this.id = id;
+    }
+
+    private final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        // received and not handled yet
+        final ConcurrentSkipListSet<Long> running = new ConcurrentSkipListSet<>();
+        final CountDownLatch released = new CountDownLatch(1);
+        final CountDownLatch drained = new CountDownLatch(1);
+        volatile long received;
+        long acked;
+        boolean finished;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        }
+
+        synchronized void send(byte[] frame) throws IOException {
+            if (finished) return;
+            out.write(frame);
+            out.flush();
+        }
+
+        // everything up to here is handled; read received before running, an update is added to running first
+        long handledUpTo() {
+            long r = received;
+            Long first = running.isEmpty() ? null : running.first();
+            return first == null ? r : Math.min(r, first - 1);
+        }
+
+        synchronized void ack() {
+            long upTo = handledUpTo();
+            if (upTo <= acked || finished) return;
+            try {
+                send(ClusterProtocol.withSeq(ClusterProtocol.ACK, upTo));
+                acked = upTo;
+            } catch (IOException e) {
+                // the reader notices the broken connection and reconnects
+            }
+        }
+
+        synchronized void finish(long upTo) throws IOException {
+            send(ClusterProtocol.withSeq(ClusterProtocol.DRAINED, upTo));
+            finished = true;
+        }
+    }
+
+    /**
+     * Serve the ingress until close() has left the cluster. Returns false if the ingress refused this worker
+     * (wrong CLUSTER_SECRET), which retrying does not fix.
+     */
+    public boolean run() throws InterruptedException {
+        acker.scheduleWithFixedDelay(() -> {
+            Connection c = current;
+            if (c != null) c.ack();
+        }, ACK_INTERVAL_MS, ACK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        long backoff = MIN_BACKOFF_MS;
+        boolean served = false;
+        while (!closing) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                Connection c = new Connection(socket);
+                if (served) {
+                    // chats handled here may have gone to other workers while we were away
+                    ConversationStore.releaseAll();
+                }
+                c.send(ClusterProtocol.hello(secret, id));
+                current = c;
+                served = true;
+                backoff = MIN_BACKOFF_MS;
+                LOGGER.info("Joined cluster ingress " + host + ":" + port + " as " + id);
+                String refusal = receive(c);
+                if (refusal != null) {
+                    current = null;
+                    LOGGER.severe("Cluster ingress refused worker " + id + ": " + refusal);
+                    return false;
+                }
+                // RELEASED: close() is leaving; keep the connection open until it has sent DRAINED
+                c.drained.await();
+                return true;
+            } catch (IOException e) {
+                current = null;
+                if (closing) break;
+                LOGGER.warning("Cluster ingress " + host + ":" + port + " unavailable (" + e.getMessage()
+                        + "), retrying in " + backoff + " ms");
+            }
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+        return true;
+    }
+
+    // read until RELEASED (returns null) or REFUSED (returns the reason); throws when the connection breaks
+    private String receive(Connection c) throws IOException {
+        while (true) {
+            ClusterProtocol.Frame f = ClusterProtocol.read(c.in);
+            DataInputStream d = f.data();
+            switch (f.type()) {
+                case ClusterProtocol.UPDATE:
+                    handle(c, d.readLong(), d.readLong(), d.readByte(), f.payload());
+                    break;
+                case ClusterProtocol.WORKERS:
+                    int workers = d.readInt();
+                    bot.setSendShare(workers);
+                    LOGGER.info("Cluster has " + workers + " workers; sending at 1/" + workers + " of the global rate");
+                    break;
+                case ClusterProtocol.RELEASED:
+                    c.released.countDown();
+                    return null;
+                case ClusterProtocol.REFUSED:
+                    return ClusterProtocol.readText(d);
+                default:
+                    throw new IOException("unexpected frame type " + f.type());
+            }
+        }
+    }
+
+    private void handle(Connection c, long seq, long chatId, byte flags, byte[] payload) {
+        Update update;
+        try {
+            // the update JSON follows seq, chat id and flags
+            update = ClusterProtocol.MAPPER.readValue(payload, 17, payload.length - 17, Update.class);
+        } catch (IOException e) {
+            LOGGER.warning("Dropping undecodable update for chat " + chatId + ": " + e.getMessage());
+            c.received = seq;
+            return;
+        }
+        if ((flags & ClusterProtocol.FLAG_ADOPT) != 0) ConversationStore.adopt(chatId);
+        c.running.add(seq);
+        c.received = seq;
+        // blocks while the dispatcher is full, and the ingress stops sending once its window is
+        bot.getDispatcher().dispatch(update, () -> c.running.remove(seq));
+    }
+
+    /** Leave the cluster: finish what the ingress has sent, write sessions, hand the chats back. */
+    @Override
+    public void close() {
+        closing = true;
+        Connection c = current;
+        if (c == null) {
+            acker.shutdownNow();
+            ConversationStore.flush();
+            return;
+        }
+        try {
+            c.send(ClusterProtocol.empty(ClusterProtocol.LEAVING));
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+            if (c.released.await(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                while (!c.running.isEmpty() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(ACK_INTERVAL_MS);
+                }
+            }
+            acker.shutdownNow();
+            ConversationStore.flush();
+            // anything still unhandled after the timeout is sent to another worker
+            long upTo = c.handledUpTo();
+            c.finish(upTo);
+            if (upTo < c.received) LOGGER.warning("Left the cluster with " + (c.received - upTo) + " updates unhandled");
+            else LOGGER.info("Left the cluster, all updates handled");
+        } catch (IOException e) {
+            LOGGER.warning("Lost the cluster ingress while leaving: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            c.drained.countDown();
+        }
+    }
+}
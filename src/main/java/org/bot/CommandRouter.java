@@ -0,0 +1,214 @@
+package org.bot;
+
+import modules.LatencyHistogram;
+import modules.Metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * Routing tables for incoming text and callback data, built once at startup (see Bot).
+ *
+ * Text is resolved by its first token without regex splitting:
+ *   1. reply-keyboard labels (case-insensitive hash lookup),
+ *   2. the chat's active conversation flow,
+ *   3. slash commands (exact hash lookup),
+ *   4. the fallback route.
+ * Callback data is matched against registered prefixes in a trie (longest prefix wins).
+ *
+ * Free text goes to the first active flow in registration order (ActiveRents > Admin > Rent > Start).
+ * Several flows can be active at once (/start does not end the others), so every lookup asks them in
+ * that order; hasActive() is a map lookup in each handler, and nothing is kept per chat here.
+ *
+ * Every route is timed in bot_handler_seconds{route=...}; the histograms are created at registration,
+ * so routing adds two nanoTime() calls and one histogram update per message.
+ */
+final class CommandRouter {
+
+    @FunctionalInterface
+    interface TextRoute {
+        // args: text after the first token, trimmed ("" if none)
+        void handle(long chatId, String text, String args);
+    }
+
+    @FunctionalInterface
+    interface CallbackRoute {
+        void handle(long chatId, String data, String callbackId);
+    }
+
+    @FunctionalInterface
+    interface FlowInput {
+        void handle(long chatId, String text);
+    }
+
+    /** A conversation that, while active, receives the chat's free text. */
+    static final class Flow {
+        final String name;
+        final LongPredicate isActive;
+        final FlowInput input;
+        final LatencyHistogram timer;
+
+        private Flow(String name, LongPredicate isActive, FlowInput input) {
+            this.name = name;
+            this.isActive = isActive;
+            this.input = input;
+            this.timer = timer("flow:" + name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class Route {
+        final TextRoute route;
+        final LatencyHistogram timer;
+
+        Route(TextRoute route, String name) {
+            this.route = route;
+            this.timer = timer(name);
+        }
+    }
+
+    private static final class TrieNode {
+        final Map<Character, TrieNode> next = new HashMap<>(4);
+        CallbackRoute route;
+        LatencyHistogram timer;
+    }
+
+    private final Map<String, Route> commands = new HashMap<>();
+    private final Map<String, Route> labels = new HashMap<>();
+    private final List<Flow> flows = new ArrayList<>();
+    private final TrieNode callbacks = new TrieNode();
+    private CallbackRoute defaultCallback = (chatId, data, callbackId) -> { };
+    private TextRoute unknown = (chatId, text, args) -> { };
+    private final LatencyHistogram defaultCallbackTimer = timer("callback:default");
+    private final LatencyHistogram unknownTimer = timer("unknown");
+
+    /** Register a flow; flows registered first take precedence when several are active. */
+    CommandRouter flow(String name, LongPredicate isActive, FlowInput input) {
+        flows.add(new Flow(name, isActive, input));
+        return this;
+    }
+
+    /** Exact command such as "/start". */
+    CommandRouter command(String command, TextRoute route) {
+        commands.put(command, new Route(route, command));
+        return this;
+    }
+
+    /** Reply-keyboard label, matched case-insensitively on the first word ("Rent car" -> "rent"). */
+    CommandRouter label(String firstWord, TextRoute route) {
+        String key = firstWord.toLowerCase(Locale.ROOT);
+        labels.put(key, new Route(route, "label:" + key));
+        return this;
+    }
+
+    CommandRouter callbackPrefix(String prefix, CallbackRoute route) {
+        TrieNode n = callbacks;
+        for (int i = 0; i < prefix.length(); i++) {
+            n = n.next.computeIfAbsent(prefix.charAt(i), c -> new TrieNode());
+        }
+        n.route = route;
+        n.timer = timer("callback:" + prefix);
+        return this;
+    }
+
+    CommandRouter defaultCallback(CallbackRoute route) {
+        defaultCallback = route;
+        return this;
+    }
+
+    CommandRouter unknown(TextRoute route) {
+        unknown = route;
+        return this;
+    }
+
+    void routeCallback(long chatId, String data, String callbackId) {
+        TrieNode best = null;
+        if (data != null) {
+            TrieNode n = callbacks;
+            for (int i = 0; i < data.length() && n != null; i++) {
+                n = n.next.get(data.charAt(i));
+                if (n != null && n.route != null) best = n;
+            }
+        }
+        long start = System.nanoTime();
+        try {
+            (best != null ? best.route : defaultCallback).handle(chatId, data, callbackId);
+        } finally {
+            (best != null ? best.timer : defaultCallbackTimer).recordSince(start);
+        }
+    }
+
+    void routeText(long chatId, String text) {
+        int start = 0;
+        int len = text.length();
+        while (start < len && Character.isWhitespace(text.charAt(start))) start++;
+        int end = start;
+        while (end < len && !Character.isWhitespace(text.charAt(end))) end++;
+        String first = text.substring(start, end);
+        boolean slash = first.startsWith("/");
+
+        if (!slash) {
+            // menu buttons work even while another flow is waiting for input
+            Route label = labels.get(first.toLowerCase(Locale.ROOT));
+            if (label != null) {
+                dispatch(label, chatId, text, end);
+                return;
+            }
+            Flow flow = activeFlow(chatId);
+            if (flow != null) {
+                long t0 = System.nanoTime();
+                try {
+                    flow.input.handle(chatId, text);
+                } finally {
+                    flow.timer.recordSince(t0);
+                }
+                return;
+            }
+        }
+
+        Route command = commands.get(first);
+        if (command != null) {
+            dispatch(command, chatId, text, end);
+        } else {
+            long t0 = System.nanoTime();
+            try {
+                unknown.handle(chatId, text, args(text, end));
+            } finally {
+                unknownTimer.recordSince(t0);
+            }
+        }
+    }
+
+    // highest-precedence flow the chat is in, or null
+    Flow activeFlow(long chatId) {
+        for (Flow candidate : flows) {
+            if (candidate.isActive.test(chatId)) return candidate;
+        }
+        return null;
+    }
+
+    private void dispatch(Route r, long chatId, String text, int tokenEnd) {
+        long start = System.nanoTime();
+        try {
+            r.route.handle(chatId, text, args(text, tokenEnd));
+        } finally {
+            r.timer.recordSince(start);
+        }
+    }
+
+    private static LatencyHistogram timer(String route) {
+        return Metrics.timer("bot_handler_seconds", "route", route);
+    }
+
+    private static String args(String text, int tokenEnd) {
+        return tokenEnd >= text.length() ? "" : text.substring(tokenEnd).trim();
+    }
+}
@@ -0,0 +1,65 @@
+package org.bot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of chat ids onto named members (cluster workers).
+ *
+ * Every member owns {@link #POINTS} points on a 64-bit ring; a chat belongs to the first point at or after
+ * its hash. Adding or removing one of N members moves only about 1/N of the chats, and the owner of a chat
+ * depends on the member names only, so a restarted ingress places chats where they were before.
+ * Not thread-safe; ClusterIngress guards it with its lock.
+ */
+final class HashRing<T> {
+    // enough points that members' shares stay within a few percent of each other
+    static final int POINTS = 160;
+
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+    private final Map<String, T> members = new TreeMap<>();
+
+    void add(String name, T member) {
+        remove(name);
+        members.put(name, member);
+        for (int i = 0; i < POINTS; i++) ring.put(hash(name + "#" + i), member);
+    }
+
+    void remove(String name) {
+        T member = members.remove(name);
+        if (member == null) return;
+        for (int i = 0; i < POINTS; i++) ring.remove(hash(name + "#" + i), member);
+    }
+
+    /** Owner of the chat, or null if the ring is empty. */
+    T owner(long chatId) {
+        if (ring.isEmpty()) return null;
+        Map.Entry<Long, T> e = ring.ceilingEntry(mix(chatId));
+        return e != null ? e.getValue() : ring.firstEntry().getValue();
+    }
+
+    int size() {
+        return members.size();
+    }
+
+    boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    // 64-bit FNV-1a, finished with the same mixer as chat ids
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    // SplitMix64 finalizer: consecutive chat ids land far apart on the ring
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
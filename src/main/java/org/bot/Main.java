@@ -3,9 +3,21 @@ package org.bot;
 
 
 import modules.Config;
+import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+import org.telegram.telegrambots.longpolling.interfaces.LongPollingUpdateConsumer;
+import org.telegram.telegrambots.longpolling.util.DefaultGetUpdatesGenerator;
+import org.telegram.telegrambots.meta.TelegramUrl;
+import org.telegram.telegrambots.meta.api.methods.updates.DeleteWebhook;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
 
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -13,13 +25,113 @@ public class Main {
     private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
 
     public static void main(String[] args) {
+        try {
+            Config.init();
+        } catch (IllegalStateException e) {
+            LOGGER.severe(e.getMessage());
+            System.exit(1);
+        }
+        if (Config.isWatchEnabled()) {
+            Config.watchForChanges();
+        }
+
+        ClusterWorker worker = null;
         try {
             String botToken = Config.getBotToken();
-            TelegramBotsLongPollingApplication botsApplication = new TelegramBotsLongPollingApplication();
-            botsApplication.registerBot(botToken, new Bot(botToken));
+            TelegramClient telegramClient = newTelegramClient(botToken);
+            switch (Config.getClusterRole()) {
+                case "ingress":
+                    // receives updates and shards them over the workers; runs no handlers
+                    ClusterIngress ingress = startIngress();
+                    if (Config.isWebhookMode()) startWebhook(telegramClient, ingress::route);
+                    else startPolling(botToken, telegramClient, ingress);
+                    break;
+                case "worker":
+                    Bot workerBot = new Bot(telegramClient);
+                    if (Config.isRemindersEnabled()) workerBot.startReminders();
+                    worker = new ClusterWorker(workerBot, Config.getClusterIngressHost(),
+                            Config.getClusterIngressPort(), Config.getClusterSecret(), Config.getClusterWorkerId());
+                    break;
+                default:
+                    Bot bot = new Bot(telegramClient);
+                    if (Config.isRemindersEnabled()) bot.startReminders();
+                    if (Config.isWebhookMode()) startWebhook(telegramClient, bot.getDispatcher()::dispatch);
+                    else startPolling(botToken, telegramClient, bot);
+                    break;
+            }
+            MetricsServer.start(Config.getMetricsBindAddress(), Config.getMetricsPort());
         } catch (TelegramApiException e) {
             LOGGER.log(Level.SEVERE, "Failed to start the bot", e);
+            return;
+        }
+        if (worker != null) runWorker(worker);
+    }
+
+    // TELEGRAM_API_URL points the bot at a local Bot API server (or a test stand-in) instead of api.telegram.org
+    private static TelegramClient newTelegramClient(String botToken) {
+        String apiUrl = Config.getTelegramApiUrl();
+        return apiUrl == null ? new OkHttpTelegramClient(botToken) : new OkHttpTelegramClient(botToken, telegramUrl(apiUrl));
+    }
+
+    private static TelegramUrl telegramUrl(String apiUrl) {
+        URI uri = URI.create(apiUrl);
+        int port = uri.getPort() != -1 ? uri.getPort() : "https".equals(uri.getScheme()) ? 443 : 80;
+        return TelegramUrl.builder().schema(uri.getScheme()).host(uri.getHost()).port(port).build();
+    }
+
+    private static void startPolling(String botToken, TelegramClient telegramClient, LongPollingUpdateConsumer consumer)
+            throws TelegramApiException {
+        // getUpdates is refused while a webhook from an earlier webhook-mode run is registered
+        telegramClient.execute(DeleteWebhook.builder().build());
+        TelegramBotsLongPollingApplication botsApplication = new TelegramBotsLongPollingApplication();
+        String apiUrl = Config.getTelegramApiUrl();
+        if (apiUrl == null) {
+            botsApplication.registerBot(botToken, consumer);
+        } else {
+            TelegramUrl url = telegramUrl(apiUrl);
+            botsApplication.registerBot(botToken, () -> url, new DefaultGetUpdatesGenerator(), consumer);
+        }
+    }
+
+    // Listen first, then tell Telegram where to post, so no update arrives before we can take it.
+    private static void startWebhook(TelegramClient telegramClient, Consumer<Update> updates) throws TelegramApiException {
+        try {
+            WebhookServer.start(Config.getWebhookBindAddress(), Config.getWebhookPort(), Config.getWebhookPath(),
+                    Config.getWebhookSecret(), Config.getWebhookQueueSize(), updates);
+        } catch (IOException e) {
+            LOGGER.severe("Cannot listen for webhook updates on " + Config.getWebhookBindAddress() + ":"
+                    + Config.getWebhookPort() + ": " + e.getMessage());
+            System.exit(1);
+        }
+        telegramClient.execute(SetWebhook.builder()
+                .url(Config.getWebhookUrl())
+                .secretToken(Config.getWebhookSecret())
+                .maxConnections(Config.getWebhookMaxConnections())
+                .build());
+        LOGGER.info("Webhook registered at " + Config.getWebhookUrl());
+    }
+
+    private static ClusterIngress startIngress() {
+        try {
+            return ClusterIngress.start(Config.getClusterBindAddress(), Config.getClusterPort(), Config.getClusterSecret(),
+                    TimeUnit.MINUTES.toMillis(Config.getSessionIdleMinutes()));
+        } catch (IOException e) {
+            LOGGER.severe("Cannot listen for cluster workers on " + Config.getClusterBindAddress() + ":"
+                    + Config.getClusterPort() + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    // Serves the ingress on the main thread. On shutdown (SIGTERM) the worker hands its chats back
+    // after finishing what it was given.
+    private static void runWorker(ClusterWorker worker) {
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::close, "cluster-leave"));
+        try {
+            if (!worker.run()) System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-}
\ No newline at end of file
+}
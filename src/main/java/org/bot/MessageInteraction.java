@@ -1,8 +1,14 @@
 package org.bot;
 
+import modules.Metrics;
 import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
@@ -11,50 +17,75 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.Keyboard
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
+/**
+ * Outbound messaging used by all handlers. Sends are queued and performed in the background
+ * (see OutboundPipeline), so these methods return immediately; messages to one chat keep their order.
+ * The *Async variants expose the result for callers that need the sent Message or the failure.
+ */
 public class MessageInteraction {
     private static final Logger LOGGER = Logger.getLogger(MessageInteraction.class.getName());
     private final TelegramClient telegramClient;
+    private final OutboundPipeline pipeline;
 
     public MessageInteraction(TelegramClient telegramClient) {
         this.telegramClient = telegramClient;
+        this.pipeline = new OutboundPipeline(telegramClient);
     }
 
     public void sendMessage(long chatId, String text) {
-        SendMessage message = SendMessage
-                .builder()
-                .chatId(chatId) // reverted to original usage
-                .text(text)
-                .build();
-
-        try {
-            telegramClient.execute(message);
-        } catch (TelegramApiException e) {
-            LOGGER.severe("Failed to send message: " + e.getMessage());
-        }
+        sendMessageAsync(chatId, text);
     }
 
     public void sendMessage(long chatId, String text, ReplyKeyboardMarkup replyKeyboardMarkup) {
-        SendMessage message = SendMessage
-                .builder()
-                .chatId(chatId) // reverted to original usage
-                .text(text)
-                .replyMarkup(replyKeyboardMarkup)
-                .build();
+        sendMessageAsync(chatId, text, replyKeyboardMarkup);
+    }
 
-        try {
-            telegramClient.execute(message);
-        } catch (TelegramApiException e) {
-            LOGGER.severe("Failed to send message: " + e.getMessage());
-        }
+    // plain texts queued back to back for the same chat may be merged into one message
+    public CompletableFuture<Message> sendMessageAsync(long chatId, String text) {
+        return pipeline.submit(chatId, text, null, SendPriority.INTERACTIVE);
+    }
+
+    public CompletableFuture<Message> sendMessageAsync(long chatId, String text, ReplyKeyboard replyMarkup) {
+        return pipeline.submit(chatId, text, replyMarkup, SendPriority.INTERACTIVE);
+    }
+
+    // broadcasts/reminders: only uses send capacity that interactive replies leave free
+    public CompletableFuture<Message> sendBulkMessage(long chatId, String text) {
+        return pipeline.submit(chatId, text, null, SendPriority.BULK);
+    }
+
+    // queue depth, throttled sends and 429s of the outbound pipeline
+    public SendStats getSendStats() {
+        return pipeline.stats();
+    }
+
+    void setSendShare(int of) {
+        pipeline.setSendShare(of);
+    }
+
+    public void shutdown() {
+        pipeline.close();
     }
 
     // Add: send a reply keyboard with given button labels (single row)
     public void sendMessageWithReplyKeyboard(long chatId, String text, List<String> buttons) {
+        sendMessage(chatId, text, replyKeyboard(buttons));
+    }
+
+    // Changed: use InlineKeyboardRow and builders to match API signatures
+    public void sendMessageWithInlineKeyboard(long chatId, String text, Map<String, String> buttonLabelToCallbackData) {
+        sendMessageAsync(chatId, text, inlineKeyboard(buttonLabelToCallbackData));
+    }
+
+    // single row of reply buttons; static so it can be benchmarked without a TelegramClient
+    static ReplyKeyboardMarkup replyKeyboard(List<String> buttons) {
         // build rows first
         List<KeyboardRow> keyboard = new ArrayList<>();
         KeyboardRow row = new KeyboardRow();
@@ -64,18 +95,16 @@ public class MessageInteraction {
         keyboard.add(row);
 
         // use builder instead of constructor (some API versions don't expose a public constructor)
-        ReplyKeyboardMarkup keyboardMarkup = ReplyKeyboardMarkup.builder()
+        return ReplyKeyboardMarkup.builder()
                 .keyboard(keyboard)
                 .resizeKeyboard(true)
                 .oneTimeKeyboard(false)
                 .selective(false)
                 .build();
-
-        sendMessage(chatId, text, keyboardMarkup);
     }
 
-    // Changed: use InlineKeyboardRow and builders to match API signatures
-    public void sendMessageWithInlineKeyboard(long chatId, String text, Map<String, String> buttonLabelToCallbackData) {
+    // one inline button per row, in map order
+    static InlineKeyboardMarkup inlineKeyboard(Map<String, String> buttonLabelToCallbackData) {
         List<InlineKeyboardRow> rowsInline = new ArrayList<>();
         for (Map.Entry<String, String> entry : buttonLabelToCallbackData.entrySet()) {
             String label = entry.getKey();
@@ -91,21 +120,9 @@ public class MessageInteraction {
             rowsInline.add(row);
         }
 
-        InlineKeyboardMarkup markupInline = InlineKeyboardMarkup.builder()
+        return InlineKeyboardMarkup.builder()
                 .keyboard(rowsInline)
                 .build();
-
-        SendMessage message = SendMessage.builder()
-                .chatId(chatId)
-                .text(text)
-                .replyMarkup(markupInline)
-                .build();
-
-        try {
-            telegramClient.execute(message);
-        } catch (TelegramApiException ex) {
-            LOGGER.severe("Failed to send inline keyboard message: " + ex.getMessage());
-        }
     }
 
     // Add: answer callback query to remove spinner / show optional text
@@ -116,10 +133,33 @@ public class MessageInteraction {
                 .text(text)
                 .showAlert(false)
                 .build();
+        pipeline.submitUnordered(answer).whenComplete((ok, ex) -> {
+            if (ex != null) LOGGER.severe("Failed to answer callback query: " + ex.getMessage());
+        });
+    }
+
+    // Upload a file as a document. Not queued: uploads are rare and large, and the caller wants to know
+    // whether it arrived (e.g. to clean up the file). Returns false on failure (already logged).
+    public boolean sendDocument(long chatId, java.io.File file, String caption) {
+        SendDocument doc = SendDocument.builder()
+                .chatId(chatId)
+                .document(new InputFile(file))
+                .caption(caption)
+                .build();
+        long start = System.nanoTime();
         try {
-            telegramClient.execute(answer);
-        } catch (TelegramApiException ex) {
-            LOGGER.severe("Failed to answer callback query: " + ex.getMessage());
+            telegramClient.execute(doc);
+            Metrics.timer("bot_telegram_send_seconds", "method", "sendDocument").recordSince(start);
+            return true;
+        } catch (TelegramApiException e) {
+            LOGGER.severe("Failed to send document to " + chatId + ": " + e.getMessage());
+            return false;
         }
     }
+
+    // Stream the contents of a document the user sent (Bot API limit for downloads: 20 MB).
+    public InputStream openDocument(String fileId) throws TelegramApiException {
+        File file = telegramClient.execute(GetFile.builder().fileId(fileId).build());
+        return telegramClient.downloadFileAsStream(file);
+    }
 }
@@ -0,0 +1,71 @@
+package org.bot;
+
+import com.sun.net.httpserver.HttpServer;
+import modules.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Local HTTP endpoint for scraping Metrics: GET /metrics returns the Prometheus text format.
+ * Runs on one daemon thread of its own, so a slow scraper never takes a bot worker.
+ */
+final class MetricsServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(MetricsServer.class.getName());
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private MetricsServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /** Start on bindAddress:port; null if disabled (port 0) or the port cannot be bound (logged). */
+    static MetricsServer start(String bindAddress, int port) {
+        if (port <= 0) return null;
+        HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        } catch (IOException e) {
+            LOGGER.warning("Metrics endpoint disabled, cannot listen on " + bindAddress + ":" + port + ": " + e.getMessage());
+            return null;
+        }
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                StringBuilder sb = new StringBuilder(16 * 1024);
+                Metrics.writePrometheus(sb);
+                byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.start();
+        LOGGER.info("Metrics endpoint on http://" + bindAddress + ":" + port + "/metrics");
+        return new MetricsServer(server, executor);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,371 @@
+package org.bot;
+
+import modules.Config;
+import modules.LatencyHistogram;
+import modules.Metrics;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Outbound side of MessageInteraction: sends happen on background threads so handlers
+ * never wait for the Telegram HTTP round trip.
+ *
+ * Messages for one chat go through a per-chat outbox and are sent one at a time, in order
+ * (interactive messages ahead of bulk ones). Consecutive plain texts that are still waiting
+ * in an outbox are merged into one message. Every send first takes a permit from
+ * SendRateLimiter; a throttled outbox is parked on a timer instead of blocking a sender thread.
+ * Transient failures (429, 5xx, network) are retried with backoff; the outbox is paused meanwhile
+ * so later messages cannot overtake the failed one.
+ */
+final class OutboundPipeline implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(OutboundPipeline.class.getName());
+
+    static final int MAX_TEXT_LENGTH = 4096; // Telegram limit for one message
+    private static final String COALESCE_SEPARATOR = "\n\n";
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final int SENDER_THREADS = 8;
+    // messages an outbox sends before yielding its thread to other chats
+    private static final int OUTBOX_BATCH = 8;
+    // Telegram round trip of sendMessage, and queued -> sent per priority (includes throttling and retries)
+    private static final LatencyHistogram SEND_MESSAGE = Metrics.timer("bot_telegram_send_seconds", "method", "sendMessage");
+    private static final LatencyHistogram DELIVERY_INTERACTIVE = Metrics.timer("bot_telegram_delivery_seconds", "priority", "interactive");
+    private static final LatencyHistogram DELIVERY_BULK = Metrics.timer("bot_telegram_delivery_seconds", "priority", "bulk");
+
+    private final TelegramClient telegramClient;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService timer;
+    private final SendRateLimiter limiter = new SendRateLimiter(Config.getSendGlobalRate(), Config.getSendChatRate());
+    private final ConcurrentHashMap<Long, ChatOutbox> outboxes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingInteractive = new AtomicInteger();
+    private final AtomicInteger pendingBulk = new AtomicInteger();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong tooManyRequestsCount = new AtomicLong();
+
+    OutboundPipeline(TelegramClient telegramClient) {
+        this.telegramClient = telegramClient;
+        AtomicInteger seq = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(SENDER_THREADS, r -> {
+            Thread t = new Thread(r, "tg-sender-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tg-sender-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(limiter::evictIdle, 10, 10, TimeUnit.SECONDS);
+    }
+
+    /** Queue a message for the chat; markup == null means it may be merged with neighbouring plain texts. */
+    CompletableFuture<Message> submit(long chatId, String text, ReplyKeyboard markup, SendPriority priority) {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        boolean[] schedule = new boolean[1];
+        ChatOutbox outbox = outboxes.compute(chatId, (k, o) -> {
+            if (o == null) o = new ChatOutbox(k);
+            Lane lane = o.lane(priority);
+            Outgoing last = lane.tail; // newest message of this priority not yet picked up by a sender
+            if (markup == null && last != null && last.markup == null
+                    && last.text.length() + COALESCE_SEPARATOR.length() + text.length() <= MAX_TEXT_LENGTH) {
+                last.text.append(COALESCE_SEPARATOR).append(text);
+                last.waiters.add(future);
+            } else {
+                Outgoing item = new Outgoing(text, markup, priority);
+                item.waiters.add(future);
+                lane.queue.add(item);
+                lane.tail = item;
+                counter(priority).incrementAndGet();
+            }
+            if (!o.running) {
+                o.running = true;
+                schedule[0] = true;
+            }
+            return o;
+        });
+        if (schedule[0]) execute(outbox);
+        return future;
+    }
+
+    /** Send a method that is not tied to a chat outbox (e.g. callback answers), with the same retry policy. */
+    <T extends Serializable> CompletableFuture<T> submitUnordered(BotApiMethod<T> method) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        sendUnordered(method, future, 1);
+        return future;
+    }
+
+    private <T extends Serializable> void sendUnordered(BotApiMethod<T> method, CompletableFuture<T> future, int attempt) {
+        try {
+            senders.execute(() -> {
+                try {
+                    long start = System.nanoTime();
+                    T result = telegramClient.execute(method);
+                    Metrics.timer("bot_telegram_send_seconds", "method", method.getMethod()).recordSince(start);
+                    future.complete(result);
+                } catch (TelegramApiException e) {
+                    long delay = retryDelayMs(e, attempt);
+                    if (delay < 0) {
+                        future.completeExceptionally(e);
+                    } else {
+                        timer.schedule(() -> sendUnordered(method, future, attempt + 1), delay, TimeUnit.MILLISECONDS);
+                    }
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    // cluster worker: see SendRateLimiter.setShare
+    void setSendShare(int of) {
+        limiter.setShare(of);
+    }
+
+    SendStats stats() {
+        return new SendStats(pendingInteractive.get(), pendingBulk.get(), sentCount.get(), failedCount.get(),
+                throttledCount.get(), tooManyRequestsCount.get(), outboxes.size());
+    }
+
+    private AtomicInteger counter(SendPriority priority) {
+        return priority == SendPriority.BULK ? pendingBulk : pendingInteractive;
+    }
+
+    private void execute(ChatOutbox outbox) {
+        try {
+            senders.execute(outbox);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warning("Sender pool rejected chat " + outbox.chatId + "; dropping queued messages");
+            outboxes.compute(outbox.chatId, (k, o) -> {
+                if (o != null) {
+                    o.failAll(e);
+                }
+                return null;
+            });
+        }
+    }
+
+    private void executeLater(ChatOutbox outbox, long delayNanos) {
+        try {
+            timer.schedule(() -> execute(outbox), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            execute(outbox);
+        }
+    }
+
+    /**
+     * Backoff before the next attempt, or -1 if the error is permanent or attempts are used up.
+     * 429 responses carry retry_after (seconds), which takes precedence over our own backoff.
+     */
+    static long retryDelayMs(TelegramApiException e, int attempt) {
+        if (attempt >= MAX_ATTEMPTS) return -1;
+        if (e instanceof TelegramApiRequestException) {
+            TelegramApiRequestException re = (TelegramApiRequestException) e;
+            Integer code = re.getErrorCode();
+            if (code != null && code == 429) {
+                Integer retryAfter = re.getParameters() == null ? null : re.getParameters().getRetryAfter();
+                if (retryAfter != null) return retryAfter * 1000L;
+            } else if (code != null && code < 500) {
+                return -1; // 400/403/404: retrying will not help
+            }
+        }
+        return BASE_BACKOFF_MS << (attempt - 1);
+    }
+
+    private static boolean isTooManyRequests(TelegramApiException e) {
+        return e instanceof TelegramApiRequestException
+                && Integer.valueOf(429).equals(((TelegramApiRequestException) e).getErrorCode());
+    }
+
+    @Override
+    public void close() {
+        senders.shutdown();
+        timer.shutdown();
+        try {
+            if (!senders.awaitTermination(10, TimeUnit.SECONDS)) senders.shutdownNow();
+        } catch (InterruptedException e) {
+            senders.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Outgoing {
+        final StringBuilder text;
+        final ReplyKeyboard markup;
+        final SendPriority priority;
+        final List<CompletableFuture<Message>> waiters = new ArrayList<>(1);
+        final long queuedAt = System.nanoTime();
+        int attempts;
+
+        Outgoing(String text, ReplyKeyboard markup, SendPriority priority) {
+            this.text = new StringBuilder(text);
+            this.markup = markup;
+            this.priority = priority;
+        }
+
+        void complete(Message result) {
+            for (CompletableFuture<Message> w : waiters) w.complete(result);
+        }
+
+        void fail(Throwable t) {
+            for (CompletableFuture<Message> w : waiters) w.completeExceptionally(t);
+        }
+    }
+
+    private static final class Lane {
+        final ArrayDeque<Outgoing> queue = new ArrayDeque<>();
+        Outgoing tail;
+    }
+
+    private final class ChatOutbox implements Runnable {
+        final long chatId;
+        // lanes and running are only touched inside outboxes.compute(); inFlight only by the running sender
+        final Lane interactive = new Lane();
+        final Lane bulk = new Lane();
+        boolean running;
+        Outgoing inFlight;
+
+        ChatOutbox(long chatId) {
+            this.chatId = chatId;
+        }
+
+        Lane lane(SendPriority priority) {
+            return priority == SendPriority.BULK ? bulk : interactive;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < OUTBOX_BATCH; i++) {
+                Outgoing item = inFlight;
+                if (item == null) {
+                    // take the permit before dequeuing so messages can still be merged while throttled
+                    SendPriority next = peekPriority();
+                    if (next == null) return; // outbox retired
+                    if (throttled(next)) return;
+                    item = poll();
+                    inFlight = item;
+                } else if (throttled(item.priority)) {
+                    return;
+                }
+
+                try {
+                    long start = System.nanoTime();
+                    Message sent = telegramClient.execute(build(item));
+                    SEND_MESSAGE.recordSince(start);
+                    (item.priority == SendPriority.BULK ? DELIVERY_BULK : DELIVERY_INTERACTIVE).recordSince(item.queuedAt);
+                    inFlight = null;
+                    counter(item.priority).decrementAndGet();
+                    sentCount.incrementAndGet();
+                    item.complete(sent);
+                } catch (TelegramApiException e) {
+                    item.attempts++;
+                    long delay = retryDelayMs(e, item.attempts);
+                    if (isTooManyRequests(e)) {
+                        tooManyRequestsCount.incrementAndGet();
+                        limiter.pause(chatId, TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0)));
+                    }
+                    if (delay >= 0) {
+                        LOGGER.warning("Send to chat " + chatId + " failed (attempt " + item.attempts + "), retrying in " + delay + "ms: " + e.getMessage());
+                        // keep the outbox marked running so nothing overtakes the failed message
+                        executeLater(this, TimeUnit.MILLISECONDS.toNanos(delay));
+                        return;
+                    }
+                    LOGGER.severe("Failed to send message to chat " + chatId + ": " + e.getMessage());
+                    inFlight = null;
+                    counter(item.priority).decrementAndGet();
+                    failedCount.incrementAndGet();
+                    item.fail(e);
+                } catch (RuntimeException e) {
+                    // not retryable (e.g. a builder or client bug); drop the message but keep the outbox moving
+                    LOGGER.log(Level.SEVERE, "Failed to send message to chat " + chatId, e);
+                    inFlight = null;
+                    counter(item.priority).decrementAndGet();
+                    failedCount.incrementAndGet();
+                    item.fail(e);
+                }
+            }
+            execute(this);
+        }
+
+        // true if the limiter refused a permit; the outbox is then re-run once the permit is due
+        private boolean throttled(SendPriority priority) {
+            long wait = limiter.tryAcquire(chatId, priority);
+            if (wait <= 0) return false;
+            throttledCount.incrementAndGet();
+            executeLater(this, wait);
+            return true;
+        }
+
+        private SendMessage build(Outgoing item) {
+            if (item.markup == null) {
+                return SendMessage.builder().chatId(chatId).text(item.text.toString()).build();
+            }
+            return SendMessage.builder().chatId(chatId).text(item.text.toString()).replyMarkup(item.markup).build();
+        }
+
+        // priority of the next message, or null after retiring the outbox because it is empty
+        private SendPriority peekPriority() {
+            SendPriority[] next = new SendPriority[1];
+            outboxes.compute(chatId, (k, o) -> {
+                if (!interactive.queue.isEmpty()) {
+                    next[0] = SendPriority.INTERACTIVE;
+                } else if (!bulk.queue.isEmpty()) {
+                    next[0] = SendPriority.BULK;
+                } else {
+                    running = false;
+                    return null;
+                }
+                return this;
+            });
+            return next[0];
+        }
+
+        // only the running sender removes messages, so after a non-null peek this never returns null
+        private Outgoing poll() {
+            Outgoing[] next = new Outgoing[1];
+            outboxes.compute(chatId, (k, o) -> {
+                Lane lane = interactive.queue.isEmpty() ? bulk : interactive;
+                next[0] = lane.queue.poll();
+                if (next[0] == lane.tail) lane.tail = null;
+                return this;
+            });
+            return next[0];
+        }
+
+        void failAll(Throwable t) {
+            for (Lane lane : new Lane[]{interactive, bulk}) {
+                for (Outgoing item : lane.queue) {
+                    counter(item.priority).decrementAndGet();
+                    item.fail(t);
+                }
+                lane.queue.clear();
+                lane.tail = null;
+            }
+        }
+    }
+}
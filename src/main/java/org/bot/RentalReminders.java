@@ -0,0 +1,307 @@
+package org.bot;
+
+import modules.Config;
+import modules.Database;
+import modules.Metrics;
+import modules.RentalDates;
+import modules.RentalDetail;
+import modules.RentalRecipient;
+import modules.TimerWheel;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pickup and return reminders for renters, overdue alerts for admins.
+ *
+ * At REMINDER_HOUR (REMINDER_ZONE) the day before a rental starts the renter is reminded to pick the car up,
+ * the day before it ends to bring it back; a rental still in Rentals the day after its end date is reported
+ * to every admin. Each notification is a timer in a {@link TimerWheel} keyed by rental and kind.
+ *
+ * Only the next REMINDER_HORIZON_HOURS are held in memory: every hour the rentals starting or ending in that
+ * window are read page by page (REMINDER_BATCH_SIZE rows per query). Bookings, reschedules and cancellations
+ * made through Database re-place their timers straight away. When a timer fires the rental is read again,
+ * so a change made by another process is caught then at the latest. Due notifications go out in batches
+ * through the BULK priority of the send pipeline; the next batch waits for the previous one, so reminders
+ * never queue up in front of the rate limiter. Reminders due while the bot was down are not sent late.
+ *
+ * Renters are reached at the chat they last signed in from (UserChats); one who has not signed in
+ * since gets no reminder. If UserChats is missing and cannot be created, reminders stop after one
+ * error in the log. One thread owns the wheel.
+ */
+final class RentalReminders {
+    private static final Logger LOGGER = Logger.getLogger(RentalReminders.class.getName());
+    private static final long TICK_MS = 1000;
+    private static final long RELOAD_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long RETRY_MS = TimeUnit.MINUTES.toMillis(1);
+    // alerts list at most this many rentals per message
+    private static final int OVERDUE_LINES = 30;
+
+    private static final int PICKUP = 0;
+    private static final int RETURN = 1;
+    private static final int OVERDUE = 2;
+    private static final String[] KIND_NAMES = {"pickup", "return", "overdue"};
+    private static final LongAdder[] SENT = {
+            Metrics.counter("bot_reminders_total", "kind", "pickup"),
+            Metrics.counter("bot_reminders_total", "kind", "return"),
+            Metrics.counter("bot_reminders_total", "kind", "overdue")};
+    private static final LongAdder NO_CHAT = Metrics.counter("bot_reminders_skipped_total", "reason", "no_chat");
+    private static final LongAdder WHEEL_FULL = Metrics.counter("bot_reminders_skipped_total", "reason", "full");
+    private static final LongAdder SEND_FAILED = Metrics.counter("bot_reminders_skipped_total", "reason", "send_failed");
+
+    private final MessageInteraction msgInteraction;
+    private final int hour;
+    private final ZoneId zone;
+    private final long horizonMs;
+    private final int batchSize;
+    private final TimerWheel wheel;
+    // rentals changed through Database since the last tick
+    private final Set<Integer> changed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService thread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rental-reminders");
+        t.setDaemon(true);
+        return t;
+    });
+    private long nextLoadAt;
+    // timers are held for deadlines up to here
+    private long loadedUntil;
+    private volatile int scheduled;
+
+    private RentalReminders(MessageInteraction msgInteraction) {
+        this.msgInteraction = msgInteraction;
+        this.hour = Config.getReminderHour();
+        this.zone = Config.getReminderZone();
+        this.horizonMs = TimeUnit.HOURS.toMillis(Config.getReminderHorizonHours());
+        this.batchSize = Config.getReminderBatchSize();
+        this.wheel = new TimerWheel(TICK_MS, Config.getReminderMaxEvents(), System.currentTimeMillis());
+    }
+
+    static RentalReminders start(MessageInteraction msgInteraction) {
+        RentalReminders r = new RentalReminders(msgInteraction);
+        Database.setRentalListener(r.changed::add);
+        Metrics.gauge("bot_queue_depth", "queue", "reminders", () -> r.scheduled);
+        r.thread.scheduleWithFixedDelay(r::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+        LOGGER.info("Rental reminders at " + r.hour + ":00 " + r.zone + ", " + Config.getReminderHorizonHours() + " h ahead");
+        return r;
+    }
+
+    private void tick() {
+        try {
+            if (!Database.ensureUserChats()) {
+                // logged once by Database; without UserChats no reminder can be addressed
+                thread.shutdown();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextLoadAt) load(now);
+            applyChanges(now);
+            List<Long> due = new ArrayList<>();
+            wheel.advance(now, due::add);
+            for (int i = 0; i < due.size(); i += batchSize) {
+                try {
+                    deliver(due.subList(i, Math.min(i + batchSize, due.size())), now);
+                } catch (SQLException e) {
+                    // fired timers are gone from the wheel; put the undelivered ones back instead of losing them
+                    for (long k : due.subList(i, due.size())) wheel.schedule(k, now + RETRY_MS);
+                    throw e;
+                }
+            }
+            scheduled = wheel.size();
+        } catch (SQLException e) {
+            // the next tick tries again; the next load fills in what a failed one missed
+            LOGGER.warning("Rental reminders: database error: " + e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Rental reminders tick failed", e);
+        }
+    }
+
+    // (re)place the timers of every rental starting or ending within the horizon, one page at a time
+    private void load(long now) throws SQLException {
+        long until = now + horizonMs;
+        // pickup/return timers fire the day before, overdue ones the day after
+        LocalDate from = localDate(now).minusDays(1);
+        LocalDate to = localDate(until).plusDays(1);
+        int after = 0;
+        int rentals = 0;
+        long full = WHEEL_FULL.sum();
+        while (true) {
+            List<RentalDates> page = Database.listRentalDatesPage(after, from, to, batchSize);
+            for (RentalDates r : page) place(r, now, until);
+            rentals += page.size();
+            if (page.size() < batchSize) break;
+            after = page.get(page.size() - 1).rentalId();
+        }
+        loadedUntil = until;
+        nextLoadAt = now + RELOAD_INTERVAL_MS;
+        scheduled = wheel.size();
+        long dropped = WHEEL_FULL.sum() - full;
+        LOGGER.info("Rental reminders: " + rentals + " rentals read, " + wheel.size() + " reminders scheduled"
+                + (dropped > 0 ? ", " + dropped + " dropped (REMINDER_MAX_EVENTS reached)" : ""));
+    }
+
+    private void applyChanges(long now) throws SQLException {
+        if (changed.isEmpty()) return;
+        List<Integer> ids = new ArrayList<>(Math.min(changed.size(), batchSize));
+        Iterator<Integer> it = changed.iterator();
+        while (it.hasNext()) {
+            ids.add(it.next());
+            it.remove();
+            if (ids.size() == batchSize || !it.hasNext()) {
+                for (int id : ids) {
+                    for (int kind = PICKUP; kind <= OVERDUE; kind++) wheel.cancel(key(id, kind));
+                }
+                List<RentalDates> rows;
+                try {
+                    rows = Database.getRentalDates(ids);
+                } catch (SQLException e) {
+                    changed.addAll(ids);
+                    throw e;
+                }
+                // deleted rentals are not found and keep no timers
+                for (RentalDates r : rows) place(r, now, loadedUntil);
+                ids.clear();
+            }
+        }
+    }
+
+    private void place(RentalDates r, long now, long until) {
+        for (int kind = PICKUP; kind <= OVERDUE; kind++) {
+            long at = deadline(kind, r.startDate(), r.endDate());
+            long key = key(r.rentalId(), kind);
+            if (at <= now || at > until) {
+                wheel.cancel(key);
+            } else if (!wheel.schedule(key, at)) {
+                WHEEL_FULL.increment();
+            }
+        }
+    }
+
+    // send what came due; the rentals are read again so nothing goes out for a moved or deleted one
+    private void deliver(List<Long> keys, long now) throws SQLException {
+        List<Integer> ids = new ArrayList<>(keys.size());
+        for (long k : keys) ids.add(rentalId(k));
+        Map<Integer, RentalRecipient> byId = new HashMap<>();
+        for (RentalRecipient r : Database.getRentalRecipients(ids)) byId.put(r.rental().rentalId(), r);
+
+        List<RentalRecipient> reminders = new ArrayList<>();
+        List<Integer> reminderKinds = new ArrayList<>();
+        List<RentalDetail> overdue = new ArrayList<>();
+        for (long k : keys) {
+            RentalRecipient r = byId.get(rentalId(k));
+            if (r == null) continue;
+            int kind = kind(k);
+            RentalDetail d = r.rental();
+            long at = deadline(kind, d.startDate(), d.endDate());
+            if (at > now) {
+                // moved later by another process
+                if (at <= loadedUntil && !wheel.schedule(k, at)) WHEEL_FULL.increment();
+                continue;
+            }
+            if (kind == OVERDUE) {
+                overdue.add(d);
+            } else if (r.chatId() == 0) {
+                NO_CHAT.increment();
+            } else {
+                reminders.add(r);
+                reminderKinds.add(kind);
+            }
+        }
+        // the last query of the batch: once anything is queued a failure must not put the keys back for a resend
+        List<Long> adminChats = overdue.isEmpty() ? List.of() : Database.listAdminChatIds();
+
+        List<CompletableFuture<?>> sends = new ArrayList<>();
+        for (int i = 0; i < reminders.size(); i++) {
+            RentalRecipient r = reminders.get(i);
+            int kind = reminderKinds.get(i);
+            sends.add(send(kind, r.chatId(), kind == PICKUP ? pickupText(r.rental()) : returnText(r.rental())));
+        }
+        for (long chatId : adminChats) {
+            for (int i = 0; i < overdue.size(); i += OVERDUE_LINES) {
+                sends.add(send(OVERDUE, chatId, overdueText(overdue.subList(i, Math.min(i + OVERDUE_LINES, overdue.size())))));
+            }
+        }
+        // wait for the batch, so at most one batch of reminders sits in the send queue
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+    }
+
+    private CompletableFuture<?> send(int kind, long chatId, String text) {
+        return msgInteraction.sendBulkMessage(chatId, text).whenComplete((m, e) -> {
+            if (e == null) {
+                SENT[kind].increment();
+            } else {
+                SEND_FAILED.increment();
+                LOGGER.warning("Could not send " + KIND_NAMES[kind] + " reminder to chat " + chatId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private static String pickupText(RentalDetail d) {
+        return "Reminder: your rental of " + d.carName() + " starts tomorrow, " + d.startDate() + ".\n"
+                + "Pick-up branch: " + d.startBranchAddress();
+    }
+
+    private static String returnText(RentalDetail d) {
+        return "Reminder: your rental of " + d.carName() + " ends tomorrow, " + d.endDate() + ".\n"
+                + "Please return the car to: " + d.endBranchAddress();
+    }
+
+    private static String overdueText(List<RentalDetail> rentals) {
+        StringBuilder sb = new StringBuilder("Overdue rentals (still open after their end date):");
+        for (RentalDetail d : rentals) {
+            sb.append("\n#").append(d.rentalId()).append(' ').append(d.carName())
+              .append(", ").append(d.login())
+              .append(", ended ").append(d.endDate())
+              .append(", return to ").append(d.endBranchAddress());
+        }
+        return sb.toString();
+    }
+
+    // REMINDER_HOUR on the day before the start (pickup), the day before the end (return) or the day after the end (overdue)
+    private long deadline(int kind, LocalDate start, LocalDate end) {
+        LocalDate day;
+        switch (kind) {
+            case PICKUP:
+                day = start.minusDays(1);
+                break;
+            case RETURN:
+                day = end.minusDays(1);
+                break;
+            default:
+                day = end.plusDays(1);
+                break;
+        }
+        return day.atTime(hour, 0).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private LocalDate localDate(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+    }
+
+    private static long key(int rentalId, int kind) {
+        return ((long) rentalId << 2) | kind;
+    }
+
+    private static int rentalId(long key) {
+        return (int) (key >>> 2);
+    }
+
+    private static int kind(long key) {
+        return (int) (key & 3);
+    }
+}
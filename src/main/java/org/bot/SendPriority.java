@@ -0,0 +1,10 @@
+package org.bot;
+
+/**
+ * Priority of an outgoing message. Interactive replies are sent first and may use the whole
+ * global send budget; bulk traffic (broadcasts, reminders) only uses what interactive traffic leaves.
+ */
+public enum SendPriority {
+    INTERACTIVE,
+    BULK
+}
@@ -0,0 +1,71 @@
+package org.bot;
+
+import modules.Config;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps outgoing traffic under Telegram's limits: about 30 messages/second overall
+ * and about 1 message/second per chat (short bursts are tolerated).
+ * The rates come from SEND_GLOBAL_RATE / SEND_CHAT_RATE; only load tests against a fake client raise them.
+ */
+final class SendRateLimiter {
+    static final double CHAT_BURST = 3;
+
+    private final double globalRate;
+    private final double chatRate;
+    // replaced when the share changes
+    private volatile TokenBucket global;
+    private volatile double bulkReserve;
+    private final ConcurrentHashMap<Long, TokenBucket> chats = new ConcurrentHashMap<>();
+
+    SendRateLimiter(double globalRate, double chatRate) {
+        this.globalRate = globalRate;
+        this.chatRate = chatRate;
+        setShare(1);
+    }
+
+    /**
+     * This process is one of {@code of} sending with the same bot token (cluster workers): keep to that
+     * fraction of the global rate. Per-chat limits stay as they are, a chat is only ever served by one process.
+     */
+    void setShare(int of) {
+        int n = Math.max(1, of);
+        // a bucket below one token would never grant a send
+        double capacity = Math.max(1, globalRate / n);
+        // bulk needs 1 + reserve tokens, which must fit in the bucket or bulk sends starve
+        bulkReserve = Math.min((double) Config.SEND_BULK_RESERVE / n, capacity - 1);
+        global = new TokenBucket(globalRate / n, capacity);
+    }
+
+    /** Take a send permit for the chat. Returns 0 if granted, otherwise nanoseconds to wait. */
+    long tryAcquire(long chatId, SendPriority priority) {
+        TokenBucket chat = chats.computeIfAbsent(chatId, k -> newChatBucket());
+        long wait = chat.tryTake(0);
+        if (wait > 0) return wait;
+        wait = global.tryTake(priority == SendPriority.BULK ? bulkReserve : 0);
+        if (wait > 0) {
+            chat.refund();
+            return wait;
+        }
+        return 0;
+    }
+
+    /** Honour retry_after from a 429 for this chat. */
+    void pause(long chatId, long nanos) {
+        chats.computeIfAbsent(chatId, k -> newChatBucket()).blockFor(nanos);
+    }
+
+    private TokenBucket newChatBucket() {
+        return new TokenBucket(chatRate, Math.max(CHAT_BURST, chatRate));
+    }
+
+    // drop buckets that are full again; they would be recreated identical
+    void evictIdle() {
+        chats.values().removeIf(TokenBucket::isIdle);
+    }
+
+    int trackedChats() {
+        return chats.size();
+    }
+}
@@ -0,0 +1,28 @@
+package org.bot;
+
+/** Point-in-time counters of the outbound pipeline. */
+public final class SendStats {
+    public final int pendingInteractive;
+    public final int pendingBulk;
+    public final long sent;
+    public final long failed;
+    public final long throttled;
+    public final long tooManyRequests;
+    public final int activeChats;
+
+    SendStats(int pendingInteractive, int pendingBulk, long sent, long failed, long throttled, long tooManyRequests, int activeChats) {
+        this.pendingInteractive = pendingInteractive;
+        this.pendingBulk = pendingBulk;
+        this.sent = sent;
+        this.failed = failed;
+        this.throttled = throttled;
+        this.tooManyRequests = tooManyRequests;
+        this.activeChats = activeChats;
+    }
+
+    @Override
+    public String toString() {
+        return "pending=" + pendingInteractive + "+" + pendingBulk + " bulk, sent=" + sent + ", failed=" + failed
+                + ", throttled=" + throttled + ", 429=" + tooManyRequests + ", chats=" + activeChats;
+    }
+}
@@ -0,0 +1,66 @@
+package org.bot;
+
+/**
+ * Classic token bucket: refills continuously at a fixed rate up to its capacity.
+ * Critical sections are a few arithmetic operations and never block.
+ */
+final class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+    // set from a 429 retry_after: no tokens are handed out before this System.nanoTime(), 0 = never blocked
+    private long blockedUntil;
+
+    TokenBucket(double ratePerSecond, double capacity) {
+        this.capacity = capacity;
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take one token if at least {@code 1 + reserve} are available.
+     * Returns 0 on success, otherwise the nanoseconds to wait before trying again.
+     */
+    synchronized long tryTake(double reserve) {
+        long now = System.nanoTime();
+        if (isBlocked(now)) return blockedUntil - now;
+        refill(now);
+        double needed = 1 + reserve;
+        if (tokens >= needed) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((needed - tokens) / tokensPerNano);
+    }
+
+    // give back a token taken for a send that did not happen
+    synchronized void refund() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    synchronized void blockFor(long nanos) {
+        long until = System.nanoTime() + nanos;
+        // keep the later block; the sum may be 0, any non-zero stamp will do
+        if (!isBlocked(until)) blockedUntil = until | 1;
+        tokens = 0;
+    }
+
+    // true when the bucket is full and not blocked, i.e. forgetting it changes nothing
+    synchronized boolean isIdle() {
+        long now = System.nanoTime();
+        refill(now);
+        return tokens >= capacity && !isBlocked(now);
+    }
+
+    // nanoTime values are compared by difference, their origin is arbitrary and may be negative
+    private boolean isBlocked(long now) {
+        return blockedUntil != 0 && now - blockedUntil < 0;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
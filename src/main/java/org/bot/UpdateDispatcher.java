@@ -0,0 +1,200 @@
+package org.bot;
+
+import modules.LatencyHistogram;
+import modules.Metrics;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs updates concurrently across chats while keeping each chat strictly ordered.
+ *
+ * Every chat gets a lane (a FIFO queue) that is drained by at most one worker at a time;
+ * lanes of different chats run in parallel on the shared executor. The total number of
+ * queued + running updates is bounded: when the backlog is full, dispatch() blocks,
+ * which pushes back on the poller instead of buffering without limit.
+ */
+public class UpdateDispatcher implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(UpdateDispatcher.class.getName());
+    // max updates a lane processes before yielding its worker to other chats
+    private static final int LANE_BATCH = 16;
+    // queued -> handler finished, and queued -> handler started
+    private static final LatencyHistogram UPDATE_TOTAL = Metrics.timer("bot_update_seconds", "stage", "total");
+    private static final LatencyHistogram UPDATE_QUEUED = Metrics.timer("bot_update_seconds", "stage", "queue");
+
+    private final Consumer<Update> handler;
+    private final ExecutorService executor;
+    private final Semaphore backlog;
+    private final int maxBacklog;
+    // lane state is only modified inside compute() so enqueue/retire cannot race
+    private final ConcurrentHashMap<Long, ChatLane> lanes = new ConcurrentHashMap<>();
+
+    public UpdateDispatcher(Consumer<Update> handler, ExecutorService executor, int maxBacklog) {
+        this.handler = handler;
+        this.executor = executor;
+        this.maxBacklog = maxBacklog;
+        this.backlog = new Semaphore(maxBacklog);
+    }
+
+    /** Queue an update, blocking while the backlog is full. */
+    public void dispatch(Update update) {
+        dispatch(update, null);
+    }
+
+    /**
+     * Like {@link #dispatch(Update)}, and runs {@code done} on the worker once the handler has returned
+     * (also when it threw), or as soon as the update is dropped unhandled. The cluster worker acknowledges
+     * updates with it.
+     */
+    public void dispatch(Update update, Runnable done) {
+        try {
+            backlog.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warning("Interrupted while waiting for dispatcher backlog; update dropped");
+            if (done != null) done.run();
+            return;
+        }
+        enqueue(update, done);
+    }
+
+    /** Queue an update, waiting at most the given time for backlog space. Returns false if it was not queued. */
+    public boolean tryDispatch(Update update, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!backlog.tryAcquire(timeout, unit)) return false;
+        enqueue(update, null);
+        return true;
+    }
+
+    private void enqueue(Update update, Runnable done) {
+        long chatId = chatIdOf(update);
+        boolean[] schedule = new boolean[1];
+        ChatLane lane = lanes.compute(chatId, (k, l) -> {
+            if (l == null) l = new ChatLane(k);
+            l.queue.add(new Queued(update, System.nanoTime(), done));
+            if (!l.running) {
+                l.running = true;
+                schedule[0] = true;
+            }
+            return l;
+        });
+        if (schedule[0]) submit(lane);
+    }
+
+    private void submit(ChatLane lane) {
+        try {
+            executor.execute(lane);
+        } catch (RejectedExecutionException e) {
+            // executor is shutting down: drop what this lane holds and free the backlog
+            LOGGER.warning("Dispatcher executor rejected chat " + lane.chatId + "; dropping queued updates");
+            drop(lane.chatId);
+        }
+    }
+
+    // retire the lane unhandled; done still runs for every update in it, or its owner would wait forever
+    private void drop(long chatId) {
+        List<Queued> dropped = new ArrayList<>();
+        lanes.compute(chatId, (k, l) -> {
+            if (l != null) {
+                dropped.addAll(l.queue);
+                l.queue.clear();
+                backlog.release(dropped.size());
+            }
+            return null;
+        });
+        for (Queued q : dropped) {
+            if (q.done != null) q.done.run();
+        }
+    }
+
+    public int getBacklog() {
+        return maxBacklog - backlog.availablePermits();
+    }
+
+    public int getActiveChats() {
+        return lanes.size();
+    }
+
+    static long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return 0L; // updates without a chat share one serial lane
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // lanes the executor never got to
+        if (!lanes.isEmpty()) {
+            LOGGER.warning("Dispatcher closed with " + getBacklog() + " updates unhandled; dropping them");
+            for (long chatId : new ArrayList<>(lanes.keySet())) drop(chatId);
+        }
+    }
+
+    private record Queued(Update update, long queuedAt, Runnable done) {
+    }
+
+    private final class ChatLane implements Runnable {
+        final long chatId;
+        final Queue<Queued> queue = new ArrayDeque<>();
+        boolean running;
+
+        ChatLane(long chatId) {
+            this.chatId = chatId;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < LANE_BATCH; i++) {
+                Queued next = poll();
+                if (next == null) return; // lane retired
+                UPDATE_QUEUED.recordSince(next.queuedAt);
+                try {
+                    handler.accept(next.update);
+                } catch (Throwable t) {
+                    LOGGER.log(Level.SEVERE, "Unhandled error while processing update for chat " + chatId, t);
+                } finally {
+                    backlog.release();
+                    UPDATE_TOTAL.recordSince(next.queuedAt);
+                    if (next.done != null) next.done.run();
+                }
+            }
+            // batch used up: requeue behind other chats instead of hogging the worker
+            submit(this);
+        }
+
+        // take the next update, or retire the lane if it is empty
+        private Queued poll() {
+            Queued[] next = new Queued[1];
+            lanes.compute(chatId, (k, l) -> {
+                next[0] = queue.poll();
+                if (next[0] == null) {
+                    running = false;
+                    return null;
+                }
+                return this;
+            });
+            return next[0];
+        }
+    }
+}
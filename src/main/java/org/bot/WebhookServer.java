@@ -0,0 +1,401 @@
+package org.bot;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import modules.Metrics;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Webhook ingestion: Telegram POSTs every update to us instead of the bot polling getUpdates.
+ *
+ * One selector thread accepts connections and reads requests without blocking (keep-alive, bodies with
+ * Content-Length, which is what Telegram sends). A request is answered as soon as its body is in: 200 once
+ * the raw update is in the bounded queue, 503 when the queue is full so Telegram delivers it again later,
+ * 401 when X-Telegram-Bot-Api-Secret-Token does not match. A decoder thread parses queued bodies and hands the
+ * updates on in arrival order (normally to UpdateDispatcher.dispatch); while the dispatcher backlog is full
+ * it blocks, the queue fills and Telegram is asked to back off.
+ *
+ * Plain HTTP only: Telegram calls https:// URLs, so TLS ends at a reverse proxy in front of this.
+ */
+final class WebhookServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(WebhookServer.class.getName());
+    private static final String SECRET_HEADER = "x-telegram-bot-api-secret-token";
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    // the largest updates (long texts with entities, polls) are a few KB
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+    private static final long IDLE_TIMEOUT_MS = 120_000;
+    private static final byte[] OK = response(200, false);
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final LongAdder ACCEPTED = Metrics.counter("bot_webhook_requests_total", "result", "accepted");
+    private static final LongAdder QUEUE_FULL = Metrics.counter("bot_webhook_requests_total", "result", "queue_full");
+    private static final LongAdder UNAUTHORIZED = Metrics.counter("bot_webhook_requests_total", "result", "unauthorized");
+    private static final LongAdder REJECTED = Metrics.counter("bot_webhook_requests_total", "result", "rejected");
+    private static final LongAdder UNREADABLE = Metrics.counter("bot_webhook_requests_total", "result", "unreadable");
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final String path;
+    private final byte[] secret;
+    private final BlockingQueue<byte[]> queue;
+    private final Consumer<Update> handler;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean open = true;
+
+    private WebhookServer(Selector selector, ServerSocketChannel server, String path, String secret,
+                          int queueSize, Consumer<Update> handler) {
+        this.selector = selector;
+        this.server = server;
+        this.path = path;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.handler = handler;
+    }
+
+    /** Listen on bindAddress:port (0 picks a free port) and pass every accepted update to handler. */
+    static WebhookServer start(String bindAddress, int port, String path, String secret, int queueSize,
+                               Consumer<Update> handler) throws IOException {
+        Selector selector = Selector.open();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.bind(new InetSocketAddress(bindAddress, port), 256);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        WebhookServer s = new WebhookServer(selector, server, path, secret, queueSize, handler);
+        // not a daemon: in webhook mode nothing else keeps the process running
+        s.startThread("webhook-io", s::serve, false);
+        // one decoder keeps each chat's updates in order; parsing is cheap next to handling them
+        s.startThread("webhook-decoder", s::decode, true);
+        Metrics.gauge("bot_queue_depth", "queue", "webhook", s.queue::size);
+        LOGGER.info("Webhook endpoint on http://" + bindAddress + ":" + s.getPort() + path + ", queue " + queueSize);
+        return s;
+    }
+
+    int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private void startThread(String name, Runnable body, boolean daemon) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(daemon);
+        threads.add(t);
+        t.start();
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        selector.wakeup();
+        for (Thread t : threads) t.interrupt();
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOGGER.fine("Closing webhook socket: " + e.getMessage());
+        }
+    }
+
+    // ---- decoder thread ----
+
+    private void decode() {
+        while (open) {
+            byte[] body;
+            try {
+                body = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Update update;
+            try {
+                update = MAPPER.readValue(body, Update.class);
+            } catch (IOException e) {
+                // already acknowledged, so Telegram will not send it again
+                UNREADABLE.increment();
+                LOGGER.warning("Dropping unreadable webhook update: " + e.getMessage());
+                continue;
+            }
+            try {
+                handler.accept(update);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Webhook update " + update.getUpdateId() + " could not be queued", e);
+            }
+        }
+    }
+
+    // ---- selector thread ----
+
+    private void serve() {
+        long lastSweep = System.currentTimeMillis();
+        try {
+            while (open) {
+                selector.select(1000);
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) c.read();
+                        if (key.isValid() && key.isWritable()) c.write();
+                    } catch (IOException e) {
+                        c.close();
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= 1000) {
+                    closeIdle(now);
+                    lastSweep = now;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (open) LOGGER.log(Level.SEVERE, "Webhook endpoint stopped", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection c) c.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            SelectionKey key = ch.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(ch, key));
+        }
+    }
+
+    private void closeIdle(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection c && now - c.lastActive > IDLE_TIMEOUT_MS) c.close();
+        }
+    }
+
+    // status for one complete request; 200 means the body is queued
+    private int handle(String method, String target, String secretHeader, byte[] body) {
+        int q = target.indexOf('?');
+        String requestPath = q < 0 ? target : target.substring(0, q);
+        if (!requestPath.equals(path)) {
+            REJECTED.increment();
+            return 404;
+        }
+        if (!"POST".equals(method)) {
+            REJECTED.increment();
+            return 405;
+        }
+        if (secretHeader == null || !MessageDigest.isEqual(secret, secretHeader.getBytes(StandardCharsets.UTF_8))) {
+            UNAUTHORIZED.increment();
+            return 401;
+        }
+        if (!queue.offer(body)) {
+            QUEUE_FULL.increment();
+            return 503;
+        }
+        ACCEPTED.increment();
+        return 200;
+    }
+
+    private static byte[] response(int status, boolean close) {
+        String reason;
+        switch (status) {
+            case 200: reason = "OK"; break;
+            case 400: reason = "Bad Request"; break;
+            case 401: reason = "Unauthorized"; break;
+            case 404: reason = "Not Found"; break;
+            case 405: reason = "Method Not Allowed"; break;
+            case 411: reason = "Length Required"; break;
+            case 413: reason = "Content Too Large"; break;
+            case 431: reason = "Request Header Fields Too Large"; break;
+            default: reason = "Service Unavailable"; break;
+        }
+        String head = "HTTP/1.1 " + status + " " + reason + "\r\nContent-Length: 0\r\n"
+                + (close ? "Connection: close\r\n" : "") + "\r\n";
+        return head.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** One client connection; only ever touched by the selector thread. */
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        // bytes received and not yet handled, from index 0 to in.position()
+        ByteBuffer in = ByteBuffer.allocate(4096);
+        ByteBuffer out;
+        boolean closeAfterWrite;
+        long lastActive = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            handleBuffered();
+        }
+
+        // answer the complete requests in the buffer, one response in flight at a time
+        void handleBuffered() throws IOException {
+            while (out == null && key.isValid()) {
+                byte[] buf = in.array();
+                int filled = in.position();
+                int headerEnd = indexOfBlankLine(buf, filled);
+                if (headerEnd < 0) {
+                    if (filled >= MAX_HEADER_BYTES) respond(431, true);
+                    else if (!in.hasRemaining()) grow(Math.min(MAX_HEADER_BYTES, in.capacity() * 2));
+                    return;
+                }
+
+                String[] lines = new String(buf, 0, headerEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+                String[] requestLine = lines[0].split(" ");
+                if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                    respond(400, true);
+                    return;
+                }
+                boolean close = requestLine[2].equals("HTTP/1.0");
+                long length = -1;
+                String secretHeader = null;
+                for (int i = 1; i < lines.length; i++) {
+                    int colon = lines[i].indexOf(':');
+                    if (colon <= 0) continue;
+                    String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                    String value = lines[i].substring(colon + 1).trim();
+                    switch (name) {
+                        case "content-length":
+                            try {
+                                length = Long.parseLong(value);
+                            } catch (NumberFormatException e) {
+                                length = -2;
+                            }
+                            break;
+                        case "transfer-encoding":
+                            length = -2; // chunked bodies are not accepted, Telegram never sends them
+                            break;
+                        case "connection":
+                            close = value.equalsIgnoreCase("close") || (close && !value.equalsIgnoreCase("keep-alive"));
+                            break;
+                        case SECRET_HEADER:
+                            secretHeader = value;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                if ((length == -1 && "POST".equals(requestLine[0])) || length < -1) {
+                    respond(411, true);
+                    return;
+                }
+                if (length > MAX_BODY_BYTES) {
+                    respond(413, true);
+                    return;
+                }
+
+                int bodyStart = headerEnd + 4;
+                int total = bodyStart + (int) Math.max(0, length);
+                if (filled < total) {
+                    if (total > in.capacity()) grow(total);
+                    return; // wait for the rest of the body
+                }
+                byte[] body = Arrays.copyOfRange(buf, bodyStart, total);
+                // keep whatever the client already sent after this request
+                System.arraycopy(buf, total, buf, 0, filled - total);
+                in.position(filled - total);
+
+                respond(handle(requestLine[0], requestLine[1], secretHeader, body), close);
+            }
+        }
+
+        private void grow(int capacity) {
+            ByteBuffer bigger = ByteBuffer.allocate(capacity);
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+
+        private void respond(int status, boolean closeAfter) throws IOException {
+            out = ByteBuffer.wrap(status == 200 && !closeAfter ? OK : response(status, closeAfter));
+            closeAfterWrite = closeAfter;
+            flush();
+        }
+
+        // selector says the socket takes data again
+        void write() throws IOException {
+            // pipelined requests may already be buffered
+            if (flush()) handleBuffered();
+        }
+
+        // true once the response is out and the connection reads again
+        private boolean flush() throws IOException {
+            channel.write(out);
+            if (out.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return false;
+            }
+            out = null;
+            if (closeAfterWrite) {
+                close();
+                return false;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            return true;
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // the peer is gone either way
+            }
+        }
+    }
+
+    // index of the CRLFCRLF ending the header, or -1
+    private static int indexOfBlankLine(byte[] buf, int limit) {
+        for (int i = 0; i + 3 < limit; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') return i;
+        }
+        return -1;
+    }
+}
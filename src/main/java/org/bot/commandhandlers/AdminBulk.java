@@ -0,0 +1,254 @@
+package org.bot.commandhandlers;
+
+import modules.Branch;
+import modules.CarFilter;
+import modules.CarStatus;
+import modules.Database;
+import org.bot.MessageInteraction;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admin bulk operations on cars: status change, move to another branch, delete.
+ *
+ *   /bulk status <statusId> <selection>
+ *   /bulk move <branchId> <selection>
+ *   /bulk delete <selection>
+ *
+ * selection: ids=1,2,3 | range=<from>-<to> and/or branch=<id> status=<id> | all
+ *
+ * The selection is resolved first and shown with Confirm/Cancel buttons; the confirmed job runs as a
+ * single transaction of JDBC batches (Database.bulk*), reporting progress in the chat.
+ *
+ * Callback data: admin_bulk_ok, admin_bulk_cancel
+ */
+public class AdminBulk {
+    public static final String CALLBACK_PREFIX = "admin_bulk_";
+    static final int MAX_SELECTION = 50000;
+    private static final long CONFIRM_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long PROGRESS_INTERVAL_MS = 2000;
+
+    static final String USAGE = "Usage:\n" +
+            "/bulk status <statusId> <selection>\n" +
+            "/bulk move <branchId> <selection>\n" +
+            "/bulk delete <selection>\n" +
+            "selection: ids=1,2,3 | range=10-200 | branch=<id> status=<id> | all (range and filters can be combined)";
+
+    private enum Action { STATUS, MOVE, DELETE }
+
+    private static final class Pending {
+        final Action action;
+        final int target; // status or branch id; unused for DELETE
+        final String targetName;
+        final List<Integer> carIds;
+        final long createdAt = System.currentTimeMillis();
+
+        Pending(Action action, int target, String targetName, List<Integer> carIds) {
+            this.action = action;
+            this.target = target;
+            this.targetName = targetName;
+            this.carIds = carIds;
+        }
+
+        String describe() {
+            switch (action) {
+                case STATUS: return "set status \"" + targetName + "\" on " + carIds.size() + " car(s)";
+                case MOVE: return "move " + carIds.size() + " car(s) to " + targetName;
+                default: return "delete " + carIds.size() + " car(s) (cars with rentals are kept)";
+            }
+        }
+    }
+
+    // one job waiting for confirmation per chat; a new /bulk replaces it
+    private static final ConcurrentHashMap<Long, Pending> PENDING = new ConcurrentHashMap<>();
+
+    public static void handleCommand(MessageInteraction msgInteraction, long chatId, String args) {
+        if (!AdminPaging.requireAdmin(msgInteraction, chatId)) return;
+        String[] t = args.isEmpty() ? new String[0] : args.split("\\s+");
+        if (t.length < 2) {
+            msgInteraction.sendMessage(chatId, USAGE);
+            return;
+        }
+
+        Action action;
+        int target = 0;
+        String targetName = null;
+        int selFrom;
+        switch (t[0].toLowerCase()) {
+            case "status":
+            case "move":
+                action = "status".equalsIgnoreCase(t[0]) ? Action.STATUS : Action.MOVE;
+                Integer id = parseIntOrNull(t[1]);
+                if (id == null || t.length < 3) {
+                    msgInteraction.sendMessage(chatId, USAGE);
+                    return;
+                }
+                target = id;
+                targetName = Database.withUserRetries(msgInteraction, chatId,
+                        () -> action == Action.STATUS ? statusName(id) : branchName(id));
+                if (targetName == null) {
+                    msgInteraction.sendMessage(chatId, (action == Action.STATUS ? "Status #" : "Branch #") + id + " does not exist.");
+                    return;
+                }
+                selFrom = 2;
+                break;
+            case "delete":
+                action = Action.DELETE;
+                selFrom = 1;
+                break;
+            default:
+                msgInteraction.sendMessage(chatId, USAGE);
+                return;
+        }
+
+        List<Integer> ids = resolveSelection(msgInteraction, chatId, t, selFrom);
+        if (ids == null) return;
+        if (ids.isEmpty()) {
+            msgInteraction.sendMessage(chatId, "No cars match the selection.");
+            return;
+        }
+        if (ids.size() > MAX_SELECTION) {
+            msgInteraction.sendMessage(chatId, "Selection is larger than " + MAX_SELECTION + " cars, narrow it down.");
+            return;
+        }
+
+        Pending p = new Pending(action, target, targetName, ids);
+        PENDING.put(chatId, p);
+        Map<String, String> buttons = new LinkedHashMap<>();
+        buttons.put("✅ Confirm", CALLBACK_PREFIX + "ok");
+        buttons.put("✖ Cancel", CALLBACK_PREFIX + "cancel");
+        msgInteraction.sendMessageWithInlineKeyboard(chatId, "About to " + p.describe() + ". Continue?", buttons);
+    }
+
+    public static void handleCallbackQuery(MessageInteraction msgInteraction, long chatId, String data, String callbackId) {
+        msgInteraction.answerCallbackQuery(callbackId, null);
+        String op = data.substring(CALLBACK_PREFIX.length());
+        Pending p = PENDING.remove(chatId);
+        if ("cancel".equals(op)) {
+            msgInteraction.sendMessage(chatId, p == null ? "Nothing to cancel." : "Bulk operation cancelled.");
+            return;
+        }
+        if (!"ok".equals(op)) {
+            msgInteraction.sendMessage(chatId, "Unknown bulk request.");
+            return;
+        }
+        if (p == null || System.currentTimeMillis() - p.createdAt > CONFIRM_TIMEOUT_MS) {
+            msgInteraction.sendMessage(chatId, "This bulk operation has expired. Run /bulk again.");
+            return;
+        }
+        // rights may have been revoked since the preview
+        if (!AdminPaging.requireAdmin(msgInteraction, chatId)) return;
+        run(msgInteraction, chatId, p);
+    }
+
+    private static void run(MessageInteraction msgInteraction, long chatId, Pending p) {
+        msgInteraction.sendMessage(chatId, "Working: " + p.describe() + "...");
+        long started = System.nanoTime();
+        long[] lastReport = {System.currentTimeMillis()};
+        // progress goes out at bulk priority so it never delays replies to other chats
+        Database.BulkProgress progress = (done, total) -> {
+            long now = System.currentTimeMillis();
+            if (done < total && now - lastReport[0] >= PROGRESS_INTERVAL_MS) {
+                lastReport[0] = now;
+                msgInteraction.sendBulkMessage(chatId, "Progress: " + done + "/" + total + " (" + (done * 100L / total) + "%)");
+            }
+        };
+        Integer changed = Database.withUserRetries(msgInteraction, chatId, () -> {
+            switch (p.action) {
+                case STATUS: return Database.bulkUpdateCarStatus(p.carIds, p.target, progress);
+                case MOVE: return Database.bulkMoveCars(p.carIds, p.target, progress);
+                default: return Database.bulkDeleteCars(p.carIds, progress);
+            }
+        });
+        if (changed == null) return; // withUserRetries already told the user; nothing was committed
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        msgInteraction.sendMessage(chatId, "Done: " + changed + " of " + p.carIds.size() + " car(s) changed in " + ms + " ms.");
+    }
+
+    // tokens from t[from]; null if the user was already told what is wrong
+    private static List<Integer> resolveSelection(MessageInteraction msgInteraction, long chatId, String[] t, int from) {
+        List<Integer> ids = null;
+        Integer rangeFrom = null;
+        Integer rangeTo = null;
+        Integer branch = null;
+        Integer status = null;
+        boolean all = false;
+        for (int i = from; i < t.length; i++) {
+            String a = t[i];
+            if (a.startsWith("ids=")) {
+                ids = parseIdList(a.substring(4));
+                if (ids == null) return usage(msgInteraction, chatId);
+            } else if (a.startsWith("range=")) {
+                String[] r = a.substring(6).split("-", 2);
+                rangeFrom = r.length == 2 ? parseIntOrNull(r[0]) : null;
+                rangeTo = r.length == 2 ? parseIntOrNull(r[1]) : null;
+                if (rangeFrom == null || rangeTo == null || rangeFrom > rangeTo) return usage(msgInteraction, chatId);
+            } else if (a.startsWith("branch=")) {
+                branch = parseIntOrNull(a.substring(7));
+                if (branch == null) return usage(msgInteraction, chatId);
+            } else if (a.startsWith("status=")) {
+                status = parseIntOrNull(a.substring(7));
+                if (status == null) return usage(msgInteraction, chatId);
+            } else if ("all".equalsIgnoreCase(a)) {
+                all = true;
+            } else {
+                return usage(msgInteraction, chatId);
+            }
+        }
+        if (ids != null) {
+            if (rangeFrom != null || branch != null || status != null || all) return usage(msgInteraction, chatId);
+            return ids;
+        }
+        // an empty selection must never mean "every car"
+        if (!all && rangeFrom == null && branch == null && status == null) return usage(msgInteraction, chatId);
+        CarFilter filter = new CarFilter(branch, status);
+        Integer lo = rangeFrom;
+        Integer hi = rangeTo;
+        return Database.withUserRetries(msgInteraction, chatId,
+                () -> Database.selectCarIds(filter, lo, hi, MAX_SELECTION));
+    }
+
+    private static List<Integer> usage(MessageInteraction msgInteraction, long chatId) {
+        msgInteraction.sendMessage(chatId, USAGE);
+        return null;
+    }
+
+    private static List<Integer> parseIdList(String s) {
+        Set<Integer> out = new LinkedHashSet<>();
+        for (String part : s.split(",")) {
+            if (part.isEmpty()) continue;
+            Integer id = parseIntOrNull(part);
+            if (id == null) return null;
+            out.add(id);
+        }
+        return out.isEmpty() ? null : new ArrayList<>(out);
+    }
+
+    private static String statusName(int statusId) throws SQLException {
+        for (CarStatus s : Database.listCarStatuses()) {
+            if (s.id() == statusId) return s.name();
+        }
+        return null;
+    }
+
+    private static String branchName(int branchId) throws SQLException {
+        Branch b = Database.getBranchById(branchId);
+        return b == null ? null : b.city() + ", " + b.street() + ", " + b.buildingNumber();
+    }
+
+    private static Integer parseIntOrNull(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.bot.commandhandlers;
+
+import modules.DataExchange;
+import modules.DataExchange.Dataset;
+import modules.DataExchange.Format;
+import org.bot.MessageInteraction;
+import org.telegram.telegrambots.meta.api.objects.Document;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Admin import/export of fleet data (see DataExchange).
+ *
+ *   /export cars|branches|rentals [csv|json]   -> the bot replies with the file
+ *   a .csv/.json document with caption "/import cars|branches"   -> upserted in one transaction
+ *
+ * Exports are written to a temp file and gzipped if they exceed the Bot API upload limit.
+ */
+public class AdminDataTransfer {
+    private static final Logger LOGGER = Logger.getLogger(AdminDataTransfer.class.getName());
+    // Bot API: bots may download files up to 20 MB and upload up to 50 MB
+    private static final long MAX_DOWNLOAD_BYTES = 20L * 1024 * 1024;
+    private static final long MAX_UPLOAD_BYTES = 50L * 1024 * 1024;
+
+    static final String EXPORT_USAGE = "Usage: /export cars|branches|rentals [csv|json]";
+    static final String IMPORT_USAGE = "Send a .csv or .json file with the caption \"/import cars\" or \"/import branches\".\n" +
+            "Columns — cars: id, name, release_year, type_id, branch_id, status_id; branches: id, city, street, building_number.\n" +
+            "Rows with an existing id are updated, rows without id are added.";
+
+    public static void handleExport(MessageInteraction msgInteraction, long chatId, String args) {
+        if (!AdminPaging.requireAdmin(msgInteraction, chatId)) return;
+        String[] t = args.isEmpty() ? new String[0] : args.split("\\s+");
+        Dataset dataset = t.length > 0 ? Dataset.of(t[0]) : null;
+        Format format = t.length > 1 ? Format.of(t[1]) : Format.CSV;
+        if (dataset == null || format == null || t.length > 2) {
+            msgInteraction.sendMessage(chatId, EXPORT_USAGE);
+            return;
+        }
+
+        msgInteraction.sendMessage(chatId, "Exporting " + dataset.name + "...");
+        Path dir = null;
+        Path file = null;
+        Path gz = null;
+        try {
+            // own directory so the document keeps a readable name (cars.csv)
+            dir = Files.createTempDirectory("export-");
+            file = dir.resolve(dataset.name + "." + format.extension);
+            long rows;
+            try (OutputStream out = Files.newOutputStream(file)) {
+                rows = DataExchange.exportData(dataset, format, out);
+            }
+            Path toSend = file;
+            if (Files.size(file) > MAX_UPLOAD_BYTES) {
+                gz = dir.resolve(file.getFileName() + ".gz");
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+                    Files.copy(file, out);
+                }
+                toSend = gz;
+            }
+            if (Files.size(toSend) > MAX_UPLOAD_BYTES) {
+                msgInteraction.sendMessage(chatId, "Export is too large to send through Telegram (" + rows + " rows).");
+                return;
+            }
+            if (!msgInteraction.sendDocument(chatId, toSend.toFile(), dataset.name + ": " + rows + " rows")) {
+                msgInteraction.sendMessage(chatId, "Could not upload the export. Please try again later.");
+            }
+        } catch (SQLException e) {
+            LOGGER.warning("Export of " + dataset.name + " failed: " + e.getMessage());
+            msgInteraction.sendMessage(chatId, "Database error occurred. Please try again later.");
+        } catch (IOException e) {
+            LOGGER.warning("Export of " + dataset.name + " failed: " + e.getMessage());
+            msgInteraction.sendMessage(chatId, "Export failed: " + e.getMessage());
+        } finally {
+            deleteQuietly(gz);
+            deleteQuietly(file);
+            deleteQuietly(dir);
+        }
+    }
+
+    // "/import" typed as text: explain how to attach the file
+    public static void handleImportCommand(MessageInteraction msgInteraction, long chatId) {
+        if (!AdminPaging.requireAdmin(msgInteraction, chatId)) return;
+        msgInteraction.sendMessage(chatId, IMPORT_USAGE);
+    }
+
+    // any document sent to the bot; only "/import ..." captions are acted on
+    public static void handleDocument(MessageInteraction msgInteraction, long chatId, String caption, Document document) {
+        String c = caption == null ? "" : caption.trim();
+        if (!c.startsWith("/import")) {
+            msgInteraction.sendMessage(chatId, "To import data, send the file with the caption \"/import cars\" or \"/import branches\".");
+            return;
+        }
+        if (!AdminPaging.requireAdmin(msgInteraction, chatId)) return;
+
+        String[] t = c.split("\\s+");
+        Dataset dataset = t.length > 1 ? Dataset.of(t[1]) : null;
+        if (dataset == null || !dataset.isImportable()) {
+            msgInteraction.sendMessage(chatId, IMPORT_USAGE);
+            return;
+        }
+        Format format = t.length > 2 ? Format.of(t[2]) : Format.of(document.getFileName());
+        if (format == null) format = Format.CSV;
+        Long size = document.getFileSize();
+        if (size != null && size > MAX_DOWNLOAD_BYTES) {
+            msgInteraction.sendMessage(chatId, "The file is larger than 20 MB, which is the most a bot can download. Split it into parts.");
+            return;
+        }
+
+        msgInteraction.sendMessage(chatId, "Importing " + dataset.name + "...");
+        long started = System.nanoTime();
+        try (InputStream in = msgInteraction.openDocument(document.getFileId())) {
+            int rows = DataExchange.importData(dataset, format, in);
+            long ms = (System.nanoTime() - started) / 1_000_000;
+            msgInteraction.sendMessage(chatId, "Imported " + rows + " " + dataset.name + " row(s) in " + ms + " ms.");
+        } catch (DataExchange.ImportException e) {
+            msgInteraction.sendMessage(chatId, "Nothing was imported, " + e.getMessage());
+        } catch (SQLTransientException e) {
+            LOGGER.warning("Import of " + dataset.name + " failed: " + e.getMessage());
+            msgInteraction.sendMessage(chatId, "Nothing was imported, the database is busy. Please try again later.");
+        } catch (SQLException e) {
+            LOGGER.warning("Import of " + dataset.name + " failed: " + e.getMessage());
+            msgInteraction.sendMessage(chatId, "Nothing was imported, the database rejected the data: " + e.getMessage());
+        } catch (IOException | TelegramApiException e) {
+            LOGGER.warning("Import of " + dataset.name + " failed: " + e.getMessage());
+            msgInteraction.sendMessage(chatId, "Nothing was imported, could not read the file: " + e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        if (p == null) return;
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            LOGGER.warning("Cannot delete temp file " + p + ": " + e.getMessage());
+        }
+    }
+}
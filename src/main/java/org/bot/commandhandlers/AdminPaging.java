@@ -0,0 +1,170 @@
+package org.bot.commandhandlers;
+
+import modules.Car;
+import modules.CarFilter;
+import modules.Database;
+import modules.Page;
+import modules.RentalDetail;
+import org.bot.MessageInteraction;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Admin browsing of cars and rentals, one page at a time.
+ * Pages are fetched with keyset queries (Database.listCarsPage / listRentalsPage); the cursor and filters
+ * travel in the callback data of the Prev/Next buttons, so nothing is kept in memory between page flips.
+ *
+ * Callback data:
+ *   admin_page_cars_{n|p}_{cursor}_{branchId|x}_{statusId|x}
+ *   admin_page_rents_{n|p}_{cursor}_{login|x}
+ * Telegram refuses callback data over 64 bytes (and with it the whole message); a login filter too long
+ * for that gets no Prev/Next buttons, only the first page and a note.
+ */
+public class AdminPaging {
+    public static final String CALLBACK_PREFIX = "admin_page_";
+    static final int PAGE_SIZE = 10;
+    // Telegram limit for callback_data, in UTF-8 bytes
+    static final int MAX_CALLBACK_BYTES = 64;
+
+    public static void showCars(MessageInteraction msgInteraction, long chatId, CarFilter filter) {
+        if (!requireAdmin(msgInteraction, chatId)) return;
+        sendCarsPage(msgInteraction, chatId, filter, 0, true);
+    }
+
+    public static void showRentals(MessageInteraction msgInteraction, long chatId, String login) {
+        if (!requireAdmin(msgInteraction, chatId)) return;
+        sendRentalsPage(msgInteraction, chatId, login, 0, true);
+    }
+
+    // "/cars branch=3 status=1": args = "branch=3 status=1"; unknown or malformed tokens are ignored
+    public static CarFilter parseCarFilter(String args) {
+        Integer branch = null;
+        Integer status = null;
+        for (String a : args.split(" ")) {
+            if (a.startsWith("branch=")) branch = parseIntOrNull(a.substring(7));
+            else if (a.startsWith("status=")) status = parseIntOrNull(a.substring(7));
+        }
+        return new CarFilter(branch, status);
+    }
+
+    public static void handleCallbackQuery(MessageInteraction msgInteraction, long chatId, String data, String callbackId) {
+        msgInteraction.answerCallbackQuery(callbackId, null);
+        if (!requireAdmin(msgInteraction, chatId)) return;
+
+        // limit 4 keeps a login containing '_' in one piece
+        String[] p = data.substring(CALLBACK_PREFIX.length()).split("_", 4);
+        try {
+            if (p.length == 4 && "cars".equals(p[0])) {
+                String[] f = p[3].split("_");
+                if (f.length == 2) {
+                    CarFilter filter = new CarFilter(parseIntOrNull(f[0]), parseIntOrNull(f[1]));
+                    sendCarsPage(msgInteraction, chatId, filter, Integer.parseInt(p[2]), "n".equals(p[1]));
+                    return;
+                }
+            }
+            if (p.length == 4 && "rents".equals(p[0])) {
+                String login = "x".equals(p[3]) ? null : p[3];
+                sendRentalsPage(msgInteraction, chatId, login, Integer.parseInt(p[2]), "n".equals(p[1]));
+                return;
+            }
+        } catch (NumberFormatException ignored) {
+            // fall through to the error message
+        }
+        msgInteraction.sendMessage(chatId, "Unknown page request.");
+    }
+
+    private static void sendCarsPage(MessageInteraction msgInteraction, long chatId, CarFilter filter, int cursor, boolean forward) {
+        Page<Car> page = Database.withUserRetries(msgInteraction, chatId,
+                () -> Database.listCarsPage(filter, cursor, forward, PAGE_SIZE));
+        if (page == null) return;
+        if (page.items().isEmpty()) {
+            msgInteraction.sendMessage(chatId, "No cars found.");
+            return;
+        }
+        StringBuilder sb = new StringBuilder("Cars:\n");
+        for (Car c : page.items()) {
+            sb.append('#').append(c.id()).append(' ').append(c.name());
+            if (c.releaseYear() != null) sb.append(" (").append(c.releaseYear()).append(')');
+            sb.append(" — ").append(c.typeName())
+              .append(", ").append(c.statusName())
+              .append(", ").append(c.branchAddress())
+              .append('\n');
+        }
+        String suffix = "_" + orX(filter.branchId()) + "_" + orX(filter.statusId());
+        Map<String, String> buttons = new LinkedHashMap<>();
+        if (page.hasPrevious()) buttons.put("◀ Prev", CALLBACK_PREFIX + "cars_p_" + page.firstId() + suffix);
+        if (page.hasNext()) buttons.put("Next ▶", CALLBACK_PREFIX + "cars_n_" + page.lastId() + suffix);
+        sendPage(msgInteraction, chatId, sb.toString(), buttons);
+    }
+
+    private static void sendRentalsPage(MessageInteraction msgInteraction, long chatId, String login, int cursor, boolean forward) {
+        Page<RentalDetail> page = Database.withUserRetries(msgInteraction, chatId,
+                () -> Database.listRentalsPage(login, cursor, forward, PAGE_SIZE));
+        if (page == null) return;
+        if (page.items().isEmpty()) {
+            msgInteraction.sendMessage(chatId, "No rentals found.");
+            return;
+        }
+        StringBuilder sb = new StringBuilder("Rentals:\n");
+        for (RentalDetail r : page.items()) {
+            sb.append('#').append(r.rentalId()).append(' ').append(r.carName())
+              .append(" — ").append(r.login())
+              .append(", ").append(r.startDate()).append(" → ").append(r.endDate())
+              .append(", ").append(r.startBranchAddress()).append(" → ").append(r.endBranchAddress())
+              .append('\n');
+        }
+        String suffix = "_" + (login == null ? "x" : login);
+        Map<String, String> buttons = new LinkedHashMap<>();
+        if (page.hasPrevious()) buttons.put("◀ Prev", CALLBACK_PREFIX + "rents_p_" + page.firstId() + suffix);
+        if (page.hasNext()) buttons.put("Next ▶", CALLBACK_PREFIX + "rents_n_" + page.lastId() + suffix);
+        if (!fitsCallbackData(buttons)) {
+            buttons.clear();
+            sb.append("\nThis login is too long for page buttons; only the first page is shown.");
+        }
+        sendPage(msgInteraction, chatId, sb.toString(), buttons);
+    }
+
+    private static void sendPage(MessageInteraction msgInteraction, long chatId, String text, Map<String, String> buttons) {
+        if (buttons.isEmpty()) {
+            msgInteraction.sendMessage(chatId, text);
+        } else {
+            msgInteraction.sendMessageWithInlineKeyboard(chatId, text, buttons);
+        }
+    }
+
+    static boolean requireAdmin(MessageInteraction msgInteraction, long chatId) {
+        String login = MenuHandler.getLogin(chatId);
+        if (login == null) {
+            msgInteraction.sendMessage(chatId, "Only registered/logged-in users can use Admin. Please /start to login or register.");
+            return false;
+        }
+        Boolean admin = Database.withUserRetries(msgInteraction, chatId, () -> MenuHandler.isAdmin(chatId));
+        if (admin == null) return false;
+        if (!admin) {
+            msgInteraction.sendMessage(chatId, "Admin rights required. Use /admin to sign in as administrator.");
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean fitsCallbackData(Map<String, String> buttons) {
+        for (String data : buttons.values()) {
+            if (data.getBytes(StandardCharsets.UTF_8).length > MAX_CALLBACK_BYTES) return false;
+        }
+        return true;
+    }
+
+    private static String orX(Integer v) {
+        return v == null ? "x" : v.toString();
+    }
+
+    private static Integer parseIntOrNull(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
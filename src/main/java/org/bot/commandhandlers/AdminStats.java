@@ -0,0 +1,80 @@
+package org.bot.commandhandlers;
+
+import modules.ConnectionPool;
+import modules.Database;
+import modules.LatencyHistogram;
+import modules.Metrics;
+import org.bot.MessageInteraction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /stats for admins: a compact text view of Metrics (the same numbers the /metrics endpoint serves).
+ * Latencies are cumulative since start; p50/p99 in milliseconds.
+ */
+public class AdminStats {
+    // rows per section, busiest first; the full set is on the /metrics endpoint
+    private static final int TOP = 8;
+
+    public static void show(MessageInteraction msgInteraction, long chatId) {
+        if (!AdminPaging.requireAdmin(msgInteraction, chatId)) return;
+
+        StringBuilder sb = new StringBuilder("Stats since start\n");
+        Map<String, LatencyHistogram.Snapshot> updates = Metrics.timers("bot_update_seconds");
+        LatencyHistogram.Snapshot total = updates.get("total");
+        if (total != null) {
+            sb.append("\nUpdates: ").append(total.count).append(", ").append(percentiles(total));
+            LatencyHistogram.Snapshot queued = updates.get("queue");
+            if (queued != null) sb.append(" (queue ").append(percentiles(queued)).append(')');
+            sb.append('\n');
+        }
+
+        section(sb, "Handlers", Metrics.timers("bot_handler_seconds"), false);
+        section(sb, "DB queries (by total time)", Metrics.timers("bot_db_query_seconds"), true);
+        counters(sb, "DB retries", Metrics.counters("bot_db_retries_total"));
+        counters(sb, "DB errors", Metrics.counters("bot_db_errors_total"));
+        section(sb, "Telegram sends", Metrics.timers("bot_telegram_send_seconds"), false);
+        section(sb, "Delivery (queued → sent)", Metrics.timers("bot_telegram_delivery_seconds"), false);
+
+        sb.append("\nQueues:");
+        Metrics.gauges("bot_queue_depth").forEach((k, v) -> sb.append(' ').append(k).append('=').append(v));
+        ConnectionPool.Stats pool = Database.getPoolStats();
+        sb.append("\nDB pool: ").append(pool.active).append('/').append(pool.maxSize).append(" active, ")
+          .append(pool.idle).append(" idle, ").append(pool.waiting).append(" waiting, ")
+          .append(String.format("statement cache %.1f%% hits", pool.statementHitRate() * 100));
+
+        msgInteraction.sendMessage(chatId, sb.toString());
+    }
+
+    private static void section(StringBuilder sb, String title, Map<String, LatencyHistogram.Snapshot> timers, boolean byTotalTime) {
+        List<Map.Entry<String, LatencyHistogram.Snapshot>> rows = new ArrayList<>();
+        for (Map.Entry<String, LatencyHistogram.Snapshot> e : timers.entrySet()) {
+            if (e.getValue().count > 0) rows.add(e);
+        }
+        if (rows.isEmpty()) return;
+        if (byTotalTime) rows.sort((a, b) -> Long.compare(b.getValue().sumMicros, a.getValue().sumMicros));
+        else rows.sort((a, b) -> Long.compare(b.getValue().count, a.getValue().count));
+
+        sb.append('\n').append(title).append(":\n");
+        for (int i = 0; i < rows.size() && i < TOP; i++) {
+            LatencyHistogram.Snapshot s = rows.get(i).getValue();
+            sb.append("  ").append(rows.get(i).getKey()).append(": ").append(s.count).append(", ").append(percentiles(s));
+            if (byTotalTime) sb.append(String.format(", total %.1f s", s.sumMicros / 1e6));
+            sb.append('\n');
+        }
+        if (rows.size() > TOP) sb.append("  … ").append(rows.size() - TOP).append(" more\n");
+    }
+
+    private static void counters(StringBuilder sb, String title, Map<String, Long> counters) {
+        if (counters.isEmpty()) return;
+        sb.append(title).append(':');
+        counters.forEach((k, v) -> sb.append(' ').append(k).append('=').append(v));
+        sb.append('\n');
+    }
+
+    private static String percentiles(LatencyHistogram.Snapshot s) {
+        return String.format("p50 %.1f ms, p99 %.1f ms", s.quantileMillis(0.5), s.quantileMillis(0.99));
+    }
+}
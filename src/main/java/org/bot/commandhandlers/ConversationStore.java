@@ -0,0 +1,438 @@
+package org.bot.commandhandlers;
+
+import modules.Config;
+import modules.FileSessionBackend;
+import modules.MySqlSessionBackend;
+import modules.SessionBackend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Conversation state of the /start flow (login / sign-up), per chat.
+ *
+ * Sessions are held in memory up to SESSION_MAX_IN_MEMORY (least recently used out first) and written
+ * behind to a {@link SessionBackend}, so a restart or redeploy resumes a half-finished sign-up.
+ * Sessions idle for SESSION_IDLE_MINUTES are dropped everywhere, so abandoned flows do not pile up.
+ *
+ * The sign-up password is never persisted, so a session holding one is never evicted (only the idle
+ * sweep drops it). A session read back past that step (after a restart, or taken over from another
+ * cluster worker) asks for it again ({@link Session#passwordDropped}) and then carries on at the step
+ * it was saved at ({@link Session#resumeState}). Without a backend an evicted session is gone: the chat
+ * gets an {@link Session#expired} one that only tells the user so.
+ *
+ * Updates of one chat are handled sequentially by the dispatcher, so a Session is never
+ * mutated by two threads at once; handlers call {@link #save} after changing it.
+ */
+public final class ConversationStore {
+    private static final Logger LOGGER = Logger.getLogger(ConversationStore.class.getName());
+
+    // persisted by ordinal: add new states at the end only
+    public enum State {
+        AWAIT_LOGIN,
+        AWAIT_PASSWORD,
+        AWAIT_SIGNUP_PASSWORD,
+        AWAIT_SIGNUP_EMAIL,
+        AWAIT_SIGNUP_PHONE,
+        AWAIT_SIGNUP_LICENSE
+    }
+
+    public static final class Session {
+        public State state;
+        public String login;
+        public String password;
+        public String email;
+        public String phone;
+        public String driverLicense;
+        // restored from the backend past the password step; the password has to be asked again
+        public boolean passwordDropped;
+        // step to return to once the password has been re-entered (stored as the session's state)
+        public State resumeState;
+        // first message after the restore; it answered resumeState and is replayed there (never persisted)
+        public String pendingInput;
+        // stands in for a session evicted without a backend; holds nothing
+        public boolean expired;
+        volatile long lastAccess; // epoch ms
+    }
+
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final long SWEEP_INTERVAL_MS = 60_000;
+    // queued in PENDING to mean "delete from the backend"
+    private static final byte[] TOMBSTONE = new byte[0];
+
+    private static final long IDLE_MS = TimeUnit.MINUTES.toMillis(Config.getSessionIdleMinutes());
+    private static final int MAX_IN_MEMORY = Config.getSessionMaxInMemory();
+
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    // access-ordered; evicting from here only drops the in-memory copy, the backend still has the session
+    private static final LinkedHashMap<Long, Session> MEMORY = new LinkedHashMap<>(256, 0.75f, true);
+    // chats that have a session in memory or in the backend; lets hasActive() skip the backend for everyone else
+    private static final Set<Long> KNOWN = ConcurrentHashMap.newKeySet();
+    // write-behind queue: latest encoding per chat, TOMBSTONE for deletes
+    private static final ConcurrentHashMap<Long, byte[]> PENDING = new ConcurrentHashMap<>();
+
+    private static final SessionBackend BACKEND = createBackend();
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "session-store-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        if (BACKEND != null) {
+            try {
+                KNOWN.addAll(BACKEND.keys());
+                LOGGER.info("Conversation store: " + KNOWN.size() + " stored sessions");
+            } catch (IOException e) {
+                LOGGER.warning("Cannot list stored sessions: " + e.getMessage());
+            }
+            WRITER.scheduleWithFixedDelay(ConversationStore::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            try {
+                Runtime.getRuntime().addShutdownHook(new Thread(ConversationStore::flush, "session-store-flush"));
+            } catch (IllegalStateException e) {
+                // first used by a shutdown hook (a cluster worker leaving), which flushes itself
+            }
+        }
+        WRITER.scheduleWithFixedDelay(ConversationStore::sweep, 0, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private ConversationStore() {
+    }
+
+    private static SessionBackend createBackend() {
+        String kind = Config.getSessionStore();
+        try {
+            if ("mysql".equals(kind)) return new MySqlSessionBackend();
+            if ("file".equals(kind)) return new FileSessionBackend(Paths.get(Config.getSessionStoreDir()));
+        } catch (IOException e) {
+            LOGGER.severe("Session store '" + kind + "' unavailable, keeping sessions in memory only: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /** Start a new flow for the chat, replacing any previous one. */
+    public static Session create(long chatId, State state) {
+        Session s = new Session();
+        s.state = state;
+        save(chatId, s);
+        return s;
+    }
+
+    /** Session of the chat, or null if there is none (or it went idle); see {@link Session#expired}. */
+    public static Session get(long chatId) {
+        if (!KNOWN.contains(chatId)) return null;
+        Session s;
+        LOCK.lock();
+        try {
+            s = MEMORY.get(chatId);
+        } finally {
+            LOCK.unlock();
+        }
+        if (s == null) {
+            s = loadFromBackend(chatId);
+            if (s == null) return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - s.lastAccess > IDLE_MS) {
+            remove(chatId);
+            return null;
+        }
+        s.lastAccess = now;
+        return s;
+    }
+
+    public static boolean hasActive(long chatId) {
+        return get(chatId) != null;
+    }
+
+    /** Store the session as the chat's current one; call after changing it. */
+    public static void save(long chatId, Session s) {
+        s.lastAccess = System.currentTimeMillis();
+        LOCK.lock();
+        try {
+            MEMORY.put(chatId, s);
+            evictOverflow();
+        } finally {
+            LOCK.unlock();
+        }
+        KNOWN.add(chatId);
+        if (BACKEND != null) PENDING.put(chatId, encode(s));
+    }
+
+    /** Like {@link #save} but only if {@code s} is still the chat's current session. */
+    public static void saveIfCurrent(long chatId, Session s) {
+        if (!KNOWN.contains(chatId)) return;
+        LOCK.lock();
+        try {
+            Session cur = MEMORY.get(chatId);
+            if (cur != null && cur != s) return;
+        } finally {
+            LOCK.unlock();
+        }
+        save(chatId, s);
+    }
+
+    public static void remove(long chatId) {
+        LOCK.lock();
+        try {
+            MEMORY.remove(chatId);
+        } finally {
+            LOCK.unlock();
+        }
+        if (KNOWN.remove(chatId) && BACKEND != null) PENDING.put(chatId, TOMBSTONE);
+    }
+
+    // Back-button helpers: go to an earlier step and forget what was entered from that step on
+
+    public static void resetToAwaitLogin(long chatId) {
+        reset(chatId, State.AWAIT_LOGIN);
+    }
+
+    public static void resetToSignupPassword(long chatId) {
+        reset(chatId, State.AWAIT_SIGNUP_PASSWORD);
+    }
+
+    public static void resetToSignupEmail(long chatId) {
+        reset(chatId, State.AWAIT_SIGNUP_EMAIL);
+    }
+
+    public static void resetToSignupPhone(long chatId) {
+        reset(chatId, State.AWAIT_SIGNUP_PHONE);
+    }
+
+    private static void reset(long chatId, State to) {
+        Session s = get(chatId);
+        if (s == null || s.expired) return;
+        s.state = to;
+        s.resumeState = null;
+        s.pendingInput = null;
+        // states are in flow order: clear the field of the target step and of every later step
+        if (to.compareTo(State.AWAIT_LOGIN) <= 0) s.login = null;
+        if (to.compareTo(State.AWAIT_SIGNUP_PASSWORD) <= 0) s.password = null;
+        if (to.compareTo(State.AWAIT_SIGNUP_EMAIL) <= 0) s.email = null;
+        if (to.compareTo(State.AWAIT_SIGNUP_PHONE) <= 0) s.phone = null;
+        s.driverLicense = null;
+        save(chatId, s);
+    }
+
+    /**
+     * The chat was handled by another process until now (cluster rebalancing): forget any copy held here
+     * and read its session from the shared backend on next use.
+     */
+    public static void adopt(long chatId) {
+        LOCK.lock();
+        try {
+            MEMORY.remove(chatId);
+        } finally {
+            LOCK.unlock();
+        }
+        if (BACKEND != null) KNOWN.add(chatId);
+    }
+
+    /**
+     * Lost the cluster ingress: any chat handled here may go to another worker meanwhile. Persist what is
+     * queued and drop the in-memory copies, so a stale copy can neither be used nor expire over a newer one.
+     * Without a backend there is nothing to reload from, and the sessions are kept.
+     */
+    public static void releaseAll() {
+        if (BACKEND == null) return;
+        flush();
+        LOCK.lock();
+        try {
+            MEMORY.clear();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    public static int getInMemoryCount() {
+        LOCK.lock();
+        try {
+            return MEMORY.size();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    public static int getKnownCount() {
+        return KNOWN.size();
+    }
+
+    private static Session loadFromBackend(long chatId) {
+        byte[] data = PENDING.get(chatId);
+        if (data == null && BACKEND != null) {
+            try {
+                data = BACKEND.load(chatId);
+            } catch (IOException e) {
+                LOGGER.warning("Cannot load session of chat " + chatId + ": " + e.getMessage());
+                return null;
+            }
+        }
+        Session s;
+        if (data == null && BACKEND == null) {
+            // known but no longer in memory: evicted, and there is nothing to reload it from.
+            // Kept as an expired session until the handler has told the user and removed it.
+            s = new Session();
+            s.expired = true;
+            s.lastAccess = System.currentTimeMillis();
+        } else {
+            s = data == null || data.length == 0 ? null : decode(data);
+        }
+        if (s == null) {
+            KNOWN.remove(chatId);
+            return null;
+        }
+        LOCK.lock();
+        try {
+            // another thread may have loaded it first
+            Session cur = MEMORY.putIfAbsent(chatId, s);
+            if (cur == null) evictOverflow();
+            return cur != null ? cur : s;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    // least recently used out first, skipping sessions that hold a sign-up password: it exists nowhere else.
+    // Call with LOCK held.
+    private static void evictOverflow() {
+        if (MEMORY.size() <= MAX_IN_MEMORY) return;
+        Iterator<Session> it = MEMORY.values().iterator();
+        while (MEMORY.size() > MAX_IN_MEMORY && it.hasNext()) {
+            if (it.next().password == null) it.remove();
+        }
+    }
+
+    // write queued changes to the backend; a failed write stays queued for the next round.
+    // Also called when a cluster worker hands its chats over, so the next owner reads current sessions.
+    public static void flush() {
+        if (BACKEND == null) return;
+        for (Map.Entry<Long, byte[]> e : PENDING.entrySet()) {
+            long chatId = e.getKey();
+            byte[] data = e.getValue();
+            try {
+                if (data == TOMBSTONE) BACKEND.delete(chatId);
+                else BACKEND.store(chatId, data);
+                PENDING.remove(chatId, data);
+            } catch (IOException ex) {
+                LOGGER.warning("Cannot persist session of chat " + chatId + ": " + ex.getMessage());
+                return;
+            }
+        }
+    }
+
+    // drop sessions nobody touched for IDLE_MS, in memory and in the backend
+    static void sweep() {
+        try {
+            long cutoff = System.currentTimeMillis() - IDLE_MS;
+            List<Long> expired = new ArrayList<>();
+            LOCK.lock();
+            try {
+                Iterator<Map.Entry<Long, Session>> it = MEMORY.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Long, Session> e = it.next();
+                    if (e.getValue().lastAccess < cutoff) {
+                        expired.add(e.getKey());
+                        it.remove();
+                    }
+                }
+            } finally {
+                LOCK.unlock();
+            }
+            for (long chatId : expired) remove(chatId);
+
+            if (BACKEND == null) return;
+            Collection<Long> purged = BACKEND.purgeIdle(cutoff);
+            for (long chatId : purged) {
+                Session live;
+                LOCK.lock();
+                try {
+                    live = MEMORY.get(chatId);
+                } finally {
+                    LOCK.unlock();
+                }
+                if (live != null) {
+                    // still in use here (e.g. only read since its last write): write it back
+                    PENDING.putIfAbsent(chatId, encode(live));
+                } else if (!PENDING.containsKey(chatId)) {
+                    KNOWN.remove(chatId);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning("Session sweep failed: " + e.getMessage());
+        }
+    }
+
+    // Compact encoding: format, state, last access, then a presence mask and only the fields that are set.
+    // A typical sign-up session is well under 100 bytes.
+    private static final int FORMAT = 1;
+    private static final int HAS_LOGIN = 1;
+    private static final int HAS_EMAIL = 2;
+    private static final int HAS_PHONE = 4;
+    private static final int HAS_LICENSE = 8;
+
+    static byte[] encode(Session s) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeByte(FORMAT);
+            // waiting for the password again after a restore: still saved at the step it resumes
+            out.writeByte((s.resumeState != null ? s.resumeState : s.state).ordinal());
+            out.writeLong(s.lastAccess);
+            int mask = (s.login != null ? HAS_LOGIN : 0)
+                    | (s.email != null ? HAS_EMAIL : 0)
+                    | (s.phone != null ? HAS_PHONE : 0)
+                    | (s.driverLicense != null ? HAS_LICENSE : 0);
+            out.writeByte(mask);
+            if (s.login != null) out.writeUTF(s.login);
+            if (s.email != null) out.writeUTF(s.email);
+            if (s.phone != null) out.writeUTF(s.phone);
+            if (s.driverLicense != null) out.writeUTF(s.driverLicense);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen with an in-memory stream
+        }
+        return bos.toByteArray();
+    }
+
+    static Session decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readUnsignedByte() != FORMAT) return null;
+            int ordinal = in.readUnsignedByte();
+            State[] states = State.values();
+            if (ordinal >= states.length) return null;
+            Session s = new Session();
+            s.state = states[ordinal];
+            s.lastAccess = in.readLong();
+            int mask = in.readUnsignedByte();
+            if ((mask & HAS_LOGIN) != 0) s.login = in.readUTF();
+            if ((mask & HAS_EMAIL) != 0) s.email = in.readUTF();
+            if ((mask & HAS_PHONE) != 0) s.phone = in.readUTF();
+            if ((mask & HAS_LICENSE) != 0) s.driverLicense = in.readUTF();
+            if (s.state.ordinal() > State.AWAIT_SIGNUP_PASSWORD.ordinal()) {
+                s.resumeState = s.state;
+                s.state = State.AWAIT_SIGNUP_PASSWORD;
+                s.passwordDropped = true;
+            }
+            return s;
+        } catch (IOException e) {
+            LOGGER.warning("Discarding unreadable session: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package org.bot.commandhandlers;
 
+import modules.Database;
+import modules.PrincipalCache;
+import modules.User;
 import org.bot.MessageInteraction;
+
+import java.sql.SQLException;
 import java.util.*;
+import java.util.logging.Logger;
 
 /**
  * Manages authenticated sessions and shows the main reply-keyboard menu.
@@ -9,9 +15,57 @@ import java.util.*;
  */
 public class MenuHandler {
 
-    // mark chat as authenticated (forward to SessionService)
+    private static final Logger LOGGER = Logger.getLogger(MenuHandler.class.getName());
+
+    // mark chat as authenticated (forward to SessionService) and cache who it is
     public static void markAuthenticated(long chatId, String login) {
         SessionService.markAuthenticated(chatId, login);
+        try {
+            User user = Database.getUserByLogin(login);
+            if (user != null) {
+                PrincipalCache.put(chatId, user);
+                rememberChat(user, chatId);
+            }
+        } catch (SQLException e) {
+            // not fatal: getPrincipal loads it on first use
+            PrincipalCache.remove(chatId);
+            LOGGER.warning("Could not load user " + login + " after sign-in: " + e.getMessage());
+        }
+    }
+
+    // where rental reminders for this user go
+    private static void rememberChat(User user, long chatId) {
+        try {
+            Database.rememberUserChat(user.id(), chatId);
+        } catch (SQLException e) {
+            LOGGER.warning("Could not remember the chat of " + user.login() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Signed-in user of the chat (id, login, admin flag), or null if the chat is not authenticated.
+     * Served from PrincipalCache; only a cache miss queries Users.
+     */
+    public static User getPrincipal(long chatId) throws SQLException {
+        String login = SessionService.getAuthenticatedLogin(chatId);
+        if (login == null) return null;
+        User user = PrincipalCache.get(chatId);
+        if (user != null && user.login().equals(login)) return user;
+        user = Database.getUserByLogin(login);
+        if (user != null) PrincipalCache.put(chatId, user);
+        return user;
+    }
+
+    // user id of the signed-in user, or null
+    public static Integer getUserId(long chatId) throws SQLException {
+        User user = getPrincipal(chatId);
+        return user == null ? null : user.id();
+    }
+
+    // admin flag of the signed-in user (false when not signed in)
+    public static boolean isAdmin(long chatId) throws SQLException {
+        User user = getPrincipal(chatId);
+        return user != null && user.admin();
     }
 
     // check auth (forward)
@@ -43,7 +97,7 @@ public class MenuHandler {
                 return;
             }
             // stop other active flows for this chat
-            SessionService.cancelFlow(chatId); // start flow
+            StartHandler.cancelFlow(chatId); // start flow
             SessionService.endRentSession(chatId);
             SessionService.endAdminSession(chatId);
             msgInteraction.sendMessage(chatId, "Menu activated. Other commands are suspended while you use the menu.");
@@ -1,6 +1,7 @@
 package org.bot.commandhandlers;
 
 import modules.Database;
+import modules.UniquenessService;
 import org.bot.MessageInteraction;
 
 import java.sql.SQLException;
@@ -26,22 +27,42 @@ public class StartHandler {
                 welcome
         );
 
-        // use SessionService.createSession helper
-        SessionService.createSession(chatId, SessionService.State.AWAIT_LOGIN);
+        // start a new login / sign-up conversation
+        ConversationStore.create(chatId, ConversationStore.State.AWAIT_LOGIN);
         msgInteraction.sendMessage(chatId, "Enter login:"); // <-- removed inline Back here
     }
 
     public static boolean hasActive(long chatId) {
-        return SessionService.hasActive(chatId);
+        return ConversationStore.hasActive(chatId);
     }
 
     public static void handleIncomingMessage(MessageInteraction msgInteraction, long chatId, String text) {
-        SessionService.Session ctx = SessionService.getSession(chatId);
+        ConversationStore.Session ctx = ConversationStore.get(chatId);
         if (ctx == null) {
             // no active flow; ignore
             return;
         }
 
+        if (ctx.expired) {
+            ConversationStore.remove(chatId);
+            msgInteraction.sendMessage(chatId, "Your sign-up session expired. Use /start to begin again.");
+            return;
+        }
+
+        if (ctx.passwordDropped) {
+            // read back from the store (restart or another worker): the sign-up password is never persisted,
+            // ask for it again; this message answered the step the user was on and is handled there afterwards
+            ctx.passwordDropped = false;
+            ctx.pendingInput = text;
+            ConversationStore.save(chatId, ctx);
+            msgInteraction.sendMessageWithInlineKeyboard(
+                    chatId,
+                    "Your sign-up session expired, so the password has to be entered again. Please choose a password for the new account:",
+                    Collections.singletonMap("Back", "back")
+            );
+            return;
+        }
+
         String trimmed = text == null ? "" : text.trim();
 
         try {
@@ -59,7 +80,7 @@ public class StartHandler {
                     boolean exists = existsB;
                     ctx.login = trimmed;
                     if (exists) {
-                        ctx.state = SessionService.State.AWAIT_PASSWORD;
+                        ctx.state = ConversationStore.State.AWAIT_PASSWORD;
                         // After login check the Back button is allowed (go back one step -> re-enter login)
                         msgInteraction.sendMessageWithInlineKeyboard(
                                 chatId,
@@ -67,7 +88,7 @@ public class StartHandler {
                                 Collections.singletonMap("Back", "back")
                         );
                     } else {
-                        ctx.state = SessionService.State.AWAIT_SIGNUP_PASSWORD;
+                        ctx.state = ConversationStore.State.AWAIT_SIGNUP_PASSWORD;
                         msgInteraction.sendMessageWithInlineKeyboard(
                                 chatId,
                                 "No such login. Please choose a password for a new account:",
@@ -92,7 +113,7 @@ public class StartHandler {
                     if (ok) {
                         // mark authenticated and show menu automatically
                         MenuHandler.markAuthenticated(chatId, ctx.login);
-                        SessionService.removeSession(chatId);
+                        ConversationStore.remove(chatId);
                         msgInteraction.sendMessage(chatId, "Authorization successful. Welcome, " + ctx.login + "!");
                         MenuHandler.showMenu(msgInteraction, chatId, false);
                     } else {
@@ -114,7 +135,18 @@ public class StartHandler {
                         return;
                     }
                     ctx.password = trimmed;
-                    ctx.state = SessionService.State.AWAIT_SIGNUP_EMAIL;
+                    if (ctx.resumeState != null) {
+                        // read back from the store: carry on at the saved step with the message it was waiting for
+                        ctx.state = ctx.resumeState;
+                        ctx.resumeState = null;
+                        String pending = ctx.pendingInput;
+                        ctx.pendingInput = null;
+                        ConversationStore.save(chatId, ctx);
+                        // an empty answer just gets that step's prompt again
+                        handleIncomingMessage(msgInteraction, chatId, pending == null ? "" : pending);
+                        return;
+                    }
+                    ctx.state = ConversationStore.State.AWAIT_SIGNUP_EMAIL;
                     msgInteraction.sendMessageWithInlineKeyboard(
                             chatId,
                             "Please enter your email:",
@@ -143,7 +175,7 @@ public class StartHandler {
                         return; // do not advance state
                     }
                     ctx.email = trimmed;
-                    ctx.state = SessionService.State.AWAIT_SIGNUP_PHONE;
+                    ctx.state = ConversationStore.State.AWAIT_SIGNUP_PHONE;
                     msgInteraction.sendMessageWithInlineKeyboard(
                             chatId,
                             "Please enter your phone number (format +79999999999):",
@@ -172,7 +204,7 @@ public class StartHandler {
                         return; // do not advance state
                     }
                     ctx.phone = trimmed;
-                    ctx.state = SessionService.State.AWAIT_SIGNUP_LICENSE;
+                    ctx.state = ConversationStore.State.AWAIT_SIGNUP_LICENSE;
                     msgInteraction.sendMessageWithInlineKeyboard(
                             chatId,
                             "Please enter your driver license number (10 chars, uppercase letters or digits):",
@@ -213,27 +245,29 @@ public class StartHandler {
                                 "Some required fields are missing. Please restart with /start and try again.",
                                 Collections.singletonMap("Back", "back")
                         );
-                        SessionService.removeSession(chatId);
+                        ConversationStore.remove(chatId);
                         return;
                     }
 
-                    // All fields validated. Create the user entry with provided data.
-                    Boolean createdB = Database.withUserRetries(msgInteraction, chatId, () -> {
-                        Database.createUserWithPassword(ctx.login, ctx.password, ctx.email, ctx.phone, ctx.driverLicense);
-                        return Boolean.TRUE;
-                    });
-                    if (createdB == null) return;
+                    // All fields validated. Create the user entry unless one of the values was taken in the meantime.
+                    EnumSet<UniquenessService.Field> taken = Database.withUserRetries(msgInteraction, chatId,
+                            () -> Database.registerUser(ctx.login, ctx.password, ctx.email, ctx.phone, ctx.driverLicense));
+                    if (taken == null) return;
+                    if (!taken.isEmpty()) {
+                        handleTakenFields(msgInteraction, chatId, taken);
+                        return;
+                    }
 
                     // mark authenticated and show menu automatically
                     MenuHandler.markAuthenticated(chatId, ctx.login);
-                    SessionService.removeSession(chatId);
+                    ConversationStore.remove(chatId);
                     msgInteraction.sendMessage(chatId, "Account created and signed in as " + ctx.login + ". Welcome!");
                     MenuHandler.showMenu(msgInteraction, chatId, false);
                     break;
 
                 default:
                     // unknown state: reset
-                    SessionService.removeSession(chatId);
+                    ConversationStore.remove(chatId);
                     break;
             }
         } catch (Exception e) {
@@ -246,6 +280,9 @@ public class StartHandler {
                 msgInteraction.sendMessage(chatId, "Database error occurred. Please try again later (your progress was saved).");
             }
             // keep sessions.get(chatId) intact so user can continue without restarting
+        } finally {
+            // persist whatever step the flow reached (no-op if it was finished or cancelled above)
+            ConversationStore.saveIfCurrent(chatId, ctx);
         }
     }
 
@@ -262,34 +299,34 @@ public class StartHandler {
         // If MessageInteraction has answerCallbackQuery, call it to remove spinner
         msgInteraction.answerCallbackQuery(callbackId, null); // second param = optional text; MessageInteraction should implement this
 
-        SessionService.Session ctx = SessionService.getSession(chatId);
+        ConversationStore.Session ctx = ConversationStore.get(chatId);
         if (callbackData == null) return;
 
         if ("back".equals(callbackData)) {
-            if (ctx == null || ctx.state == SessionService.State.AWAIT_LOGIN) {
+            if (ctx == null || ctx.expired || ctx.state == ConversationStore.State.AWAIT_LOGIN) {
                 // cancel flow if no context or already at login step
-                SessionService.removeSession(chatId);
+                ConversationStore.remove(chatId);
                 msgInteraction.sendMessage(chatId, "Operation cancelled. Use /start to begin again.");
                 return;
             }
 
-            // Move one step back according to current state using SessionService helpers
+            // Move one step back according to current state using ConversationStore helpers
             switch (ctx.state) {
                 case AWAIT_PASSWORD:
                     // go back to login entry (no Back button)
-                    SessionService.resetToAwaitLogin(chatId);
+                    ConversationStore.resetToAwaitLogin(chatId);
                     msgInteraction.sendMessage(chatId, "Going back. Enter login:");
                     break;
 
                 case AWAIT_SIGNUP_PASSWORD:
                     // from signup password, back -> re-enter login
-                    SessionService.resetToAwaitLogin(chatId);
+                    ConversationStore.resetToAwaitLogin(chatId);
                     msgInteraction.sendMessage(chatId, "Going back. Enter login:");
                     break;
 
                 case AWAIT_SIGNUP_EMAIL:
                     // back -> choose password (still after login check)
-                    SessionService.resetToSignupPassword(chatId);
+                    ConversationStore.resetToSignupPassword(chatId);
                     msgInteraction.sendMessageWithInlineKeyboard(
                             chatId,
                             "Going back. Please choose a password for the new account:",
@@ -299,7 +336,7 @@ public class StartHandler {
 
                 case AWAIT_SIGNUP_PHONE:
                     // back -> re-enter email
-                    SessionService.resetToSignupEmail(chatId);
+                    ConversationStore.resetToSignupEmail(chatId);
                     msgInteraction.sendMessageWithInlineKeyboard(
                             chatId,
                             "Going back. Please enter your email:",
@@ -309,7 +346,7 @@ public class StartHandler {
 
                 case AWAIT_SIGNUP_LICENSE:
                     // back -> re-enter phone
-                    SessionService.resetToSignupPhone(chatId);
+                    ConversationStore.resetToSignupPhone(chatId);
                     msgInteraction.sendMessageWithInlineKeyboard(
                             chatId,
                             "Going back. Please enter your phone number (format +79999999999):",
@@ -319,7 +356,7 @@ public class StartHandler {
 
                 default:
                     // fallback: cancel
-                    SessionService.removeSession(chatId);
+                    ConversationStore.remove(chatId);
                     msgInteraction.sendMessage(chatId, "Operation cancelled. Use /start to begin again.");
                     break;
             }
@@ -327,8 +364,26 @@ public class StartHandler {
         // Add more callback handling if needed
     }
 
+    // another sign-up took one of the values between its step and account creation: go back to the first such step
+    private static void handleTakenFields(MessageInteraction msgInteraction, long chatId, EnumSet<UniquenessService.Field> taken) {
+        Map<String, String> back = Collections.singletonMap("Back", "back");
+        if (taken.contains(UniquenessService.Field.LOGIN)) {
+            ConversationStore.resetToAwaitLogin(chatId);
+            msgInteraction.sendMessage(chatId, "This login has just been registered by someone else. Please enter another login:");
+        } else if (taken.contains(UniquenessService.Field.EMAIL)) {
+            ConversationStore.resetToSignupEmail(chatId);
+            msgInteraction.sendMessageWithInlineKeyboard(chatId, "This email is already in use. Please enter a different email:", back);
+        } else if (taken.contains(UniquenessService.Field.PHONE)) {
+            ConversationStore.resetToSignupPhone(chatId);
+            msgInteraction.sendMessageWithInlineKeyboard(chatId, "This phone number is already registered. Please enter a different phone number:", back);
+        } else {
+            // still at the license step
+            msgInteraction.sendMessageWithInlineKeyboard(chatId, "This driver license number is already registered. Please enter a different license number:", back);
+        }
+    }
+
     // New: cancel an active flow for a chat (used when opening /menu)
     public static void cancelFlow(long chatId) {
-        SessionService.cancelFlow(chatId);
+        ConversationStore.remove(chatId);
     }
 }
@@ -0,0 +1,76 @@
+package modules;
+
+import junit.framework.TestCase;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class AvailabilityIndexTest extends TestCase {
+    private static final LocalDate D = LocalDate.of(2026, 6, 1);
+
+    public void testDatesAreInclusive() {
+        AvailabilityIndex idx = new AvailabilityIndex();
+        idx.put(1, 10, D, D.plusDays(4));
+        assertFalse(idx.isFree(10, D.plusDays(4), D.plusDays(6)));
+        assertFalse(idx.isFree(10, D.minusDays(2), D));
+        assertTrue(idx.isFree(10, D.plusDays(5), D.plusDays(6)));
+        assertTrue(idx.isFree(10, D.minusDays(2), D.minusDays(1)));
+        // other cars are not affected
+        assertTrue(idx.isFree(11, D, D.plusDays(4)));
+    }
+
+    // a long booking starting well before the asked range still blocks it
+    public void testLongBookingCoveringRange() {
+        AvailabilityIndex idx = new AvailabilityIndex();
+        idx.put(1, 10, D, D.plusDays(60));
+        idx.put(2, 10, D.plusDays(70), D.plusDays(71));
+        assertFalse(idx.isFree(10, D.plusDays(30), D.plusDays(31)));
+        assertTrue(idx.isFree(10, D.plusDays(61), D.plusDays(69)));
+    }
+
+    public void testIgnoredRental() {
+        AvailabilityIndex idx = new AvailabilityIndex();
+        idx.put(1, 10, D, D.plusDays(4));
+        assertTrue(idx.isFree(10, D.plusDays(2), D.plusDays(8), 1));
+        assertFalse(idx.isFree(10, D.plusDays(2), D.plusDays(8), 2));
+    }
+
+    public void testPutMovesAndRemoveFrees() {
+        AvailabilityIndex idx = new AvailabilityIndex();
+        idx.put(1, 10, D, D.plusDays(4));
+        idx.put(1, 12, D.plusDays(10), D.plusDays(12));
+        assertEquals(1, idx.size());
+        assertTrue(idx.isFree(10, D, D.plusDays(4)));
+        assertFalse(idx.isFree(12, D.plusDays(11), D.plusDays(11)));
+        assertEquals(12, idx.get(1).carId());
+        idx.remove(1);
+        assertEquals(0, idx.size());
+        assertNull(idx.get(1));
+        assertTrue(idx.isFree(12, D.plusDays(10), D.plusDays(12)));
+    }
+
+    // legacy rows may share a start date; removing one keeps the other
+    public void testSameStartDate() {
+        AvailabilityIndex idx = new AvailabilityIndex();
+        idx.put(1, 10, D, D.plusDays(1));
+        idx.put(2, 10, D, D.plusDays(3));
+        idx.remove(2);
+        assertFalse(idx.isFree(10, D, D));
+        assertTrue(idx.isFree(10, D.plusDays(2), D.plusDays(3)));
+    }
+
+    public void testReplaceAllRefusesStaleLoad() {
+        AvailabilityIndex idx = new AvailabilityIndex();
+        long mod = idx.getModCount();
+        idx.put(1, 10, D, D.plusDays(4));
+        List<AvailabilityIndex.Booking> rows = List.of(new AvailabilityIndex.Booking(2, 11, D, D));
+        assertFalse(idx.replaceAll(rows, mod));
+        assertNotNull(idx.get(1));
+
+        assertTrue(idx.replaceAll(rows, idx.getModCount()));
+        assertNull(idx.get(1));
+        assertEquals(1, idx.size());
+        assertFalse(idx.isFree(11, D, D));
+        assertTrue(idx.isFree(10, D, D.plusDays(4)));
+    }
+}
@@ -0,0 +1,48 @@
+package modules;
+
+import junit.framework.TestCase;
+
+public class BloomFilterTest extends TestCase {
+
+    public void testNoFalseNegatives() {
+        BloomFilter f = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) f.add("user" + i + "@example.com");
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue("user" + i, f.mightContain("user" + i + "@example.com"));
+        }
+    }
+
+    public void testFalsePositiveRateNearTarget() {
+        BloomFilter f = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) f.add("login" + i);
+        int hits = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (f.mightContain("other" + i)) hits++;
+        }
+        // 1% expected; allow for the hash not being ideal
+        assertTrue("false positives: " + hits, hits < 2_000);
+    }
+
+    public void testEmptyFilterContainsNothing() {
+        BloomFilter f = new BloomFilter(0, 0.01);
+        assertEquals(1, f.getCapacity());
+        assertFalse(f.mightContain(""));
+        assertFalse(f.mightContain("x"));
+        f.add("");
+        assertTrue(f.mightContain(""));
+    }
+
+    public void testConcurrentAdds() throws InterruptedException {
+        BloomFilter f = new BloomFilter(40_000, 0.01);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int from = t * 10_000;
+            threads[t] = new Thread(() -> {
+                for (int i = from; i < from + 10_000; i++) f.add("phone" + i);
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        for (int i = 0; i < 40_000; i++) assertTrue(f.mightContain("phone" + i));
+    }
+}
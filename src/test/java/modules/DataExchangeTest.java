@@ -0,0 +1,58 @@
+package modules;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+public class DataExchangeTest extends TestCase {
+
+    public void testPlainRecords() throws IOException {
+        DataExchange.CsvParser p = parser("id,name\n1,Lada\n2,Volga\n");
+        assertEquals(List.of("id", "name"), p.readRecord());
+        assertEquals(List.of("1", "Lada"), p.readRecord());
+        assertEquals(2, p.recordLine);
+        assertEquals(List.of("2", "Volga"), p.readRecord());
+        assertNull(p.readRecord());
+    }
+
+    public void testQuotedFields() throws IOException {
+        DataExchange.CsvParser p = parser("name,street\n\"Smith, \"\"Jr\"\"\",\"Main\nSt\"\n\"\",x\n");
+        p.readRecord();
+        assertEquals(List.of("Smith, \"Jr\"", "Main\nSt"), p.readRecord());
+        assertEquals(2, p.recordLine);
+        // the line break inside quotes still counts for the next record's line number
+        assertEquals(List.of("", "x"), p.readRecord());
+        assertEquals(4, p.recordLine);
+    }
+
+    public void testSemicolonSeparatorFromHeader() throws IOException {
+        DataExchange.CsvParser p = parser("id;name\r\n1;Lada, 2107\r\n");
+        assertEquals(List.of("id", "name"), p.readRecord());
+        assertEquals(List.of("1", "Lada, 2107"), p.readRecord());
+        assertNull(p.readRecord());
+    }
+
+    public void testEmptyFieldsAndMissingFinalNewline() throws IOException {
+        DataExchange.CsvParser p = parser("a,b,c\n,,\nx,y,z");
+        p.readRecord();
+        assertEquals(List.of("", "", ""), p.readRecord());
+        assertEquals(List.of("x", "y", "z"), p.readRecord());
+        assertNull(p.readRecord());
+    }
+
+    public void testFormatAndDatasetNames() {
+        assertEquals(DataExchange.Format.CSV, DataExchange.Format.of("cars.CSV"));
+        assertEquals(DataExchange.Format.JSON, DataExchange.Format.of("json"));
+        assertNull(DataExchange.Format.of("cars.xlsx"));
+        assertEquals(DataExchange.Dataset.BRANCHES, DataExchange.Dataset.of("Branches"));
+        assertFalse(DataExchange.Dataset.RENTALS.isImportable());
+        assertTrue(DataExchange.Dataset.CARS.isImportable());
+    }
+
+    private static DataExchange.CsvParser parser(String csv) throws IOException {
+        return new DataExchange.CsvParser(new BufferedReader(new StringReader(csv)));
+    }
+}
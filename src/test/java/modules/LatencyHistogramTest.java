@@ -0,0 +1,64 @@
+package modules;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+    public void testBucketsAreOrderedAndBoundValues() {
+        int last = 0;
+        for (long us = 0; us < 5_000_000; us = us < 100 ? us + 1 : us + us / 37) {
+            int b = LatencyHistogram.bucket(us);
+            assertTrue("bucket of " + us + " went back", b >= last);
+            last = b;
+            long upper = LatencyHistogram.upperBound(b);
+            assertTrue("upper bound below " + us, upper >= us);
+            // log-linear: at most 1/8 above the value
+            assertTrue("bound of " + us + " too loose: " + upper, upper <= us + us / 8);
+            if (b > 0) assertTrue(LatencyHistogram.upperBound(b - 1) < us);
+        }
+    }
+
+    public void testExactBelowSixteenMicros() {
+        for (int us = 0; us < 16; us++) {
+            assertEquals(us, LatencyHistogram.bucket(us));
+            assertEquals(us, LatencyHistogram.upperBound(us));
+        }
+    }
+
+    public void testHugeValuesLandInLastBucket() {
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE / 1000));
+    }
+
+    public void testQuantilesAndMean() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) h.recordNanos(ms * 1_000_000L);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(100, s.count);
+        assertEquals(100_000, s.maxMicros);
+        assertEquals(50_500, s.meanMicros(), 0.001);
+        assertQuantile(s.quantileMicros(0.5), 50_000);
+        assertQuantile(s.quantileMicros(0.99), 99_000);
+        // never reported above the largest value seen
+        assertEquals(100_000, s.quantileMicros(1.0));
+        assertEquals(100.0, s.quantileMillis(1.0), 0.001);
+    }
+
+    public void testEmptySnapshot() {
+        LatencyHistogram.Snapshot s = new LatencyHistogram().snapshot();
+        assertEquals(0, s.count);
+        assertEquals(0, s.quantileMicros(0.99));
+        assertEquals(0.0, s.meanMicros(), 0.0);
+    }
+
+    public void testNegativeDurationCountsAsZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.recordNanos(-5_000);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(1, s.count);
+        assertEquals(0, s.quantileMicros(1.0));
+    }
+
+    private static void assertQuantile(long reported, long exact) {
+        assertTrue("reported " + reported + " for " + exact, reported >= exact && reported <= exact + exact / 8);
+    }
+}
@@ -0,0 +1,133 @@
+package modules;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TimerWheelTest extends TestCase {
+    private static final long TICK = 1000;
+    private static final long T0 = 1_700_000_000_000L;
+
+    public void testFiresAtDeadlineNotBefore() {
+        TimerWheel w = new TimerWheel(TICK, 100, T0);
+        w.schedule(1, T0 + 5 * TICK);
+        List<Long> fired = new ArrayList<>();
+        w.advance(T0 + 4 * TICK, fired::add);
+        assertTrue(fired.isEmpty());
+        w.advance(T0 + 5 * TICK, fired::add);
+        assertEquals(List.of(1L), fired);
+        assertEquals(0, w.size());
+        assertFalse(w.contains(1));
+    }
+
+    public void testPastDeadlineFiresOnNextAdvance() {
+        TimerWheel w = new TimerWheel(TICK, 100, T0);
+        w.schedule(7, T0 - 60 * TICK);
+        List<Long> fired = new ArrayList<>();
+        w.advance(T0 + TICK, fired::add);
+        assertEquals(List.of(7L), fired);
+    }
+
+    public void testRescheduleReplacesDeadline() {
+        TimerWheel w = new TimerWheel(TICK, 100, T0);
+        w.schedule(1, T0 + 10 * TICK);
+        w.schedule(1, T0 + 3 * TICK);
+        assertEquals(1, w.size());
+        assertEquals(T0 + 3 * TICK, w.deadlineOf(1));
+        List<Long> fired = new ArrayList<>();
+        w.advance(T0 + 20 * TICK, fired::add);
+        assertEquals(List.of(1L), fired);
+    }
+
+    public void testCancel() {
+        TimerWheel w = new TimerWheel(TICK, 100, T0);
+        w.schedule(1, T0 + 2 * TICK);
+        w.schedule(2, T0 + 2 * TICK);
+        assertTrue(w.cancel(1));
+        assertFalse(w.cancel(1));
+        assertEquals(-1, w.deadlineOf(1));
+        List<Long> fired = new ArrayList<>();
+        w.advance(T0 + 2 * TICK, fired::add);
+        assertEquals(List.of(2L), fired);
+    }
+
+    public void testRefusesBeyondMaxTimers() {
+        TimerWheel w = new TimerWheel(TICK, 2, T0);
+        assertTrue(w.schedule(1, T0 + TICK));
+        assertTrue(w.schedule(2, T0 + TICK));
+        assertFalse(w.schedule(3, T0 + TICK));
+        // moving an existing timer needs no new slot
+        assertTrue(w.schedule(2, T0 + 2 * TICK));
+        w.cancel(1);
+        assertTrue(w.schedule(3, T0 + TICK));
+    }
+
+    // deadlines on every level and past the wheel's range cascade down and fire on time
+    public void testUpperLevelsAndBeyondRange() {
+        TimerWheel w = new TimerWheel(TICK, 100, T0);
+        long[] delays = {1, 63, 64, 65, 4095, 4096, 262_143, 262_144, 16_777_215, 16_777_216, 40_000_000};
+        for (int i = 0; i < delays.length; i++) w.schedule(i, T0 + delays[i] * TICK);
+        for (int i = 0; i < delays.length; i++) {
+            List<Long> fired = new ArrayList<>();
+            w.advance(T0 + (delays[i] - 1) * TICK, fired::add);
+            assertTrue("key " + i + " fired early", fired.isEmpty());
+            w.advance(T0 + delays[i] * TICK, fired::add);
+            assertEquals(List.of((long) i), fired);
+        }
+        assertEquals(0, w.size());
+    }
+
+    public void testCallbackMayScheduleAgain() {
+        TimerWheel w = new TimerWheel(TICK, 100, T0);
+        w.schedule(1, T0 + TICK);
+        List<Long> fired = new ArrayList<>();
+        w.advance(T0 + TICK, k -> {
+            fired.add(k);
+            w.schedule(k, T0 + 3 * TICK);
+        });
+        assertTrue(w.contains(1));
+        w.advance(T0 + 3 * TICK, fired::add);
+        assertEquals(List.of(1L, 1L), fired);
+    }
+
+    // random schedule/cancel/advance against a plain map of deadlines
+    public void testMatchesReferenceModel() {
+        Random rnd = new Random(42);
+        TimerWheel w = new TimerWheel(TICK, 10_000, T0);
+        Map<Long, Long> model = new HashMap<>();
+        long now = T0;
+        for (int round = 0; round < 2000; round++) {
+            for (int i = 0; i < 20; i++) {
+                long key = rnd.nextInt(5000);
+                if (rnd.nextInt(4) == 0) {
+                    assertEquals(model.remove(key) != null, w.cancel(key));
+                } else {
+                    long delay = rnd.nextInt(4) == 0 ? rnd.nextInt(300_000) : rnd.nextInt(200);
+                    long at = now + delay * TICK;
+                    assertTrue(w.schedule(key, at));
+                    model.put(key, Math.max(at / TICK, now / TICK + 1));
+                }
+            }
+            now += rnd.nextInt(rnd.nextInt(10) == 0 ? 50_000 : 30) * TICK;
+            List<Long> fired = new ArrayList<>();
+            w.advance(now, fired::add);
+            List<Long> expected = new ArrayList<>();
+            for (Iterator<Map.Entry<Long, Long>> it = model.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Long, Long> e = it.next();
+                if (e.getValue() <= now / TICK) {
+                    expected.add(e.getKey());
+                    it.remove();
+                }
+            }
+            fired.sort(null);
+            expected.sort(null);
+            assertEquals(expected, fired);
+            assertEquals(model.size(), w.size());
+        }
+    }
+}
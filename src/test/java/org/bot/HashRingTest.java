@@ -0,0 +1,74 @@
+package org.bot;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class HashRingTest extends TestCase {
+    private static final int CHATS = 100_000;
+
+    public void testEmptyRingHasNoOwner() {
+        HashRing<String> ring = new HashRing<>();
+        assertTrue(ring.isEmpty());
+        assertNull(ring.owner(42));
+    }
+
+    public void testSharesAreEven() {
+        HashRing<String> ring = ring("w1", "w2", "w3", "w4");
+        Map<String, Integer> counts = new HashMap<>();
+        for (long chat = 1; chat <= CHATS; chat++) counts.merge(ring.owner(chat), 1, Integer::sum);
+        assertEquals(4, counts.size());
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            // a fair share is 25%
+            assertTrue(e.getKey() + " owns " + e.getValue(), e.getValue() > CHATS * 0.18 && e.getValue() < CHATS * 0.32);
+        }
+    }
+
+    // adding a member takes chats only for itself; removing it gives exactly those back
+    public void testAddAndRemoveMoveOnlyTheirShare() {
+        HashRing<String> ring = ring("w1", "w2", "w3");
+        String[] before = owners(ring);
+        ring.add("w4", "w4");
+        String[] after = owners(ring);
+        int moved = 0;
+        for (int i = 0; i < CHATS; i++) {
+            if (!before[i].equals(after[i])) {
+                assertEquals("w4", after[i]);
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved > CHATS * 0.15 && moved < CHATS * 0.35);
+        ring.remove("w4");
+        assertEquals(3, ring.size());
+        String[] back = owners(ring);
+        for (int i = 0; i < CHATS; i++) assertEquals(before[i], back[i]);
+    }
+
+    // placement depends on the names only, not on the order members joined
+    public void testPlacementIndependentOfJoinOrder() {
+        String[] a = owners(ring("w1", "w2", "w3"));
+        String[] b = owners(ring("w3", "w1", "w2"));
+        for (int i = 0; i < CHATS; i++) assertEquals(a[i], b[i]);
+    }
+
+    public void testReAddReplacesMember() {
+        HashRing<String> ring = new HashRing<>();
+        ring.add("w1", "old");
+        ring.add("w1", "new");
+        assertEquals(1, ring.size());
+        for (long chat = 1; chat <= 1000; chat++) assertEquals("new", ring.owner(chat));
+    }
+
+    private static HashRing<String> ring(String... names) {
+        HashRing<String> ring = new HashRing<>();
+        for (String n : names) ring.add(n, n);
+        return ring;
+    }
+
+    private static String[] owners(HashRing<String> ring) {
+        String[] out = new String[CHATS];
+        for (int i = 0; i < CHATS; i++) out[i] = ring.owner(i + 1);
+        return out;
+    }
+}